@@ -0,0 +1,156 @@
+package com.recceda.benchmarks;
+
+import com.recceda.AsyncReccedaOtp;
+import com.recceda.ReccedaOtp;
+import com.recceda.core.store.AsyncOtpStore;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.core.store.VerificationResult;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The time for a burst of users to each generate and verify an OTP against a store with a
+ * round-trip latency, served by {@code ReccedaOtp} on a fixed pool of threads that block on the
+ * store, or by {@code AsyncReccedaOtp} without blocking.
+ *
+ * <p>Blocking, every round trip parks one of the pool's threads, so the burst takes at least {@code
+ * 2 * users * latencyMillis / POOL_THREADS}; without blocking, all requests are in flight at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AsyncStoreBenchmark {
+
+  private static final int POOL_THREADS = 16;
+
+  @Param({"1000"})
+  public int users;
+
+  @Param({"5"})
+  public long latencyMillis;
+
+  private ReccedaOtp blocking;
+  private AsyncReccedaOtp async;
+  private ExecutorService pool;
+
+  @Setup
+  public void setUp() {
+    blocking =
+        ReccedaOtp.builder()
+            .otpStore(AsyncOtpStore.blocking(remoteStore()))
+            .otpGenerator(length -> "123456")
+            .build();
+    async =
+        AsyncReccedaOtp.builder().otpStore(remoteStore()).otpGenerator(length -> "123456").build();
+    pool = Executors.newFixedThreadPool(POOL_THREADS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public int blocking() throws Exception {
+    Future<?>[] results = new Future<?>[users];
+    for (int i = 0; i < users; i++) {
+      String key = "user-" + i;
+      results[i] =
+          pool.submit(
+              () -> {
+                blocking.generateOtp(key, (k, otp) -> {});
+                return blocking.verifyAndConsume(key, "123456");
+              });
+    }
+    int valid = 0;
+    for (Future<?> result : results) {
+      valid += result.get() == VerificationResult.VALID ? 1 : 0;
+    }
+    return valid;
+  }
+
+  @Benchmark
+  public int async() {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<VerificationResult>[] results = new CompletableFuture[users];
+    for (int i = 0; i < users; i++) {
+      String key = "user-" + i;
+      results[i] =
+          async
+              .generateOtp(key, (k, otp) -> {})
+              .thenCompose(sent -> async.verifyAndConsume(key, "123456"));
+    }
+    int valid = 0;
+    for (CompletableFuture<VerificationResult> result : results) {
+      valid += result.join() == VerificationResult.VALID ? 1 : 0;
+    }
+    return valid;
+  }
+
+  private AsyncOtpStore remoteStore() {
+    return new RemoteStore(
+        AsyncOtpStore.wrap(
+            new ReccedaOtpStore(),
+            CompletableFuture.delayedExecutor(
+                latencyMillis, TimeUnit.MILLISECONDS, Runnable::run)));
+  }
+
+  /**
+   * An in-process stand-in for a remote store: every operation completes after the latency. It is
+   * not the adapter itself, so {@link AsyncOtpStore#blocking(AsyncOtpStore)} waits on it instead of
+   * unwrapping the in-memory store.
+   */
+  private static final class RemoteStore implements AsyncOtpStore {
+    private final AsyncOtpStore delegate;
+
+    RemoteStore(AsyncOtpStore delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public CompletionStage<Void> storeOtp(String key, String otp, long ttlMillis) {
+      return delegate.storeOtp(key, otp, ttlMillis);
+    }
+
+    @Override
+    public CompletionStage<Boolean> verifyOtp(String key, String otp) {
+      return delegate.verifyOtp(key, otp);
+    }
+
+    @Override
+    public CompletionStage<VerificationResult> verifyAndConsume(
+        String key, String otp, int maxFailedAttempts) {
+      return delegate.verifyAndConsume(key, otp, maxFailedAttempts);
+    }
+
+    @Override
+    public CompletionStage<OtpEntry> getOtpEntry(String key) {
+      return delegate.getOtpEntry(key);
+    }
+
+    @Override
+    public CompletionStage<Void> invalidateOtp(String key) {
+      return delegate.invalidateOtp(key);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.challenge.ChallengeSigner;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.VerificationResult;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signed challenge tokens compared with {@link ReccedaOtpStore}: the latency of issuing and then
+ * verifying one OTP, and the heap retained per OTP.
+ *
+ * <p>{@code fill} issues a million OTPs and reports the heap retained per OTP as a secondary
+ * result: for the store while they are outstanding, and for tokens both while they are outstanding
+ * and once they have all been verified and sit in the verified-token set. The parallel collector is
+ * used because G1 does not always release the previous iteration's cache on {@code System.gc()},
+ * which skews the per-OTP figures.
+ */
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+UseParallelGC"})
+public class ChallengeTokenBenchmark {
+
+  private static final int KEYS = 100_000;
+  private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+
+  @State(Scope.Thread)
+  public static class Latency {
+    ReccedaOtpStore otpStore;
+    ChallengeSigner signer;
+    String[] keys;
+    int next;
+
+    @Setup
+    public void setUp() {
+      otpStore = new ReccedaOtpStore();
+      signer = newSigner();
+      keys = new String[KEYS];
+      for (int i = 0; i < KEYS; i++) {
+        keys[i] = "user-" + i + "@example.com";
+      }
+    }
+
+    String nextKey() {
+      String key = keys[next];
+      next = next + 1 == KEYS ? 0 : next + 1;
+      return key;
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Config {
+    @Param({"store", "token-outstanding", "token-verified"})
+    public String mode;
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long heapBytesPerOtp;
+    // Holds the previous iteration's OTPs until the next one starts, so they are not measured.
+    Object retained;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      heapBytesPerOtp = 0;
+      retained = null;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public VerificationResult storeAndConsume(Latency state) {
+    String key = state.nextKey();
+    state.otpStore.storeOtp(key, "123456", TTL);
+    return state.otpStore.verifyAndConsume(key, "123456");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public VerificationResult issueAndVerifyToken(Latency state) {
+    String key = state.nextKey();
+    String token = state.signer.issue(key, "123456", TTL);
+    return state.signer.verify(key, token, "123456");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public void fill(Config config, Footprint footprint) {
+    int otps = 1_000_000;
+    long before = usedHeapAfterGc();
+    Object retained;
+    if ("store".equals(config.mode)) {
+      ReccedaOtpStore otpStore = new ReccedaOtpStore();
+      for (int i = 0; i < otps; i++) {
+        otpStore.storeOtp("user-" + i + "@example.com", "123456", TTL);
+      }
+      retained = otpStore;
+    } else {
+      ChallengeSigner signer = newSigner();
+      boolean verify = "token-verified".equals(config.mode);
+      for (int i = 0; i < otps; i++) {
+        String key = "user-" + i + "@example.com";
+        String token = signer.issue(key, "123456", TTL);
+        if (verify) {
+          signer.verify(key, token, "123456");
+        }
+      }
+      retained = signer;
+    }
+    footprint.retained = retained;
+    footprint.heapBytesPerOtp = (usedHeapAfterGc() - before) / otps;
+  }
+
+  private static ChallengeSigner newSigner() {
+    return ChallengeSigner.builder().signingKey("k1", new byte[32]).build();
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
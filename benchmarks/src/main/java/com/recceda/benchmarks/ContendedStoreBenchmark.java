@@ -0,0 +1,69 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.OtpStore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Store and verify throughput with many threads sharing one store. Run it once per thread count
+ * with {@code -t} (1 to 64) to get a scaling curve.
+ *
+ * <p>With {@code hot} keys, every thread works on the same few keys and contends on their locks;
+ * with {@code cold} keys, threads pick from a million keys and mostly contend on the store's shared
+ * structures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedStoreBenchmark {
+
+  private static final int COLD_KEYS = 1_000_000;
+  private static final int HOT_KEYS = 4;
+
+  @Param({Stores.CAFFEINE, Stores.SHARDED, Stores.OFF_HEAP})
+  public String store;
+
+  @Param({"hot", "cold"})
+  public String keys;
+
+  private OtpStore otpStore;
+  private String[] keySet;
+
+  @Setup
+  public void setUp() {
+    keySet = new String["hot".equals(keys) ? HOT_KEYS : COLD_KEYS];
+    otpStore = Stores.create(store, COLD_KEYS);
+    for (int i = 0; i < keySet.length; i++) {
+      keySet[i] = "user-" + i + "@example.com";
+      otpStore.storeOtp(keySet[i], "123456", TimeUnit.HOURS.toMillis(1));
+    }
+  }
+
+  @Benchmark
+  public boolean verifyOtp() {
+    return otpStore.verifyOtp(randomKey(), "123456");
+  }
+
+  @Benchmark
+  public void storeOtp() {
+    otpStore.storeOtp(randomKey(), "123456", TimeUnit.HOURS.toMillis(1));
+  }
+
+  private String randomKey() {
+    return keySet[ThreadLocalRandom.current().nextInt(keySet.length)];
+  }
+}
@@ -0,0 +1,61 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventType;
+import com.recceda.core.event.RingBufferEventPublisher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of publishing a lifecycle event from several threads, with a listener that keeps up and with
+ * one that is too slow, so that the buffer is full and events are dropped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EventPublisherBenchmark {
+
+  private static final OtpEvent EVENT = new OtpEvent(OtpEventType.ISSUED, "user@example.com", 0);
+
+  @Param({"fast", "slow"})
+  public String listener;
+
+  private RingBufferEventPublisher publisher;
+
+  @Setup
+  public void setUp() {
+    publisher =
+        RingBufferEventPublisher.builder(
+                "fast".equals(listener)
+                    ? events -> Blackhole.consumeCPU(events.size())
+                    : events -> Blackhole.consumeCPU(events.size() * 100_000L))
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    publisher.close();
+  }
+
+  @Benchmark
+  public void publish() {
+    publisher.publish(EVENT);
+  }
+}
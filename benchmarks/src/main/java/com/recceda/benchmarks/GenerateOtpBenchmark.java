@@ -0,0 +1,76 @@
+package com.recceda.benchmarks;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.policy.MaxFailedAttemptsPolicy;
+import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PreventDuplicateOtpPolicy;
+import com.recceda.core.store.ReccedaOtpStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end {@link ReccedaOtp#generateOtp(String, OtpDistributor)} with 0, 1 or 2 policies and a
+ * distributor that does nothing. Each call consumes the OTP it generated, so that {@link
+ * PreventDuplicateOtpPolicy} lets the next call through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerateOtpBenchmark {
+
+  private static final OtpDistributor NO_OP = (key, otp) -> {};
+
+  @State(Scope.Benchmark)
+  public static class Service {
+    @Param({"0", "1", "2"})
+    public int policies;
+
+    ReccedaOtp reccedaOtp;
+
+    @Setup
+    public void setUp() {
+      List<Policy> policyList = new ArrayList<>();
+      if (policies >= 1) {
+        policyList.add(new MaxFailedAttemptsPolicy(5));
+      }
+      if (policies >= 2) {
+        policyList.add(new PreventDuplicateOtpPolicy());
+      }
+      reccedaOtp = new ReccedaOtp(new ReccedaOtpStore(), policyList);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Caller {
+    private static final AtomicInteger threads = new AtomicInteger();
+
+    String key;
+
+    @Setup
+    public void setUp() {
+      key = "user-" + threads.getAndIncrement() + "@example.com";
+    }
+  }
+
+  @Benchmark
+  public void generateOtp(Service service, Caller caller) {
+    service.reccedaOtp.generateOtp(caller.key, NO_OP);
+    service.reccedaOtp.invalidateOtp(caller.key);
+  }
+}
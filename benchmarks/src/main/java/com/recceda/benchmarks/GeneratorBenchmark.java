@@ -0,0 +1,61 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.generator.OtpAlphabet;
+import com.recceda.core.generator.OtpGenerator;
+import com.recceda.core.generator.ReccedaOtpGenerator;
+import com.recceda.core.generator.StripedOtpGenerator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OTP generation throughput by generator and code length. Run with {@code -t} above 1 to compare
+ * how the shared {@link ReccedaOtpGenerator} and the striped generator behave under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+  @Param({"recceda", "striped", "striped-alphanumeric"})
+  public String generator;
+
+  @Param({"4", "6", "8", "12"})
+  public int length;
+
+  private OtpGenerator otpGenerator;
+
+  @Setup
+  public void setUp() {
+    switch (generator) {
+      case "recceda":
+        otpGenerator = new ReccedaOtpGenerator();
+        break;
+      case "striped":
+        otpGenerator = new StripedOtpGenerator();
+        break;
+      case "striped-alphanumeric":
+        otpGenerator = new StripedOtpGenerator(OtpAlphabet.ALPHANUMERIC);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown generator " + generator + ".");
+    }
+  }
+
+  @Benchmark
+  public String generateOtp() {
+    return otpGenerator.generateOtp(length);
+  }
+}
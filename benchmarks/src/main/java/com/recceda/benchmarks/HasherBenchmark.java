@@ -0,0 +1,51 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.OtpHasher;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of hashing and comparing an OTP. Run with {@code -prof gc} to see the allocation rate. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HasherBenchmark {
+
+  @Param({"sha256", "hmac-sha256"})
+  public String algorithm;
+
+  private OtpHasher hasher;
+  private byte[] storedHash;
+
+  @Setup
+  public void setUp() {
+    hasher =
+        "sha256".equals(algorithm)
+            ? OtpHasher.sha256()
+            : OtpHasher.hmacSha256("benchmark-pepper-0123456789".getBytes(StandardCharsets.UTF_8));
+    storedHash = hasher.hash("123456");
+  }
+
+  @Benchmark
+  public byte[] hash() {
+    return hasher.hash("123456");
+  }
+
+  @Benchmark
+  public boolean matches() {
+    return hasher.matches(storedHash, "123456");
+  }
+}
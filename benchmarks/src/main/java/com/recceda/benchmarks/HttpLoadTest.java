@@ -0,0 +1,147 @@
+package com.recceda.benchmarks;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.metrics.LatencyHistogram;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.http.OtpHttpServer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A closed-loop load test of {@link OtpHttpServer} on a single node.
+ *
+ * <p>Starts the server on a free local port, then runs a number of client threads that each
+ * generate an OTP and verify it, back to back, for a fixed time after a warm-up. Reports requests
+ * per second and the latency percentiles of both endpoints. Not a JMH benchmark; run it with:
+ *
+ * <pre>
+ * java -Dsun.net.httpserver.nodelay=true -cp target/benchmarks.jar \
+ *     com.recceda.benchmarks.HttpLoadTest [clients] [seconds] [virtual|pool]
+ * </pre>
+ */
+public final class HttpLoadTest {
+
+  private static final int WARMUP_SECONDS = 3;
+
+  private HttpLoadTest() {}
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    boolean virtualThreads = args.length < 3 || !"pool".equals(args[2]);
+    if (!Boolean.getBoolean("sun.net.httpserver.nodelay")) {
+      System.err.println(
+          "Without -Dsun.net.httpserver.nodelay=true, latency includes ~40 ms delays.");
+    }
+
+    Map<String, String> sent = new ConcurrentHashMap<>();
+    ReccedaOtp otp = new ReccedaOtp(new ReccedaOtpStore());
+    try (OtpHttpServer server =
+        OtpHttpServer.builder(otp, sent::put)
+            .host("127.0.0.1")
+            .port(0)
+            .virtualThreads(virtualThreads)
+            .start()) {
+      String base = "http://127.0.0.1:" + server.port();
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+      run(client, base, sent, clients, WARMUP_SECONDS, new Results());
+      Results results = new Results();
+      long elapsed = run(client, base, sent, clients, seconds, results);
+
+      double elapsedSeconds = elapsed / 1e9;
+      long requests = results.generate.count() + results.verify.count();
+      System.out.printf(
+          "%d clients, %s, %d s%n",
+          clients, server.usesVirtualThreads() ? "virtual threads" : "bounded pool", seconds);
+      System.out.printf(
+          "requests: %d (%.0f/s), errors: %d%n",
+          requests, requests / elapsedSeconds, results.errors.sum());
+      print("generate", results.generate);
+      print("verify", results.verify);
+    }
+  }
+
+  private static long run(
+      HttpClient client,
+      String base,
+      Map<String, String> sent,
+      int clients,
+      int seconds,
+      Results results)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+    CountDownLatch done = new CountDownLatch(clients);
+    for (int c = 0; c < clients; c++) {
+      int clientId = c;
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  for (long i = 0; System.nanoTime() < deadline; i++) {
+                    String key = "user-" + clientId + "-" + (i & 1023);
+                    if (call(
+                            client,
+                            base + "/otp/generate",
+                            "{\"key\":\"" + key + "\"}",
+                            results.generate)
+                        != 202) {
+                      results.errors.increment();
+                      continue;
+                    }
+                    String body = "{\"key\":\"" + key + "\",\"otp\":\"" + sent.get(key) + "\"}";
+                    if (call(client, base + "/otp/verify", body, results.verify) != 200) {
+                      results.errors.increment();
+                    }
+                  }
+                } finally {
+                  done.countDown();
+                }
+              });
+      thread.setDaemon(true);
+      thread.start();
+    }
+    done.await();
+    return System.nanoTime() - start;
+  }
+
+  private static int call(HttpClient client, String uri, String body, LatencyHistogram latency) {
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create(uri))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    long start = System.nanoTime();
+    try {
+      int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+      latency.record(System.nanoTime() - start);
+      return status;
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private static void print(String endpoint, LatencyHistogram latency) {
+    System.out.printf(
+        "%-8s p50 %7.1f us  p99 %7.1f us  p99.9 %7.1f us  max %7.1f us%n",
+        endpoint,
+        latency.valueAtPercentile(50) / 1e3,
+        latency.valueAtPercentile(99) / 1e3,
+        latency.valueAtPercentile(99.9) / 1e3,
+        latency.max() / 1e3);
+  }
+
+  private static final class Results {
+    final LatencyHistogram generate = new LatencyHistogram();
+    final LatencyHistogram verify = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+  }
+}
@@ -0,0 +1,76 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.FileOtpJournal;
+import com.recceda.core.store.FileOtpJournal.Durability;
+import com.recceda.core.store.ReccedaOtpStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Store throughput of a journaled {@link ReccedaOtpStore} at each durability level, compared with
+ * an unjournaled store. Run with {@code -t} above 1 to see the effect of group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+  private static final int KEYS = 100_000;
+
+  @Param({"NONE", "ASYNC", "BATCHED", "SYNC"})
+  public String durability;
+
+  private Path directory;
+  private FileOtpJournal journal;
+  private ReccedaOtpStore otpStore;
+
+  @Setup
+  public void setUp() throws IOException {
+    if ("NONE".equals(durability)) {
+      otpStore = new ReccedaOtpStore();
+      return;
+    }
+    directory = Files.createTempDirectory("recceda-otp-journal");
+    journal = FileOtpJournal.open(directory, Durability.valueOf(durability));
+    otpStore = ReccedaOtpStore.builder().journal(journal).build();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (journal == null) {
+      return;
+    }
+    journal.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public void storeOtp() {
+    String key = "user-" + ThreadLocalRandom.current().nextInt(KEYS) + "@example.com";
+    otpStore.storeOtp(key, "123456", TimeUnit.MINUTES.toMillis(5));
+  }
+}
@@ -0,0 +1,105 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.VerificationResult;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the key index to steady-state store traffic, and the time to invalidate one tenant.
+ *
+ * <p>The store holds a million keys across 1,000 tenants. {@code storeOtp} replaces the OTP of an
+ * existing key, and {@code storeAndConsume} issues and consumes an OTP for a new key, which adds it
+ * to and removes it from the index. {@code invalidateTenant} revokes the 1,000 OTPs of one tenant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyIndexBenchmark {
+
+  private static final int TENANTS = 1000;
+  private static final int KEYS_PER_TENANT = 1000;
+
+  @Param({"false", "true"})
+  public boolean indexed;
+
+  private ReccedaOtpStore otpStore;
+
+  @Setup
+  public void setUp() {
+    otpStore = fill(indexed);
+  }
+
+  @Benchmark
+  public void storeOtp() {
+    otpStore.storeOtp(randomKey(), "123456", TimeUnit.HOURS.toMillis(1));
+  }
+
+  @Benchmark
+  public VerificationResult storeAndConsume() {
+    String key = "churn:" + ThreadLocalRandom.current().nextLong();
+    otpStore.storeOtp(key, "123456", TimeUnit.HOURS.toMillis(1));
+    return otpStore.verifyAndConsume(key, "123456");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public int invalidateTenant(Tenant tenant) {
+    return tenant.otpStore.invalidateByTenant(tenant.name);
+  }
+
+  /** An indexed store whose invalidated tenant is restored before every invocation. */
+  @State(Scope.Thread)
+  public static class Tenant {
+    ReccedaOtpStore otpStore;
+    String name;
+
+    @Setup
+    public void setUp() {
+      otpStore = fill(true);
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+      int tenant = ThreadLocalRandom.current().nextInt(TENANTS);
+      name = "tenant-" + tenant;
+      for (int i = 0; i < KEYS_PER_TENANT; i++) {
+        otpStore.storeOtp(name + ":user-" + i, "123456", TimeUnit.HOURS.toMillis(1));
+      }
+    }
+  }
+
+  private static ReccedaOtpStore fill(boolean indexed) {
+    ReccedaOtpStore.Builder builder = ReccedaOtpStore.builder();
+    if (indexed) {
+      builder.keyIndex();
+    }
+    ReccedaOtpStore otpStore = builder.build();
+    for (int tenant = 0; tenant < TENANTS; tenant++) {
+      for (int i = 0; i < KEYS_PER_TENANT; i++) {
+        otpStore.storeOtp("tenant-" + tenant + ":user-" + i, "123456", TimeUnit.HOURS.toMillis(1));
+      }
+    }
+    return otpStore;
+  }
+
+  private static String randomKey() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return "tenant-" + random.nextInt(TENANTS) + ":user-" + random.nextInt(KEYS_PER_TENANT);
+  }
+}
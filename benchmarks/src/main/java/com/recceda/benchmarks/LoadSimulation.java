@@ -0,0 +1,447 @@
+package com.recceda.benchmarks;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.metrics.LatencyHistogram;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.VerificationResult;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load simulation of {@link ReccedaOtp} with a production-like mix of requests.
+ *
+ * <p>Runs a number of threads that each either generate an OTP for a key or verify an OTP they sent
+ * earlier, for a fixed time after a warm-up. Keys are drawn from a fixed set, uniformly or with a
+ * Zipf skew so that a few keys get most of the traffic. A share of the verifications use a wrong
+ * code and are retried later, and the stub distributor takes a configurable time to send each OTP.
+ * Every few seconds it prints the throughput, the store size, the heap in use and the time spent in
+ * garbage collection; at the end it reports the latency percentiles of both operations and the
+ * verification outcomes. Not a JMH benchmark; run it with:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.recceda.benchmarks.LoadSimulation [name=value ...]
+ * </pre>
+ *
+ * <p>The settings and their defaults are listed in {@link Settings}. Unknown names are rejected.
+ */
+public final class LoadSimulation {
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+  private static final long HEAP_SAMPLE_MILLIS = 100;
+  private static final int MAX_PENDING = 1024;
+  private static final String WRONG_CODE = "wrong";
+
+  private LoadSimulation() {}
+
+  public static void main(String[] args) throws Exception {
+    Settings settings = Settings.parse(args);
+    ReccedaOtpStore store =
+        settings.capacity > 0
+            ? ReccedaOtpStore.builder().maximumSize(settings.capacity).build()
+            : new ReccedaOtpStore();
+    ReccedaOtp otp = new ReccedaOtp(store);
+    KeySampler keys = new KeySampler(settings.keys, settings.skew);
+    Map<String, String> sent = new ConcurrentHashMap<>();
+    OtpDistributor distributor =
+        (key, code) -> {
+          sent.put(key, code);
+          long nanos = settings.sendDelayNanos(ThreadLocalRandom.current());
+          if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+          }
+        };
+
+    System.out.println(settings);
+    run(
+        settings,
+        otp,
+        store,
+        keys,
+        sent,
+        distributor,
+        settings.warmupSeconds,
+        new Results(),
+        false);
+    Results results = new Results();
+    GcSnapshot gcBefore = GcSnapshot.take();
+    long elapsed =
+        run(settings, otp, store, keys, sent, distributor, settings.seconds, results, true);
+    GcSnapshot gc = GcSnapshot.take().minus(gcBefore);
+
+    double elapsedSeconds = elapsed / 1e9;
+    long operations = results.generate.count() + results.verify.count();
+    System.out.printf(
+        "%noperations: %d (%.0f/s), errors: %d%n",
+        operations, operations / elapsedSeconds, results.errors.sum());
+    print("generate", results.generate);
+    print("verify", results.verify);
+    StringBuilder outcomes = new StringBuilder("outcomes:");
+    for (VerificationResult result : VerificationResult.values()) {
+      outcomes.append(' ').append(result).append('=').append(results.outcome(result).sum());
+    }
+    System.out.println(outcomes);
+    System.out.printf(
+        "gc: %d collections, %d ms (%.2f%% of wall time), peak heap %d MB, store %d entries%n",
+        gc.collections,
+        gc.millis,
+        100.0 * gc.millis / (elapsed / 1e6),
+        results.peakHeapBytes / (1024 * 1024),
+        store.estimatedSize());
+  }
+
+  private static long run(
+      Settings settings,
+      ReccedaOtp otp,
+      ReccedaOtpStore store,
+      KeySampler keys,
+      Map<String, String> sent,
+      OtpDistributor distributor,
+      int seconds,
+      Results results,
+      boolean report)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+    double generateShare = 1 / (1 + settings.verifyRatio);
+    CountDownLatch done = new CountDownLatch(settings.threads);
+    for (int t = 0; t < settings.threads; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                // Keys this thread sent an OTP to that have not entered it yet.
+                ArrayDeque<String> pending = new ArrayDeque<>();
+                try {
+                  while (System.nanoTime() < deadline) {
+                    if (random.nextDouble() < generateShare) {
+                      String key = keys.next(random);
+                      if (generate(otp, key, settings, distributor, results)
+                          && pending.size() < MAX_PENDING) {
+                        pending.add(key);
+                      }
+                    } else {
+                      String key = pending.poll();
+                      if (key == null) {
+                        key = keys.next(random);
+                      }
+                      String code = sent.get(key);
+                      if (code == null || random.nextDouble() < settings.wrongRate) {
+                        // A mistyped code: the user tries again later.
+                        verify(otp, key, WRONG_CODE, results);
+                        pending.add(key);
+                      } else {
+                        verify(otp, key, code, results);
+                      }
+                    }
+                  }
+                } finally {
+                  done.countDown();
+                }
+              });
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    long interval = TimeUnit.SECONDS.toNanos(settings.reportSeconds);
+    long lastOperations = 0;
+    long last = start;
+    GcSnapshot lastGc = GcSnapshot.take();
+    if (report) {
+      System.out.printf(
+          "%n%6s %10s %10s %8s %10s %8s%n", "time", "ops/s", "entries", "heap MB", "gc/s", "gc ms");
+    }
+    // Sample the heap often enough to catch its peak, but print only once per interval.
+    while (!done.await(HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS)) {
+      long now = System.nanoTime();
+      long heap = MEMORY.getHeapMemoryUsage().getUsed();
+      results.peakHeapBytes = Math.max(results.peakHeapBytes, heap);
+      if (!report || now - last < interval) {
+        continue;
+      }
+      long operations = results.generate.count() + results.verify.count();
+      GcSnapshot gc = GcSnapshot.take();
+      GcSnapshot delta = gc.minus(lastGc);
+      double intervalSeconds = (now - last) / 1e9;
+      System.out.printf(
+          "%5.0fs %10.0f %10d %8d %10.1f %8d%n",
+          (now - start) / 1e9,
+          (operations - lastOperations) / intervalSeconds,
+          store.estimatedSize(),
+          heap / (1024 * 1024),
+          delta.collections / intervalSeconds,
+          delta.millis);
+      lastOperations = operations;
+      last = now;
+      lastGc = gc;
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static boolean generate(
+      ReccedaOtp otp, String key, Settings settings, OtpDistributor distributor, Results results) {
+    long start = System.nanoTime();
+    try {
+      otp.generateOtp(key, settings.length, settings.ttlMillis, distributor);
+      results.generate.record(System.nanoTime() - start);
+      return true;
+    } catch (RuntimeException e) {
+      results.errors.increment();
+      return false;
+    }
+  }
+
+  private static void verify(ReccedaOtp otp, String key, String code, Results results) {
+    long start = System.nanoTime();
+    try {
+      VerificationResult result = otp.verifyAndConsume(key, code);
+      results.verify.record(System.nanoTime() - start);
+      results.outcome(result).increment();
+    } catch (RuntimeException e) {
+      results.errors.increment();
+    }
+  }
+
+  private static void print(String operation, LatencyHistogram latency) {
+    System.out.printf(
+        "%-8s p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  max %8.1f us%n",
+        operation,
+        latency.valueAtPercentile(50) / 1e3,
+        latency.valueAtPercentile(99) / 1e3,
+        latency.valueAtPercentile(99.9) / 1e3,
+        latency.max() / 1e3);
+  }
+
+  /** The simulation settings, each set on the command line as {@code name=value}. */
+  static final class Settings {
+    /** {@code threads}: the number of threads issuing requests. */
+    int threads = 16;
+
+    /** {@code seconds}: how long to measure for, after the warm-up. */
+    int seconds = 30;
+
+    /** {@code warmup}: how long to run before measuring, in seconds. */
+    int warmupSeconds = 5;
+
+    /** {@code report}: the interval between progress lines, in seconds. */
+    int reportSeconds = 5;
+
+    /** {@code keys}: the number of distinct keys. */
+    int keys = 100_000;
+
+    /** {@code skew}: the Zipf exponent of the key popularity; {@code 0} is uniform. */
+    double skew = 0;
+
+    /** {@code verifyRatio}: the number of verifications per generated OTP. */
+    double verifyRatio = 1;
+
+    /** {@code wrongRate}: the share of verifications that use a wrong code. */
+    double wrongRate = 0.05;
+
+    /** {@code length}: the number of digits in each OTP. */
+    int length = 6;
+
+    /** {@code ttl}: the validity of each OTP, in milliseconds. */
+    long ttlMillis = TimeUnit.MINUTES.toMillis(5);
+
+    /** {@code capacity}: the maximum number of OTPs the store holds; {@code 0} is unbounded. */
+    long capacity;
+
+    /** {@code sendMillis}: the mean time the stub distributor takes to send an OTP. */
+    double sendMillis;
+
+    /** {@code sendDistribution}: {@code fixed}, {@code uniform} or {@code exponential}. */
+    String sendDistribution = "exponential";
+
+    static Settings parse(String[] args) {
+      Settings settings = new Settings();
+      for (String arg : args) {
+        int separator = arg.indexOf('=');
+        if (separator < 0) {
+          throw new IllegalArgumentException("Expected name=value but got " + arg + ".");
+        }
+        String value = arg.substring(separator + 1);
+        switch (arg.substring(0, separator)) {
+          case "threads":
+            settings.threads = Integer.parseInt(value);
+            break;
+          case "seconds":
+            settings.seconds = Integer.parseInt(value);
+            break;
+          case "warmup":
+            settings.warmupSeconds = Integer.parseInt(value);
+            break;
+          case "report":
+            settings.reportSeconds = Integer.parseInt(value);
+            break;
+          case "keys":
+            settings.keys = Integer.parseInt(value);
+            break;
+          case "skew":
+            settings.skew = Double.parseDouble(value);
+            break;
+          case "verifyRatio":
+            settings.verifyRatio = Double.parseDouble(value);
+            break;
+          case "wrongRate":
+            settings.wrongRate = Double.parseDouble(value);
+            break;
+          case "length":
+            settings.length = Integer.parseInt(value);
+            break;
+          case "ttl":
+            settings.ttlMillis = Long.parseLong(value);
+            break;
+          case "capacity":
+            settings.capacity = Long.parseLong(value);
+            break;
+          case "sendMillis":
+            settings.sendMillis = Double.parseDouble(value);
+            break;
+          case "sendDistribution":
+            settings.sendDistribution = value;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown setting " + arg + ".");
+        }
+      }
+      if (settings.threads < 1
+          || settings.seconds < 1
+          || settings.warmupSeconds < 0
+          || settings.reportSeconds < 1
+          || settings.keys < 1
+          || settings.skew < 0
+          || settings.verifyRatio < 0
+          || settings.wrongRate < 0
+          || settings.wrongRate > 1
+          || settings.sendMillis < 0
+          || !Arrays.asList("fixed", "uniform", "exponential")
+              .contains(settings.sendDistribution)) {
+        throw new IllegalArgumentException("Invalid load simulation settings.");
+      }
+      return settings;
+    }
+
+    long sendDelayNanos(ThreadLocalRandom random) {
+      double millis;
+      switch (sendDistribution) {
+        case "fixed":
+          millis = sendMillis;
+          break;
+        case "uniform":
+          millis = random.nextDouble() * 2 * sendMillis;
+          break;
+        default:
+          millis = -Math.log(1 - random.nextDouble()) * sendMillis;
+      }
+      return (long) (millis * 1e6);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d threads, %d s after %d s warm-up, %d keys (skew %.2f), %.2f verifies per generate,"
+              + " %.0f%% wrong codes, ttl %d ms, capacity %s, send %.1f ms %s",
+          threads,
+          seconds,
+          warmupSeconds,
+          keys,
+          skew,
+          verifyRatio,
+          wrongRate * 100,
+          ttlMillis,
+          capacity > 0 ? Long.toString(capacity) : "unbounded",
+          sendMillis,
+          sendDistribution);
+    }
+  }
+
+  /** Draws keys uniformly, or from a Zipf distribution over their rank. */
+  private static final class KeySampler {
+    private final String[] keys;
+    // The cumulative probability of each rank, or null for uniform draws.
+    private final double[] cumulative;
+
+    KeySampler(int count, double skew) {
+      keys = new String[count];
+      for (int i = 0; i < count; i++) {
+        keys[i] = "user-" + i;
+      }
+      if (skew == 0) {
+        cumulative = null;
+        return;
+      }
+      cumulative = new double[count];
+      double total = 0;
+      for (int i = 0; i < count; i++) {
+        total += 1 / Math.pow(i + 1, skew);
+        cumulative[i] = total;
+      }
+      for (int i = 0; i < count; i++) {
+        cumulative[i] /= total;
+      }
+    }
+
+    String next(ThreadLocalRandom random) {
+      if (cumulative == null) {
+        return keys[random.nextInt(keys.length)];
+      }
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+      return keys[Math.min(rank < 0 ? -rank - 1 : rank, keys.length - 1)];
+    }
+  }
+
+  /** The total collection count and time of every garbage collector. */
+  private static final class GcSnapshot {
+    final long collections;
+    final long millis;
+
+    private GcSnapshot(long collections, long millis) {
+      this.collections = collections;
+      this.millis = millis;
+    }
+
+    static GcSnapshot take() {
+      long collections = 0;
+      long millis = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        collections += Math.max(0, collector.getCollectionCount());
+        millis += Math.max(0, collector.getCollectionTime());
+      }
+      return new GcSnapshot(collections, millis);
+    }
+
+    GcSnapshot minus(GcSnapshot earlier) {
+      return new GcSnapshot(collections - earlier.collections, millis - earlier.millis);
+    }
+  }
+
+  private static final class Results {
+    final LatencyHistogram generate = new LatencyHistogram();
+    final LatencyHistogram verify = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+    final Map<VerificationResult, LongAdder> outcomes = new HashMap<>();
+    long peakHeapBytes;
+
+    Results() {
+      for (VerificationResult result : VerificationResult.values()) {
+        outcomes.put(result, new LongAdder());
+      }
+    }
+
+    LongAdder outcome(VerificationResult result) {
+      return outcomes.get(result);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.LockoutIndex;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory per tracked key of a {@link LockoutIndex} filled to capacity, and the cost of the lockout
+ * check made on every generation and verification.
+ *
+ * <p>{@code fill} reports the heap retained per key as a secondary result. {@code isLocked} runs
+ * against a full index with keys drawn at random, so most lookups miss the cache.
+ */
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LockoutIndexBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Config {
+    @Param({"1000000", "10000000"})
+    public int keys;
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long heapBytesPerKey;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      heapBytesPerKey = 0;
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Filled {
+    LockoutIndex index;
+    int keys;
+
+    @Setup
+    public void setUp(Config config) {
+      keys = config.keys;
+      index = fill(config.keys);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public LockoutIndex fill(Config config, Footprint footprint) {
+    long before = usedHeapAfterGc();
+    LockoutIndex index = fill(config.keys);
+    footprint.heapBytesPerKey = (usedHeapAfterGc() - before) / config.keys;
+    return index;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public boolean isLocked(Filled filled) {
+    return filled.index.isLocked("user-" + ThreadLocalRandom.current().nextInt(filled.keys));
+  }
+
+  private static LockoutIndex fill(int keys) {
+    LockoutIndex index = LockoutIndex.builder().capacity(keys + keys / 16).build();
+    for (int i = 0; i < keys; i++) {
+      index.recordFailure("user-" + i);
+    }
+    return index;
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,106 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.OtpStore;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory per entry and garbage collection cost of filling a store with millions of OTPs.
+ *
+ * <p>Each iteration fills a new store and reports, as secondary results, the heap and direct memory
+ * retained per entry, the time spent in garbage collection while filling it, and the length of a
+ * full collection with the store live.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class MemoryBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Config {
+    @Param({Stores.CAFFEINE, Stores.OFF_HEAP})
+    public String store;
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long heapBytesPerEntry;
+    public long directBytesPerEntry;
+    public long fillGcMillis;
+    public long fullGcMillis;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      heapBytesPerEntry = 0;
+      directBytesPerEntry = 0;
+      fillGcMillis = 0;
+      fullGcMillis = 0;
+    }
+  }
+
+  @Benchmark
+  public OtpStore fill(Config config, Footprint footprint) {
+    long heapBefore = usedHeapAfterGc();
+    long directBefore = usedDirectMemory();
+    long gcBefore = gcMillis();
+
+    OtpStore otpStore = Stores.create(config.store, config.entries);
+    for (int i = 0; i < config.entries; i++) {
+      otpStore.storeOtp("user-" + i + "@example.com", "123456", TimeUnit.HOURS.toMillis(1));
+    }
+    footprint.fillGcMillis = gcMillis() - gcBefore;
+
+    long fullGcStart = System.nanoTime();
+    long heapAfter = usedHeapAfterGc();
+    footprint.fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fullGcStart);
+    footprint.heapBytesPerEntry = (heapAfter - heapBefore) / config.entries;
+    footprint.directBytesPerEntry = (usedDirectMemory() - directBefore) / config.entries;
+    return otpStore;
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long usedDirectMemory() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionTime());
+    }
+    return total;
+  }
+}
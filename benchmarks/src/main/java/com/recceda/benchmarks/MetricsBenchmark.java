@@ -0,0 +1,68 @@
+package com.recceda.benchmarks;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.metrics.HistogramMetricsRecorder;
+import com.recceda.core.metrics.LatencyHistogram;
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.store.ReccedaOtpStore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of recording metrics: end-to-end {@code generateOtp} and {@code verifyOtp} with the
+ * no-op and the histogram recorder, and the cost of a single histogram update. Run with {@code
+ * -prof gc} to confirm that recording does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+  private static final OtpDistributor NO_OP = (key, otp) -> {};
+
+  @Param({"noop", "histogram"})
+  public String recorder;
+
+  private ReccedaOtp reccedaOtp;
+  private LatencyHistogram histogram;
+  private long value;
+
+  @Setup
+  public void setUp() {
+    MetricsRecorder metrics =
+        "noop".equals(recorder) ? MetricsRecorder.NO_OP : new HistogramMetricsRecorder();
+    reccedaOtp =
+        ReccedaOtp.builder().otpStore(new ReccedaOtpStore()).metricsRecorder(metrics).build();
+    histogram = new LatencyHistogram();
+  }
+
+  @Benchmark
+  public void generateOtp() {
+    reccedaOtp.generateOtp("user@example.com", NO_OP);
+  }
+
+  @Benchmark
+  public boolean verifyOtp() {
+    return reccedaOtp.verifyOtp("user@example.com", "123456");
+  }
+
+  @Benchmark
+  public void recordLatency() {
+    value = (value + 977) & 0xFFFFF;
+    histogram.record(value);
+  }
+}
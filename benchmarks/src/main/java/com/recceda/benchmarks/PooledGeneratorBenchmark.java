@@ -0,0 +1,106 @@
+package com.recceda.benchmarks;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.generator.OtpGenerator;
+import com.recceda.core.generator.PooledOtpGenerator;
+import com.recceda.core.generator.ReccedaOtpGenerator;
+import com.recceda.core.generator.StripedOtpGenerator;
+import com.recceda.core.store.ReccedaOtpStore;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The latency distribution of generating an OTP with and without a {@link PooledOtpGenerator} in
+ * front of the generator, on its own and through {@link ReccedaOtp#generateOtp(String,
+ * OtpDistributor)}. Read the {@code p0.99} and {@code p0.999} lines of the output. With {@code
+ * burst} 0 the calls come back to back, so they outpace the refill thread, drain the pool and then
+ * pay for inline generation as before; with bursts, the pool refills during the pauses. The pool's
+ * hit rate is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PooledGeneratorBenchmark {
+
+  private static final OtpDistributor NO_OP = (key, otp) -> {};
+
+  @Param({"recceda", "pooled-recceda", "striped", "pooled-striped"})
+  public String generator;
+
+  private OtpGenerator otpGenerator;
+  private ReccedaOtp reccedaOtp;
+
+  @Setup
+  public void setUp() {
+    switch (generator) {
+      case "recceda":
+        otpGenerator = new ReccedaOtpGenerator();
+        break;
+      case "pooled-recceda":
+        otpGenerator = PooledOtpGenerator.builder(new ReccedaOtpGenerator()).build();
+        break;
+      case "striped":
+        otpGenerator = new StripedOtpGenerator();
+        break;
+      case "pooled-striped":
+        otpGenerator = PooledOtpGenerator.builder(new StripedOtpGenerator()).build();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown generator " + generator + ".");
+    }
+    reccedaOtp = new ReccedaOtp(otpGenerator, new ReccedaOtpStore(), Collections.emptyList());
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (otpGenerator instanceof PooledOtpGenerator) {
+      PooledOtpGenerator pool = (PooledOtpGenerator) otpGenerator;
+      System.out.printf("%npool hit rate: %.3f%n", pool.hitRate());
+      pool.close();
+    }
+  }
+
+  /** Sends calls back to back, or in bursts separated by a 1 ms pause. */
+  @State(Scope.Thread)
+  public static class Traffic {
+    @Param({"0", "256"})
+    public int burst;
+
+    private int calls;
+
+    @Setup(Level.Invocation)
+    public void pauseBetweenBursts() throws InterruptedException {
+      if (burst > 0 && ++calls % burst == 0) {
+        Thread.sleep(1);
+      }
+    }
+  }
+
+  @Benchmark
+  public String generateOtp(Traffic traffic) {
+    return otpGenerator.generateOtp(PooledOtpGenerator.DEFAULT_LENGTH);
+  }
+
+  @Benchmark
+  public void generateAndStore(Traffic traffic) {
+    reccedaOtp.generateOtp("user@example.com", NO_OP);
+    reccedaOtp.invalidateOtp("user@example.com");
+  }
+}
@@ -0,0 +1,77 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.policy.RateLimitPolicy;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.exception.OtpGenerationException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link RateLimitPolicy} with a per-key and a per-IP limit, drawing keys from a
+ * small or a very large population of sources. Runs on all processors to show that counting does
+ * not contend; run with {@code -t 1} for the single-threaded cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class RateLimitBenchmark {
+
+  @Param({"1000", "10000000"})
+  public int sources;
+
+  private RateLimitPolicy policy;
+  private ReccedaOtpStore store;
+  private String[] keys;
+  private List<Map<String, String>> attributes;
+
+  @Setup
+  public void setUp() {
+    policy =
+        RateLimitPolicy.builder()
+            .perKey(5, Duration.ofMinutes(15))
+            .perAttribute("ip", 50, Duration.ofMinutes(1))
+            .memoryBudgetBytes(64L << 20)
+            .build();
+    store = new ReccedaOtpStore();
+    keys = new String[1 << 16];
+    attributes = new ArrayList<>(keys.length);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = "+2771" + random.nextInt(sources);
+      attributes.add(Map.of("ip", "10.0." + random.nextInt(256) + "." + random.nextInt(256)));
+    }
+  }
+
+  @Benchmark
+  public boolean check() {
+    int i = ThreadLocalRandom.current().nextInt(keys.length);
+    try {
+      policy.check(
+          new PolicyContext(keys[i], null, System.currentTimeMillis(), store, attributes.get(i)));
+      return true;
+    } catch (OtpGenerationException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.OtpStore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single-threaded store and verify throughput for each store. Run with {@code -prof gc} to see the
+ * allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+  private static final int KEYS = 100_000;
+
+  @Param({Stores.CAFFEINE, Stores.SHARDED, Stores.OFF_HEAP})
+  public String store;
+
+  private OtpStore otpStore;
+  private String[] keys;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    otpStore = Stores.create(store, KEYS);
+    keys = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      keys[i] = "user-" + i + "@example.com";
+      otpStore.storeOtp(keys[i], "123456", TimeUnit.HOURS.toMillis(1));
+    }
+  }
+
+  @Benchmark
+  public void storeOtp() {
+    otpStore.storeOtp(nextKey(), "123456", TimeUnit.HOURS.toMillis(1));
+  }
+
+  @Benchmark
+  public boolean verifyOtp() {
+    return otpStore.verifyOtp(nextKey(), "123456");
+  }
+
+  @Benchmark
+  public boolean storeAndConsume() {
+    String key = nextKey();
+    otpStore.storeOtp(key, "123456", TimeUnit.HOURS.toMillis(1));
+    return otpStore.verifyAndConsume(key, "123456").isValid();
+  }
+
+  private String nextKey() {
+    String key = keys[next];
+    next = next + 1 == KEYS ? 0 : next + 1;
+    return key;
+  }
+}
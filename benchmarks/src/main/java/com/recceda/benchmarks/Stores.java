@@ -0,0 +1,29 @@
+package com.recceda.benchmarks;
+
+import com.recceda.core.store.OffHeapOtpStore;
+import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.ShardedOtpStore;
+
+/** Creates the stores compared by the benchmarks, by the name used in {@code @Param} values. */
+final class Stores {
+
+  static final String CAFFEINE = "caffeine";
+  static final String SHARDED = "sharded";
+  static final String OFF_HEAP = "offheap";
+
+  private Stores() {}
+
+  static OtpStore create(String name, int maxEntries) {
+    switch (name) {
+      case CAFFEINE:
+        return new ReccedaOtpStore();
+      case SHARDED:
+        return new ShardedOtpStore();
+      case OFF_HEAP:
+        return new OffHeapOtpStore(maxEntries);
+      default:
+        throw new IllegalArgumentException("Unknown store " + name + ".");
+    }
+  }
+}
@@ -0,0 +1,359 @@
+package com.recceda;
+
+import com.recceda.core.distributor.AsyncOtpDistributor;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventPublisher;
+import com.recceda.core.event.OtpEventType;
+import com.recceda.core.generator.OtpGenerator;
+import com.recceda.core.generator.ReccedaOtpGenerator;
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.metrics.PipelineStage;
+import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.AsyncOtpStore;
+import com.recceda.core.store.LockoutIndex;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.exception.OtpGenerationException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * The non-blocking counterpart of {@link ReccedaOtp}, for use with an {@link AsyncOtpStore}.
+ *
+ * <p>Every method returns as soon as the first store operation has been issued. Policy checks,
+ * generation and distribution run as the store's stages complete, so no thread waits for a round
+ * trip to a remote store. Failures, including policy rejections, complete the returned future
+ * exceptionally instead of being thrown.
+ *
+ * <p>OTPs are handed to an {@link AsyncOtpDistributor} without waiting for delivery; any other
+ * distributor is called on the thread that completes the store operation, so it should not block.
+ */
+public class AsyncReccedaOtp {
+
+  private final OtpGenerator otpGenerator;
+  private final AsyncOtpStore otpStore;
+  private final PolicyChain policies;
+  private final MetricsRecorder metrics;
+  private final LockoutIndex lockout;
+  private final OtpEventPublisher events;
+
+  private AsyncReccedaOtp(Builder builder) {
+    if (builder.otpStore == null) {
+      throw new IllegalArgumentException("An OTP store is required.");
+    }
+    this.otpGenerator = builder.otpGenerator;
+    this.otpStore = builder.otpStore;
+    this.policies = PolicyChain.compile(builder.policies, builder.metrics);
+    this.metrics = builder.metrics;
+    this.lockout = builder.lockout;
+    this.events = builder.events;
+  }
+
+  /**
+   * Returns a builder for configuring an {@code AsyncReccedaOtp}.
+   *
+   * @return a new builder with the default generator, no policies and no metrics.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Generates a new OTP with default settings (6 digits, 5-minute validity) and sends it to the
+   * user via the provided distributor.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param distributor the distributor to use for sending the OTP.
+   * @return a future that completes once the OTP has been stored and handed to the distributor.
+   */
+  public CompletableFuture<Void> generateOtp(String key, OtpDistributor distributor) {
+    return generateOtp(key, 6, 5 * 60 * 1000, distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) and sends it to the user
+   * via the provided distributor.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param distributor the distributor to use for sending the OTP.
+   * @return a future that completes once the OTP has been stored and handed to the distributor.
+   */
+  public CompletableFuture<Void> generateOtp(
+      String key, int length, long ttlMillis, OtpDistributor distributor) {
+    return generateOtp(key, length, ttlMillis, Collections.emptyMap(), distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) and sends it to the user
+   * via the provided distributor, passing attributes about the request to the policies.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param attributes attributes of the request that policies can use, such as the client IP.
+   * @param distributor the distributor to use for sending the OTP. An {@link AsyncOtpDistributor}
+   *     queues it, and the future completes once it has been sent.
+   * @return a future that completes once the OTP has been stored and handed to the distributor, or
+   *     exceptionally with an {@link OtpGenerationException} if a policy check fails.
+   */
+  public CompletableFuture<Void> generateOtp(
+      String key,
+      int length,
+      long ttlMillis,
+      Map<String, String> attributes,
+      OtpDistributor distributor) {
+    if (lockout != null && lockout.isLocked(key)) {
+      return CompletableFuture.failedFuture(
+          new OtpGenerationException("The key is locked out after too many failed attempts."));
+    }
+    long start = System.nanoTime();
+    CompletionStage<String> stored;
+    try {
+      if (policies.isEmpty()) {
+        String otp = generate(length);
+        stored = otpStore.storeOtp(key, otp, ttlMillis).thenApply(v -> otp);
+      } else {
+        stored =
+            otpStore.checkAndStore(key, attributes, policies, () -> generate(length), ttlMillis);
+      }
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return stored
+        .thenCompose(
+            otp -> {
+              long storedAt = System.nanoTime();
+              metrics.recordLatency(PipelineStage.STORE, storedAt - start);
+              publish(OtpEventType.ISSUED, key);
+              return distribute(key, otp, distributor)
+                  .whenComplete(
+                      (sent, failure) ->
+                          metrics.recordLatency(
+                              PipelineStage.DISTRIBUTION, System.nanoTime() - storedAt));
+            })
+        .toCompletableFuture();
+  }
+
+  /**
+   * Verifies the given OTP for the specified key.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return a future that completes with {@code true} if the OTP is valid.
+   */
+  public CompletableFuture<Boolean> verifyOtp(String key, String otp) {
+    long start = System.nanoTime();
+    if (lockout == null) {
+      return otpStore
+          .verifyOtp(key, otp)
+          .thenApply(
+              valid ->
+                  recordVerification(
+                          key, start, valid ? VerificationResult.VALID : VerificationResult.INVALID)
+                      .isValid())
+          .toCompletableFuture();
+    }
+    // The store tells a wrong OTP from a missing one, which must not count towards the lockout.
+    return verifyWithLockout(key, () -> otpStore.verify(key, otp))
+        .thenApply(result -> recordVerification(key, start, result).isValid());
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, consumes it so that it cannot be used again.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return a future that completes with the outcome of the verification.
+   */
+  public CompletableFuture<VerificationResult> verifyAndConsume(String key, String otp) {
+    return verifyAndConsume(key, otp, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, consumes it so that it cannot be used again. Once
+   * the key has {@code maxFailedAttempts} failed attempts, it is locked out until a new OTP is
+   * generated.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the key is locked out.
+   * @return a future that completes with the outcome of the verification.
+   */
+  public CompletableFuture<VerificationResult> verifyAndConsume(
+      String key, String otp, int maxFailedAttempts) {
+    long start = System.nanoTime();
+    return verifyWithLockout(key, () -> otpStore.verifyAndConsume(key, otp, maxFailedAttempts))
+        .thenApply(result -> recordVerification(key, start, result));
+  }
+
+  /**
+   * Invalidates the current OTP for the specified key.
+   *
+   * @param key the unique key associated with the OTP.
+   * @return a future that completes once the OTP is invalidated.
+   */
+  public CompletableFuture<Void> invalidateOtp(String key) {
+    return otpStore
+        .invalidateOtp(key)
+        .thenRun(() -> publish(OtpEventType.INVALIDATED, key))
+        .toCompletableFuture();
+  }
+
+  private CompletionStage<Void> distribute(String key, String otp, OtpDistributor distributor) {
+    if (distributor instanceof AsyncOtpDistributor) {
+      return ((AsyncOtpDistributor) distributor).submit(key, otp);
+    }
+    distributor.send(key, otp);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Runs a verification within a lockout reservation, which is settled when the store's future
+   * completes, so that concurrent attempts cannot all pass the lockout check before any of them is
+   * counted. A wrong OTP counts towards the key's lockout, and a correct one clears its failures.
+   */
+  private CompletableFuture<VerificationResult> verifyWithLockout(
+      String key, Supplier<CompletionStage<VerificationResult>> verification) {
+    if (lockout == null) {
+      return verification.get().toCompletableFuture();
+    }
+    if (!lockout.tryAcquireAttempt(key)) {
+      return CompletableFuture.completedFuture(VerificationResult.LOCKED);
+    }
+    CompletionStage<VerificationResult> verified;
+    try {
+      verified = verification.get();
+    } catch (RuntimeException e) {
+      lockout.releaseAttempt(key, false);
+      throw e;
+    }
+    return verified
+        .whenComplete(
+            (result, failure) -> {
+              if (result == VerificationResult.VALID) {
+                lockout.recordSuccess(key);
+              } else {
+                lockout.releaseAttempt(key, result == VerificationResult.INVALID);
+              }
+            })
+        .toCompletableFuture();
+  }
+
+  private VerificationResult recordVerification(String key, long start, VerificationResult result) {
+    metrics.recordLatency(PipelineStage.VERIFICATION, System.nanoTime() - start);
+    metrics.recordVerification(result);
+    publish(result.isValid() ? OtpEventType.VERIFIED : OtpEventType.FAILED, key);
+    return result;
+  }
+
+  private void publish(OtpEventType type, String key) {
+    if (events != OtpEventPublisher.NO_OP) {
+      events.publish(new OtpEvent(type, key, otpStore.timeSource().currentTimeMillis()));
+    }
+  }
+
+  private String generate(int length) {
+    long start = System.nanoTime();
+    String otp = otpGenerator.generateOtp(length);
+    metrics.recordLatency(PipelineStage.GENERATION, System.nanoTime() - start);
+    return otp;
+  }
+
+  /** A builder for {@link AsyncReccedaOtp}. */
+  public static final class Builder {
+    private OtpGenerator otpGenerator = new ReccedaOtpGenerator();
+    private AsyncOtpStore otpStore;
+    private List<Policy> policies = Collections.emptyList();
+    private MetricsRecorder metrics = MetricsRecorder.NO_OP;
+    private LockoutIndex lockout;
+    private OtpEventPublisher events = OtpEventPublisher.NO_OP;
+
+    private Builder() {}
+
+    /**
+     * Sets the OTP generator.
+     *
+     * @param otpGenerator the OTP generator to use.
+     * @return this builder.
+     */
+    public Builder otpGenerator(OtpGenerator otpGenerator) {
+      this.otpGenerator = otpGenerator;
+      return this;
+    }
+
+    /**
+     * Sets the OTP store. Required.
+     *
+     * @param otpStore the asynchronous OTP store to use; see {@link AsyncOtpStore#wrap} to use a
+     *     synchronous one.
+     * @return this builder.
+     */
+    public Builder otpStore(AsyncOtpStore otpStore) {
+      this.otpStore = otpStore;
+      return this;
+    }
+
+    /**
+     * Sets the policies to apply before generating an OTP.
+     *
+     * @param policies the list of policies.
+     * @return this builder.
+     */
+    public Builder policies(List<Policy> policies) {
+      this.policies = policies;
+      return this;
+    }
+
+    /**
+     * Sets the recorder that receives stage latencies, policy rejections and verification outcomes.
+     * The store stage covers the whole round trip to the store.
+     *
+     * @param metrics the metrics recorder.
+     * @return this builder.
+     */
+    public Builder metricsRecorder(MetricsRecorder metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Sets the index that tracks failed verifications across OTPs.
+     *
+     * @param lockout the lockout index, or {@code null} for none.
+     * @return this builder.
+     * @see ReccedaOtp.Builder#lockoutIndex(LockoutIndex)
+     */
+    public Builder lockoutIndex(LockoutIndex lockout) {
+      this.lockout = lockout;
+      return this;
+    }
+
+    /**
+     * Sets the publisher that receives an event whenever an OTP is issued, verified, fails
+     * verification or is invalidated.
+     *
+     * @param events the event publisher.
+     * @return this builder.
+     */
+    public Builder eventPublisher(OtpEventPublisher events) {
+      this.events = events;
+      return this;
+    }
+
+    /**
+     * Builds the {@code AsyncReccedaOtp}.
+     *
+     * @return the new instance.
+     */
+    public AsyncReccedaOtp build() {
+      return new AsyncReccedaOtp(this);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.recceda;
+
+/**
+ * The outcome of generating an OTP for one key in a batch.
+ *
+ * <p>A failed result carries the exception that stopped the OTP for that key, such as the {@link
+ * com.recceda.exception.OtpGenerationException} thrown by a failing policy. Other keys in the same
+ * batch are not affected.
+ */
+public final class GenerationResult {
+
+  private static final GenerationResult SUCCESS = new GenerationResult(null);
+
+  private final RuntimeException failure;
+
+  private GenerationResult(RuntimeException failure) {
+    this.failure = failure;
+  }
+
+  /**
+   * Returns the result for an OTP that was generated, stored and handed to the distributor.
+   *
+   * @return the successful result.
+   */
+  public static GenerationResult success() {
+    return SUCCESS;
+  }
+
+  /**
+   * Returns the result for an OTP that could not be generated or distributed.
+   *
+   * @param failure the exception that stopped the OTP.
+   * @return the failed result.
+   */
+  public static GenerationResult failure(RuntimeException failure) {
+    return new GenerationResult(failure);
+  }
+
+  /**
+   * Returns whether the OTP was generated, stored and handed to the distributor.
+   *
+   * @return {@code true} if the OTP was issued.
+   */
+  public boolean isSuccess() {
+    return failure == null;
+  }
+
+  /**
+   * Returns the exception that stopped the OTP.
+   *
+   * @return the failure, or {@code null} if the OTP was issued.
+   */
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess() ? "GenerationResult[success]" : "GenerationResult[failure=" + failure + "]";
+  }
+}
@@ -1,12 +1,33 @@
 package com.recceda;
 
+import com.recceda.core.challenge.ChallengeSigner;
+import com.recceda.core.distributor.AsyncOtpDistributor;
+import com.recceda.core.distributor.BatchOtpDistributor;
 import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventPublisher;
+import com.recceda.core.event.OtpEventType;
 import com.recceda.core.generator.OtpGenerator;
 import com.recceda.core.generator.ReccedaOtpGenerator;
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.metrics.PipelineStage;
 import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.store.LockoutIndex;
+import com.recceda.core.store.OtpKey;
 import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ScopedOtpStore;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.core.totp.TotpEngine;
+import com.recceda.exception.OtpGenerationException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * The main class for generating and verifying OTPs.
@@ -18,7 +39,12 @@ public class ReccedaOtp {
 
   private final OtpGenerator otpGenerator;
   private final OtpStore otpStore;
-  private final List<Policy> policies;
+  private final PolicyChain policies;
+  private final MetricsRecorder metrics;
+  private final LockoutIndex lockout;
+  private final OtpEventPublisher events;
+  private final TotpEngine totp;
+  private final ChallengeSigner challenges;
 
   /**
    * Creates a new {@code ReccedaOtp} with the default OTP generator and no policies.
@@ -47,9 +73,30 @@ public class ReccedaOtp {
    * @param policies the list of policies to apply before generating an OTP.
    */
   public ReccedaOtp(OtpGenerator otpGenerator, OtpStore otpStore, List<Policy> policies) {
-    this.otpGenerator = otpGenerator;
-    this.otpStore = otpStore;
-    this.policies = policies;
+    this(builder().otpGenerator(otpGenerator).otpStore(otpStore).policies(policies));
+  }
+
+  private ReccedaOtp(Builder builder) {
+    if (builder.otpStore == null) {
+      throw new IllegalArgumentException("An OTP store is required.");
+    }
+    this.otpGenerator = builder.otpGenerator;
+    this.otpStore = builder.otpStore;
+    this.policies = PolicyChain.compile(builder.policies, builder.metrics);
+    this.lockout = builder.lockout;
+    this.events = builder.events;
+    this.totp = builder.totp;
+    this.challenges = builder.challenges;
+    this.metrics = builder.metrics;
+  }
+
+  /**
+   * Returns a builder for configuring a {@code ReccedaOtp}.
+   *
+   * @return a new builder with the default generator, no policies and no metrics.
+   */
+  public static Builder builder() {
+    return new Builder();
   }
 
   /**
@@ -74,13 +121,168 @@ public class ReccedaOtp {
    * @param distributor the distributor to use for sending the OTP.
    */
   public void generateOtp(String key, int length, long ttlMillis, OtpDistributor distributor) {
-    for (Policy policy : policies) {
-      policy.check(key, otpStore);
-    }
+    generateOtp(key, length, ttlMillis, Collections.emptyMap(), distributor);
+  }
 
-    String otp = otpGenerator.generateOtp(length);
-    otpStore.storeOtp(key, otp, ttlMillis);
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) and sends it to the user
+   * via the provided distributor, passing attributes about the request to the policies.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param attributes attributes of the request that policies can use, such as the client IP.
+   * @param distributor the distributor to use for sending the OTP.
+   * @see com.recceda.core.policy.PolicyContext#getAttribute(String)
+   */
+  public void generateOtp(
+      String key,
+      int length,
+      long ttlMillis,
+      Map<String, String> attributes,
+      OtpDistributor distributor) {
+    String otp = checkAndStore(key, length, ttlMillis, attributes);
+    long stored = System.nanoTime();
     distributor.send(key, otp);
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - stored);
+  }
+
+  /**
+   * Generates a new OTP with default settings (6 digits, 5-minute validity) and queues it for
+   * delivery without waiting for the distributor.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param distributor the asynchronous distributor to queue the OTP on.
+   * @return a future that completes once the OTP has been sent.
+   */
+  public CompletableFuture<Void> generateOtpAsync(String key, AsyncOtpDistributor distributor) {
+    return generateOtpAsync(key, 6, 5 * 60 * 1000, distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) and queues it for delivery
+   * without waiting for the distributor.
+   *
+   * <p>Policy checks, generation and storage happen on the calling thread, so the OTP is verifiable
+   * as soon as this method returns. If a policy check fails, the returned future completes
+   * exceptionally with an {@link com.recceda.exception.OtpGenerationException}.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param distributor the asynchronous distributor to queue the OTP on.
+   * @return a future that completes once the OTP has been sent.
+   */
+  public CompletableFuture<Void> generateOtpAsync(
+      String key, int length, long ttlMillis, AsyncOtpDistributor distributor) {
+    return generateOtpAsync(key, length, ttlMillis, Collections.emptyMap(), distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) and queues it for delivery
+   * without waiting for the distributor, passing attributes about the request to the policies.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param attributes attributes of the request that policies can use, such as the client IP.
+   * @param distributor the asynchronous distributor to queue the OTP on.
+   * @return a future that completes once the OTP has been sent.
+   * @see #generateOtpAsync(String, int, long, AsyncOtpDistributor)
+   */
+  public CompletableFuture<Void> generateOtpAsync(
+      String key,
+      int length,
+      long ttlMillis,
+      Map<String, String> attributes,
+      AsyncOtpDistributor distributor) {
+    String otp;
+    try {
+      otp = checkAndStore(key, length, ttlMillis, attributes);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    long stored = System.nanoTime();
+    CompletableFuture<Void> delivery = distributor.submit(key, otp);
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - stored);
+    return delivery;
+  }
+
+  /**
+   * Generates a new OTP with default settings (6 digits, 5-minute validity) for each of the given
+   * keys and sends them via the provided distributor.
+   *
+   * @param keys the unique keys to generate OTPs for.
+   * @param distributor the distributor to use for sending the OTPs.
+   * @return the outcome for each key, in the order of {@code keys}.
+   * @see #generateOtps(Collection, int, long, OtpDistributor)
+   */
+  public Map<String, GenerationResult> generateOtps(
+      Collection<String> keys, OtpDistributor distributor) {
+    return generateOtps(keys, 6, 5 * 60 * 1000, distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL) for each of the given keys
+   * and sends them via the provided distributor.
+   *
+   * <p>Policies are checked per key, and a key that fails a policy is reported in its {@link
+   * GenerationResult} without aborting the rest of the batch. The OTPs that pass are stored with a
+   * single {@link OtpStore#storeOtps(Map, long)} call and, if the distributor is a {@link
+   * BatchOtpDistributor}, sent with a single {@link BatchOtpDistributor#sendAll(Map)} call.
+   *
+   * @param keys the unique keys to generate OTPs for.
+   * @param length the length of the OTPs to generate.
+   * @param ttlMillis the time-to-live for the OTPs in milliseconds.
+   * @param distributor the distributor to use for sending the OTPs.
+   * @return the outcome for each key, in the order of {@code keys}.
+   */
+  public Map<String, GenerationResult> generateOtps(
+      Collection<String> keys, int length, long ttlMillis, OtpDistributor distributor) {
+    Map<String, GenerationResult> results = new LinkedHashMap<>();
+    Map<String, String> otps = new LinkedHashMap<>();
+    for (String key : keys) {
+      try {
+        checkLockout(key);
+        if (!policies.isEmpty()) {
+          policies.check(PolicyContext.lookup(key, otpStore));
+        }
+        otps.put(key, generate(length));
+        results.put(key, GenerationResult.success());
+      } catch (RuntimeException e) {
+        results.put(key, GenerationResult.failure(e));
+      }
+    }
+    if (otps.isEmpty()) {
+      return results;
+    }
+
+    long start = System.nanoTime();
+    otpStore.storeOtps(otps, ttlMillis);
+    for (String key : otps.keySet()) {
+      publish(OtpEventType.ISSUED, key);
+    }
+    long stored = System.nanoTime();
+    metrics.recordLatency(PipelineStage.STORE, stored - start);
+    if (distributor instanceof BatchOtpDistributor) {
+      try {
+        ((BatchOtpDistributor) distributor).sendAll(otps);
+      } catch (RuntimeException e) {
+        for (String key : otps.keySet()) {
+          results.put(key, GenerationResult.failure(e));
+        }
+      }
+    } else {
+      for (Map.Entry<String, String> otp : otps.entrySet()) {
+        try {
+          distributor.send(otp.getKey(), otp.getValue());
+        } catch (RuntimeException e) {
+          results.put(otp.getKey(), GenerationResult.failure(e));
+        }
+      }
+    }
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - stored);
+    return results;
   }
 
   /**
@@ -91,7 +293,215 @@ public class ReccedaOtp {
    * @return {@code true} if the OTP is valid, {@code false} otherwise.
    */
   public boolean verifyOtp(String key, String otp) {
-    return otpStore.verifyOtp(key, otp);
+    long start = System.nanoTime();
+    if (lockout == null) {
+      boolean valid = otpStore.verifyOtp(key, otp);
+      recordVerification(key, start, valid ? VerificationResult.VALID : VerificationResult.INVALID);
+      return valid;
+    }
+    // The store tells a wrong OTP from a missing one, which must not count towards the lockout.
+    VerificationResult result = verifyWithLockout(key, () -> otpStore.verify(key, otp));
+    return recordVerification(key, start, result).isValid();
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, consumes it so that it cannot be used again.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return the outcome of the verification.
+   */
+  public VerificationResult verifyAndConsume(String key, String otp) {
+    long start = System.nanoTime();
+    return recordVerification(
+        key, start, verifyWithLockout(key, () -> otpStore.verifyAndConsume(key, otp)));
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, consumes it so that it cannot be used again. Once
+   * the key has {@code maxFailedAttempts} failed attempts, it is locked out until a new OTP is
+   * generated.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the key is locked out.
+   * @return the outcome of the verification.
+   */
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    long start = System.nanoTime();
+    return recordVerification(
+        key,
+        start,
+        verifyWithLockout(key, () -> otpStore.verifyAndConsume(key, otp, maxFailedAttempts)));
+  }
+
+  /**
+   * Verifies the given OTPs with a single bulk read from the store. With a lockout index, each OTP
+   * is verified on its own instead, so that only wrong OTPs count towards the lockout.
+   *
+   * @param otps the OTPs to verify, keyed by the unique key associated with each OTP.
+   * @return for each key, {@code true} if its OTP is valid, {@code false} otherwise.
+   */
+  public Map<String, Boolean> verifyOtps(Map<String, String> otps) {
+    long start = System.nanoTime();
+    if (lockout == null) {
+      Map<String, Boolean> results = otpStore.verifyOtps(otps);
+      metrics.recordLatency(PipelineStage.VERIFICATION, System.nanoTime() - start);
+      for (Map.Entry<String, Boolean> valid : results.entrySet()) {
+        VerificationResult result =
+            Boolean.TRUE.equals(valid.getValue())
+                ? VerificationResult.VALID
+                : VerificationResult.INVALID;
+        metrics.recordVerification(result);
+        publishVerification(valid.getKey(), result);
+      }
+      return results;
+    }
+
+    Map<String, VerificationResult> verified = new LinkedHashMap<>();
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      String key = otp.getKey();
+      verified.put(key, verifyWithLockout(key, () -> otpStore.verify(key, otp.getValue())));
+    }
+    metrics.recordLatency(PipelineStage.VERIFICATION, System.nanoTime() - start);
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (Map.Entry<String, VerificationResult> result : verified.entrySet()) {
+      metrics.recordVerification(result.getValue());
+      publishVerification(result.getKey(), result.getValue());
+      results.put(result.getKey(), result.getValue().isValid());
+    }
+    return results;
+  }
+
+  /**
+   * Generates a new OTP with default settings (6 digits, 5-minute validity), sends it to the user
+   * and returns a signed challenge token instead of storing it.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param distributor the distributor to use for sending the OTP.
+   * @return the challenge token to pass to {@link #verifyChallenge(String, String, String)}.
+   * @throws IllegalStateException if no {@link ChallengeSigner} is configured.
+   */
+  public String generateChallenge(String key, OtpDistributor distributor) {
+    return generateChallenge(key, 6, 5 * 60 * 1000, distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL), sends it to the user and
+   * returns a signed challenge token instead of storing it. The caller keeps the token, for example
+   * in the login form, and presents it with the user's code; any node with the signing keys can
+   * then check the code without an OTP store. Single use is enforced by the signer's {@link
+   * com.recceda.core.challenge.TokenLedger}, which is node-local unless a shared one is configured.
+   *
+   * <p>Policies are checked as for {@link #generateOtps(Collection, int, long, OtpDistributor)},
+   * but policies that inspect the stored OTP find none.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param distributor the distributor to use for sending the OTP.
+   * @return the challenge token to pass to {@link #verifyChallenge(String, String, String)}.
+   * @throws IllegalStateException if no {@link ChallengeSigner} is configured.
+   */
+  public String generateChallenge(
+      String key, int length, long ttlMillis, OtpDistributor distributor) {
+    return generateChallenge(key, length, ttlMillis, Collections.emptyMap(), distributor);
+  }
+
+  /**
+   * Generates a new OTP with the specified length and time-to-live (TTL), sends it to the user and
+   * returns a signed challenge token instead of storing it, passing attributes about the request to
+   * the policies.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param attributes attributes of the request that policies can use, such as the client IP.
+   * @param distributor the distributor to use for sending the OTP.
+   * @return the challenge token to pass to {@link #verifyChallenge(String, String, String)}.
+   * @throws IllegalStateException if no {@link ChallengeSigner} is configured.
+   * @see com.recceda.core.policy.PolicyContext#getAttribute(String)
+   */
+  public String generateChallenge(
+      String key,
+      int length,
+      long ttlMillis,
+      Map<String, String> attributes,
+      OtpDistributor distributor) {
+    ChallengeSigner signer = challengeSigner();
+    checkLockout(key);
+    if (!policies.isEmpty()) {
+      policies.check(PolicyContext.lookup(key, otpStore, attributes));
+    }
+    String otp = generate(length);
+    long start = System.nanoTime();
+    String token = signer.issue(key, otp, ttlMillis);
+    long signed = System.nanoTime();
+    metrics.recordLatency(PipelineStage.STORE, signed - start);
+    publish(OtpEventType.ISSUED, key);
+    distributor.send(key, otp);
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - signed);
+    return token;
+  }
+
+  /**
+   * Verifies a code against a challenge token without reading the store. Each token is accepted
+   * once and allows a limited number of wrong codes, within the scope of the signer's token ledger;
+   * wrong codes also count towards the key's lockout.
+   *
+   * @param key the unique key the token was issued for.
+   * @param token the token returned by {@link #generateChallenge(String, OtpDistributor)}.
+   * @param otp the code entered by the user.
+   * @return the outcome of the verification; see {@link ChallengeSigner#verify(String, String,
+   *     String)}.
+   * @throws IllegalStateException if no {@link ChallengeSigner} is configured.
+   */
+  public VerificationResult verifyChallenge(String key, String token, String otp) {
+    ChallengeSigner signer = challengeSigner();
+    long start = System.nanoTime();
+    return recordVerification(
+        key, start, verifyWithLockout(key, () -> signer.verify(key, token, otp)));
+  }
+
+  /**
+   * Sends the user the TOTP code for the current time step, derived from their shared secret
+   * instead of stored. The code is accepted by {@link #verifyTotp(String, byte[], String)} until
+   * the engine's drift window has passed. Policies are not checked, since they are evaluated
+   * against stored OTPs, but a locked-out key is refused.
+   *
+   * @param key the unique key identifying the user.
+   * @param secret the user's shared secret.
+   * @param distributor the distributor to use for sending the code.
+   * @throws IllegalStateException if no {@link TotpEngine} is configured.
+   */
+  public void generateTotp(String key, byte[] secret, OtpDistributor distributor) {
+    TotpEngine engine = totpEngine();
+    checkLockout(key);
+    long start = System.nanoTime();
+    String code = engine.generateTotp(secret);
+    long generated = System.nanoTime();
+    metrics.recordLatency(PipelineStage.GENERATION, generated - start);
+    publish(OtpEventType.ISSUED, key);
+    distributor.send(key, code);
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - generated);
+  }
+
+  /**
+   * Verifies a TOTP code, such as one shown by the user's authenticator app, without reading the
+   * store. Each code is accepted once; wrong codes count towards the key's lockout.
+   *
+   * @param key the unique key identifying the user.
+   * @param secret the user's shared secret.
+   * @param code the code entered by the user.
+   * @return {@link VerificationResult#VALID}, {@link VerificationResult#INVALID}, {@link
+   *     VerificationResult#REPLAYED} or {@link VerificationResult#LOCKED}.
+   * @throws IllegalStateException if no {@link TotpEngine} is configured.
+   */
+  public VerificationResult verifyTotp(String key, byte[] secret, String code) {
+    TotpEngine engine = totpEngine();
+    long start = System.nanoTime();
+    return recordVerification(
+        key, start, verifyWithLockout(key, () -> engine.verifyTotp(key, secret, code)));
   }
 
   /**
@@ -101,5 +511,349 @@ public class ReccedaOtp {
    */
   public void invalidateOtp(String key) {
     otpStore.invalidateOtp(key);
+    publish(OtpEventType.INVALIDATED, key);
+  }
+
+  /**
+   * Generates a new OTP for the subject and purpose with default settings (6 digits, 5-minute
+   * validity) and sends it via the provided distributor. The subject's OTPs for other purposes are
+   * left in place. Requires a {@link ScopedOtpStore}.
+   *
+   * @param key the subject and purpose to associate with the OTP.
+   * @param distributor the distributor to use for sending the OTP; it receives the subject and
+   *     purpose through {@link OtpDistributor#send(OtpKey, String)}.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public void generateOtp(OtpKey key, OtpDistributor distributor) {
+    generateOtp(key, 6, 5 * 60 * 1000, Collections.emptyMap(), distributor);
+  }
+
+  /**
+   * Generates a new OTP for the subject and purpose and sends it via the provided distributor.
+   * Lockouts apply to the subject, and policies see the subject's OTPs for all purposes, for
+   * example to limit them with a {@link com.recceda.core.policy.MaxActiveOtpsPolicy}. Requires a
+   * {@link ScopedOtpStore}.
+   *
+   * @param key the subject and purpose to associate with the OTP.
+   * @param length the length of the OTP to generate.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @param attributes attributes of the request that policies can use, such as the client IP.
+   * @param distributor the distributor to use for sending the OTP; it receives the subject and
+   *     purpose through {@link OtpDistributor#send(OtpKey, String)}.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public void generateOtp(
+      OtpKey key,
+      int length,
+      long ttlMillis,
+      Map<String, String> attributes,
+      OtpDistributor distributor) {
+    ScopedOtpStore store = scopedStore();
+    String subject = key.getSubject();
+    checkLockout(subject);
+    long start = System.nanoTime();
+    String otp;
+    if (policies.isEmpty()) {
+      otp = generate(length);
+      start = System.nanoTime();
+      store.storeOtp(key, otp, ttlMillis);
+    } else {
+      otp = store.checkAndStore(key, attributes, policies, () -> generate(length), ttlMillis);
+    }
+    long stored = System.nanoTime();
+    metrics.recordLatency(PipelineStage.STORE, stored - start);
+    publish(OtpEventType.ISSUED, subject, key.getPurpose());
+    distributor.send(key, otp);
+    metrics.recordLatency(PipelineStage.DISTRIBUTION, System.nanoTime() - stored);
+  }
+
+  /**
+   * Verifies the OTP for the subject and purpose and, if it is correct, consumes it so that it
+   * cannot be used again. Requires a {@link ScopedOtpStore}.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return the outcome of the verification.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public VerificationResult verifyAndConsume(OtpKey key, String otp) {
+    return verifyAndConsume(key, otp, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Verifies the OTP for the subject and purpose and, if it is correct, consumes it so that it
+   * cannot be used again. Once the purpose's OTP has {@code maxFailedAttempts} failed attempts, it
+   * is locked until a new one is generated. Requires a {@link ScopedOtpStore}.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the OTP is locked.
+   * @return the outcome of the verification.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public VerificationResult verifyAndConsume(OtpKey key, String otp, int maxFailedAttempts) {
+    ScopedOtpStore store = scopedStore();
+    String subject = key.getSubject();
+    long start = System.nanoTime();
+    return recordVerification(
+        subject,
+        key.getPurpose(),
+        start,
+        verifyWithLockout(subject, () -> store.verifyAndConsume(key, otp, maxFailedAttempts)));
+  }
+
+  /**
+   * Invalidates the OTP for the subject and purpose, leaving the subject's other OTPs in place.
+   * Requires a {@link ScopedOtpStore}.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public void invalidateOtp(OtpKey key) {
+    scopedStore().invalidateOtp(key);
+    publish(OtpEventType.INVALIDATED, key.getSubject(), key.getPurpose());
+  }
+
+  /**
+   * Invalidates every OTP the subject holds, for all purposes, for example after a password change.
+   * Requires a {@link ScopedOtpStore}.
+   *
+   * @param subject the subject.
+   * @return the number of active OTPs that were invalidated.
+   * @throws IllegalStateException if the store is not a {@link ScopedOtpStore}.
+   */
+  public int invalidateSubject(String subject) {
+    int invalidated = scopedStore().invalidateSubject(subject);
+    publish(OtpEventType.INVALIDATED, subject, null);
+    return invalidated;
+  }
+
+  /**
+   * Checks the policies, generates the OTP and stores it, in one atomic update if the store
+   * supports it.
+   */
+  private String checkAndStore(
+      String key, int length, long ttlMillis, Map<String, String> attributes) {
+    checkLockout(key);
+    long start = System.nanoTime();
+    String otp;
+    if (policies.isEmpty()) {
+      otp = generate(length);
+      start = System.nanoTime();
+      otpStore.storeOtp(key, otp, ttlMillis);
+    } else {
+      otp = otpStore.checkAndStore(key, attributes, policies, () -> generate(length), ttlMillis);
+    }
+    metrics.recordLatency(PipelineStage.STORE, System.nanoTime() - start);
+    publish(OtpEventType.ISSUED, key);
+    return otp;
+  }
+
+  private ChallengeSigner challengeSigner() {
+    if (challenges == null) {
+      throw new IllegalStateException("No challenge signer is configured.");
+    }
+    return challenges;
+  }
+
+  private ScopedOtpStore scopedStore() {
+    if (!(otpStore instanceof ScopedOtpStore)) {
+      throw new IllegalStateException("The OTP store does not support subject-scoped keys.");
+    }
+    return (ScopedOtpStore) otpStore;
+  }
+
+  private TotpEngine totpEngine() {
+    if (totp == null) {
+      throw new IllegalStateException("No TOTP engine is configured.");
+    }
+    return totp;
+  }
+
+  private void checkLockout(String key) {
+    if (lockout != null && lockout.isLocked(key)) {
+      throw new OtpGenerationException("The key is locked out after too many failed attempts.");
+    }
+  }
+
+  /**
+   * Runs a verification within a lockout reservation, so that concurrent attempts cannot all pass
+   * the lockout check before any of them is counted. A wrong OTP counts towards the key's lockout,
+   * and a correct one clears the key's failures.
+   */
+  private VerificationResult verifyWithLockout(
+      String key, Supplier<VerificationResult> verification) {
+    if (lockout == null) {
+      return verification.get();
+    }
+    if (!lockout.tryAcquireAttempt(key)) {
+      return VerificationResult.LOCKED;
+    }
+    VerificationResult result;
+    try {
+      result = verification.get();
+    } catch (RuntimeException e) {
+      lockout.releaseAttempt(key, false);
+      throw e;
+    }
+    if (result == VerificationResult.VALID) {
+      lockout.recordSuccess(key);
+    } else {
+      lockout.releaseAttempt(key, result == VerificationResult.INVALID);
+    }
+    return result;
+  }
+
+  private VerificationResult recordVerification(String key, long start, VerificationResult result) {
+    return recordVerification(key, ScopedOtpStore.DEFAULT_PURPOSE, start, result);
+  }
+
+  private VerificationResult recordVerification(
+      String key, String purpose, long start, VerificationResult result) {
+    metrics.recordLatency(PipelineStage.VERIFICATION, System.nanoTime() - start);
+    metrics.recordVerification(result);
+    publish(result.isValid() ? OtpEventType.VERIFIED : OtpEventType.FAILED, key, purpose);
+    return result;
+  }
+
+  private void publishVerification(String key, VerificationResult result) {
+    publish(result.isValid() ? OtpEventType.VERIFIED : OtpEventType.FAILED, key);
+  }
+
+  private void publish(OtpEventType type, String key) {
+    publish(type, key, ScopedOtpStore.DEFAULT_PURPOSE);
+  }
+
+  /** Publishes an event; the purpose is {@code null} for an event about all of a subject's OTPs. */
+  private void publish(OtpEventType type, String key, String purpose) {
+    if (events != OtpEventPublisher.NO_OP) {
+      events.publish(new OtpEvent(type, key, purpose, otpStore.timeSource().currentTimeMillis()));
+    }
+  }
+
+  private String generate(int length) {
+    long start = System.nanoTime();
+    String otp = otpGenerator.generateOtp(length);
+    metrics.recordLatency(PipelineStage.GENERATION, System.nanoTime() - start);
+    return otp;
+  }
+
+  /** A builder for {@link ReccedaOtp}. */
+  public static final class Builder {
+    private OtpGenerator otpGenerator = new ReccedaOtpGenerator();
+    private OtpStore otpStore;
+    private List<Policy> policies = Collections.emptyList();
+    private MetricsRecorder metrics = MetricsRecorder.NO_OP;
+    private LockoutIndex lockout;
+    private OtpEventPublisher events = OtpEventPublisher.NO_OP;
+    private TotpEngine totp;
+    private ChallengeSigner challenges;
+
+    private Builder() {}
+
+    /**
+     * Sets the OTP generator.
+     *
+     * @param otpGenerator the OTP generator to use.
+     * @return this builder.
+     */
+    public Builder otpGenerator(OtpGenerator otpGenerator) {
+      this.otpGenerator = otpGenerator;
+      return this;
+    }
+
+    /**
+     * Sets the OTP store. Required.
+     *
+     * @param otpStore the OTP store to use.
+     * @return this builder.
+     */
+    public Builder otpStore(OtpStore otpStore) {
+      this.otpStore = otpStore;
+      return this;
+    }
+
+    /**
+     * Sets the policies to apply before generating an OTP.
+     *
+     * @param policies the list of policies.
+     * @return this builder.
+     */
+    public Builder policies(List<Policy> policies) {
+      this.policies = policies;
+      return this;
+    }
+
+    /**
+     * Sets the recorder that receives stage latencies, policy rejections and verification outcomes.
+     *
+     * @param metrics the metrics recorder, such as a {@link
+     *     com.recceda.core.metrics.HistogramMetricsRecorder}.
+     * @return this builder.
+     */
+    public Builder metricsRecorder(MetricsRecorder metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Sets the index that tracks failed verifications across OTPs. Locked-out keys can neither
+     * generate nor verify OTPs; every wrong OTP counts towards a lockout, and a correct one clears
+     * the key.
+     *
+     * @param lockout the lockout index, or {@code null} for none.
+     * @return this builder.
+     */
+    public Builder lockoutIndex(LockoutIndex lockout) {
+      this.lockout = lockout;
+      return this;
+    }
+
+    /**
+     * Sets the publisher that receives an event whenever an OTP is issued, verified, fails
+     * verification or is invalidated. Expiry and eviction events come from the store; see {@link
+     * com.recceda.core.store.ReccedaOtpStore.Builder#eventPublisher(OtpEventPublisher)}.
+     *
+     * @param events the event publisher, such as a {@link
+     *     com.recceda.core.event.RingBufferEventPublisher}.
+     * @return this builder.
+     */
+    public Builder eventPublisher(OtpEventPublisher events) {
+      this.events = events;
+      return this;
+    }
+
+    /**
+     * Sets the engine used by {@link ReccedaOtp#generateTotp(String, byte[], OtpDistributor)} and
+     * {@link ReccedaOtp#verifyTotp(String, byte[], String)}.
+     *
+     * @param totp the TOTP engine, or {@code null} for none.
+     * @return this builder.
+     */
+    public Builder totpEngine(TotpEngine totp) {
+      this.totp = totp;
+      return this;
+    }
+
+    /**
+     * Sets the signer used by {@link ReccedaOtp#generateChallenge(String, OtpDistributor)} and
+     * {@link ReccedaOtp#verifyChallenge(String, String, String)}.
+     *
+     * @param challenges the challenge signer, or {@code null} for none.
+     * @return this builder.
+     */
+    public Builder challengeSigner(ChallengeSigner challenges) {
+      this.challenges = challenges;
+      return this;
+    }
+
+    /**
+     * Builds the {@code ReccedaOtp}.
+     *
+     * @return the new instance.
+     */
+    public ReccedaOtp build() {
+      return new ReccedaOtp(this);
+    }
   }
 }
@@ -0,0 +1,374 @@
+package com.recceda.core.challenge;
+
+import com.recceda.core.store.VerificationResult;
+import com.recceda.util.ObjectPool;
+import com.recceda.util.TimeSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies signed challenge tokens, so that an OTP can be verified without storing it.
+ *
+ * <p>{@link #issue(String, String, long)} returns an opaque token for the caller to hand back with
+ * the user's code. The token holds the expiry, a random nonce, a keyed hash of the code and an
+ * HMAC-SHA256 tag that binds them to the key. {@link #verify(String, String, String)} checks the
+ * tag and the code with no store lookup, so any node holding the signing keys can check a token.
+ * Because the code hash is keyed, a stolen token does not reveal the code.
+ *
+ * <p>The only state is a {@link TokenLedger} of the tokens that have been verified: those consumed
+ * by a correct code, so that they cannot be replayed, and those with wrong guesses, so that each
+ * token allows only a limited number of attempts. By default it is a {@link LocalTokenLedger} in
+ * this JVM, so those guarantees hold per node: behind a load balancer, a token can be redeemed once
+ * on each node, with {@code maxFailedAttempts} guesses on each. To enforce them across nodes,
+ * configure a {@linkplain Builder#tokenLedger(TokenLedger) ledger} the nodes share.
+ *
+ * <p>Several keys can be active at once: tokens are signed with the current signing key and
+ * verified with any active key, found by the key ID stored in the token. {@link #rotate(String,
+ * byte[])} replaces the signing key while tokens signed with the previous one stay valid until
+ * {@link #retire(String)} removes it.
+ */
+public final class ChallengeSigner {
+
+  /** The minimum length of a signing key. */
+  public static final int MIN_SECRET_LENGTH = 32;
+
+  private static final byte VERSION = 1;
+  private static final int HASH_LENGTH = 16;
+  private static final byte CODE_DOMAIN = 'C';
+  private static final byte TAG_DOMAIN = 'T';
+
+  private final TimeSource timeSource;
+  private final int maxFailedAttempts;
+  private final TokenLedger ledger;
+  private final SecureRandom random = new SecureRandom();
+  private volatile KeyRing keys;
+
+  private ChallengeSigner(Builder builder) {
+    this.timeSource = builder.timeSource;
+    this.maxFailedAttempts = builder.maxFailedAttempts;
+    this.ledger =
+        builder.ledger != null
+            ? builder.ledger
+            : new LocalTokenLedger(builder.verifiedTokenCapacity, timeSource);
+    this.keys = new KeyRing(new LinkedHashMap<>(builder.keys), builder.signingKeyId);
+  }
+
+  /**
+   * Returns a builder for configuring a {@code ChallengeSigner}.
+   *
+   * @return a new builder with no keys.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Issues a token for an OTP.
+   *
+   * @param key the unique key the OTP was generated for.
+   * @param otp the OTP sent to the user.
+   * @param ttlMillis how long the token is valid for, in milliseconds.
+   * @return the token, as URL-safe Base64.
+   */
+  public String issue(String key, String otp, long ttlMillis) {
+    SigningKey signingKey = keys.signing;
+    long expiry = timeSource.currentTimeMillis() + ttlMillis;
+    long nonce = random.nextLong();
+    ByteBuffer token = ByteBuffer.allocate(tokenLength(signingKey.id.length));
+    token.put(VERSION).put((byte) signingKey.id.length).put(signingKey.id);
+    token.putLong(expiry).putLong(nonce);
+    Mac mac = signingKey.macs.acquire();
+    token.put(codeHash(mac, nonce, otp), 0, HASH_LENGTH);
+    token.put(tag(mac, token.array(), token.position(), key), 0, HASH_LENGTH);
+    signingKey.macs.release(mac);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+  }
+
+  /**
+   * Verifies a code against a token and, if it is correct, consumes the token so that it cannot be
+   * used again.
+   *
+   * @param key the unique key the token must have been issued for.
+   * @param token the token returned by {@link #issue(String, String, long)}.
+   * @param otp the code entered by the user.
+   * @return {@link VerificationResult#VALID}; {@link VerificationResult#INVALID} if the code is
+   *     wrong or the token is malformed, forged, issued for another key or signed with a retired
+   *     key; {@link VerificationResult#EXPIRED}; {@link VerificationResult#REPLAYED} if the token
+   *     has been consumed; or {@link VerificationResult#LOCKED} if the token has had the maximum
+   *     number of wrong codes or the ledger cannot record it.
+   */
+  public VerificationResult verify(String key, String token, String otp) {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(token);
+    } catch (IllegalArgumentException e) {
+      return VerificationResult.INVALID;
+    }
+    if (bytes.length < 2 || bytes[0] != VERSION) {
+      return VerificationResult.INVALID;
+    }
+    int idLength = bytes[1] & 0xFF;
+    if (bytes.length != tokenLength(idLength)) {
+      return VerificationResult.INVALID;
+    }
+    SigningKey signingKey = keys.find(bytes, 2, idLength);
+    if (signingKey == null) {
+      return VerificationResult.INVALID;
+    }
+    Mac mac = signingKey.macs.acquire();
+    int tagOffset = bytes.length - HASH_LENGTH;
+    if (!equal(tag(mac, bytes, tagOffset, key), bytes, tagOffset)) {
+      signingKey.macs.release(mac);
+      return VerificationResult.INVALID;
+    }
+
+    ByteBuffer fields = ByteBuffer.wrap(bytes, 2 + idLength, 16);
+    long expiry = fields.getLong();
+    long nonce = fields.getLong();
+    long remaining = expiry - timeSource.currentTimeMillis();
+    if (remaining <= 0) {
+      signingKey.macs.release(mac);
+      return VerificationResult.EXPIRED;
+    }
+    boolean correct = equal(codeHash(mac, nonce, otp), bytes, tagOffset - HASH_LENGTH);
+    signingKey.macs.release(mac);
+    return ledger.recordAttempt(nonce, correct, maxFailedAttempts, remaining);
+  }
+
+  /**
+   * Makes a new key the signing key. The previous signing key stays active, so that the tokens it
+   * signed can still be verified, until it is retired.
+   *
+   * @param id the new key's ID; at most 255 bytes in UTF-8, and stored in every token.
+   * @param secret the new key; at least {@link #MIN_SECRET_LENGTH} bytes.
+   */
+  public synchronized void rotate(String id, byte[] secret) {
+    Map<String, SigningKey> active = new LinkedHashMap<>(keys.byId);
+    active.put(id, new SigningKey(id, secret));
+    keys = new KeyRing(active, id);
+  }
+
+  /**
+   * Stops accepting tokens signed with a key.
+   *
+   * @param id the ID of the key to retire.
+   * @throws IllegalArgumentException if the key is the signing key.
+   */
+  public synchronized void retire(String id) {
+    KeyRing current = keys;
+    if (current.signingId.equals(id)) {
+      throw new IllegalArgumentException("The signing key cannot be retired.");
+    }
+    Map<String, SigningKey> active = new LinkedHashMap<>(current.byId);
+    active.remove(id);
+    keys = new KeyRing(active, current.signingId);
+  }
+
+  /**
+   * Returns the number of tokens in the ledger, if it is a {@link LocalTokenLedger}.
+   *
+   * @return the number of consumed or attempted tokens that have not yet expired, or {@code -1} for
+   *     other ledgers.
+   */
+  public long verifiedTokens() {
+    return ledger instanceof LocalTokenLedger ? ((LocalTokenLedger) ledger).size() : -1;
+  }
+
+  private static int tokenLength(int idLength) {
+    return 2 + idLength + 16 + 2 * HASH_LENGTH;
+  }
+
+  private static byte[] codeHash(Mac mac, long nonce, String otp) {
+    mac.update(CODE_DOMAIN);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      mac.update((byte) (nonce >>> shift));
+    }
+    return mac.doFinal(otp.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The tag covers every field of the token before it, then the key it was issued for. */
+  private static byte[] tag(Mac mac, byte[] token, int length, String key) {
+    mac.update(TAG_DOMAIN);
+    mac.update(token, 0, length);
+    return mac.doFinal(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Compares the first bytes of a MAC with the truncated hash in the token, in constant time. */
+  private static boolean equal(byte[] mac, byte[] token, int offset) {
+    int difference = 0;
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      difference |= mac[i] ^ token[offset + i];
+    }
+    return difference == 0;
+  }
+
+  /** The active keys, replaced as a whole on rotation. */
+  private static final class KeyRing {
+    final Map<String, SigningKey> byId;
+    final String signingId;
+    final SigningKey signing;
+    final SigningKey[] all;
+
+    KeyRing(Map<String, SigningKey> byId, String signingId) {
+      this.byId = byId;
+      this.signingId = signingId;
+      this.signing = byId.get(signingId);
+      this.all = byId.values().toArray(new SigningKey[0]);
+    }
+
+    SigningKey find(byte[] token, int offset, int length) {
+      for (SigningKey key : all) {
+        if (key.matches(token, offset, length)) {
+          return key;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static final class SigningKey {
+    final byte[] id;
+    final ObjectPool<Mac> macs;
+
+    SigningKey(String id, byte[] secret) {
+      this.id = id.getBytes(StandardCharsets.UTF_8);
+      if (this.id.length == 0 || this.id.length > 255) {
+        throw new IllegalArgumentException("A key ID must be between 1 and 255 bytes long.");
+      }
+      if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+        throw new IllegalArgumentException(
+            "A signing key must be at least " + MIN_SECRET_LENGTH + " bytes long.");
+      }
+      SecretKeySpec key = new SecretKeySpec(secret.clone(), "HmacSHA256");
+      this.macs =
+          new ObjectPool<>(
+              () -> {
+                try {
+                  Mac mac = Mac.getInstance("HmacSHA256");
+                  mac.init(key);
+                  return mac;
+                } catch (GeneralSecurityException e) {
+                  throw new IllegalStateException("HmacSHA256 is not available.", e);
+                }
+              });
+    }
+
+    boolean matches(byte[] token, int offset, int length) {
+      if (length != id.length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (token[offset + i] != id[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** A builder for {@link ChallengeSigner}. */
+  public static final class Builder {
+    private final Map<String, SigningKey> keys = new LinkedHashMap<>();
+    private String signingKeyId;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private int maxFailedAttempts = 5;
+    private long verifiedTokenCapacity = LocalTokenLedger.DEFAULT_CAPACITY;
+    private TokenLedger ledger;
+
+    private Builder() {}
+
+    /**
+     * Adds the key that new tokens are signed with. Required.
+     *
+     * @param id the key's ID; at most 255 bytes in UTF-8, and stored in every token.
+     * @param secret the key; at least {@link #MIN_SECRET_LENGTH} bytes.
+     * @return this builder.
+     */
+    public Builder signingKey(String id, byte[] secret) {
+      keys.put(id, new SigningKey(id, secret));
+      this.signingKeyId = id;
+      return this;
+    }
+
+    /**
+     * Adds a key that is only used to verify tokens, such as the previous signing key after a
+     * restart during a rotation.
+     *
+     * @param id the key's ID.
+     * @param secret the key; at least {@link #MIN_SECRET_LENGTH} bytes.
+     * @return this builder.
+     */
+    public Builder verificationKey(String id, byte[] secret) {
+      keys.put(id, new SigningKey(id, secret));
+      return this;
+    }
+
+    /**
+     * Sets the source of the current time, against which tokens expire.
+     *
+     * @param timeSource {@link TimeSource#SYSTEM} by default.
+     * @return this builder.
+     */
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    /**
+     * Sets the number of wrong codes after which a token is locked.
+     *
+     * @param maxFailedAttempts 5 by default.
+     * @return this builder.
+     */
+    public Builder maxFailedAttempts(int maxFailedAttempts) {
+      this.maxFailedAttempts = maxFailedAttempts;
+      return this;
+    }
+
+    /**
+     * Sets how many verified tokens the default, node-local ledger remembers until they expire.
+     * Once it is full, tokens it has not seen are locked until entries expire.
+     *
+     * @param verifiedTokenCapacity 1,000,000 by default.
+     * @return this builder.
+     */
+    public Builder verifiedTokenCapacity(long verifiedTokenCapacity) {
+      this.verifiedTokenCapacity = verifiedTokenCapacity;
+      return this;
+    }
+
+    /**
+     * Sets the ledger of verified tokens. Share one ledger between all the nodes that verify
+     * tokens, so that each token is accepted once and its wrong codes are counted across them.
+     *
+     * @param ledger a node-local {@link LocalTokenLedger} by default.
+     * @return this builder.
+     */
+    public Builder tokenLedger(TokenLedger ledger) {
+      this.ledger = ledger;
+      return this;
+    }
+
+    /**
+     * Builds the signer.
+     *
+     * @return the new signer.
+     */
+    public ChallengeSigner build() {
+      if (signingKeyId == null) {
+        throw new IllegalStateException("A signing key is required.");
+      }
+      if (maxFailedAttempts < 1 || verifiedTokenCapacity < 1) {
+        throw new IllegalArgumentException("Invalid challenge signer configuration.");
+      }
+      return new ChallengeSigner(this);
+    }
+  }
+}
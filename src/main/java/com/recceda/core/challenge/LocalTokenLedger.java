@@ -0,0 +1,127 @@
+package com.recceda.core.challenge;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy.VarExpiration;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.util.TimeSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TokenLedger} held in memory, for a single node.
+ *
+ * <p>Each verified token is kept until it expires: consumed tokens so that they cannot be replayed,
+ * and tokens with wrong codes so that their attempts are limited. Tokens that are never verified
+ * cost no memory. The ledger never evicts an entry early, since that would let a consumed token be
+ * replayed; when it holds its capacity, tokens it has not seen yet are answered {@link
+ * VerificationResult#LOCKED} until entries expire. Size it for the number of tokens verified within
+ * one token lifetime.
+ *
+ * <p>The guarantees hold only on the node that holds the ledger; see {@link TokenLedger}.
+ */
+public class LocalTokenLedger implements TokenLedger {
+
+  /** The default number of tokens the ledger holds. */
+  public static final long DEFAULT_CAPACITY = 1_000_000;
+
+  private static final Integer CONSUMED = -1;
+
+  private final long capacity;
+  private final Cache<Long, Integer> verified;
+  private final VarExpiration<Long, Integer> verifiedExpiry;
+  private final AtomicLong entries = new AtomicLong();
+
+  /** Creates a ledger with the default capacity. */
+  public LocalTokenLedger() {
+    this(DEFAULT_CAPACITY, TimeSource.SYSTEM);
+  }
+
+  /**
+   * Creates a ledger.
+   *
+   * @param capacity the maximum number of tokens held at once.
+   * @param timeSource the source of the current time, against which entries expire.
+   */
+  public LocalTokenLedger(long capacity, TimeSource timeSource) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid token ledger capacity.");
+    }
+    this.capacity = capacity;
+    Caffeine<Object, Object> caffeine = Caffeine.newBuilder();
+    if (timeSource != TimeSource.SYSTEM) {
+      caffeine.ticker(() -> TimeUnit.MILLISECONDS.toNanos(timeSource.currentTimeMillis()));
+    }
+    this.verified =
+        caffeine
+            .expireAfter(untilTokenExpiry())
+            // Runs inside the removal, so the count never lags behind the cache.
+            .<Long, Integer>evictionListener((nonce, state, cause) -> entries.decrementAndGet())
+            .build();
+    this.verifiedExpiry = verified.policy().expireVariably().orElseThrow();
+  }
+
+  @Override
+  public VerificationResult recordAttempt(
+      long tokenId, boolean correct, int maxFailedAttempts, long remainingMillis) {
+    if (entries.get() >= capacity) {
+      verified.cleanUp();
+    }
+    VerificationResult[] result = new VerificationResult[1];
+    verifiedExpiry.compute(
+        tokenId,
+        (n, state) -> {
+          if (state == null) {
+            if (entries.get() >= capacity) {
+              result[0] = VerificationResult.LOCKED;
+              return null;
+            }
+            entries.incrementAndGet();
+          } else if (state.equals(CONSUMED)) {
+            result[0] = VerificationResult.REPLAYED;
+            return state;
+          } else if (state >= maxFailedAttempts) {
+            result[0] = VerificationResult.LOCKED;
+            return state;
+          }
+          result[0] = correct ? VerificationResult.VALID : VerificationResult.INVALID;
+          return correct ? CONSUMED : (Integer) (state == null ? 1 : state + 1);
+        },
+        Duration.ofMillis(remainingMillis));
+    return result[0];
+  }
+
+  /**
+   * Returns the number of tokens in the ledger.
+   *
+   * @return the number of consumed or attempted tokens that have not yet expired.
+   */
+  public long size() {
+    verified.cleanUp();
+    return entries.get();
+  }
+
+  private static Expiry<Long, Integer> untilTokenExpiry() {
+    // Every entry is written through VarExpiration.compute with the token's remaining lifetime.
+    return new Expiry<Long, Integer>() {
+      @Override
+      public long expireAfterCreate(Long nonce, Integer state, long currentTime) {
+        return 0;
+      }
+
+      @Override
+      public long expireAfterUpdate(
+          Long nonce, Integer state, long currentTime, long currentDuration) {
+        return currentDuration;
+      }
+
+      @Override
+      public long expireAfterRead(
+          Long nonce, Integer state, long currentTime, long currentDuration) {
+        return currentDuration;
+      }
+    };
+  }
+}
@@ -0,0 +1,33 @@
+package com.recceda.core.challenge;
+
+import com.recceda.core.store.VerificationResult;
+
+/**
+ * Remembers which challenge tokens have been verified, so that a {@link ChallengeSigner} can accept
+ * each token once and limit the wrong codes tried against it.
+ *
+ * <p>The ledger is the only state behind challenge tokens, and its scope is the scope of those
+ * guarantees. The default {@link LocalTokenLedger} is local to one JVM: with several nodes behind a
+ * load balancer, a token can be redeemed once on every node and gets {@code maxFailedAttempts}
+ * guesses on every node. Deployments with more than one node should implement this interface over a
+ * store the nodes share, with each call applied atomically, for example as a script in Redis.
+ */
+public interface TokenLedger {
+
+  /**
+   * Records a verification attempt on a token and returns its outcome. Attempts on the same token
+   * must be applied one at a time, across every node that shares the ledger.
+   *
+   * @param tokenId the token's random nonce, unique to the token.
+   * @param correct whether the code matched the token.
+   * @param maxFailedAttempts the number of wrong codes after which the token is locked.
+   * @param remainingMillis how long the token remains valid; the ledger may forget it after that.
+   * @return {@link VerificationResult#VALID} if the code is correct and the token had not been
+   *     consumed, which consumes it; {@link VerificationResult#INVALID} for a wrong code below the
+   *     limit; {@link VerificationResult#REPLAYED} if the token has been consumed; or {@link
+   *     VerificationResult#LOCKED} if the token has had {@code maxFailedAttempts} wrong codes, or
+   *     if the ledger cannot record it.
+   */
+  VerificationResult recordAttempt(
+      long tokenId, boolean correct, int maxFailedAttempts, long remainingMillis);
+}
@@ -0,0 +1,302 @@
+package com.recceda.core.distributor;
+
+import com.recceda.core.store.OtpKey;
+import com.recceda.exception.OtpDistributionException;
+import com.recceda.util.ThreadFactories;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OtpDistributor} that hands OTPs over to a delegate distributor on its own worker
+ * threads.
+ *
+ * <p>OTPs are placed on a bounded queue and the calling thread returns immediately, so a slow SMS
+ * or email gateway no longer stalls the thread that generated the OTP. Workers drain the queue in
+ * micro-batches: if the delegate is a {@link BatchOtpDistributor}, each batch is delivered with a
+ * single {@link BatchOtpDistributor#sendAll(Map)} call. Workers run on virtual threads when the JVM
+ * supports them.
+ *
+ * <p>OTPs sent with an {@link OtpKey} reach the delegate through {@link OtpDistributor#send(OtpKey,
+ * String)}, one at a time, so that it still learns their purpose.
+ *
+ * <p>When the queue is full, the caller waits for up to the configured offer timeout before the
+ * delivery is rejected with an {@link OtpDistributionException}.
+ */
+public class AsyncOtpDistributor implements BatchOtpDistributor, AutoCloseable {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+  public static final long DEFAULT_OFFER_TIMEOUT_MILLIS = 100;
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncOtpDistributor.class);
+
+  private final OtpDistributor delegate;
+  private final BlockingQueue<Delivery> queue;
+  private final int maxBatchSize;
+  private final long offerTimeoutMillis;
+  private final List<Thread> workers;
+  private volatile boolean running = true;
+
+  /**
+   * Creates a new {@code AsyncOtpDistributor} with the default queue capacity, batch size and offer
+   * timeout, and one worker per available processor.
+   *
+   * @param delegate the distributor that performs the actual delivery.
+   */
+  public AsyncOtpDistributor(OtpDistributor delegate) {
+    this(
+        delegate,
+        DEFAULT_QUEUE_CAPACITY,
+        Runtime.getRuntime().availableProcessors(),
+        DEFAULT_MAX_BATCH_SIZE,
+        DEFAULT_OFFER_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Creates a new {@code AsyncOtpDistributor}.
+   *
+   * @param delegate the distributor that performs the actual delivery.
+   * @param queueCapacity the maximum number of OTPs waiting for delivery.
+   * @param workerCount the number of worker threads.
+   * @param maxBatchSize the maximum number of OTPs handed to the delegate in one call.
+   * @param offerTimeoutMillis how long a caller waits for space in a full queue before the delivery
+   *     is rejected; {@code 0} rejects immediately.
+   */
+  public AsyncOtpDistributor(
+      OtpDistributor delegate,
+      int queueCapacity,
+      int workerCount,
+      int maxBatchSize,
+      long offerTimeoutMillis) {
+    if (queueCapacity < 1 || workerCount < 1 || maxBatchSize < 1 || offerTimeoutMillis < 0) {
+      throw new IllegalArgumentException("Invalid asynchronous distributor configuration.");
+    }
+    this.delegate = delegate;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.maxBatchSize = maxBatchSize;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.workers = new ArrayList<>(workerCount);
+
+    ThreadFactory threadFactory = ThreadFactories.workerThreadFactory("recceda-otp-distributor-");
+    for (int i = 0; i < workerCount; i++) {
+      Thread worker = threadFactory.newThread(this::runWorker);
+      workers.add(worker);
+      worker.start();
+    }
+  }
+
+  /**
+   * Queues the OTP for delivery and returns without waiting for it to be sent.
+   *
+   * @throws OtpDistributionException if the queue stays full for longer than the offer timeout.
+   */
+  @Override
+  public void send(String key, String otp) {
+    enqueue(new Delivery(key, null, otp));
+  }
+
+  /**
+   * Queues the OTP for delivery with its purpose and returns without waiting for it to be sent.
+   *
+   * @throws OtpDistributionException if the queue stays full for longer than the offer timeout.
+   */
+  @Override
+  public void send(OtpKey key, String otp) {
+    enqueue(new Delivery(key.getSubject(), key, otp));
+  }
+
+  /**
+   * Queues the OTPs for delivery and returns without waiting for them to be sent.
+   *
+   * @throws OtpDistributionException if the queue stays full for longer than the offer timeout.
+   */
+  @Override
+  public void sendAll(Map<String, String> otps) {
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      send(otp.getKey(), otp.getValue());
+    }
+  }
+
+  /**
+   * Queues the OTP for delivery.
+   *
+   * @param key the unique key associated with the user.
+   * @param otp the OTP to send.
+   * @return a future that completes once the delegate has sent the OTP, or completes exceptionally
+   *     if the delivery was rejected or failed.
+   */
+  public CompletableFuture<Void> submit(String key, String otp) {
+    return submit(new Delivery(key, null, otp));
+  }
+
+  /**
+   * Queues the OTP for delivery with its purpose.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @param otp the OTP to send.
+   * @return a future that completes once the delegate has sent the OTP, or completes exceptionally
+   *     if the delivery was rejected or failed.
+   */
+  public CompletableFuture<Void> submit(OtpKey key, String otp) {
+    return submit(new Delivery(key.getSubject(), key, otp));
+  }
+
+  private CompletableFuture<Void> submit(Delivery delivery) {
+    try {
+      enqueue(delivery);
+    } catch (OtpDistributionException e) {
+      delivery.result.completeExceptionally(e);
+    }
+    return delivery.result;
+  }
+
+  /**
+   * Returns the number of OTPs currently waiting for delivery.
+   *
+   * @return the queue length.
+   */
+  public int pendingDeliveries() {
+    return queue.size();
+  }
+
+  /**
+   * Stops accepting new OTPs, delivers the ones already queued and waits for the workers to finish.
+   */
+  @Override
+  public void close() {
+    running = false;
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    // Deliveries that raced with close() after the workers exited are failed, not dropped.
+    List<Delivery> stranded = new ArrayList<>();
+    queue.drainTo(stranded);
+    for (Delivery delivery : stranded) {
+      delivery.result.completeExceptionally(
+          new OtpDistributionException("The OTP distributor has been closed."));
+    }
+  }
+
+  private void enqueue(Delivery delivery) {
+    if (!running) {
+      throw new OtpDistributionException("The OTP distributor has been closed.");
+    }
+    boolean accepted;
+    try {
+      accepted = queue.offer(delivery, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OtpDistributionException("Interrupted while queueing the OTP for delivery.", e);
+    }
+    if (!accepted) {
+      throw new OtpDistributionException("The OTP delivery queue is full.");
+    }
+  }
+
+  private void runWorker() {
+    List<Delivery> batch = new ArrayList<>(maxBatchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Delivery first = queue.poll(50, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - 1);
+        deliver(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void deliver(List<Delivery> batch) {
+    if (batch.size() == 1 || !(delegate instanceof BatchOtpDistributor)) {
+      for (Delivery delivery : batch) {
+        deliverOne(delivery);
+      }
+      return;
+    }
+
+    // A key can only appear once per sendAll call, so a repeated key starts a new call.
+    Map<String, String> otps = new LinkedHashMap<>();
+    List<Delivery> pending = new ArrayList<>(batch.size());
+    for (Delivery delivery : batch) {
+      if (delivery.scopedKey != null) {
+        // sendAll only takes plain keys, which would drop the purpose.
+        deliverOne(delivery);
+        continue;
+      }
+      if (otps.containsKey(delivery.key)) {
+        deliverBatch(otps, pending);
+        otps.clear();
+        pending.clear();
+      }
+      otps.put(delivery.key, delivery.otp);
+      pending.add(delivery);
+    }
+    deliverBatch(otps, pending);
+  }
+
+  private void deliverOne(Delivery delivery) {
+    try {
+      if (delivery.scopedKey != null) {
+        delegate.send(delivery.scopedKey, delivery.otp);
+      } else {
+        delegate.send(delivery.key, delivery.otp);
+      }
+      delivery.result.complete(null);
+    } catch (RuntimeException e) {
+      log.warn("Failed to deliver OTP for key {}", delivery.key, e);
+      delivery.result.completeExceptionally(e);
+    }
+  }
+
+  private void deliverBatch(Map<String, String> otps, List<Delivery> pending) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    try {
+      ((BatchOtpDistributor) delegate).sendAll(otps);
+      for (Delivery delivery : pending) {
+        delivery.result.complete(null);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to deliver a batch of {} OTPs", pending.size(), e);
+      for (Delivery delivery : pending) {
+        delivery.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  private static final class Delivery {
+    final String key;
+    final OtpKey scopedKey;
+    final String otp;
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    Delivery(String key, OtpKey scopedKey, String otp) {
+      this.key = key;
+      this.scopedKey = scopedKey;
+      this.otp = otp;
+    }
+  }
+}
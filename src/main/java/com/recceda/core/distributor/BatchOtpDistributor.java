@@ -0,0 +1,18 @@
+package com.recceda.core.distributor;
+
+import java.util.Map;
+
+/**
+ * An {@link OtpDistributor} that can deliver several OTPs in a single call.
+ *
+ * <p>Implement this interface when the underlying gateway offers a bulk API (for example a bulk SMS
+ * endpoint), so that batched callers can hand over many OTPs at once instead of one per call.
+ */
+public interface BatchOtpDistributor extends OtpDistributor {
+  /**
+   * Sends each OTP to the user associated with its key.
+   *
+   * @param otps the OTPs to send, keyed by the unique key associated with each user.
+   */
+  void sendAll(Map<String, String> otps);
+}
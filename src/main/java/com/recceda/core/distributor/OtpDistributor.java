@@ -1,5 +1,7 @@
 package com.recceda.core.distributor;
 
+import com.recceda.core.store.OtpKey;
+
 /**
  * A functional interface for sending an OTP to a user.
  *
@@ -15,4 +17,15 @@ public interface OtpDistributor {
    * @param otp the OTP to send.
    */
   void send(String key, String otp);
+
+  /**
+   * Sends the OTP for a subject and purpose, so that the message can say what the code is for. By
+   * default sends it to the subject, as {@link #send(String, String)} does.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @param otp the OTP to send.
+   */
+  default void send(OtpKey key, String otp) {
+    send(key.getSubject(), otp);
+  }
 }
@@ -0,0 +1,87 @@
+package com.recceda.core.event;
+
+/**
+ * Something that happened to a key's OTP. The OTP itself is never part of an event.
+ *
+ * <p>For an OTP addressed by an {@link com.recceda.core.store.OtpKey}, the key is the subject and
+ * the purpose is the key's purpose, so that a login can be told apart from a payment confirmation.
+ * OTPs addressed by a plain key have the {@linkplain
+ * com.recceda.core.store.ScopedOtpStore#DEFAULT_PURPOSE default purpose}.
+ */
+public final class OtpEvent {
+
+  private final OtpEventType type;
+  private final String key;
+  private final String purpose;
+  private final long timestampMillis;
+
+  /**
+   * Creates a new event for an OTP with the default purpose.
+   *
+   * @param type what happened.
+   * @param key the unique key the OTP belongs to.
+   * @param timestampMillis when it happened, in milliseconds since the epoch.
+   */
+  public OtpEvent(OtpEventType type, String key, long timestampMillis) {
+    this(type, key, "", timestampMillis);
+  }
+
+  /**
+   * Creates a new event.
+   *
+   * @param type what happened.
+   * @param key the unique key, or the subject, the OTP belongs to.
+   * @param purpose what the OTP is for, or {@code null} if the event concerns all of the subject's
+   *     OTPs.
+   * @param timestampMillis when it happened, in milliseconds since the epoch.
+   */
+  public OtpEvent(OtpEventType type, String key, String purpose, long timestampMillis) {
+    this.type = type;
+    this.key = key;
+    this.purpose = purpose;
+    this.timestampMillis = timestampMillis;
+  }
+
+  /**
+   * Returns what happened.
+   *
+   * @return the event type.
+   */
+  public OtpEventType getType() {
+    return type;
+  }
+
+  /**
+   * Returns the unique key the OTP belongs to.
+   *
+   * @return the key.
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Returns what the OTP is for.
+   *
+   * @return the purpose; empty for the default purpose, or {@code null} if the event concerns all
+   *     of the subject's OTPs, as when a subject is invalidated.
+   */
+  public String getPurpose() {
+    return purpose;
+  }
+
+  /**
+   * Returns when the event happened.
+   *
+   * @return the time in milliseconds since the epoch.
+   */
+  public long getTimestampMillis() {
+    return timestampMillis;
+  }
+
+  @Override
+  public String toString() {
+    String scope = purpose == null ? "/*" : purpose.isEmpty() ? "" : "/" + purpose;
+    return type + " " + key + scope + " at " + timestampMillis;
+  }
+}
@@ -0,0 +1,15 @@
+package com.recceda.core.event;
+
+import java.util.List;
+
+/** Receives OTP lifecycle events in batches, such as an audit log or a fraud detection feed. */
+@FunctionalInterface
+public interface OtpEventListener {
+
+  /**
+   * Handles a batch of events, in the order they were published.
+   *
+   * @param events the events; the list is only valid for the duration of the call.
+   */
+  void onEvents(List<OtpEvent> events);
+}
@@ -0,0 +1,21 @@
+package com.recceda.core.event;
+
+/**
+ * Accepts OTP lifecycle events from {@link com.recceda.ReccedaOtp} and the OTP stores.
+ *
+ * <p>Publishing is called on the generate and verify paths, so implementations should return
+ * quickly and hand the event off, as {@link RingBufferEventPublisher} does.
+ */
+@FunctionalInterface
+public interface OtpEventPublisher {
+
+  /** A publisher that discards every event. */
+  OtpEventPublisher NO_OP = event -> {};
+
+  /**
+   * Publishes an event.
+   *
+   * @param event the event.
+   */
+  void publish(OtpEvent event);
+}
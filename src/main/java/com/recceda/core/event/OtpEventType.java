@@ -0,0 +1,17 @@
+package com.recceda.core.event;
+
+/** The kinds of event in an OTP's lifecycle. */
+public enum OtpEventType {
+  /** An OTP was generated and stored for the key. */
+  ISSUED,
+  /** The key's OTP was verified successfully. */
+  VERIFIED,
+  /** A verification for the key failed: the OTP was wrong, expired, missing or locked out. */
+  FAILED,
+  /** The key's OTP was invalidated explicitly. */
+  INVALIDATED,
+  /** The key's OTP reached the end of its time-to-live and was removed. */
+  EXPIRED,
+  /** The key's OTP was removed before it expired to make room for other entries. */
+  EVICTED
+}
@@ -0,0 +1,295 @@
+package com.recceda.core.event;
+
+import com.recceda.util.ThreadFactories;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OtpEventPublisher} that queues events in a bounded ring buffer and delivers them to
+ * listeners in batches on a single background thread.
+ *
+ * <p>Publishing claims a slot with one compare-and-set and never waits for a listener, so a slow
+ * listener does not add latency to generating or verifying OTPs. The delivery thread drains up to
+ * the maximum batch size at a time and hands each batch to every listener in turn, in publication
+ * order. When the buffer is empty it checks again after a short pause, so publishers never have to
+ * wake it.
+ *
+ * <p>If listeners fall behind and the buffer fills up, the {@link OverflowPolicy} decides whether
+ * new events are dropped, and counted in {@link #dropped()}, or whether publishers wait for space.
+ */
+public class RingBufferEventPublisher implements OtpEventPublisher, AutoCloseable {
+
+  /** What to do with an event when the buffer is full. */
+  public enum OverflowPolicy {
+    /** Discard the event and count it in {@link #dropped()}. Publishing never waits. */
+    DROP,
+    /** Wait until the delivery thread frees a slot. Nothing is lost, but publishers may stall. */
+    BLOCK
+  }
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+  private static final Logger log = LoggerFactory.getLogger(RingBufferEventPublisher.class);
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicReferenceArray<OtpEvent> events;
+  // The sequence at which each slot can next be written (equal) or read (one more).
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final int mask;
+  private final int maxBatchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final List<OtpEventListener> listeners;
+  private final LongAdder published = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final AtomicLong delivered = new AtomicLong();
+  private final Thread worker;
+  private volatile boolean running = true;
+  private long head;
+
+  private RingBufferEventPublisher(Builder builder) {
+    int capacity = builder.capacity == 1 ? 1 : Integer.highestOneBit(builder.capacity - 1) << 1;
+    this.events = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    this.mask = capacity - 1;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.overflowPolicy = builder.overflowPolicy;
+    this.listeners = new ArrayList<>(builder.listeners);
+    this.worker =
+        ThreadFactories.daemonThreadFactory("recceda-otp-events-").newThread(this::runWorker);
+    worker.start();
+  }
+
+  /**
+   * Returns a builder for a publisher that delivers to the given listener.
+   *
+   * @param listener the first listener; add more with {@link Builder#listener(OtpEventListener)}.
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder(OtpEventListener listener) {
+    return new Builder().listener(listener);
+  }
+
+  /**
+   * Queues the event for delivery. If the buffer is full, the event is dropped or the caller waits,
+   * according to the overflow policy. Events published after {@link #close()} are dropped.
+   */
+  @Override
+  public void publish(OtpEvent event) {
+    published.increment();
+    if (!running) {
+      dropped.increment();
+      return;
+    }
+    if (offer(event)) {
+      return;
+    }
+    if (overflowPolicy == OverflowPolicy.DROP) {
+      dropped.increment();
+      return;
+    }
+    while (!offer(event)) {
+      if (!running) {
+        dropped.increment();
+        return;
+      }
+      LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+    }
+  }
+
+  /**
+   * Returns the number of events published, including those that were dropped.
+   *
+   * @return the published count.
+   */
+  public long published() {
+    return published.sum();
+  }
+
+  /**
+   * Returns the number of events dropped because the buffer was full or the publisher was closed.
+   *
+   * @return the dropped count.
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Returns the number of events handed to the listeners.
+   *
+   * @return the delivered count.
+   */
+  public long delivered() {
+    return delivered.get();
+  }
+
+  /**
+   * Returns the number of events queued or being delivered.
+   *
+   * @return the approximate backlog.
+   */
+  public long pendingEvents() {
+    return tail.get() - delivered.get();
+  }
+
+  /** Stops accepting events, delivers the ones already queued and waits for the delivery thread. */
+  @Override
+  public void close() {
+    running = false;
+    try {
+      worker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    // Events that raced with close() after the delivery thread exited are delivered here.
+    List<OtpEvent> stranded = new ArrayList<>();
+    OtpEvent event;
+    while ((event = poll()) != null) {
+      stranded.add(event);
+    }
+    if (!stranded.isEmpty()) {
+      deliver(stranded);
+    }
+  }
+
+  private boolean offer(OtpEvent event) {
+    while (true) {
+      long sequence = tail.get();
+      int slot = (int) sequence & mask;
+      long available = sequences.get(slot);
+      if (available < sequence) {
+        // The slot still holds an event from the previous lap: the buffer is full.
+        return false;
+      }
+      if (available == sequence && tail.compareAndSet(sequence, sequence + 1)) {
+        events.lazySet(slot, event);
+        sequences.set(slot, sequence + 1);
+        return true;
+      }
+    }
+  }
+
+  private OtpEvent poll() {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1) {
+      return null;
+    }
+    OtpEvent event = events.get(slot);
+    events.lazySet(slot, null);
+    sequences.set(slot, head + mask + 1);
+    head++;
+    return event;
+  }
+
+  private void runWorker() {
+    List<OtpEvent> batch = new ArrayList<>(maxBatchSize);
+    while (true) {
+      // Read the flag first, so that a final drain after close sees every event published before.
+      boolean open = running;
+      OtpEvent event;
+      while (batch.size() < maxBatchSize && (event = poll()) != null) {
+        batch.add(event);
+      }
+      if (!batch.isEmpty()) {
+        deliver(batch);
+        batch.clear();
+      } else if (!open) {
+        return;
+      } else {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  private void deliver(List<OtpEvent> batch) {
+    for (OtpEventListener listener : listeners) {
+      try {
+        listener.onEvents(batch);
+      } catch (RuntimeException e) {
+        log.warn("OTP event listener failed on a batch of {} events", batch.size(), e);
+      }
+    }
+    delivered.addAndGet(batch.size());
+  }
+
+  /** A builder for {@link RingBufferEventPublisher}. */
+  public static final class Builder {
+    private final List<OtpEventListener> listeners = new ArrayList<>();
+    private int capacity = DEFAULT_CAPACITY;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private Builder() {}
+
+    /**
+     * Adds a listener. Listeners receive every batch, one after the other.
+     *
+     * @param listener the listener.
+     * @return this builder.
+     */
+    public Builder listener(OtpEventListener listener) {
+      listeners.add(listener);
+      return this;
+    }
+
+    /**
+     * Sets the number of events the buffer holds; rounded up to a power of two.
+     *
+     * @param capacity the buffer capacity.
+     * @return this builder.
+     */
+    public Builder capacity(int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of events handed to the listeners in one call.
+     *
+     * @param maxBatchSize the maximum batch size.
+     * @return this builder.
+     */
+    public Builder maxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets what to do with an event when the buffer is full.
+     *
+     * @param overflowPolicy {@link OverflowPolicy#DROP} by default.
+     * @return this builder.
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Builds the publisher and starts its delivery thread.
+     *
+     * @return the new publisher.
+     */
+    public RingBufferEventPublisher build() {
+      if (capacity < 1 || capacity > 1 << 30 || maxBatchSize < 1) {
+        throw new IllegalArgumentException("Invalid event publisher configuration.");
+      }
+      return new RingBufferEventPublisher(this);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.recceda.core.generator;
+
+/**
+ * The set of characters an OTP is drawn from.
+ *
+ * <p>Alphabets hold between 2 and 256 distinct characters so that each character can be drawn from
+ * a single random byte.
+ */
+public final class OtpAlphabet {
+
+  /** The digits {@code 0-9}. */
+  public static final OtpAlphabet NUMERIC = of("0123456789");
+
+  /** The digits {@code 0-9} and the upper-case letters {@code A-Z}. */
+  public static final OtpAlphabet ALPHANUMERIC = of("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+
+  private final char[] characters;
+  private final int rejectionLimit;
+
+  private OtpAlphabet(char[] characters) {
+    this.characters = characters;
+    // The largest multiple of the alphabet size that fits in a byte; bytes at or above it are
+    // rejected so that every character is equally likely.
+    this.rejectionLimit = 256 - (256 % characters.length);
+  }
+
+  /**
+   * Creates an alphabet from the given characters.
+   *
+   * @param characters the characters an OTP may contain.
+   * @return the alphabet.
+   * @throws IllegalArgumentException if there are fewer than 2 or more than 256 characters, or if a
+   *     character appears more than once.
+   */
+  public static OtpAlphabet of(String characters) {
+    if (characters.length() < 2 || characters.length() > 256) {
+      throw new IllegalArgumentException("An OTP alphabet must have between 2 and 256 characters.");
+    }
+    if (characters.chars().distinct().count() != characters.length()) {
+      throw new IllegalArgumentException("An OTP alphabet must not repeat characters.");
+    }
+    return new OtpAlphabet(characters.toCharArray());
+  }
+
+  /**
+   * Returns the number of characters in the alphabet.
+   *
+   * @return the alphabet size.
+   */
+  public int size() {
+    return characters.length;
+  }
+
+  /**
+   * Maps a random byte to a character, or returns {@code -1} if the byte must be rejected to keep
+   * the distribution unbiased.
+   */
+  int charFor(int randomByte) {
+    int value = randomByte & 0xFF;
+    return value < rejectionLimit ? characters[value % characters.length] : -1;
+  }
+
+  @Override
+  public String toString() {
+    return new String(characters);
+  }
+}
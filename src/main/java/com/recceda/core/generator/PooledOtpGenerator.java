@@ -0,0 +1,277 @@
+package com.recceda.core.generator;
+
+import com.recceda.util.ThreadFactories;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link OtpGenerator} that hands out codes generated ahead of time by another generator.
+ *
+ * <p>For each configured length the generator keeps a bounded, lock-free ring of codes, which a
+ * background thread tops up from the wrapped generator. Taking a code is a single compare-and-set,
+ * so a burst of requests does not pay for drawing random bytes or reseeding on the caller's thread.
+ * When a ring is empty, or for a length that is not pooled, the code is generated inline and the
+ * refill thread is woken. The alphabet is the wrapped generator's.
+ *
+ * <p>Each code is handed out at most once: its slot is claimed with a compare-and-set and cleared
+ * as it is taken. Pooled codes are held as character arrays, which are zeroed when they are taken
+ * and when the generator is closed. That only clears the pool's own copies: the wrapped generator
+ * returns each code as a {@code String}, and so does this one, and those strings stay on the heap
+ * until they are collected. {@link #hits()} and {@link #misses()} report how often the pool served
+ * a request.
+ */
+public class PooledOtpGenerator implements OtpGenerator, AutoCloseable {
+
+  public static final int DEFAULT_LENGTH = 6;
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final OtpGenerator generator;
+  // Indexed by code length; null for lengths that are not pooled.
+  private final Pool[] pools;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final Thread worker;
+  private volatile boolean running = true;
+
+  private PooledOtpGenerator(Builder builder) {
+    this.generator = builder.generator;
+    int capacity = Integer.highestOneBit(builder.capacity - 1) << 1;
+    int maxLength = Arrays.stream(builder.lengths).max().getAsInt();
+    this.pools = new Pool[maxLength + 1];
+    for (int length : builder.lengths) {
+      pools[length] = new Pool(capacity);
+    }
+    this.worker =
+        ThreadFactories.daemonThreadFactory("recceda-otp-pool-").newThread(this::runWorker);
+    worker.start();
+  }
+
+  /**
+   * Returns a builder for a pool of codes from the given generator.
+   *
+   * @param generator the generator that fills the pool and serves requests it cannot.
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder(OtpGenerator generator) {
+    return new Builder(generator);
+  }
+
+  /**
+   * Takes a code from the pool for the length, or generates one inline if the pool is empty. Codes
+   * are generated inline after {@link #close()}.
+   */
+  @Override
+  public String generateOtp(int length) {
+    Pool pool = length < pools.length ? pools[length] : null;
+    if (pool != null) {
+      char[] code = pool.poll();
+      if (code != null) {
+        hits.increment();
+        String otp = new String(code);
+        Arrays.fill(code, '\0');
+        return otp;
+      }
+      if (running) {
+        LockSupport.unpark(worker);
+      }
+    }
+    misses.increment();
+    return generator.generateOtp(length);
+  }
+
+  /**
+   * Returns the number of requests served from the pool.
+   *
+   * @return the hit count.
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns the number of requests generated inline, because the pool was empty, the length is not
+   * pooled or the generator was closed.
+   *
+   * @return the miss count.
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the share of requests served from the pool.
+   *
+   * @return the hit rate between {@code 0} and {@code 1}, or {@code 0} before the first request.
+   */
+  public double hitRate() {
+    long hits = this.hits.sum();
+    long total = hits + misses.sum();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /**
+   * Returns the number of codes ready in the pool for the length.
+   *
+   * @param length the code length.
+   * @return the number of pooled codes, or {@code 0} if the length is not pooled.
+   */
+  public int pooledOtps(int length) {
+    Pool pool = length < pools.length ? pools[length] : null;
+    return pool == null ? 0 : pool.size();
+  }
+
+  /** Stops the refill thread and wipes every code left in the pool. */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(worker);
+    try {
+      worker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Pool pool : pools) {
+      if (pool != null) {
+        char[] code;
+        while ((code = pool.poll()) != null) {
+          Arrays.fill(code, '\0');
+        }
+      }
+    }
+  }
+
+  private void runWorker() {
+    while (running) {
+      boolean filled = false;
+      for (int length = 0; length < pools.length && running; length++) {
+        Pool pool = pools[length];
+        while (pool != null && running && pool.hasSpace()) {
+          String otp = generator.generateOtp(length);
+          if (!pool.offer(otp.toCharArray())) {
+            break;
+          }
+          filled = true;
+        }
+      }
+      if (!filled) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /** A bounded multi-producer, multi-consumer ring of codes of one length. */
+  private static final class Pool {
+    private final AtomicReferenceArray<char[]> codes;
+    // The sequence at which each slot can next be written (equal) or read (one more).
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+
+    Pool(int capacity) {
+      this.codes = new AtomicReferenceArray<>(capacity);
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+      this.mask = capacity - 1;
+    }
+
+    boolean offer(char[] code) {
+      while (true) {
+        long sequence = tail.get();
+        int slot = (int) sequence & mask;
+        long available = sequences.get(slot);
+        if (available < sequence) {
+          return false;
+        }
+        if (available == sequence && tail.compareAndSet(sequence, sequence + 1)) {
+          codes.lazySet(slot, code);
+          sequences.set(slot, sequence + 1);
+          return true;
+        }
+      }
+    }
+
+    char[] poll() {
+      while (true) {
+        long sequence = head.get();
+        int slot = (int) sequence & mask;
+        long available = sequences.get(slot);
+        if (available < sequence + 1) {
+          return null;
+        }
+        if (available == sequence + 1 && head.compareAndSet(sequence, sequence + 1)) {
+          char[] code = codes.get(slot);
+          codes.lazySet(slot, null);
+          sequences.set(slot, sequence + mask + 1);
+          return code;
+        }
+      }
+    }
+
+    boolean hasSpace() {
+      return size() <= mask;
+    }
+
+    int size() {
+      return (int) Math.max(0, tail.get() - head.get());
+    }
+  }
+
+  /** A builder for {@link PooledOtpGenerator}. */
+  public static final class Builder {
+    private final OtpGenerator generator;
+    private int[] lengths = {DEFAULT_LENGTH};
+    private int capacity = DEFAULT_CAPACITY;
+
+    private Builder(OtpGenerator generator) {
+      this.generator = generator;
+    }
+
+    /**
+     * Sets the code lengths to keep pools for. Other lengths are always generated inline.
+     *
+     * @param lengths the pooled lengths; {@code 6} by default.
+     * @return this builder.
+     */
+    public Builder lengths(int... lengths) {
+      this.lengths = lengths.clone();
+      return this;
+    }
+
+    /**
+     * Sets the number of codes pooled for each length; rounded up to a power of two.
+     *
+     * @param capacity the pool capacity per length.
+     * @return this builder.
+     */
+    public Builder capacity(int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Builds the generator and starts its refill thread.
+     *
+     * @return the new generator.
+     */
+    public PooledOtpGenerator build() {
+      if (generator == null
+          || lengths.length == 0
+          || Arrays.stream(lengths).anyMatch(length -> length < 1 || length > 1024)
+          || capacity < 2
+          || capacity > 1 << 20) {
+        throw new IllegalArgumentException("Invalid OTP pool configuration.");
+      }
+      return new PooledOtpGenerator(this);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.recceda.core.generator;
+
+import com.recceda.util.ThreadFactories;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A high-throughput OTP generator for heavily concurrent callers.
+ *
+ * <p>Instead of sharing one {@link SecureRandom}, the generator keeps a small array of stripes,
+ * each with its own {@code SecureRandom} and a buffer of random bytes drawn in bulk. A caller locks
+ * the first free stripe it finds, so threads rarely wait on each other. Bytes are mapped to
+ * characters of the configured {@link OtpAlphabet} with rejection sampling, so every character is
+ * equally likely.
+ *
+ * <p>Stripes use a non-blocking entropy source and are seeded on a background thread when the
+ * generator is created, so the first requests after startup do not stall on seeding.
+ */
+public class StripedOtpGenerator implements OtpGenerator {
+
+  private static final int BUFFER_SIZE = 512;
+
+  private final OtpAlphabet alphabet;
+  private final Stripe[] stripes;
+  private final int mask;
+
+  /** Creates a new {@code StripedOtpGenerator} for numeric OTPs. */
+  public StripedOtpGenerator() {
+    this(OtpAlphabet.NUMERIC);
+  }
+
+  /**
+   * Creates a new {@code StripedOtpGenerator} with two stripes per available processor.
+   *
+   * @param alphabet the characters the generated OTPs are drawn from.
+   */
+  public StripedOtpGenerator(OtpAlphabet alphabet) {
+    this(alphabet, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new {@code StripedOtpGenerator}.
+   *
+   * @param alphabet the characters the generated OTPs are drawn from.
+   * @param stripeCount the number of independent entropy sources; rounded up to a power of two.
+   */
+  public StripedOtpGenerator(OtpAlphabet alphabet, int stripeCount) {
+    if (stripeCount < 1) {
+      throw new IllegalArgumentException("The stripe count must be positive.");
+    }
+    int size = 1;
+    while (size < stripeCount) {
+      size <<= 1;
+    }
+    this.alphabet = alphabet;
+    this.stripes = new Stripe[size];
+    this.mask = stripes.length - 1;
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe();
+    }
+
+    Thread seeder =
+        ThreadFactories.daemonThreadFactory("recceda-otp-seeder-").newThread(this::seedStripes);
+    seeder.start();
+  }
+
+  @Override
+  public String generateOtp(int length) {
+    char[] otp = new char[length];
+    Stripe stripe = acquireStripe();
+    try {
+      for (int i = 0; i < length; ) {
+        int c = alphabet.charFor(stripe.nextByte());
+        if (c >= 0) {
+          otp[i++] = (char) c;
+        }
+      }
+    } finally {
+      stripe.unlock();
+    }
+    return new String(otp);
+  }
+
+  private Stripe acquireStripe() {
+    int home = mix(Thread.currentThread().getId()) & mask;
+    for (int i = 0; i <= mask; i++) {
+      Stripe stripe = stripes[(home + i) & mask];
+      if (stripe.tryLock()) {
+        return stripe;
+      }
+    }
+    Stripe stripe = stripes[home];
+    stripe.lock();
+    return stripe;
+  }
+
+  private void seedStripes() {
+    for (Stripe stripe : stripes) {
+      if (stripe.tryLock()) {
+        try {
+          stripe.ensureSeeded();
+        } finally {
+          stripe.unlock();
+        }
+      }
+    }
+  }
+
+  private static int mix(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static SecureRandom newNonBlockingSecureRandom() {
+    try {
+      // Reads /dev/urandom on Unix-like systems and never blocks once the kernel pool is ready.
+      return SecureRandom.getInstance("NativePRNGNonBlocking");
+    } catch (NoSuchAlgorithmException e) {
+      return new SecureRandom();
+    }
+  }
+
+  private static final class Stripe extends ReentrantLock {
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = BUFFER_SIZE;
+    private SecureRandom random;
+
+    void ensureSeeded() {
+      if (random == null) {
+        random = newNonBlockingSecureRandom();
+        random.nextBytes(buffer);
+        position = 0;
+      }
+    }
+
+    int nextByte() {
+      if (position == BUFFER_SIZE) {
+        ensureSeeded();
+        if (position == BUFFER_SIZE) {
+          random.nextBytes(buffer);
+          position = 0;
+        }
+      }
+      byte value = buffer[position];
+      // Consumed bytes are cleared so that issued OTPs cannot be recovered from the buffer.
+      buffer[position++] = 0;
+      return value;
+    }
+  }
+}
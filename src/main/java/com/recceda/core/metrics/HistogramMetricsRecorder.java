@@ -0,0 +1,84 @@
+package com.recceda.core.metrics;
+
+import com.recceda.core.policy.Policy;
+import com.recceda.core.store.VerificationResult;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link MetricsRecorder} that keeps a {@link LatencyHistogram} per pipeline stage and counts
+ * policy rejections and verification outcomes in memory.
+ *
+ * <p>Recording never takes a lock. After the first rejection by each policy class, it does not
+ * allocate either. Read the results at any time, for example to export them to a monitoring system.
+ */
+public class HistogramMetricsRecorder implements MetricsRecorder {
+
+  private final LatencyHistogram[] latencies = new LatencyHistogram[PipelineStage.values().length];
+  private final AtomicLongArray verifications =
+      new AtomicLongArray(VerificationResult.values().length);
+  private final Map<Class<? extends Policy>, LongAdder> rejections = new ConcurrentHashMap<>();
+
+  /** Creates a new, empty {@code HistogramMetricsRecorder}. */
+  public HistogramMetricsRecorder() {
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  @Override
+  public void recordLatency(PipelineStage stage, long nanos) {
+    latencies[stage.ordinal()].record(nanos);
+  }
+
+  @Override
+  public void recordPolicyRejection(Class<? extends Policy> policy) {
+    LongAdder count = rejections.get(policy);
+    if (count == null) {
+      count = rejections.computeIfAbsent(policy, key -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  @Override
+  public void recordVerification(VerificationResult result) {
+    verifications.incrementAndGet(result.ordinal());
+  }
+
+  /**
+   * Returns the latency histogram of a stage.
+   *
+   * @param stage the stage.
+   * @return the live histogram.
+   */
+  public LatencyHistogram latency(PipelineStage stage) {
+    return latencies[stage.ordinal()];
+  }
+
+  /**
+   * Returns the number of verifications with the given outcome.
+   *
+   * @param result the outcome.
+   * @return the count.
+   */
+  public long verifications(VerificationResult result) {
+    return verifications.get(result.ordinal());
+  }
+
+  /**
+   * Returns the number of rejections by each policy class that has rejected at least once.
+   *
+   * @return a snapshot of the rejection counts.
+   */
+  public Map<Class<? extends Policy>, Long> policyRejections() {
+    Map<Class<? extends Policy>, Long> snapshot = new HashMap<>();
+    for (Map.Entry<Class<? extends Policy>, LongAdder> entry : rejections.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().sum());
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+}
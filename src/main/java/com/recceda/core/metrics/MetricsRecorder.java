@@ -0,0 +1,39 @@
+package com.recceda.core.metrics;
+
+import com.recceda.core.policy.Policy;
+import com.recceda.core.store.VerificationResult;
+
+/**
+ * Receives measurements from {@link com.recceda.ReccedaOtp} as OTPs are generated and verified.
+ *
+ * <p>Methods are called on the request path, from many threads at once, so implementations must be
+ * thread-safe, must not block and should not allocate. Every method does nothing by default.
+ */
+public interface MetricsRecorder {
+
+  /** A recorder that discards every measurement. */
+  MetricsRecorder NO_OP = new MetricsRecorder() {};
+
+  /**
+   * Records how long one stage took.
+   *
+   * @param stage the stage.
+   * @param nanos the duration in nanoseconds.
+   */
+  default void recordLatency(PipelineStage stage, long nanos) {}
+
+  /**
+   * Records that a policy refused to let an OTP be generated.
+   *
+   * @param policy the class of the policy that refused.
+   */
+  default void recordPolicyRejection(Class<? extends Policy> policy) {}
+
+  /**
+   * Records the outcome of a verification. Verifications that only report whether the OTP was
+   * correct are recorded as {@link VerificationResult#VALID} or {@link VerificationResult#INVALID}.
+   *
+   * @param result the outcome.
+   */
+  default void recordVerification(VerificationResult result) {}
+}
@@ -0,0 +1,18 @@
+package com.recceda.core.metrics;
+
+/** The stages of generating and verifying an OTP that a {@link MetricsRecorder} times. */
+public enum PipelineStage {
+  /** Checking the generation policies for the key. */
+  POLICY_CHECK,
+  /** Generating the OTP. */
+  GENERATION,
+  /**
+   * Hashing the OTP and writing it to the store. When policies are configured, this includes the
+   * policy checks and generation that the store performs within the same atomic update.
+   */
+  STORE,
+  /** Handing the OTP to the distributor. */
+  DISTRIBUTION,
+  /** Verifying an OTP against the store. */
+  VERIFICATION
+}
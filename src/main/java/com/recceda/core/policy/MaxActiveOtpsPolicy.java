@@ -0,0 +1,38 @@
+package com.recceda.core.policy;
+
+import com.recceda.core.store.OtpStore;
+import com.recceda.exception.OtpGenerationException;
+
+/**
+ * A policy that limits how many active OTPs a subject can hold at once across all purposes, when
+ * OTPs are requested with an {@link com.recceda.core.store.OtpKey}. Replacing the active OTP of a
+ * purpose does not add to the count, so it is always allowed.
+ */
+public class MaxActiveOtpsPolicy implements Policy {
+
+  private final int maxActiveOtps;
+
+  /**
+   * Creates a new {@code MaxActiveOtpsPolicy}.
+   *
+   * @param maxActiveOtps the maximum number of active OTPs per subject.
+   */
+  public MaxActiveOtpsPolicy(int maxActiveOtps) {
+    if (maxActiveOtps < 1) {
+      throw new IllegalArgumentException("The maximum number of active OTPs must be positive.");
+    }
+    this.maxActiveOtps = maxActiveOtps;
+  }
+
+  @Override
+  public void check(String key, OtpStore store) {
+    check(PolicyContext.lookup(key, store));
+  }
+
+  @Override
+  public void check(PolicyContext context) {
+    if (context.getActiveOtps() >= maxActiveOtps && !context.hasActiveOtp()) {
+      throw new OtpGenerationException("The user already has too many active OTPs.");
+    }
+  }
+}
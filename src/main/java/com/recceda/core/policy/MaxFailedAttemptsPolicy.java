@@ -23,7 +23,12 @@ public class MaxFailedAttemptsPolicy implements Policy {
 
   @Override
   public void check(String key, OtpStore store) {
-    OtpEntry entry = store.getOtpEntry(key);
+    check(PolicyContext.lookup(key, store));
+  }
+
+  @Override
+  public void check(PolicyContext context) {
+    OtpEntry entry = context.getEntry();
     if (entry != null && entry.failedAttempts >= maxAttempts) {
       throw new OtpGenerationException(
           "User has exceeded the maximum number of failed OTP attempts.");
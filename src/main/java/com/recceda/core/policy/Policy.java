@@ -20,4 +20,18 @@ public interface Policy {
    * @throws OtpGenerationException if the policy check fails.
    */
   void check(String key, OtpStore store);
+
+  /**
+   * Checks if the policy is met for the request described by the context.
+   *
+   * <p>The default implementation calls {@link #check(String, OtpStore)}. Policies that only need
+   * the key's current entry should override it and use {@link PolicyContext#getEntry()}, which is
+   * looked up once for the whole {@link PolicyChain}.
+   *
+   * @param context the key, its current entry and the time of the request.
+   * @throws OtpGenerationException if the policy check fails.
+   */
+  default void check(PolicyContext context) {
+    check(context.getKey(), context.getStore());
+  }
 }
@@ -0,0 +1,72 @@
+package com.recceda.core.policy;
+
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.metrics.PipelineStage;
+import java.util.List;
+
+/**
+ * An ordered, immutable list of policies that are checked against one shared {@link PolicyContext}.
+ * Checking stops at the first policy that fails.
+ */
+public final class PolicyChain {
+
+  private static final Policy[] NO_POLICIES = new Policy[0];
+
+  private final Policy[] policies;
+  private final MetricsRecorder metrics;
+
+  private PolicyChain(Policy[] policies, MetricsRecorder metrics) {
+    this.policies = policies;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Compiles the policies into a chain that does not record metrics.
+   *
+   * @param policies the policies, in the order they are checked.
+   * @return the chain.
+   */
+  public static PolicyChain compile(List<? extends Policy> policies) {
+    return compile(policies, MetricsRecorder.NO_OP);
+  }
+
+  /**
+   * Compiles the policies into a chain that reports its latency and rejections to a recorder.
+   *
+   * @param policies the policies, in the order they are checked.
+   * @param metrics the recorder for policy-check latency and rejections.
+   * @return the chain.
+   */
+  public static PolicyChain compile(List<? extends Policy> policies, MetricsRecorder metrics) {
+    return new PolicyChain(
+        policies.isEmpty() ? NO_POLICIES : policies.toArray(new Policy[0]), metrics);
+  }
+
+  /**
+   * Returns whether the chain has no policies, in which case no context needs to be looked up.
+   *
+   * @return {@code true} if the chain is empty.
+   */
+  public boolean isEmpty() {
+    return policies.length == 0;
+  }
+
+  /**
+   * Checks every policy against the context, in order.
+   *
+   * @param context the state of the request.
+   * @throws com.recceda.exception.OtpGenerationException if a policy check fails.
+   */
+  public void check(PolicyContext context) {
+    long start = System.nanoTime();
+    for (Policy policy : policies) {
+      try {
+        policy.check(context);
+      } catch (RuntimeException e) {
+        metrics.recordPolicyRejection(policy.getClass());
+        throw e;
+      }
+    }
+    metrics.recordLatency(PipelineStage.POLICY_CHECK, System.nanoTime() - start);
+  }
+}
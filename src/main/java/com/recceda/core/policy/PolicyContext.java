@@ -0,0 +1,200 @@
+package com.recceda.core.policy;
+
+import com.recceda.core.store.OtpKey;
+import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The state a {@link Policy} is checked against: the key, a snapshot of its current entry, the
+ * current time and any attributes the caller supplied (such as the client IP or tenant), looked up
+ * once per request and shared by every policy in a {@link PolicyChain}.
+ *
+ * <p>For an OTP requested under an {@link OtpKey}, the key is the subject, the entry is the one for
+ * the requested purpose, and {@link #getActiveOtps()} counts the subject's OTPs for all purposes.
+ */
+public final class PolicyContext {
+
+  private final String key;
+  private final OtpEntry entry;
+  private final long currentTimeMillis;
+  private final OtpStore store;
+  private final Map<String, String> attributes;
+  private final String purpose;
+  // Negative for a plain key, whose only possible active OTP is the entry.
+  private final int activeOtps;
+
+  /**
+   * Creates a new {@code PolicyContext} without attributes.
+   *
+   * @param key the unique key the OTP is requested for.
+   * @param entry the key's current entry, or {@code null} if it has none.
+   * @param currentTimeMillis the time of the request.
+   * @param store the store the OTP will be written to.
+   */
+  public PolicyContext(String key, OtpEntry entry, long currentTimeMillis, OtpStore store) {
+    this(key, entry, currentTimeMillis, store, Collections.emptyMap());
+  }
+
+  /**
+   * Creates a new {@code PolicyContext}.
+   *
+   * @param key the unique key the OTP is requested for.
+   * @param entry the key's current entry, or {@code null} if it has none.
+   * @param currentTimeMillis the time of the request.
+   * @param store the store the OTP will be written to.
+   * @param attributes the attributes the caller supplied with the request.
+   */
+  public PolicyContext(
+      String key,
+      OtpEntry entry,
+      long currentTimeMillis,
+      OtpStore store,
+      Map<String, String> attributes) {
+    this.key = key;
+    this.entry = entry;
+    this.currentTimeMillis = currentTimeMillis;
+    this.store = store;
+    this.attributes = attributes;
+    this.purpose = null;
+    this.activeOtps = -1;
+  }
+
+  /**
+   * Creates a new {@code PolicyContext} for an OTP requested for a subject and purpose.
+   *
+   * @param key the subject and purpose the OTP is requested for.
+   * @param entry the purpose's current entry, or {@code null} if it has none.
+   * @param activeOtps the number of active OTPs the subject holds, across all purposes.
+   * @param currentTimeMillis the time of the request.
+   * @param store the store the OTP will be written to.
+   * @param attributes the attributes the caller supplied with the request.
+   */
+  public PolicyContext(
+      OtpKey key,
+      OtpEntry entry,
+      int activeOtps,
+      long currentTimeMillis,
+      OtpStore store,
+      Map<String, String> attributes) {
+    this.key = key.getSubject();
+    this.entry = entry;
+    this.currentTimeMillis = currentTimeMillis;
+    this.store = store;
+    this.attributes = attributes;
+    this.purpose = key.getPurpose();
+    this.activeOtps = activeOtps;
+  }
+
+  /**
+   * Creates a context by looking up the key's entry in the store.
+   *
+   * @param key the unique key the OTP is requested for.
+   * @param store the store the OTP will be written to.
+   * @return the context.
+   */
+  public static PolicyContext lookup(String key, OtpStore store) {
+    return lookup(key, store, Collections.emptyMap());
+  }
+
+  /**
+   * Creates a context with attributes by looking up the key's entry in the store.
+   *
+   * @param key the unique key the OTP is requested for.
+   * @param store the store the OTP will be written to.
+   * @param attributes the attributes the caller supplied with the request.
+   * @return the context.
+   */
+  public static PolicyContext lookup(String key, OtpStore store, Map<String, String> attributes) {
+    return new PolicyContext(
+        key, store.getOtpEntry(key), store.timeSource().currentTimeMillis(), store, attributes);
+  }
+
+  /**
+   * Returns the unique key the OTP is requested for.
+   *
+   * @return the key.
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Returns the purpose the OTP is requested for.
+   *
+   * @return the purpose, or {@code null} if the OTP was requested with a plain key.
+   */
+  public String getPurpose() {
+    return purpose;
+  }
+
+  /**
+   * Returns the number of OTPs the subject holds that have not expired, across all purposes. For a
+   * plain key, this is {@code 1} if the key has an active OTP and {@code 0} otherwise.
+   *
+   * @return the number of active OTPs.
+   */
+  public int getActiveOtps() {
+    if (activeOtps >= 0) {
+      return activeOtps;
+    }
+    return hasActiveOtp() ? 1 : 0;
+  }
+
+  /**
+   * Returns the key's current entry. Policies must not modify it.
+   *
+   * @return the entry, or {@code null} if the key has none.
+   */
+  public OtpEntry getEntry() {
+    return entry;
+  }
+
+  /**
+   * Returns the time of the request.
+   *
+   * @return the time in milliseconds since the epoch.
+   */
+  public long getCurrentTimeMillis() {
+    return currentTimeMillis;
+  }
+
+  /**
+   * Returns the store the OTP will be written to. Policies may read from it, but must not modify
+   * it: the check may run inside the store's update of the key.
+   *
+   * @return the store.
+   */
+  public OtpStore getStore() {
+    return store;
+  }
+
+  /**
+   * Returns an attribute the caller supplied with the request.
+   *
+   * @param name the attribute name, such as {@code "ip"}.
+   * @return the value, or {@code null} if the caller did not supply it.
+   */
+  public String getAttribute(String name) {
+    return attributes.get(name);
+  }
+
+  /**
+   * Returns the attributes the caller supplied with the request.
+   *
+   * @return the attributes; empty if there are none.
+   */
+  public Map<String, String> getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Returns whether the key has an OTP that has not expired.
+   *
+   * @return {@code true} if the key has an active OTP.
+   */
+  public boolean hasActiveOtp() {
+    return entry != null && entry.expiryTime > currentTimeMillis;
+  }
+}
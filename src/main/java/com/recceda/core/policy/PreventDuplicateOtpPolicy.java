@@ -1,7 +1,6 @@
 package com.recceda.core.policy;
 
 import com.recceda.core.store.OtpStore;
-import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
 import com.recceda.exception.OtpGenerationException;
 
 /**
@@ -12,8 +11,12 @@ public class PreventDuplicateOtpPolicy implements Policy {
 
   @Override
   public void check(String key, OtpStore store) {
-    OtpEntry entry = store.getOtpEntry(key);
-    if (entry != null && entry.expiryTime > System.currentTimeMillis()) {
+    check(PolicyContext.lookup(key, store));
+  }
+
+  @Override
+  public void check(PolicyContext context) {
+    if (context.hasActiveOtp()) {
       throw new OtpGenerationException("An active OTP already exists for this user.");
     }
   }
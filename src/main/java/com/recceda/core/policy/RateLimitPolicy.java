@@ -0,0 +1,224 @@
+package com.recceda.core.policy;
+
+import com.recceda.core.store.OtpStore;
+import com.recceda.exception.OtpGenerationException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A policy that limits how many OTPs can be requested within a sliding time window, per key and per
+ * any other dimension of the request, such as the client IP, the tenant or a phone number prefix.
+ *
+ * <p>Each limit counts requests in a fixed-size sketch (see the builder's {@link
+ * Builder#memoryBudgetBytes(long)}), so tracking tens of millions of distinct sources never uses
+ * more memory than configured. Counts are approximate but never too low: a source over its limit is
+ * always rejected. The window is approximated by the current fixed window plus the whole previous
+ * one, so a request keeps counting for between one and two window lengths, and a source under its
+ * limit may also be rejected early if it shares counters with busy sources. A larger budget makes
+ * the latter less likely. Counting is lock-free.
+ *
+ * <p>Every request counts, including rejected ones, so a source that keeps retrying stays limited.
+ * A limit on a request attribute is skipped for requests that do not supply the attribute.
+ *
+ * <pre>{@code
+ * RateLimitPolicy rateLimit = RateLimitPolicy.builder()
+ *     .perKey(3, Duration.ofMinutes(15))
+ *     .perAttribute("ip", 20, Duration.ofMinutes(1))
+ *     .limit("prefix", context -> context.getKey().substring(0, 6), 500, Duration.ofHours(1))
+ *     .build();
+ * }</pre>
+ */
+public class RateLimitPolicy implements Policy {
+
+  /** The default memory budget of each limit. */
+  public static final long DEFAULT_MEMORY_BUDGET_BYTES = 8L << 20;
+
+  /** The default number of sketch rows. */
+  public static final int DEFAULT_DEPTH = 4;
+
+  private final Limit[] limits;
+
+  private RateLimitPolicy(List<Limit> limits) {
+    this.limits = limits.toArray(new Limit[0]);
+  }
+
+  /**
+   * Returns a builder for configuring the limits.
+   *
+   * @return a new builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public void check(String key, OtpStore store) {
+    check(new PolicyContext(key, null, store.timeSource().currentTimeMillis(), store));
+  }
+
+  @Override
+  public void check(PolicyContext context) {
+    long now = context.getCurrentTimeMillis();
+    String exceeded = null;
+    for (Limit limit : limits) {
+      String source = limit.dimension.apply(context);
+      if (source == null) {
+        continue;
+      }
+      // Count against every limit before rejecting, so each limit sees every request.
+      if (limit.sketch.incrementAndEstimate(source, now) > limit.maxRequests && exceeded == null) {
+        exceeded = limit.name;
+      }
+    }
+    if (exceeded != null) {
+      throw new OtpGenerationException("Too many OTP requests for this " + exceeded + ".");
+    }
+  }
+
+  /**
+   * Returns the number of bytes the policy uses to count requests.
+   *
+   * @return the memory used by all limits.
+   */
+  public long memoryBytes() {
+    long bytes = 0;
+    for (Limit limit : limits) {
+      bytes += limit.sketch.memoryBytes();
+    }
+    return bytes;
+  }
+
+  private static final class Limit {
+    final String name;
+    final Function<PolicyContext, String> dimension;
+    final long maxRequests;
+    final SlidingWindowSketch sketch;
+
+    Limit(
+        String name,
+        Function<PolicyContext, String> dimension,
+        long maxRequests,
+        SlidingWindowSketch sketch) {
+      this.name = name;
+      this.dimension = dimension;
+      this.maxRequests = maxRequests;
+      this.sketch = sketch;
+    }
+  }
+
+  /** A builder for {@link RateLimitPolicy}. */
+  public static final class Builder {
+    private final List<LimitSpec> specs = new ArrayList<>();
+    private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    private int depth = DEFAULT_DEPTH;
+
+    private Builder() {}
+
+    /**
+     * Limits the requests for each key.
+     *
+     * @param maxRequests the number of requests allowed within the window.
+     * @param window the length of the sliding window.
+     * @return this builder.
+     */
+    public Builder perKey(long maxRequests, Duration window) {
+      return limit("key", PolicyContext::getKey, maxRequests, window);
+    }
+
+    /**
+     * Limits the requests for each value of a request attribute.
+     *
+     * @param attribute the attribute name, such as {@code "ip"}.
+     * @param maxRequests the number of requests allowed within the window.
+     * @param window the length of the sliding window.
+     * @return this builder.
+     */
+    public Builder perAttribute(String attribute, long maxRequests, Duration window) {
+      return limit(attribute, context -> context.getAttribute(attribute), maxRequests, window);
+    }
+
+    /**
+     * Limits the requests for each value of a dimension derived from the request.
+     *
+     * @param name the name of the dimension, used in the rejection message.
+     * @param dimension derives the source to count from the request; {@code null} skips the limit.
+     * @param maxRequests the number of requests allowed within the window.
+     * @param window the length of the sliding window.
+     * @return this builder.
+     */
+    public Builder limit(
+        String name, Function<PolicyContext, String> dimension, long maxRequests, Duration window) {
+      if (maxRequests < 1 || maxRequests >= SlidingWindowSketch.MAX_COUNT) {
+        throw new IllegalArgumentException("The limit must be between 1 and 65534.");
+      }
+      if (window.toMillis() < 1) {
+        throw new IllegalArgumentException("The window must be positive.");
+      }
+      specs.add(new LimitSpec(name, dimension, maxRequests, window.toMillis()));
+      return this;
+    }
+
+    /**
+     * Sets the memory each limit may use to count requests.
+     *
+     * @param memoryBudgetBytes the memory budget per limit.
+     * @return this builder.
+     */
+    public Builder memoryBudgetBytes(long memoryBudgetBytes) {
+      this.memoryBudgetBytes = memoryBudgetBytes;
+      return this;
+    }
+
+    /**
+     * Sets the number of counters each request updates per limit.
+     *
+     * @param depth the sketch depth.
+     * @return this builder.
+     */
+    public Builder depth(int depth) {
+      this.depth = depth;
+      return this;
+    }
+
+    /**
+     * Builds the policy.
+     *
+     * @return the new policy.
+     */
+    public RateLimitPolicy build() {
+      if (specs.isEmpty()) {
+        throw new IllegalStateException("A rate limit policy needs at least one limit.");
+      }
+      List<Limit> limits = new ArrayList<>(specs.size());
+      for (LimitSpec spec : specs) {
+        limits.add(
+            new Limit(
+                spec.name,
+                spec.dimension,
+                spec.maxRequests,
+                new SlidingWindowSketch(memoryBudgetBytes, depth, spec.windowMillis)));
+      }
+      return new RateLimitPolicy(limits);
+    }
+  }
+
+  private static final class LimitSpec {
+    final String name;
+    final Function<PolicyContext, String> dimension;
+    final long maxRequests;
+    final long windowMillis;
+
+    LimitSpec(
+        String name,
+        Function<PolicyContext, String> dimension,
+        long maxRequests,
+        long windowMillis) {
+      this.name = name;
+      this.dimension = dimension;
+      this.maxRequests = maxRequests;
+      this.windowMillis = windowMillis;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.recceda.core.policy;
+
+import com.recceda.util.Fingerprints;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate per-source event counts over a sliding time window, in fixed memory.
+ *
+ * <p>Counts are kept in a count-min sketch: each source is hashed to one counter in each of {@code
+ * depth} rows, every event increments all of them, and the estimate is the smallest. Sources that
+ * collide can only inflate each other's counts, so a count is never underestimated. Two sketches
+ * alternate between consecutive windows, and the sliding count is the current window plus all of
+ * the previous one. Those two windows cover every event in the last window length, wherever it fell
+ * within them, so the count is never too low; the price is that an event keeps counting for between
+ * one and two window lengths.
+ *
+ * <p>Sources are hashed with SipHash under a random key for each sketch. A collision makes one
+ * source share another's counters, so if sources that collide could be found in advance, an
+ * attacker could get someone else's key or address rate-limited.
+ *
+ * <p>Each counter is 32 bits: the low 16 bits of the window it belongs to, and a count that
+ * saturates at 65535. A counter left over from an older window reads as zero and is reset by its
+ * next increment, so nothing has to sweep the sketch when a window ends, and updates are a single
+ * compare-and-set per row.
+ *
+ * <p>Accuracy depends on how many requests fall within a window relative to the width of a row.
+ * With up to two requests per counter, a source is pushed past a limit of five by others only a few
+ * times in a million requests. At the default depth of 4 a counter column costs 32 bytes across
+ * both windows, so the default budget of 8 MB suits about half a million requests per window.
+ */
+final class SlidingWindowSketch {
+
+  static final int MAX_COUNT = 0xFFFF;
+
+  private final AtomicIntegerArray counters;
+  private final long k0;
+  private final long k1;
+  private final int depth;
+  private final int widthMask;
+  private final long windowMillis;
+
+  /**
+   * Creates a sketch that uses at most {@code memoryBytes} bytes for its counters.
+   *
+   * @param memoryBytes the memory budget.
+   * @param depth the number of rows; more rows reduce the chance of a large overestimate.
+   * @param windowMillis the length of the sliding window.
+   */
+  SlidingWindowSketch(long memoryBytes, int depth, long windowMillis) {
+    if (depth < 1 || windowMillis < 1) {
+      throw new IllegalArgumentException("The depth and window must be positive.");
+    }
+    long perRow = memoryBytes / (2L * depth * Integer.BYTES);
+    if (perRow < 1) {
+      throw new IllegalArgumentException("The memory budget is too small.");
+    }
+    int width = Integer.highestOneBit((int) Math.min(perRow, 1 << 28));
+    this.counters = new AtomicIntegerArray(2 * depth * width);
+    this.depth = depth;
+    this.widthMask = width - 1;
+    this.windowMillis = windowMillis;
+    SecureRandom random = new SecureRandom();
+    this.k0 = random.nextLong();
+    this.k1 = random.nextLong();
+  }
+
+  /**
+   * Records one event for the source and returns the estimated number of events, including this
+   * one, within the window ending now.
+   *
+   * @param source the source of the event.
+   * @param now the current time in milliseconds.
+   * @return the estimated sliding-window count.
+   */
+  long incrementAndEstimate(String source, long now) {
+    long window = now / windowMillis;
+    long h1 = Fingerprints.sipHash24(source, k0, k1);
+    long h2 = Long.rotateLeft(h1, 32) | 1;
+    int tag = (int) window & MAX_COUNT;
+    int currentBase = (int) (window & 1) * depth;
+    int previousBase = (int) ((window - 1) & 1) * depth;
+
+    long current = Long.MAX_VALUE;
+    long previous = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      int column = (int) (h1 + row * h2) & widthMask;
+      current = Math.min(current, increment(index(currentBase + row, column), tag));
+      previous = Math.min(previous, read(index(previousBase + row, column), (tag - 1) & MAX_COUNT));
+    }
+    // Weighting the previous window by its overlap would assume its events were spread evenly, and
+    // undercounts a burst at its end.
+    return current + previous;
+  }
+
+  /** Returns the number of bytes used by the counters. */
+  long memoryBytes() {
+    return (long) counters.length() * Integer.BYTES;
+  }
+
+  private int index(int row, int column) {
+    return row * (widthMask + 1) + column;
+  }
+
+  private int increment(int index, int tag) {
+    while (true) {
+      int cell = counters.get(index);
+      int count = cell >>> 16 == tag ? cell & MAX_COUNT : 0;
+      if (count == MAX_COUNT) {
+        return count;
+      }
+      if (counters.compareAndSet(index, cell, tag << 16 | (count + 1))) {
+        return count + 1;
+      }
+    }
+  }
+
+  private int read(int index, int tag) {
+    int cell = counters.get(index);
+    return cell >>> 16 == tag ? cell & MAX_COUNT : 0;
+  }
+}
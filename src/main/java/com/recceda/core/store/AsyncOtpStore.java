@@ -0,0 +1,254 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * An {@link OtpStore} whose operations return a {@link CompletionStage} instead of blocking, for
+ * stores reached over the network such as a remote cache or database.
+ *
+ * <p>Each method mirrors the {@link OtpStore} method of the same name and completes with the same
+ * value, or exceptionally with the exception the synchronous method would throw. Use {@link
+ * #wrap(OtpStore, Executor)} to run a synchronous store on an executor, and {@link
+ * #blocking(AsyncOtpStore)} to use an asynchronous store where an {@link OtpStore} is expected.
+ */
+public interface AsyncOtpStore {
+
+  /**
+   * Stores a new OTP for the given key.
+   *
+   * @param key the unique key to associate with the OTP (e.g., user ID, email address).
+   * @param otp the OTP to store.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @return a stage that completes once the OTP is stored.
+   */
+  CompletionStage<Void> storeOtp(String key, String otp, long ttlMillis);
+
+  /**
+   * Stores a new OTP for each of the given keys.
+   *
+   * <p>The default implementation issues one {@link #storeOtp(String, String, long)} per key, all
+   * at once. Implementations backed by a store with bulk writes should override it.
+   *
+   * @param otps the OTPs to store, keyed by the unique key to associate with each OTP.
+   * @param ttlMillis the time-to-live for the OTPs in milliseconds.
+   * @return a stage that completes once every OTP is stored.
+   */
+  default CompletionStage<Void> storeOtps(Map<String, String> otps, long ttlMillis) {
+    List<CompletableFuture<Void>> stores = new ArrayList<>(otps.size());
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      stores.add(storeOtp(otp.getKey(), otp.getValue(), ttlMillis).toCompletableFuture());
+    }
+    return CompletableFuture.allOf(stores.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Checks the policies against the key's current entry and, if they all pass, generates an OTP and
+   * stores it for the key.
+   *
+   * <p>The default implementation looks the entry up with {@link #getOtpEntry(String)} and then
+   * calls {@link #storeOtp(String, String, long)}, so it is not atomic. The policies are checked on
+   * the thread that completes the lookup. The context's {@link PolicyContext#getStore()} is a
+   * {@link #blocking(AsyncOtpStore)} view, so policies should only use the context's entry.
+   *
+   * @param key the unique key to associate with the OTP.
+   * @param attributes the attributes the caller supplied for the policies.
+   * @param policies the policies that must pass before the OTP is generated.
+   * @param otpSupplier generates the OTP once the policies have passed.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @return a stage that completes with the stored OTP, or exceptionally with an {@link
+   *     com.recceda.exception.OtpGenerationException} if a policy check fails.
+   */
+  default CompletionStage<String> checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return getOtpEntry(key)
+        .thenCompose(
+            entry -> {
+              policies.check(
+                  new PolicyContext(
+                      key, entry, timeSource().currentTimeMillis(), blocking(this), attributes));
+              String otp = otpSupplier.get();
+              return storeOtp(key, otp, ttlMillis).thenApply(stored -> otp);
+            });
+  }
+
+  /**
+   * Verifies the given OTP for the specified key.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return a stage that completes with {@code true} if the OTP is valid.
+   */
+  CompletionStage<Boolean> verifyOtp(String key, String otp);
+
+  /**
+   * Verifies the given OTP for the specified key and reports why a failed verification failed.
+   *
+   * <p>The default implementation chains {@link #verifyOtp(String, String)} and, if it fails,
+   * {@link #getOtpEntry(String)}, and is therefore not atomic. Implementations should override it
+   * with a single atomic operation.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return a stage that completes with the outcome of the verification.
+   * @see OtpStore#verify(String, String)
+   */
+  default CompletionStage<VerificationResult> verify(String key, String otp) {
+    return verifyOtp(key, otp)
+        .thenCompose(
+            valid ->
+                valid
+                    ? CompletableFuture.completedFuture(VerificationResult.VALID)
+                    : getOtpEntry(key)
+                        .thenApply(
+                            entry ->
+                                entry != null
+                                    ? VerificationResult.INVALID
+                                    : VerificationResult.NOT_FOUND));
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, removes it so that it cannot be used again.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return a stage that completes with the outcome of the verification.
+   * @see OtpStore#verifyAndConsume(String, String)
+   */
+  default CompletionStage<VerificationResult> verifyAndConsume(String key, String otp) {
+    return verifyAndConsume(key, otp, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, removes it so that it cannot be used again.
+   *
+   * <p>The default implementation chains {@link #getOtpEntry(String)}, {@link #verifyOtp(String,
+   * String)} and {@link #invalidateOtp(String)}, and is therefore not atomic. Implementations
+   * should override it with a single atomic operation.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the key is locked out.
+   * @return a stage that completes with the outcome of the verification.
+   * @see OtpStore#verifyAndConsume(String, String, int)
+   */
+  default CompletionStage<VerificationResult> verifyAndConsume(
+      String key, String otp, int maxFailedAttempts) {
+    return getOtpEntry(key)
+        .thenCompose(
+            entry -> {
+              if (entry == null) {
+                return CompletableFuture.completedFuture(VerificationResult.NOT_FOUND);
+              }
+              if (entry.expiryTime <= timeSource().currentTimeMillis()) {
+                return CompletableFuture.completedFuture(VerificationResult.EXPIRED);
+              }
+              if (entry.failedAttempts >= maxFailedAttempts) {
+                return CompletableFuture.completedFuture(VerificationResult.LOCKED);
+              }
+              return verifyOtp(key, otp)
+                  .thenCompose(
+                      valid ->
+                          valid
+                              ? invalidateOtp(key).thenApply(v -> VerificationResult.VALID)
+                              : CompletableFuture.completedFuture(VerificationResult.INVALID));
+            });
+  }
+
+  /**
+   * Verifies the given OTPs.
+   *
+   * <p>The default implementation issues one {@link #verifyOtp(String, String)} per key, all at
+   * once. Implementations backed by a store with bulk reads should override it.
+   *
+   * @param otps the OTPs to verify, keyed by the unique key associated with each OTP.
+   * @return a stage that completes with, for each key in the order of {@code otps}, {@code true} if
+   *     its OTP is valid.
+   */
+  default CompletionStage<Map<String, Boolean>> verifyOtps(Map<String, String> otps) {
+    Map<String, CompletableFuture<Boolean>> pending = new LinkedHashMap<>();
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      pending.put(otp.getKey(), verifyOtp(otp.getKey(), otp.getValue()).toCompletableFuture());
+    }
+    return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            done -> {
+              Map<String, Boolean> results = new LinkedHashMap<>();
+              for (Map.Entry<String, CompletableFuture<Boolean>> result : pending.entrySet()) {
+                results.put(result.getKey(), result.getValue().join());
+              }
+              return results;
+            });
+  }
+
+  /**
+   * Retrieves the OTP entry for the specified key.
+   *
+   * @param key the unique key associated with the OTP.
+   * @return a stage that completes with the {@link OtpEntry}, or {@code null} if there is none.
+   */
+  CompletionStage<OtpEntry> getOtpEntry(String key);
+
+  /**
+   * Returns the clock that the store measures OTP expiry against.
+   *
+   * @return the store's time source; {@link TimeSource#SYSTEM} by default.
+   */
+  default TimeSource timeSource() {
+    return TimeSource.SYSTEM;
+  }
+
+  /**
+   * Invalidates the current OTP for the specified key.
+   *
+   * @param key the unique key associated with the OTP.
+   * @return a stage that completes once the OTP is invalidated.
+   */
+  CompletionStage<Void> invalidateOtp(String key);
+
+  /**
+   * Adapts a synchronous store, running each operation on the given executor so that callers are
+   * not blocked. Operations keep the atomicity of the synchronous store.
+   *
+   * @param store the synchronous store.
+   * @param executor the executor to run store operations on; {@code Runnable::run} runs them on the
+   *     calling thread, which suits in-memory stores.
+   * @return the asynchronous view; the original store if {@code store} came from {@link
+   *     #blocking(AsyncOtpStore)}.
+   */
+  static AsyncOtpStore wrap(OtpStore store, Executor executor) {
+    if (store instanceof BlockingOtpStore) {
+      return ((BlockingOtpStore) store).delegate();
+    }
+    return new ExecutorAsyncOtpStore(store, executor);
+  }
+
+  /**
+   * Adapts an asynchronous store to the {@link OtpStore} interface, waiting for each operation to
+   * complete. Exceptions that complete a stage are rethrown unwrapped.
+   *
+   * @param store the asynchronous store.
+   * @return the blocking view; the original store if {@code store} came from {@link #wrap(OtpStore,
+   *     Executor)}.
+   */
+  static OtpStore blocking(AsyncOtpStore store) {
+    if (store instanceof ExecutorAsyncOtpStore) {
+      return ((ExecutorAsyncOtpStore) store).delegate();
+    }
+    return new BlockingOtpStore(store);
+  }
+}
@@ -0,0 +1,92 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/** Waits for each operation of an {@link AsyncOtpStore} to complete. */
+final class BlockingOtpStore implements OtpStore {
+
+  private final AsyncOtpStore delegate;
+
+  BlockingOtpStore(AsyncOtpStore delegate) {
+    this.delegate = delegate;
+  }
+
+  AsyncOtpStore delegate() {
+    return delegate;
+  }
+
+  @Override
+  public void storeOtp(String key, String otp, long ttlMillis) {
+    await(delegate.storeOtp(key, otp, ttlMillis));
+  }
+
+  @Override
+  public void storeOtps(Map<String, String> otps, long ttlMillis) {
+    await(delegate.storeOtps(otps, ttlMillis));
+  }
+
+  @Override
+  public String checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return await(delegate.checkAndStore(key, attributes, policies, otpSupplier, ttlMillis));
+  }
+
+  @Override
+  public boolean verifyOtp(String key, String otp) {
+    return await(delegate.verifyOtp(key, otp));
+  }
+
+  @Override
+  public VerificationResult verify(String key, String otp) {
+    return await(delegate.verify(key, otp));
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    return await(delegate.verifyAndConsume(key, otp, maxFailedAttempts));
+  }
+
+  @Override
+  public Map<String, Boolean> verifyOtps(Map<String, String> otps) {
+    return await(delegate.verifyOtps(otps));
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(String key) {
+    return await(delegate.getOtpEntry(key));
+  }
+
+  @Override
+  public TimeSource timeSource() {
+    return delegate.timeSource();
+  }
+
+  @Override
+  public void invalidateOtp(String key) {
+    await(delegate.invalidateOtp(key));
+  }
+
+  private static <T> T await(CompletionStage<T> stage) {
+    try {
+      return stage.toCompletableFuture().join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
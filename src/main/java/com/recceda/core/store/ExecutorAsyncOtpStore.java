@@ -0,0 +1,84 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/** Runs the operations of a synchronous {@link OtpStore} on an executor. */
+final class ExecutorAsyncOtpStore implements AsyncOtpStore {
+
+  private final OtpStore delegate;
+  private final Executor executor;
+
+  ExecutorAsyncOtpStore(OtpStore delegate, Executor executor) {
+    this.delegate = delegate;
+    this.executor = executor;
+  }
+
+  OtpStore delegate() {
+    return delegate;
+  }
+
+  @Override
+  public CompletionStage<Void> storeOtp(String key, String otp, long ttlMillis) {
+    return CompletableFuture.runAsync(() -> delegate.storeOtp(key, otp, ttlMillis), executor);
+  }
+
+  @Override
+  public CompletionStage<Void> storeOtps(Map<String, String> otps, long ttlMillis) {
+    return CompletableFuture.runAsync(() -> delegate.storeOtps(otps, ttlMillis), executor);
+  }
+
+  @Override
+  public CompletionStage<String> checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return CompletableFuture.supplyAsync(
+        () -> delegate.checkAndStore(key, attributes, policies, otpSupplier, ttlMillis), executor);
+  }
+
+  @Override
+  public CompletionStage<Boolean> verifyOtp(String key, String otp) {
+    return CompletableFuture.supplyAsync(() -> delegate.verifyOtp(key, otp), executor);
+  }
+
+  @Override
+  public CompletionStage<VerificationResult> verify(String key, String otp) {
+    return CompletableFuture.supplyAsync(() -> delegate.verify(key, otp), executor);
+  }
+
+  @Override
+  public CompletionStage<VerificationResult> verifyAndConsume(
+      String key, String otp, int maxFailedAttempts) {
+    return CompletableFuture.supplyAsync(
+        () -> delegate.verifyAndConsume(key, otp, maxFailedAttempts), executor);
+  }
+
+  @Override
+  public CompletionStage<Map<String, Boolean>> verifyOtps(Map<String, String> otps) {
+    return CompletableFuture.supplyAsync(() -> delegate.verifyOtps(otps), executor);
+  }
+
+  @Override
+  public CompletionStage<OtpEntry> getOtpEntry(String key) {
+    return CompletableFuture.supplyAsync(() -> delegate.getOtpEntry(key), executor);
+  }
+
+  @Override
+  public TimeSource timeSource() {
+    return delegate.timeSource();
+  }
+
+  @Override
+  public CompletionStage<Void> invalidateOtp(String key) {
+    return CompletableFuture.runAsync(() -> delegate.invalidateOtp(key), executor);
+  }
+}
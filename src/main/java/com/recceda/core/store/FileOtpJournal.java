@@ -0,0 +1,591 @@
+package com.recceda.core.store;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.ThreadFactories;
+import com.recceda.util.TimeSource;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OtpJournal} that appends changes to a write-ahead log in a directory and periodically
+ * compacts the log into a snapshot.
+ *
+ * <p>Changes are queued by the calling thread and written by a single background writer, which
+ * appends whole batches at once. How long a change may stay in memory depends on the {@link
+ * Durability} level. Each record carries its length and a CRC-32 checksum, so a record that was
+ * only partly written when the process died is detected and cut off when the journal is reopened.
+ *
+ * <p>Every so often the writer starts a new log file, merges the previous snapshot and the log it
+ * just closed into a new snapshot and deletes the older files, so the directory only holds the
+ * active OTPs and the changes made since the last snapshot. Entries that expired while the process
+ * was down are not restored. Expiry is judged by the store's {@link TimeSource}, which also paces
+ * the snapshots.
+ *
+ * <p>A directory must only be used by one journal at a time.
+ */
+public class FileOtpJournal implements OtpJournal, Closeable {
+
+  /** How long a recorded change may remain only in memory. */
+  public enum Durability {
+    /** Changes are written in the background and only forced to disk by snapshots and close. */
+    ASYNC,
+    /** Changes are forced to disk after every batch, but callers do not wait for it. */
+    BATCHED,
+    /** Callers wait until the batch holding their change has been forced to disk. */
+    SYNC
+  }
+
+  public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 60_000;
+
+  private static final Logger log = LoggerFactory.getLogger(FileOtpJournal.class);
+
+  private static final int QUEUE_CAPACITY = 65_536;
+  private static final int MAX_BATCH_SIZE = 4096;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private static final byte STORE = 1;
+  private static final byte FAILED_ATTEMPT = 2;
+  private static final byte REMOVAL = 3;
+
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".bin";
+  private static final String LOG_PREFIX = "journal-";
+  private static final String LOG_SUFFIX = ".log";
+
+  private final Path directory;
+  private final Durability durability;
+  private final long snapshotIntervalMillis;
+  private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private final Object durableMonitor = new Object();
+
+  private boolean attached;
+  private TimeSource timeSource = TimeSource.SYSTEM;
+  private FileChannel logChannel;
+  private long generation;
+  private long lastSequence;
+  private long durableSequence;
+  private Thread writer;
+  private volatile boolean running = true;
+  private volatile boolean writerDone;
+  private volatile IOException failure;
+  private int truncatedRecords;
+
+  private FileOtpJournal(Path directory, Durability durability, long snapshotIntervalMillis) {
+    this.directory = directory;
+    this.durability = durability;
+    this.snapshotIntervalMillis = snapshotIntervalMillis;
+  }
+
+  /**
+   * Opens the journal in the given directory with the default snapshot interval, creating the
+   * directory if it does not exist.
+   *
+   * @param directory the directory holding the journal files.
+   * @param durability how long a recorded change may remain only in memory.
+   * @return the journal, ready to be passed to {@link ReccedaOtpStore.Builder#journal}.
+   * @throws IOException if the directory cannot be created.
+   */
+  public static FileOtpJournal open(Path directory, Durability durability) throws IOException {
+    return open(directory, durability, DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Opens the journal in the given directory, creating the directory if it does not exist.
+   *
+   * @param directory the directory holding the journal files.
+   * @param durability how long a recorded change may remain only in memory.
+   * @param snapshotIntervalMillis how often the log is compacted into a snapshot; {@code 0} only
+   *     compacts when the journal is attached to a store.
+   * @return the journal, ready to be passed to {@link ReccedaOtpStore.Builder#journal}.
+   * @throws IOException if the directory cannot be created.
+   */
+  public static FileOtpJournal open(
+      Path directory, Durability durability, long snapshotIntervalMillis) throws IOException {
+    if (snapshotIntervalMillis < 0) {
+      throw new IllegalArgumentException("The snapshot interval must not be negative.");
+    }
+    Files.createDirectories(directory);
+    return new FileOtpJournal(directory, durability, snapshotIntervalMillis);
+  }
+
+  /**
+   * Restores the entries from the latest snapshot and the logs written since with the system clock.
+   *
+   * @throws UncheckedIOException if the journal files cannot be read or written.
+   * @throws IllegalStateException if the journal is already attached to a store.
+   */
+  @Override
+  public void attach(Map<String, OtpEntry> entries) {
+    attach(entries, TimeSource.SYSTEM);
+  }
+
+  /**
+   * Restores the entries from the latest snapshot and the logs written since, then compacts them
+   * into a new snapshot and starts the background writer.
+   *
+   * @throws UncheckedIOException if the journal files cannot be read or written.
+   * @throws IllegalStateException if the journal is already attached to a store.
+   */
+  @Override
+  public synchronized void attach(Map<String, OtpEntry> entries, TimeSource timeSource) {
+    if (attached) {
+      throw new IllegalStateException("The OTP journal is already attached to a store.");
+    }
+    try {
+      this.timeSource = timeSource;
+      Map<String, OtpEntry> restored = new HashMap<>();
+      generation = replay(restored);
+      long now = timeSource.currentTimeMillis();
+      restored.values().removeIf(entry -> entry.expiryTime <= now);
+      entries.putAll(restored);
+      // The store is not in use yet, so the restored entries are exactly what the files hold.
+      startLog();
+      writeSnapshot(restored);
+      attached = true;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to restore the OTP journal.", e);
+    }
+    writer = ThreadFactories.daemonThreadFactory("recceda-otp-journal-").newThread(this::runWriter);
+    writer.start();
+  }
+
+  @Override
+  public long recordStore(String key, OtpEntry entry) {
+    return append(storePayload(key, entry));
+  }
+
+  @Override
+  public long recordFailedAttempt(String key, int failedAttempts) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(1 + 4 + keyBytes.length + 4);
+    payload.put(FAILED_ATTEMPT).putInt(keyBytes.length).put(keyBytes).putInt(failedAttempts);
+    return append(payload.array());
+  }
+
+  @Override
+  public long recordRemoval(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(1 + 4 + keyBytes.length);
+    payload.put(REMOVAL).putInt(keyBytes.length).put(keyBytes);
+    return append(payload.array());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Only waits at the {@link Durability#SYNC} level.
+   *
+   * @throws IllegalStateException if the journal failed or was closed before the record was forced
+   *     to disk.
+   */
+  @Override
+  public void awaitDurable(long sequence) {
+    if (durability != Durability.SYNC) {
+      return;
+    }
+    synchronized (durableMonitor) {
+      while (durableSequence < sequence) {
+        if (writerDone) {
+          throw new IllegalStateException("The OTP journal stopped before the change was written.");
+        }
+        try {
+          durableMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for the OTP journal.", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of partly written or corrupt records cut off the end of the logs when the
+   * journal was attached.
+   *
+   * @return the number of cut-off records; {@code 0} after a clean shutdown.
+   */
+  public int truncatedRecords() {
+    return truncatedRecords;
+  }
+
+  /**
+   * Writes the changes that are still queued, forces them to disk and closes the journal. Changes
+   * recorded afterwards are rejected.
+   *
+   * @throws IOException if the journal failed to write a change.
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    Thread current = writer;
+    if (current != null) {
+      try {
+        current.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while closing the OTP journal.", e);
+      }
+    }
+    synchronized (this) {
+      if (logChannel != null && logChannel.isOpen()) {
+        logChannel.close();
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private long append(byte[] payload) {
+    appendLock.lock();
+    try {
+      if (!running || writerDone) {
+        throw new IllegalStateException("The OTP journal has been closed.");
+      }
+      long sequence = ++lastSequence;
+      queue.put(new Record(sequence, payload));
+      return sequence;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while recording an OTP change.", e);
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  private void runWriter() {
+    List<Record> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    long nextSnapshot = timeSource.currentTimeMillis() + snapshotIntervalMillis;
+    try {
+      while (running || !queue.isEmpty()) {
+        Record first = queue.poll(10, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+          write(batch);
+          batch.clear();
+        }
+        if (snapshotIntervalMillis > 0 && timeSource.currentTimeMillis() >= nextSnapshot) {
+          compact();
+          nextSnapshot = timeSource.currentTimeMillis() + snapshotIntervalMillis;
+        }
+      }
+      logChannel.force(false);
+    } catch (IOException e) {
+      log.error("The OTP journal failed; changes are no longer recorded", e);
+      failure = e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      synchronized (durableMonitor) {
+        writerDone = true;
+        durableMonitor.notifyAll();
+      }
+    }
+  }
+
+  private void write(List<Record> batch) throws IOException {
+    int size = 0;
+    for (Record record : batch) {
+      size += RECORD_HEADER_SIZE + record.payload.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    CRC32 crc = new CRC32();
+    for (Record record : batch) {
+      crc.reset();
+      crc.update(record.payload);
+      buffer.putInt(record.payload.length).putInt((int) crc.getValue()).put(record.payload);
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      logChannel.write(buffer);
+    }
+    if (durability != Durability.ASYNC) {
+      logChannel.force(false);
+    }
+    synchronized (durableMonitor) {
+      durableSequence = batch.get(batch.size() - 1).sequence;
+      durableMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Starts a new log, merges the previous snapshot and the log just closed into a snapshot of the
+   * new generation and deletes the files of older generations.
+   *
+   * <p>The snapshot is built from the files rather than from the store's entries. The store records
+   * a change before its map shows it, so the entries could still lack a change that is already in
+   * the closed log, and deleting the log would then lose it. Changes recorded while the snapshot is
+   * written go to the new log, which is replayed on top of the snapshot.
+   */
+  private synchronized void compact() throws IOException {
+    long previous = generation;
+    startLog();
+    Map<String, OtpEntry> live = new HashMap<>();
+    Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, previous, SNAPSHOT_SUFFIX));
+    if (Files.exists(snapshot)) {
+      readRecords(snapshot, live, false);
+    }
+    readRecords(directory.resolve(fileName(LOG_PREFIX, previous, LOG_SUFFIX)), live, false);
+    writeSnapshot(live);
+  }
+
+  /** Forces and closes the current log, if any, and starts the log of the next generation. */
+  private void startLog() throws IOException {
+    long next = generation + 1;
+    FileChannel nextLog =
+        FileChannel.open(
+            directory.resolve(fileName(LOG_PREFIX, next, LOG_SUFFIX)),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    if (logChannel != null) {
+      logChannel.force(false);
+      logChannel.close();
+    }
+    logChannel = nextLog;
+    generation = next;
+  }
+
+  /**
+   * Writes the entries that have not expired to the snapshot of the current generation and deletes
+   * the files of older generations.
+   */
+  private void writeSnapshot(Map<String, OtpEntry> entries) throws IOException {
+    Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, generation, SNAPSHOT_SUFFIX));
+    Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+    long now = timeSource.currentTimeMillis();
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      List<Record> batch = new ArrayList<>(MAX_BATCH_SIZE);
+      for (Map.Entry<String, OtpEntry> entry : entries.entrySet()) {
+        OtpEntry otpEntry = entry.getValue();
+        if (otpEntry.expiryTime <= now) {
+          continue;
+        }
+        batch.add(new Record(0, storePayload(entry.getKey(), otpEntry)));
+        if (batch.size() == MAX_BATCH_SIZE) {
+          writeRecords(channel, batch);
+          batch.clear();
+        }
+      }
+      writeRecords(channel, batch);
+      channel.force(true);
+    }
+    Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long fileGeneration = generationOf(name);
+        if ((fileGeneration >= 0 && fileGeneration < generation) || name.endsWith(".tmp")) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  private static byte[] storePayload(String key, OtpEntry entry) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload =
+        ByteBuffer.allocate(1 + 4 + keyBytes.length + 4 + entry.otpHash.length + 8 + 4);
+    payload.put(STORE).putInt(keyBytes.length).put(keyBytes);
+    payload.putInt(entry.otpHash.length).put(entry.otpHash);
+    payload.putLong(entry.expiryTime).putInt(entry.failedAttempts);
+    return payload.array();
+  }
+
+  private static void writeRecords(FileChannel channel, List<Record> records) throws IOException {
+    CRC32 crc = new CRC32();
+    for (Record record : records) {
+      crc.reset();
+      crc.update(record.payload);
+      ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.payload.length);
+      buffer.putInt(record.payload.length).putInt((int) crc.getValue()).put(record.payload);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Applies the latest snapshot and the logs written since to the map, and returns the highest
+   * generation found.
+   */
+  private long replay(Map<String, OtpEntry> target) throws IOException {
+    TreeMap<Long, Path> snapshots = new TreeMap<>();
+    TreeMap<Long, Path> logs = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long fileGeneration = generationOf(name);
+        if (fileGeneration < 0) {
+          continue;
+        }
+        if (name.startsWith(SNAPSHOT_PREFIX)) {
+          snapshots.put(fileGeneration, file);
+        } else {
+          logs.put(fileGeneration, file);
+        }
+      }
+    }
+
+    long base = 0;
+    if (!snapshots.isEmpty()) {
+      base = snapshots.lastKey();
+      readRecords(snapshots.lastEntry().getValue(), target, false);
+    }
+    for (Path file : logs.tailMap(base, true).values()) {
+      truncatedRecords += readRecords(file, target, true);
+    }
+    long latest = base;
+    if (!logs.isEmpty()) {
+      latest = Math.max(latest, logs.lastKey());
+    }
+    return latest;
+  }
+
+  /**
+   * Applies the records in the file to the map. Reading stops at the first partly written or
+   * corrupt record; if {@code truncate} is set, the file is cut off there.
+   *
+   * @return {@code 1} if the file was cut off, otherwise {@code 0}.
+   */
+  private static int readRecords(Path file, Map<String, OtpEntry> target, boolean truncate)
+      throws IOException {
+    long valid = 0;
+    boolean torn = false;
+    try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+      DataInputStream input = new DataInputStream(stream);
+      CRC32 crc = new CRC32();
+      while (true) {
+        int length;
+        try {
+          length = input.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        try {
+          int checksum = input.readInt();
+          if (length < 1 || length > MAX_RECORD_SIZE) {
+            torn = true;
+            break;
+          }
+          byte[] payload = new byte[length];
+          input.readFully(payload);
+          crc.reset();
+          crc.update(payload);
+          if ((int) crc.getValue() != checksum) {
+            torn = true;
+            break;
+          }
+          apply(ByteBuffer.wrap(payload), target);
+          valid += RECORD_HEADER_SIZE + length;
+        } catch (EOFException e) {
+          torn = true;
+          break;
+        }
+      }
+    }
+    if (!torn && valid < Files.size(file)) {
+      torn = true;
+    }
+    if (torn && truncate) {
+      log.warn("Truncating a partly written record at offset {} of {}", valid, file);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(valid);
+      }
+    }
+    return torn ? 1 : 0;
+  }
+
+  private static void apply(ByteBuffer payload, Map<String, OtpEntry> target) throws IOException {
+    byte type = payload.get();
+    byte[] keyBytes = new byte[payload.getInt()];
+    payload.get(keyBytes);
+    String key = new String(keyBytes, StandardCharsets.UTF_8);
+    switch (type) {
+      case STORE:
+        byte[] otpHash = new byte[payload.getInt()];
+        payload.get(otpHash);
+        OtpEntry entry = new OtpEntry(otpHash, payload.getLong());
+        entry.failedAttempts = payload.getInt();
+        target.put(key, entry);
+        break;
+      case FAILED_ATTEMPT:
+        OtpEntry existing = target.get(key);
+        if (existing != null) {
+          existing.failedAttempts = payload.getInt();
+        }
+        break;
+      case REMOVAL:
+        target.remove(key);
+        break;
+      default:
+        throw new IOException("Unknown OTP journal record type " + type + ".");
+    }
+  }
+
+  private static String fileName(String prefix, long generation, String suffix) {
+    return String.format("%s%016d%s", prefix, generation, suffix);
+  }
+
+  /** Returns the generation of a snapshot or log file, or {@code -1} for any other file. */
+  private static long generationOf(String name) {
+    String digits;
+    if (name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX)) {
+      digits = name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length());
+    } else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+      digits = name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length());
+    } else {
+      return -1;
+    }
+    try {
+      return Long.parseLong(digits);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static final class Record {
+    final long sequence;
+    final byte[] payload;
+
+    Record(long sequence, byte[] payload) {
+      this.sequence = sequence;
+      this.payload = payload;
+    }
+  }
+}
@@ -0,0 +1,594 @@
+package com.recceda.core.store;
+
+import com.recceda.util.Fingerprints;
+import com.recceda.util.TimeSource;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks failed verification attempts per key, independently of the key's OTP, and locks keys out
+ * for escalating periods.
+ *
+ * <p>An {@link OtpStore} resets a key's failed-attempt counter whenever a new OTP is stored, and
+ * forgets it when the OTP expires, so an attacker could otherwise start over by waiting or by
+ * requesting a new OTP. This index remembers each key for its own time-to-live after the last
+ * failure. After {@code maxFailures} failures the key is locked out for the base lockout period,
+ * and each further lockout doubles the period, up to the maximum. A successful verification clears
+ * the key.
+ *
+ * <p>Callers that verify concurrently reserve each attempt with {@link #tryAcquireAttempt(String)}
+ * before checking the OTP and settle it with {@link #releaseAttempt(String, boolean)} or {@link
+ * #recordSuccess(String)} afterwards. Attempts in flight count against the key's remaining
+ * failures, so concurrent requests cannot get more than {@code maxFailures} wrong guesses past the
+ * check.
+ *
+ * <p>Records are kept in primitive arrays rather than objects: a 64-bit key fingerprint, the
+ * failure count, attempts in flight and lockout level in one {@code int}, and the lockout end and
+ * record expiry as seconds since the epoch. That is 20 bytes per slot, or about 27 bytes per
+ * tracked key at full capacity. The arrays are split into independently locked segments, each a
+ * linear-probing hash table with backward-shift deletion, so lookups and updates take constant
+ * time. Expired records are reclaimed when they are looked up or when a segment fills up. If a
+ * segment is full of live records, the record that would expire soonest near the new key is evicted
+ * and counted in {@link #evictions()}; size the capacity, with some headroom, for the number of
+ * keys that fail within one time-to-live.
+ *
+ * <p>Fingerprints are SipHash values of the key under a secret key chosen at random per index, so a
+ * client cannot pick a key that shares another key's record to clear its failures or lock it out.
+ * Two keys share a record only by a chance 64-bit collision.
+ */
+public class LockoutIndex {
+
+  /** The default number of failures that trigger a lockout. */
+  public static final int DEFAULT_MAX_FAILURES = 5;
+
+  /** The default length of the first lockout. */
+  public static final Duration DEFAULT_BASE_LOCKOUT = Duration.ofMinutes(1);
+
+  /** The default upper bound on the lockout length. */
+  public static final Duration DEFAULT_MAX_LOCKOUT = Duration.ofHours(24);
+
+  /** The default time a key is remembered after its last failure or lockout. */
+  public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+  /** The default number of keys the index can track. */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+
+  static final double LOAD_FACTOR = 0.75;
+
+  private static final int SEGMENTS = 64;
+  private static final int FAILURE_MASK = 0xFFFF;
+  private static final int MAX_PENDING = 0xFF;
+  private static final int MAX_LEVEL = 0xFF;
+
+  private final Segment[] segments;
+  private final long k0;
+  private final long k1;
+  private final int maxFailures;
+  private final long baseLockoutMillis;
+  private final long maxLockoutMillis;
+  private final long ttlMillis;
+  private final TimeSource timeSource;
+  private final LongAdder evictions = new LongAdder();
+
+  private LockoutIndex(Builder builder) {
+    int perSegment = (builder.capacity + SEGMENTS - 1) / SEGMENTS;
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(perSegment);
+    }
+    SecureRandom random = new SecureRandom();
+    this.k0 = random.nextLong();
+    this.k1 = random.nextLong();
+    this.maxFailures = builder.maxFailures;
+    this.baseLockoutMillis = builder.baseLockout.toMillis();
+    this.maxLockoutMillis = builder.maxLockout.toMillis();
+    this.ttlMillis = builder.ttl.toMillis();
+    this.timeSource = builder.timeSource;
+  }
+
+  /**
+   * Returns a builder for configuring the index.
+   *
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns whether the key is currently locked out.
+   *
+   * @param key the unique key.
+   * @return {@code true} if the key is locked out.
+   */
+  public boolean isLocked(String key) {
+    return lockedUntil(key) != 0;
+  }
+
+  /**
+   * Returns when the key's current lockout ends.
+   *
+   * @param key the unique key.
+   * @return the end of the lockout in milliseconds since the epoch, or 0 if the key is not locked.
+   */
+  public long lockedUntil(String key) {
+    return lockedUntil(key, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Records a failed verification for the key, locking it out if it has reached the maximum number
+   * of failures.
+   *
+   * @param key the unique key.
+   * @return the end of the key's lockout in milliseconds since the epoch, or 0 if it is not locked.
+   */
+  public long recordFailure(String key) {
+    return recordFailure(key, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Reserves a verification attempt for the key, unless it is locked out or the attempts already in
+   * flight could use up its remaining failures. A reserved attempt must be settled with {@link
+   * #releaseAttempt(String, boolean)} or {@link #recordSuccess(String)}.
+   *
+   * @param key the unique key.
+   * @return {@code true} if the attempt may go ahead, {@code false} if it must be refused as
+   *     locked.
+   */
+  public boolean tryAcquireAttempt(String key) {
+    return tryAcquireAttempt(key, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Settles an attempt reserved with {@link #tryAcquireAttempt(String)} that did not succeed. A
+   * failed attempt is recorded like {@link #recordFailure(String)}; any other attempt, such as one
+   * for a key without an OTP, is handed back without counting.
+   *
+   * @param key the unique key.
+   * @param failed whether the attempt was a wrong OTP.
+   * @return the end of the key's lockout in milliseconds since the epoch, or 0 if it is not locked.
+   */
+  public long releaseAttempt(String key, boolean failed) {
+    return releaseAttempt(key, failed, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Records a successful verification for the key, which clears its failures and lockout history.
+   *
+   * @param key the unique key.
+   */
+  public void recordSuccess(String key) {
+    long fingerprint = fingerprint(key);
+    segment(fingerprint).remove(fingerprint);
+  }
+
+  /**
+   * Returns the number of failures recorded for the key since its last lockout.
+   *
+   * @param key the unique key.
+   * @return the failure count, or 0 if the key is not tracked.
+   */
+  public int failures(String key) {
+    return failures(key, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Returns the number of keys tracked, including records that have expired but not yet been
+   * reclaimed.
+   *
+   * @return the number of records.
+   */
+  public long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of live records evicted to make room for new keys.
+   *
+   * @return the eviction count.
+   */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Returns the number of bytes used by the index's arrays.
+   *
+   * @return the memory used by the records.
+   */
+  public long memoryBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += (long) segment.fingerprints.length * Segment.SLOT_BYTES;
+    }
+    return bytes;
+  }
+
+  long lockedUntil(String key, long now) {
+    long fingerprint = fingerprint(key);
+    Segment segment = segment(fingerprint);
+    int nowSeconds = seconds(now);
+    segment.lock.lock();
+    try {
+      int slot = segment.find(fingerprint, nowSeconds);
+      if (slot < 0 || Integer.compareUnsigned(segment.lockedUntil[slot], nowSeconds) <= 0) {
+        return 0;
+      }
+      return Integer.toUnsignedLong(segment.lockedUntil[slot]) * 1000;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  long recordFailure(String key, long now) {
+    long fingerprint = fingerprint(key);
+    Segment segment = segment(fingerprint);
+    int nowSeconds = seconds(now);
+    segment.lock.lock();
+    try {
+      int slot = segment.find(fingerprint, nowSeconds);
+      if (slot < 0) {
+        slot = segment.insert(fingerprint, nowSeconds, evictions);
+      }
+      return fail(segment, slot, now);
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  boolean tryAcquireAttempt(String key, long now) {
+    long fingerprint = fingerprint(key);
+    Segment segment = segment(fingerprint);
+    int nowSeconds = seconds(now);
+    segment.lock.lock();
+    try {
+      int slot = segment.find(fingerprint, nowSeconds);
+      if (slot < 0) {
+        slot = segment.insert(fingerprint, nowSeconds, evictions);
+        segment.expiresAt[slot] = ceilSeconds(now + ttlMillis);
+      } else if (Integer.compareUnsigned(segment.lockedUntil[slot], nowSeconds) > 0) {
+        return false;
+      }
+      int counters = segment.counters[slot];
+      int pending = pending(counters);
+      if ((counters & FAILURE_MASK) + pending >= maxFailures || pending == MAX_PENDING) {
+        return false;
+      }
+      segment.counters[slot] = counters + (1 << 16);
+      return true;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  long releaseAttempt(String key, boolean failed, long now) {
+    long fingerprint = fingerprint(key);
+    Segment segment = segment(fingerprint);
+    int nowSeconds = seconds(now);
+    segment.lock.lock();
+    try {
+      int slot = segment.find(fingerprint, nowSeconds);
+      if (slot < 0) {
+        // The record expired or was cleared while the attempt was in flight.
+        return failed ? fail(segment, segment.insert(fingerprint, nowSeconds, evictions), now) : 0;
+      }
+      if (pending(segment.counters[slot]) > 0) {
+        segment.counters[slot] -= 1 << 16;
+      }
+      if (failed) {
+        return fail(segment, slot, now);
+      }
+      if (segment.counters[slot] == 0 && segment.lockedUntil[slot] == 0) {
+        // Only the reservation was kept for the key, so it need not take up room any longer.
+        segment.delete(slot);
+        return 0;
+      }
+      int lockedUntil = segment.lockedUntil[slot];
+      return Integer.compareUnsigned(lockedUntil, nowSeconds) > 0
+          ? Integer.toUnsignedLong(lockedUntil) * 1000
+          : 0;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /** Counts a failure in the slot's record, locking the key out if it has reached the maximum. */
+  private long fail(Segment segment, int slot, long now) {
+    int counters = segment.counters[slot];
+    int failures = (counters & FAILURE_MASK) + 1;
+    int level = counters >>> 24;
+    long lockedUntil = Integer.toUnsignedLong(segment.lockedUntil[slot]) * 1000;
+    if (failures >= maxFailures) {
+      level = Math.min(level + 1, MAX_LEVEL);
+      failures = 0;
+      lockedUntil = Math.max(lockedUntil, now + lockoutMillis(level));
+      segment.lockedUntil[slot] = ceilSeconds(lockedUntil);
+    }
+    segment.counters[slot] = level << 24 | pending(counters) << 16 | failures;
+    segment.expiresAt[slot] = ceilSeconds(Math.max(now, lockedUntil) + ttlMillis);
+    return lockedUntil > now ? Integer.toUnsignedLong(segment.lockedUntil[slot]) * 1000 : 0;
+  }
+
+  private static int pending(int counters) {
+    return (counters >>> 16) & MAX_PENDING;
+  }
+
+  int failures(String key, long now) {
+    long fingerprint = fingerprint(key);
+    Segment segment = segment(fingerprint);
+    segment.lock.lock();
+    try {
+      int slot = segment.find(fingerprint, seconds(now));
+      return slot < 0 ? 0 : segment.counters[slot] & FAILURE_MASK;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  private long lockoutMillis(int level) {
+    long lockout = baseLockoutMillis;
+    for (int i = 1; i < level && lockout < maxLockoutMillis; i++) {
+      lockout = lockout > maxLockoutMillis / 2 ? maxLockoutMillis : lockout << 1;
+    }
+    return lockout;
+  }
+
+  private long fingerprint(String key) {
+    long fingerprint = Fingerprints.sipHash24(key, k0, k1);
+    // Zero marks an empty slot.
+    return fingerprint == 0 ? 1 : fingerprint;
+  }
+
+  private Segment segment(long fingerprint) {
+    return segments[(int) fingerprint & (SEGMENTS - 1)];
+  }
+
+  /** Returns the time as unsigned seconds since the epoch, which lasts until 2106. */
+  private static int seconds(long millis) {
+    return (int) (millis / 1000);
+  }
+
+  private static int ceilSeconds(long millis) {
+    return (int) ((millis + 999) / 1000);
+  }
+
+  /** One independently locked, linear-probing table of records. */
+  private static final class Segment {
+    static final int SLOT_BYTES = Long.BYTES + 3 * Integer.BYTES;
+
+    final ReentrantLock lock = new ReentrantLock();
+    final long[] fingerprints;
+    final int[] counters;
+    final int[] lockedUntil;
+    final int[] expiresAt;
+    final int maxSize;
+    int size;
+
+    Segment(int capacity) {
+      int slots = Math.max((int) Math.ceil(capacity / LOAD_FACTOR), capacity + 1);
+      this.fingerprints = new long[slots];
+      this.counters = new int[slots];
+      this.lockedUntil = new int[slots];
+      this.expiresAt = new int[slots];
+      this.maxSize = capacity;
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Returns the slot of the live record with the fingerprint, or -1; drops it if expired. */
+    int find(long fingerprint, int now) {
+      for (int slot = home(fingerprint); ; slot = next(slot)) {
+        long current = fingerprints[slot];
+        if (current == 0) {
+          return -1;
+        }
+        if (current == fingerprint) {
+          if (Integer.compareUnsigned(expiresAt[slot], now) <= 0) {
+            delete(slot);
+            return -1;
+          }
+          return slot;
+        }
+      }
+    }
+
+    /** Adds an empty record for a fingerprint that is not in the table and returns its slot. */
+    int insert(long fingerprint, int now, LongAdder evictions) {
+      if (size >= maxSize) {
+        sweep(now);
+      }
+      if (size >= maxSize) {
+        evictNear(home(fingerprint));
+        evictions.increment();
+      }
+      int slot = home(fingerprint);
+      while (fingerprints[slot] != 0) {
+        slot = next(slot);
+      }
+      fingerprints[slot] = fingerprint;
+      counters[slot] = 0;
+      lockedUntil[slot] = 0;
+      size++;
+      return slot;
+    }
+
+    void remove(long fingerprint) {
+      lock.lock();
+      try {
+        for (int slot = home(fingerprint); fingerprints[slot] != 0; slot = next(slot)) {
+          if (fingerprints[slot] == fingerprint) {
+            delete(slot);
+            return;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void sweep(int now) {
+      for (int slot = 0; slot < fingerprints.length; ) {
+        if (fingerprints[slot] != 0 && Integer.compareUnsigned(expiresAt[slot], now) <= 0) {
+          // Deletion may shift the next record into this slot, so look at it again.
+          delete(slot);
+        } else {
+          slot++;
+        }
+      }
+    }
+
+    /** Evicts the record that expires soonest in the first run of records at or after the slot. */
+    private void evictNear(int start) {
+      int victim = -1;
+      for (int slot = start; ; slot = next(slot)) {
+        if (fingerprints[slot] == 0) {
+          if (victim >= 0) {
+            break;
+          }
+        } else if (victim < 0 || Integer.compareUnsigned(expiresAt[slot], expiresAt[victim]) < 0) {
+          victim = slot;
+        }
+      }
+      delete(victim);
+    }
+
+    void delete(int slot) {
+      int hole = slot;
+      fingerprints[hole] = 0;
+      for (int next = next(hole); fingerprints[next] != 0; next = next(next)) {
+        int home = home(fingerprints[next]);
+        // The record may move back into the hole unless its home lies cyclically in (hole, next].
+        boolean homeAfterHole =
+            hole <= next ? home > hole && home <= next : home > hole || home <= next;
+        if (!homeAfterHole) {
+          fingerprints[hole] = fingerprints[next];
+          counters[hole] = counters[next];
+          lockedUntil[hole] = lockedUntil[next];
+          expiresAt[hole] = expiresAt[next];
+          fingerprints[next] = 0;
+          hole = next;
+        }
+      }
+      size--;
+    }
+
+    private int home(long fingerprint) {
+      // The low bits choose the segment; the high bits choose the slot, without a division.
+      return (int) (((fingerprint >>> 32) * fingerprints.length) >>> 32);
+    }
+
+    private int next(int slot) {
+      return slot + 1 == fingerprints.length ? 0 : slot + 1;
+    }
+  }
+
+  /** A builder for {@link LockoutIndex}. */
+  public static final class Builder {
+    private int maxFailures = DEFAULT_MAX_FAILURES;
+    private Duration baseLockout = DEFAULT_BASE_LOCKOUT;
+    private Duration maxLockout = DEFAULT_MAX_LOCKOUT;
+    private Duration ttl = DEFAULT_TTL;
+    private int capacity = DEFAULT_CAPACITY;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+
+    private Builder() {}
+
+    /**
+     * Sets the number of failures that trigger a lockout.
+     *
+     * @param maxFailures the failures allowed before each lockout.
+     * @return this builder.
+     */
+    public Builder maxFailures(int maxFailures) {
+      this.maxFailures = maxFailures;
+      return this;
+    }
+
+    /**
+     * Sets the length of the first lockout; each further lockout doubles it.
+     *
+     * @param baseLockout the first lockout period.
+     * @return this builder.
+     */
+    public Builder baseLockout(Duration baseLockout) {
+      this.baseLockout = baseLockout;
+      return this;
+    }
+
+    /**
+     * Sets the upper bound on the lockout length.
+     *
+     * @param maxLockout the longest lockout period.
+     * @return this builder.
+     */
+    public Builder maxLockout(Duration maxLockout) {
+      this.maxLockout = maxLockout;
+      return this;
+    }
+
+    /**
+     * Sets how long a key is remembered after its last failure or the end of its last lockout.
+     *
+     * @param ttl the time-to-live of a record.
+     * @return this builder.
+     */
+    public Builder ttl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /**
+     * Sets the number of keys the index can track; the arrays are allocated up front.
+     *
+     * @param capacity the maximum number of records.
+     * @return this builder.
+     */
+    public Builder capacity(int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Sets the clock that lockouts and record lifetimes are measured against.
+     *
+     * @param timeSource the time source.
+     * @return this builder.
+     */
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    /**
+     * Builds the index.
+     *
+     * @return the new index.
+     */
+    public LockoutIndex build() {
+      if (maxFailures < 1 || maxFailures > FAILURE_MASK) {
+        throw new IllegalArgumentException("The maximum number of failures must be positive.");
+      }
+      if (baseLockout.toMillis() < 1 || maxLockout.compareTo(baseLockout) < 0) {
+        throw new IllegalArgumentException(
+            "The base lockout must be positive and no longer than the maximum lockout.");
+      }
+      if (ttl.isNegative() || ttl.isZero() || capacity < 1) {
+        throw new IllegalArgumentException("The time-to-live and capacity must be positive.");
+      }
+      return new LockoutIndex(this);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.recceda.core.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * An off-heap OTP store backed by a memory-mapped file, so that active OTPs survive a restart.
+ *
+ * <p>The file holds the same fixed-size records as {@link OffHeapOtpStore}, mapped directly into
+ * memory: reads and writes go straight to the page cache with no copying or serialization. Opening
+ * an existing file only maps it, so startup is near-instant; entries that expired while the process
+ * was down are skipped and reclaimed lazily.
+ *
+ * <p>Each segment keeps a dirty flag that is cleared by {@link #close()}. If the process dies
+ * instead, the segments it had changed are rebuilt when the file is reopened, and any record that
+ * was only partly written or fails its checksum is dropped rather than returned. Call {@link
+ * #flush()} to also protect against an operating system crash.
+ *
+ * <p>The file remembers its geometry and key-fingerprint seeds. It must always be opened with an
+ * equivalent {@link OtpHasher} (the same algorithm and pepper).
+ *
+ * <p>The store holds an exclusive lock on the file until it is closed, so a second store cannot
+ * open the same file, in this process or another, and overwrite its records.
+ */
+public class MappedOtpStore extends OffHeapOtpStore implements Closeable {
+
+  private static final long MAGIC = 0x5243_4F54_504D_4150L; // "RCOTPMAP"
+  // Version 1 fingerprinted keys with an unkeyed hash; its records cannot be found any more.
+  private static final int VERSION = 2;
+  private static final int FILE_HEADER_SIZE = 4096;
+  private static final String HASHER_PROBE = "recceda-otp-mapped-store";
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 8;
+  private static final int SEGMENTS_OFFSET = 12;
+  private static final int SLOTS_OFFSET = 16;
+  private static final int SEED_HI_OFFSET = 24;
+  private static final int SEED_LO_OFFSET = 32;
+  private static final int HASHER_CHECK_OFFSET = 40;
+
+  private final FileChannel channel;
+  private final FileLock lock;
+  private final MappedByteBuffer[] mappings;
+  private final SlotTable[] tables;
+  private final int droppedOnRecovery;
+  private volatile boolean closed;
+
+  private MappedOtpStore(
+      FileChannel channel,
+      FileLock lock,
+      MappedByteBuffer[] mappings,
+      SlotTable[] tables,
+      OtpHasher hasher,
+      long seedHi,
+      long seedLo,
+      int droppedOnRecovery) {
+    super(tables, hasher, seedHi, seedLo);
+    this.channel = channel;
+    this.lock = lock;
+    this.mappings = mappings;
+    this.tables = tables;
+    this.droppedOnRecovery = droppedOnRecovery;
+  }
+
+  /**
+   * Opens the store in the given file with SHA-256 hashing, creating the file if it does not exist.
+   *
+   * @param file the file backing the store.
+   * @param maxEntries the number of active OTPs a new store must be able to hold; ignored if the
+   *     file already exists.
+   * @return the store.
+   * @throws IOException if the file cannot be opened or is not a valid store.
+   */
+  public static MappedOtpStore open(Path file, int maxEntries) throws IOException {
+    return open(file, maxEntries, OtpHasher.sha256());
+  }
+
+  /**
+   * Opens the store in the given file, creating the file with four segments per available processor
+   * if it does not exist.
+   *
+   * @param file the file backing the store.
+   * @param maxEntries the number of active OTPs a new store must be able to hold; ignored if the
+   *     file already exists.
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   * @return the store.
+   * @throws IOException if the file cannot be opened or is not a valid store.
+   */
+  public static MappedOtpStore open(Path file, int maxEntries, OtpHasher hasher)
+      throws IOException {
+    return open(file, maxEntries, 4 * Runtime.getRuntime().availableProcessors(), hasher);
+  }
+
+  /**
+   * Opens the store in the given file, creating the file if it does not exist.
+   *
+   * @param file the file backing the store.
+   * @param maxEntries the number of active OTPs a new store must be able to hold; ignored if the
+   *     file already exists.
+   * @param segmentCount the number of segments of a new store; ignored if the file already exists.
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   * @return the store.
+   * @throws IOException if the file cannot be opened, is not a valid store or is already open.
+   */
+  public static MappedOtpStore open(Path file, int maxEntries, int segmentCount, OtpHasher hasher)
+      throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return open(channel, lock(channel), maxEntries, segmentCount, hasher);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static FileLock lock(FileChannel channel) throws IOException {
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      throw new IOException("The OTP store file is already open.");
+    }
+    return lock;
+  }
+
+  private static MappedOtpStore open(
+      FileChannel channel, FileLock lock, int maxEntries, int segmentCount, OtpHasher hasher)
+      throws IOException {
+    byte[] hasherCheck = hasher.hash(HASHER_PROBE);
+    boolean created = channel.size() == 0;
+    if (created) {
+      int segments = powerOfTwo(segmentCount);
+      int slots = slotsPerSegment(maxEntries, segments);
+      SecureRandom random = new SecureRandom();
+      ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+      header.putLong(MAGIC_OFFSET, MAGIC);
+      header.putInt(VERSION_OFFSET, VERSION);
+      header.putInt(SEGMENTS_OFFSET, segments);
+      header.putInt(SLOTS_OFFSET, slots);
+      header.putLong(SEED_HI_OFFSET, random.nextLong());
+      header.putLong(SEED_LO_OFFSET, random.nextLong());
+      header.position(HASHER_CHECK_OFFSET);
+      header.put(hasherCheck);
+      header.clear();
+      // Size the file first so that the header only appears once the file is complete.
+      channel.write(
+          ByteBuffer.allocate(1), FILE_HEADER_SIZE + segments * SlotTable.bufferSize(slots) - 1);
+      channel.write(header, 0);
+      channel.force(true);
+    }
+
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+    if (header.getLong(MAGIC_OFFSET) != MAGIC) {
+      throw new IOException("The file is not a Recceda OTP store.");
+    }
+    if (header.getInt(VERSION_OFFSET) != VERSION) {
+      throw new IOException(
+          "The OTP store file has format version "
+              + header.getInt(VERSION_OFFSET)
+              + "; this version reads only "
+              + VERSION
+              + ".");
+    }
+    byte[] storedCheck = new byte[hasherCheck.length];
+    header.position(HASHER_CHECK_OFFSET);
+    header.get(storedCheck);
+    if (!MessageDigest.isEqual(storedCheck, hasherCheck)) {
+      throw new IOException("The store was created with a different OTP hasher.");
+    }
+    int segments = header.getInt(SEGMENTS_OFFSET);
+    int slots = header.getInt(SLOTS_OFFSET);
+    long segmentSize = SlotTable.bufferSize(slots);
+    if (channel.size() < FILE_HEADER_SIZE + segments * segmentSize) {
+      throw new IOException("The OTP store file is truncated.");
+    }
+
+    MappedByteBuffer[] mappings = new MappedByteBuffer[segments];
+    SlotTable[] tables = new SlotTable[segments];
+    long now = System.currentTimeMillis();
+    int dropped = 0;
+    for (int i = 0; i < segments; i++) {
+      mappings[i] =
+          channel.map(
+              FileChannel.MapMode.READ_WRITE, FILE_HEADER_SIZE + i * segmentSize, segmentSize);
+      tables[i] = new SlotTable(mappings[i], slots);
+      if (tables[i].isDirty()) {
+        dropped += tables[i].recover(now);
+      }
+    }
+    return new MappedOtpStore(
+        channel,
+        lock,
+        mappings,
+        tables,
+        hasher,
+        header.getLong(SEED_HI_OFFSET),
+        header.getLong(SEED_LO_OFFSET),
+        dropped);
+  }
+
+  /**
+   * Returns the number of records dropped while recovering from an unclean shutdown, because they
+   * were expired, half-written or corrupt.
+   *
+   * @return the number of dropped records; {@code 0} after a clean shutdown.
+   */
+  public int droppedOnRecovery() {
+    return droppedOnRecovery;
+  }
+
+  /** Writes all changes to the storage device. */
+  public void flush() {
+    checkOpen();
+    for (MappedByteBuffer mapping : mappings) {
+      mapping.force();
+    }
+  }
+
+  /**
+   * Flushes the store, marks it as cleanly closed, releases its lock and closes the file. The store
+   * cannot be used afterwards.
+   *
+   * @throws IOException if the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    flush();
+    closed = true;
+    for (int i = 0; i < tables.length; i++) {
+      tables[i].markClean();
+      mappings[i].force();
+    }
+    try {
+      lock.release();
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Override
+  void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("The OTP store has been closed.");
+    }
+  }
+}
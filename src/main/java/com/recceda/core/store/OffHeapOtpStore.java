@@ -0,0 +1,179 @@
+package com.recceda.core.store;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.Fingerprints;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * A compact OTP store that keeps its entries outside the Java heap.
+ *
+ * <p>Each OTP takes a fixed 64-byte record in a direct {@link ByteBuffer}: a 128-bit fingerprint of
+ * the key, the raw OTP hash, the expiry time and the failed-attempt counter. The key itself is not
+ * kept, so the fingerprint is a SipHash of the key under a secret random key: nobody can choose a
+ * key whose OTP would be found under another key's fingerprint. No per-entry objects are kept on
+ * the heap, so millions of active OTPs add almost nothing to garbage collection work. The table is
+ * split into independently locked segments, and expired records are reclaimed lazily.
+ *
+ * <p>The store has a fixed capacity chosen at construction. Storing an OTP into a full segment
+ * throws an {@link com.recceda.exception.OtpGenerationException}. Direct memory is bounded by
+ * {@code -XX:MaxDirectMemorySize}, which must leave room for roughly {@code 86 * maxEntries} bytes.
+ */
+public class OffHeapOtpStore implements OtpStore {
+
+  private final SlotTable[] segments;
+  private final int segmentMask;
+  private final OtpHasher hasher;
+  private final long seedHi;
+  private final long seedLo;
+
+  /**
+   * Creates a new {@code OffHeapOtpStore} that stores SHA-256 hashes.
+   *
+   * @param maxEntries the number of active OTPs the store must be able to hold.
+   */
+  public OffHeapOtpStore(int maxEntries) {
+    this(maxEntries, OtpHasher.sha256());
+  }
+
+  /**
+   * Creates a new {@code OffHeapOtpStore} with four segments per available processor.
+   *
+   * @param maxEntries the number of active OTPs the store must be able to hold.
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   */
+  public OffHeapOtpStore(int maxEntries, OtpHasher hasher) {
+    this(maxEntries, 4 * Runtime.getRuntime().availableProcessors(), hasher);
+  }
+
+  /**
+   * Creates a new {@code OffHeapOtpStore}.
+   *
+   * @param maxEntries the number of active OTPs the store must be able to hold.
+   * @param segmentCount the number of independently locked segments; rounded up to a power of two.
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   */
+  public OffHeapOtpStore(int maxEntries, int segmentCount, OtpHasher hasher) {
+    this(allocateSegments(maxEntries, segmentCount), hasher, new SecureRandom());
+  }
+
+  private OffHeapOtpStore(SlotTable[] segments, OtpHasher hasher, SecureRandom random) {
+    this(segments, hasher, random.nextLong(), random.nextLong());
+  }
+
+  OffHeapOtpStore(SlotTable[] segments, OtpHasher hasher, long seedHi, long seedLo) {
+    this.segments = segments;
+    this.segmentMask = segments.length - 1;
+    this.hasher = hasher;
+    this.seedHi = seedHi;
+    this.seedLo = seedLo;
+  }
+
+  @Override
+  public void storeOtp(String key, String otp, long ttlMillis) {
+    long now = System.currentTimeMillis();
+    long[] fingerprint = Fingerprints.sipHash128(key, seedHi, seedLo);
+    long hi = fingerprint[0];
+    long lo = fingerprint[1];
+    segment(hi).put(hi, lo, hasher.hash(otp), now + ttlMillis, now);
+  }
+
+  @Override
+  public boolean verifyOtp(String key, String otp) {
+    return verify(key, otp) == VerificationResult.VALID;
+  }
+
+  @Override
+  public VerificationResult verify(String key, String otp) {
+    long[] fingerprint = Fingerprints.sipHash128(key, seedHi, seedLo);
+    long hi = fingerprint[0];
+    long lo = fingerprint[1];
+    return segment(hi).verify(hi, lo, hasher.hash(otp), System.currentTimeMillis());
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    long[] fingerprint = Fingerprints.sipHash128(key, seedHi, seedLo);
+    long hi = fingerprint[0];
+    long lo = fingerprint[1];
+    return segment(hi)
+        .verifyAndConsume(hi, lo, hasher.hash(otp), maxFailedAttempts, System.currentTimeMillis());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned entry is a snapshot; changing it does not change the store.
+   */
+  @Override
+  public OtpEntry getOtpEntry(String key) {
+    long[] fingerprint = Fingerprints.sipHash128(key, seedHi, seedLo);
+    long hi = fingerprint[0];
+    long lo = fingerprint[1];
+    return segment(hi).get(hi, lo, System.currentTimeMillis());
+  }
+
+  @Override
+  public void invalidateOtp(String key) {
+    long[] fingerprint = Fingerprints.sipHash128(key, seedHi, seedLo);
+    long hi = fingerprint[0];
+    long lo = fingerprint[1];
+    segment(hi).remove(hi, lo);
+  }
+
+  /**
+   * Returns the number of records in the store, including expired records that have not been
+   * reclaimed yet.
+   *
+   * @return the number of records.
+   */
+  public long size() {
+    long size = 0;
+    for (SlotTable segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /** Called before every operation; subclasses throw if the store can no longer be used. */
+  void checkOpen() {}
+
+  private SlotTable segment(long hi) {
+    checkOpen();
+    return segments[(int) (hi >>> 32) & segmentMask];
+  }
+
+  private static SlotTable[] allocateSegments(int maxEntries, int segmentCount) {
+    int slotsPerSegment = slotsPerSegment(maxEntries, segmentCount);
+    SlotTable[] segments = new SlotTable[powerOfTwo(segmentCount)];
+    for (int i = 0; i < segments.length; i++) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect((int) SlotTable.bufferSize(slotsPerSegment));
+      segments[i] = new SlotTable(buffer, slotsPerSegment);
+    }
+    return segments;
+  }
+
+  /** Returns the number of slots each segment needs to hold its share of {@code maxEntries}. */
+  static int slotsPerSegment(int maxEntries, int segmentCount) {
+    if (maxEntries < 1 || segmentCount < 1) {
+      throw new IllegalArgumentException("The capacity and segment count must be positive.");
+    }
+    int slots =
+        powerOfTwo(
+            (int)
+                Math.ceil((double) maxEntries / powerOfTwo(segmentCount) / SlotTable.LOAD_FACTOR));
+    slots = Math.max(16, slots);
+    if (SlotTable.bufferSize(slots) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many entries per segment; add more segments.");
+    }
+    return slots;
+  }
+
+  static int powerOfTwo(int value) {
+    int size = 1;
+    while (size < value) {
+      size <<= 1;
+    }
+    return size;
+  }
+}
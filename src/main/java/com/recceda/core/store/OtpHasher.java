@@ -0,0 +1,157 @@
+package com.recceda.core.store;
+
+import com.recceda.util.ObjectPool;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hashes OTPs before they are stored and checks candidate OTPs against stored hashes.
+ *
+ * <p>{@link MessageDigest}s and {@link Mac}s are reused, together with their input and output
+ * buffers, from a small pool shared by all threads, so that short-lived virtual threads do not each
+ * create their own. Hashes are compared in constant time.
+ *
+ * <p>{@link #sha256()} produces a plain SHA-256 hash. Because an OTP has only a few digits of
+ * entropy, a plain hash can be brute-forced by anyone who obtains a copy of the store. {@link
+ * #hmacSha256(byte[])} keys the hash with a server-side secret (a pepper) that is never stored next
+ * to the hashes.
+ */
+public final class OtpHasher {
+
+  /** The length in bytes of the hashes produced by this class. */
+  public static final int HASH_LENGTH = 32;
+
+  private final ObjectPool<Engine> engines;
+
+  private OtpHasher(ObjectPool<Engine> engines) {
+    this.engines = engines;
+  }
+
+  /**
+   * Returns a hasher that stores the SHA-256 hash of each OTP.
+   *
+   * @return the hasher.
+   */
+  public static OtpHasher sha256() {
+    return new OtpHasher(new ObjectPool<>(DigestEngine::new));
+  }
+
+  /**
+   * Returns a hasher that stores the HMAC-SHA256 of each OTP, keyed with the given pepper.
+   *
+   * @param pepper the server-side secret; at least 16 bytes.
+   * @return the hasher.
+   */
+  public static OtpHasher hmacSha256(byte[] pepper) {
+    if (pepper == null || pepper.length < 16) {
+      throw new IllegalArgumentException("The pepper must be at least 16 bytes long.");
+    }
+    SecretKeySpec key = new SecretKeySpec(pepper.clone(), "HmacSHA256");
+    return new OtpHasher(new ObjectPool<>(() -> new MacEngine(key)));
+  }
+
+  /**
+   * Hashes the given OTP.
+   *
+   * @param otp the OTP to hash.
+   * @return a new array of {@link #HASH_LENGTH} bytes.
+   */
+  public byte[] hash(String otp) {
+    Engine engine = engines.acquire();
+    byte[] hash = engine.hash(otp).clone();
+    engines.release(engine);
+    return hash;
+  }
+
+  /**
+   * Checks, in constant time, whether the given OTP hashes to the expected hash.
+   *
+   * @param expectedHash the stored hash.
+   * @param otp the candidate OTP.
+   * @return {@code true} if the hashes are equal.
+   */
+  public boolean matches(byte[] expectedHash, String otp) {
+    Engine engine = engines.acquire();
+    boolean matches = MessageDigest.isEqual(expectedHash, engine.hash(otp));
+    engines.release(engine);
+    return matches;
+  }
+
+  private abstract static class Engine {
+    private final byte[] output = new byte[HASH_LENGTH];
+    private byte[] input = new byte[16];
+
+    final byte[] hash(String otp) {
+      int length = otp.length();
+      byte[] bytes = input;
+      if (length > bytes.length) {
+        bytes = input = new byte[Math.max(length, 2 * bytes.length)];
+      }
+      for (int i = 0; i < length; i++) {
+        char c = otp.charAt(i);
+        if (c >= 0x80) {
+          // Non-ASCII codes are rare; encode them the slow way.
+          byte[] encoded = otp.getBytes(StandardCharsets.UTF_8);
+          digest(encoded, encoded.length, output);
+          return output;
+        }
+        bytes[i] = (byte) c;
+      }
+      digest(bytes, length, output);
+      Arrays.fill(bytes, 0, length, (byte) 0);
+      return output;
+    }
+
+    abstract void digest(byte[] input, int length, byte[] output);
+  }
+
+  private static final class DigestEngine extends Engine {
+    private final MessageDigest digest;
+
+    DigestEngine() {
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("SHA-256 algorithm not found", e);
+      }
+    }
+
+    @Override
+    void digest(byte[] input, int length, byte[] output) {
+      digest.update(input, 0, length);
+      try {
+        digest.digest(output, 0, HASH_LENGTH);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException("Failed to hash OTP", e);
+      }
+    }
+  }
+
+  private static final class MacEngine extends Engine {
+    private final Mac mac;
+
+    MacEngine(SecretKeySpec key) {
+      try {
+        mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException("HmacSHA256 algorithm not available", e);
+      }
+    }
+
+    @Override
+    void digest(byte[] input, int length, byte[] output) {
+      mac.update(input, 0, length);
+      try {
+        mac.doFinal(output, 0);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException("Failed to hash OTP", e);
+      }
+    }
+  }
+}
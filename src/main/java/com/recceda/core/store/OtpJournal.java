@@ -0,0 +1,74 @@
+package com.recceda.core.store;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.Map;
+
+/**
+ * A durable record of the changes made to a {@link ReccedaOtpStore}, so that its entries can be
+ * rebuilt after a restart.
+ *
+ * <p>The store reports each change from inside the atomic cache operation that makes it, so that
+ * changes to the same key are recorded in the order they were applied. The {@code record} methods
+ * must therefore return quickly; an implementation that needs to wait for the change to reach disk
+ * does so in {@link #awaitDurable(long)}, which the store calls after the cache operation.
+ */
+public interface OtpJournal {
+
+  /**
+   * Restores the journaled entries that have not expired into the given map. Called once, when the
+   * store is created; the map is only filled at that time, and the journal must not keep it, since
+   * later changes reach the journal through the {@code record} methods.
+   *
+   * @param entries the store's entries.
+   */
+  void attach(Map<String, OtpEntry> entries);
+
+  /**
+   * Restores the journaled entries that have not expired by the given time source into the map, as
+   * {@link #attach(Map)} does. The store calls this method, with its own time source, so that the
+   * journal judges expiry as the store does.
+   *
+   * <p>The default implementation ignores the time source and calls {@link #attach(Map)}.
+   *
+   * @param entries the store's entries.
+   * @param timeSource the store's time source.
+   */
+  default void attach(Map<String, OtpEntry> entries, TimeSource timeSource) {
+    attach(entries);
+  }
+
+  /**
+   * Records that an entry was stored for the key, replacing any previous entry.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param entry the new entry.
+   * @return the sequence number of the record.
+   */
+  long recordStore(String key, OtpEntry entry);
+
+  /**
+   * Records the new failed-attempt count of the key's entry.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param failedAttempts the number of failed attempts after the change.
+   * @return the sequence number of the record.
+   */
+  long recordFailedAttempt(String key, int failedAttempts);
+
+  /**
+   * Records that the key's entry was invalidated or consumed.
+   *
+   * @param key the unique key associated with the OTP.
+   * @return the sequence number of the record.
+   */
+  long recordRemoval(String key);
+
+  /**
+   * Waits, if the journal's durability level requires it, until the record with the given sequence
+   * number has been written to durable storage.
+   *
+   * @param sequence the sequence number returned when the change was recorded.
+   */
+  void awaitDurable(long sequence);
+}
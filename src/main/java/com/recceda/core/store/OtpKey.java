@@ -0,0 +1,94 @@
+package com.recceda.core.store;
+
+/**
+ * A key for an OTP that one subject, such as a user, holds for one purpose, such as logging in or
+ * confirming a payment. A subject can hold one OTP per purpose at a time.
+ *
+ * <p>Keys are immutable and compare by subject and purpose. Purposes are usually constants, so
+ * creating a key allocates only the key itself, unlike concatenating the two into a string.
+ */
+public final class OtpKey {
+
+  private final String subject;
+  private final String purpose;
+  private final int hash;
+  // The key a ReccedaOtpStore holds the OTP under, joined on first use. Racy but safe, as strings
+  // are immutable and any thread computes the same value.
+  private String joinedKey;
+
+  private OtpKey(String subject, String purpose) {
+    this.subject = subject;
+    this.purpose = purpose;
+    this.hash = 31 * subject.hashCode() + purpose.hashCode();
+  }
+
+  /**
+   * Returns the key for an OTP held by the subject for the purpose.
+   *
+   * @param subject the subject, such as a user ID or email address.
+   * @param purpose the purpose, such as {@code "login"} or a tenant ID.
+   * @return the key.
+   */
+  public static OtpKey of(String subject, String purpose) {
+    if (subject == null || purpose == null) {
+      throw new IllegalArgumentException("An OTP key needs a subject and a purpose.");
+    }
+    return new OtpKey(subject, purpose);
+  }
+
+  /**
+   * Returns the subject that holds the OTP.
+   *
+   * @return the subject.
+   */
+  public String getSubject() {
+    return subject;
+  }
+
+  /**
+   * Returns what the OTP is for.
+   *
+   * @return the purpose.
+   */
+  public String getPurpose() {
+    return purpose;
+  }
+
+  /**
+   * Returns the subject for the default purpose, or else the subject and purpose joined by {@link
+   * ReccedaOtpStore#PURPOSE_SEPARATOR}. They are joined once per key, however often it is used.
+   */
+  String joinedKey() {
+    String joined = joinedKey;
+    if (joined == null) {
+      joined =
+          purpose.equals(ScopedOtpStore.DEFAULT_PURPOSE)
+              ? subject
+              : subject + ReccedaOtpStore.PURPOSE_SEPARATOR + purpose;
+      joinedKey = joined;
+    }
+    return joined;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof OtpKey)) {
+      return false;
+    }
+    OtpKey key = (OtpKey) other;
+    return hash == key.hash && subject.equals(key.subject) && purpose.equals(key.purpose);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return subject + "/" + purpose;
+  }
+}
@@ -1,6 +1,12 @@
 package com.recceda.core.store;
 
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
 import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * An interface for storing, verifying, and managing OTPs.
@@ -18,6 +24,49 @@ public interface OtpStore {
    */
   void storeOtp(String key, String otp, long ttlMillis);
 
+  /**
+   * Stores a new OTP for each of the given keys.
+   *
+   * <p>The default implementation calls {@link #storeOtp(String, String, long)} once per key.
+   * Implementations backed by a store with bulk writes should override it.
+   *
+   * @param otps the OTPs to store, keyed by the unique key to associate with each OTP.
+   * @param ttlMillis the time-to-live for the OTPs in milliseconds.
+   */
+  default void storeOtps(Map<String, String> otps, long ttlMillis) {
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      storeOtp(otp.getKey(), otp.getValue(), ttlMillis);
+    }
+  }
+
+  /**
+   * Checks the policies against the key's current entry and, if they all pass, generates an OTP and
+   * stores it for the key.
+   *
+   * <p>The default implementation looks the entry up once with {@link #getOtpEntry(String)} and
+   * then calls {@link #storeOtp(String, String, long)}, so a concurrent request for the same key
+   * may pass the same checks. Implementations should override it with a single atomic operation.
+   *
+   * @param key the unique key to associate with the OTP.
+   * @param attributes the attributes the caller supplied for the policies.
+   * @param policies the policies that must pass before the OTP is generated.
+   * @param otpSupplier generates the OTP once the policies have passed.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @return the stored OTP.
+   * @throws com.recceda.exception.OtpGenerationException if a policy check fails.
+   */
+  default String checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    policies.check(PolicyContext.lookup(key, this, attributes));
+    String otp = otpSupplier.get();
+    storeOtp(key, otp, ttlMillis);
+    return otp;
+  }
+
   /**
    * Verifies the given OTP for the specified key.
    *
@@ -27,6 +76,90 @@ public interface OtpStore {
    */
   boolean verifyOtp(String key, String otp);
 
+  /**
+   * Verifies the given OTP for the specified key, like {@link #verifyOtp(String, String)}, and
+   * reports why a failed verification failed. A wrong OTP counts as a failed attempt; the OTP is
+   * not consumed either way.
+   *
+   * <p>The default implementation calls {@link #verifyOtp(String, String)} and, if it fails, {@link
+   * #getOtpEntry(String)} to tell a wrong OTP from a missing one, and is therefore not atomic.
+   * Implementations should override it with a single atomic operation.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return {@link VerificationResult#VALID}, {@link VerificationResult#INVALID} if the OTP is
+   *     wrong, or {@link VerificationResult#NOT_FOUND} or {@link VerificationResult#EXPIRED} if the
+   *     key has no active OTP.
+   */
+  default VerificationResult verify(String key, String otp) {
+    if (verifyOtp(key, otp)) {
+      return VerificationResult.VALID;
+    }
+    return getOtpEntry(key) != null ? VerificationResult.INVALID : VerificationResult.NOT_FOUND;
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, removes it so that it cannot be used again.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @return the outcome of the verification.
+   * @see #verifyAndConsume(String, String, int)
+   */
+  default VerificationResult verifyAndConsume(String key, String otp) {
+    return verifyAndConsume(key, otp, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Verifies the given OTP and, if it is correct, removes it so that it cannot be used again.
+   *
+   * <p>Once the key has {@code maxFailedAttempts} failed attempts, further attempts return {@link
+   * VerificationResult#LOCKED} without checking the OTP, until a new OTP is stored.
+   *
+   * <p>The default implementation combines {@link #getOtpEntry(String)}, {@link #verifyOtp(String,
+   * String)} and {@link #invalidateOtp(String)}, and is therefore not atomic. Implementations
+   * should override it with a single atomic operation.
+   *
+   * @param key the unique key associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the key is locked out.
+   * @return the outcome of the verification.
+   */
+  default VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    OtpEntry entry = getOtpEntry(key);
+    if (entry == null) {
+      return VerificationResult.NOT_FOUND;
+    }
+    if (entry.expiryTime <= timeSource().currentTimeMillis()) {
+      return VerificationResult.EXPIRED;
+    }
+    if (entry.failedAttempts >= maxFailedAttempts) {
+      return VerificationResult.LOCKED;
+    }
+    if (!verifyOtp(key, otp)) {
+      return VerificationResult.INVALID;
+    }
+    invalidateOtp(key);
+    return VerificationResult.VALID;
+  }
+
+  /**
+   * Verifies the given OTPs.
+   *
+   * <p>The default implementation calls {@link #verifyOtp(String, String)} once per key.
+   * Implementations backed by a store with bulk reads should override it.
+   *
+   * @param otps the OTPs to verify, keyed by the unique key associated with each OTP.
+   * @return for each key, {@code true} if its OTP is valid, {@code false} otherwise.
+   */
+  default Map<String, Boolean> verifyOtps(Map<String, String> otps) {
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      results.put(otp.getKey(), verifyOtp(otp.getKey(), otp.getValue()));
+    }
+    return results;
+  }
+
   /**
    * Retrieves the OTP entry for the specified key.
    *
@@ -35,6 +168,16 @@ public interface OtpStore {
    */
   OtpEntry getOtpEntry(String key);
 
+  /**
+   * Returns the clock that the store measures OTP expiry against. Policies checked for this store
+   * take the time of the request from it.
+   *
+   * @return the store's time source; {@link TimeSource#SYSTEM} by default.
+   */
+  default TimeSource timeSource() {
+    return TimeSource.SYSTEM;
+  }
+
   /**
    * Invalidates the current OTP for the specified key.
    *
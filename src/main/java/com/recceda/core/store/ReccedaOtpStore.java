@@ -3,22 +3,98 @@ package com.recceda.core.store;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Expiry;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventPublisher;
+import com.recceda.core.event.OtpEventType;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.exception.OtpStoreFullException;
+import com.recceda.util.TimeSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * An in-memory OTP store that uses a Caffeine cache for high-performance, concurrent access.
  *
- * <p>This class is responsible for storing, verifying, and invalidating OTPs. It uses a secure
- * SHA-256 hash to store OTPs and relies on the Caffeine library's time-based eviction for automatic
- * cleanup of expired OTPs.
+ * <p>This class is responsible for storing, verifying, and invalidating OTPs. It stores OTPs as
+ * hashes produced by an {@link OtpHasher} (SHA-256 by default) and relies on the Caffeine library's
+ * time-based eviction for automatic cleanup of expired OTPs.
+ *
+ * <p>Expiry is measured against the store's {@link TimeSource}. By default, expired entries are
+ * removed promptly by {@link Scheduler#systemScheduler()}, rather than only when other activity on
+ * the cache happens to run its maintenance.
+ *
+ * <p>By default the store grows with the number of outstanding OTPs. A store built with {@link
+ * Builder#maximumSize(long)} or {@link Builder#maximumWeight(long)} has a fixed budget instead.
+ * Once the OTPs it holds reach the {@linkplain Builder#admissionThreshold(double) admission
+ * threshold} of the budget, it rejects OTPs for new keys with an {@link OtpStoreFullException}, so
+ * a flood of requests for random keys is shed rather than growing the heap or evicting OTPs that
+ * users are about to enter. {@link #occupancy()} reports how full the store is.
+ *
+ * <p>A store built with {@link Builder#keyIndex()} also keeps its live keys in a sorted index, so
+ * that {@link #invalidateByPrefix(String)} and {@link #invalidateByTenant(String)} only visit the
+ * keys they remove rather than scanning the whole cache.
+ *
+ * <p>The store is also a {@link ScopedOtpStore}. The OTP an {@link OtpKey} names for the default
+ * purpose is held under the subject itself, and the OTPs for other purposes under the subject and
+ * purpose joined by a NUL character, which subjects therefore must not contain. Each key joins them
+ * once and keeps the result. Those keys are indexed, so {@link #invalidateSubject(String)} and
+ * {@link #activeOtps(String)} visit only the subject's OTPs. The index is created when the first
+ * OTP for another purpose is stored, so a store that only sees plain keys keeps its fast paths.
+ *
+ * <p>Each purpose is updated atomically on its own. Unlike a {@link SubjectOtpStore}, the store
+ * counts the subject's OTPs for policies outside that update, so concurrent requests for different
+ * purposes can both pass a {@link com.recceda.core.policy.MaxActiveOtpsPolicy}, and it invalidates
+ * a subject one OTP at a time. Use a {@code SubjectOtpStore} when either must be exact.
  */
-public class ReccedaOtpStore implements OtpStore {
+public class ReccedaOtpStore implements ScopedOtpStore {
+
+  /** The default admission threshold of a bounded store. */
+  public static final double DEFAULT_ADMISSION_THRESHOLD = 0.9;
+
+  /** The character that separates the tenant from the rest of a key by default. */
+  public static final char DEFAULT_TENANT_DELIMITER = ':';
+
+  /** Separates the subject from the purpose in the keys of purposes other than the default. */
+  static final char PURPOSE_SEPARATOR = '\0';
+
+  /** The bytes an entry uses besides its key and hash, in a JVM with compressed pointers. */
+  static final int ENTRY_OVERHEAD_BYTES = 176;
 
   private final Cache<String, OtpEntry> otpMap;
+  private final OtpHasher hasher;
+  private final OtpJournal journal;
+  private final TimeSource timeSource;
+  private final OtpEventPublisher events;
+  // Only set for a bounded store.
+  private final Weigher<String, OtpEntry> weigher;
+  private final long maximumWeight;
+  private final long admissionLimit;
+  private final LongAdder weight = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  // Only set for an indexed store. Changed inside the cache's update of the key, or by the eviction
+  // listener, which Caffeine also calls while it holds the key.
+  private final NavigableSet<String> keyIndex;
+  private final char tenantDelimiter;
+  // The keys of OTPs for purposes other than the default, maintained like the key index. It is
+  // created when the first such OTP is stored; until then, plain keys are not scanned for it.
+  private volatile NavigableSet<String> purposeIndex;
+  // The keys evicted for size while the journal replayed, which it can only record once attached.
+  private final Queue<String> replayEvictions = new ConcurrentLinkedQueue<>();
+  private volatile boolean replayed;
 
   /**
    * Creates a new {@code ReccedaOtpStore} with the default expiry policy.
@@ -26,26 +102,7 @@ public class ReccedaOtpStore implements OtpStore {
    * <p>The default policy expires entries based on the `expiryTime` in the {@link OtpEntry}.
    */
   public ReccedaOtpStore() {
-    this(
-        new Expiry<String, OtpEntry>() {
-          @Override
-          public long expireAfterCreate(String key, OtpEntry value, long currentTime) {
-            long millis = value.expiryTime - System.currentTimeMillis();
-            return TimeUnit.MILLISECONDS.toNanos(millis);
-          }
-
-          @Override
-          public long expireAfterUpdate(
-              String key, OtpEntry value, long currentTime, long currentDuration) {
-            return currentDuration;
-          }
-
-          @Override
-          public long expireAfterRead(
-              String key, OtpEntry value, long currentTime, long currentDuration) {
-            return currentDuration;
-          }
-        });
+    this(builder());
   }
 
   /**
@@ -54,30 +111,317 @@ public class ReccedaOtpStore implements OtpStore {
    * @param expiry the custom expiry policy to use for the Caffeine cache.
    */
   public ReccedaOtpStore(Expiry<String, OtpEntry> expiry) {
-    this.otpMap = Caffeine.newBuilder().expireAfter(expiry).build();
+    this(builder().expiry(expiry));
+  }
+
+  /**
+   * Creates a new {@code ReccedaOtpStore} with the default expiry policy and a custom hasher, such
+   * as {@link OtpHasher#hmacSha256(byte[])}.
+   *
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   */
+  public ReccedaOtpStore(OtpHasher hasher) {
+    this(builder().hasher(hasher));
+  }
+
+  /**
+   * Creates a new {@code ReccedaOtpStore} with a custom expiry policy and hasher.
+   *
+   * @param expiry the custom expiry policy to use for the Caffeine cache.
+   * @param hasher the hasher used to hash OTPs before they are stored.
+   */
+  public ReccedaOtpStore(Expiry<String, OtpEntry> expiry, OtpHasher hasher) {
+    this(builder().expiry(expiry).hasher(hasher));
+  }
+
+  private ReccedaOtpStore(Builder builder) {
+    this.timeSource = builder.timeSource;
+    this.events = builder.events;
+    this.weigher = builder.weigher;
+    this.maximumWeight = builder.maximumWeight;
+    this.admissionLimit = (long) (maximumWeight * builder.admissionThreshold);
+    this.keyIndex = builder.keyIndex ? new ConcurrentSkipListSet<>() : null;
+    this.tenantDelimiter = builder.tenantDelimiter;
+    Caffeine<Object, Object> caffeine = Caffeine.newBuilder().scheduler(builder.scheduler);
+    if (builder.recordStats) {
+      caffeine.recordStats();
+    }
+    if (timeSource != TimeSource.SYSTEM) {
+      caffeine.ticker(() -> TimeUnit.MILLISECONDS.toNanos(timeSource.currentTimeMillis()));
+    }
+    Expiry<String, OtpEntry> expiry =
+        builder.expiry != null ? builder.expiry : defaultExpiry(timeSource);
+    Caffeine<String, OtpEntry> typed = caffeine.expireAfter(expiry);
+    if (events != OtpEventPublisher.NO_OP) {
+      typed = typed.removalListener(this::onRemoval);
+    }
+    if (weigher != null) {
+      // The admission threshold keeps the cache below this limit; evicting is the last resort.
+      typed = typed.maximumWeight(maximumWeight).weigher(weigher);
+    }
+    this.otpMap = typed.evictionListener(this::onEviction).build();
+    this.hasher = builder.hasher;
+    this.journal = builder.journal;
+    if (journal != null) {
+      journal.attach(otpMap.asMap(), timeSource);
+      // Evict whatever the replay put over the budget now, and journal it, so that the entries do
+      // not come back on the next restart.
+      otpMap.cleanUp();
+      replayed = true;
+      for (String key; (key = replayEvictions.poll()) != null; ) {
+        journal.recordRemoval(key);
+      }
+      if (weigher != null) {
+        // Replayed entries were written to the map directly, without being weighed.
+        weight.reset();
+        otpMap.asMap().forEach((key, entry) -> weight.add(weigher.weigh(key, entry)));
+      }
+      if (keyIndex != null) {
+        keyIndex.addAll(otpMap.asMap().keySet());
+      }
+      for (String key : otpMap.asMap().keySet()) {
+        if (isScoped(key)) {
+          purposeIndex().add(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a builder for configuring a {@code ReccedaOtpStore}.
+   *
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static Expiry<String, OtpEntry> defaultExpiry(TimeSource timeSource) {
+    return new Expiry<String, OtpEntry>() {
+      @Override
+      public long expireAfterCreate(String key, OtpEntry value, long currentTime) {
+        long millis = value.expiryTime - timeSource.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+      }
+
+      @Override
+      public long expireAfterUpdate(
+          String key, OtpEntry value, long currentTime, long currentDuration) {
+        return currentDuration;
+      }
+
+      @Override
+      public long expireAfterRead(
+          String key, OtpEntry value, long currentTime, long currentDuration) {
+        return currentDuration;
+      }
+    };
   }
 
   @Override
   public void storeOtp(String key, String otp, long ttlMillis) {
-    long expiryTime = System.currentTimeMillis() + ttlMillis;
-    String otpHash = hashOtp(otp);
-    otpMap.put(key, new OtpEntry(otpHash, expiryTime));
+    long expiryTime = timeSource.currentTimeMillis() + ttlMillis;
+    put(key, new OtpEntry(hasher.hash(otp), expiryTime));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The policies are checked and the OTP is stored in one atomic update of the key, so two
+   * concurrent requests for the same key cannot both pass a check such as {@link
+   * com.recceda.core.policy.PreventDuplicateOtpPolicy}.
+   */
+  @Override
+  public String checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return checkAndStore(key, null, attributes, policies, otpSupplier, ttlMillis);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The policies are checked and the OTP is stored in one atomic update of the purpose's OTP.
+   * The number of OTPs the subject holds is counted during that update but is not part of it.
+   */
+  @Override
+  public String checkAndStore(
+      OtpKey key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return checkAndStore(storedKey(key), key, attributes, policies, otpSupplier, ttlMillis);
+  }
+
+  /** Checks and stores under the key; {@code scoped} is the key it was derived from, if any. */
+  private String checkAndStore(
+      String key,
+      OtpKey scoped,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    String[] otp = {null};
+    long[] sequence = {0};
+    otpMap
+        .asMap()
+        .compute(
+            key,
+            (k, current) -> {
+              long now = timeSource.currentTimeMillis();
+              policies.check(
+                  scoped == null
+                      ? new PolicyContext(k, current, now, this, attributes)
+                      : new PolicyContext(
+                          scoped, current, activeOtps(scoped.getSubject()), now, this, attributes));
+              otp[0] = otpSupplier.get();
+              OtpEntry entry = new OtpEntry(hasher.hash(otp[0]), now + ttlMillis);
+              long added = admit(k, current, entry);
+              if (journal != null) {
+                sequence[0] = journal.recordStore(k, entry);
+              }
+              weight.add(added);
+              if (current == null) {
+                index(k);
+              }
+              return entry;
+            });
+    awaitJournal(sequence[0]);
+    return otp[0];
   }
 
   @Override
   public boolean verifyOtp(String key, String otp) {
-    OtpEntry entry = otpMap.getIfPresent(key);
-    if (entry == null) {
-      return false;
+    return verify(key, otp) == VerificationResult.VALID;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The check and the attempt count happen in a single atomic compute on the cache.
+   */
+  @Override
+  public VerificationResult verify(String key, String otp) {
+    VerificationResult[] result = {VerificationResult.NOT_FOUND};
+    long[] sequence = {0};
+    otpMap
+        .asMap()
+        .computeIfPresent(
+            key,
+            (k, entry) -> {
+              if (hasher.matches(entry.otpHash, otp)) {
+                result[0] = VerificationResult.VALID;
+              } else {
+                entry.failedAttempts++;
+                sequence[0] = recordFailedAttempt(k, entry);
+                result[0] = VerificationResult.INVALID;
+              }
+              return entry;
+            });
+    awaitJournal(sequence[0]);
+    return result[0];
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The check, the attempt count and the removal of a consumed OTP happen in a single atomic
+   * compute on the cache, so concurrent attempts are counted exactly and an OTP can be consumed
+   * only once.
+   */
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    VerificationResult[] result = {VerificationResult.NOT_FOUND};
+    long[] sequence = {0};
+    otpMap
+        .asMap()
+        .computeIfPresent(
+            key,
+            (k, entry) -> {
+              if (entry.expiryTime <= timeSource.currentTimeMillis()) {
+                result[0] = VerificationResult.EXPIRED;
+                publish(OtpEventType.EXPIRED, k);
+                sequence[0] = recordRemoval(k);
+                release(k, entry);
+                return null;
+              }
+              if (entry.failedAttempts >= maxFailedAttempts) {
+                result[0] = VerificationResult.LOCKED;
+                return entry;
+              }
+              if (hasher.matches(entry.otpHash, otp)) {
+                result[0] = VerificationResult.VALID;
+                sequence[0] = recordRemoval(k);
+                release(k, entry);
+                return null;
+              }
+              entry.failedAttempts++;
+              sequence[0] = recordFailedAttempt(k, entry);
+              result[0] = VerificationResult.INVALID;
+              return entry;
+            });
+    awaitJournal(sequence[0]);
+    return result[0];
+  }
+
+  @Override
+  public void storeOtps(Map<String, String> otps, long ttlMillis) {
+    long expiryTime = timeSource.currentTimeMillis() + ttlMillis;
+    Map<String, OtpEntry> entries = new HashMap<>();
+    boolean indexed = false;
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      entries.put(otp.getKey(), new OtpEntry(hasher.hash(otp.getValue()), expiryTime));
+      indexed |= isIndexedPurpose(otp.getKey());
+    }
+    if (journal == null && weigher == null && keyIndex == null && !indexed) {
+      otpMap.putAll(entries);
+      return;
+    }
+    if (weigher != null) {
+      admitAll(entries);
     }
+    // Each journaled, weighed or indexed write needs its own compute to keep the journal in order
+    // and the weight and index exact.
+    for (Map.Entry<String, OtpEntry> entry : entries.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
 
-    String otpHash = hashOtp(otp);
-    boolean isValid = otpHash.equals(entry.otpHash);
-    if (!isValid) {
-      entry.failedAttempts++;
-      otpMap.put(key, entry);
+  @Override
+  public Map<String, Boolean> verifyOtps(Map<String, String> otps) {
+    Map<String, OtpEntry> entries = otpMap.getAllPresent(otps.keySet());
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      OtpEntry entry = entries.get(otp.getKey());
+      boolean isValid = entry != null && hasher.matches(entry.otpHash, otp.getValue());
+      if (entry != null && !isValid) {
+        // Count the failure against the entry that was checked, not one stored since.
+        long[] sequence = {0};
+        otpMap
+            .asMap()
+            .computeIfPresent(
+                otp.getKey(),
+                (k, current) -> {
+                  if (current == entry) {
+                    current.failedAttempts++;
+                    sequence[0] = recordFailedAttempt(k, current);
+                  }
+                  return current;
+                });
+        awaitJournal(sequence[0]);
+      }
+      results.put(otp.getKey(), isValid);
     }
-    return isValid;
+    return results;
+  }
+
+  @Override
+  public TimeSource timeSource() {
+    return timeSource;
   }
 
   @Override
@@ -87,27 +431,586 @@ public class ReccedaOtpStore implements OtpStore {
 
   @Override
   public void invalidateOtp(String key) {
-    otpMap.invalidate(key);
+    if (journal == null && weigher == null && keyIndex == null && !isIndexedPurpose(key)) {
+      otpMap.invalidate(key);
+      return;
+    }
+    remove(key);
+  }
+
+  @Override
+  public void storeOtp(OtpKey key, String otp, long ttlMillis) {
+    storeOtp(storedKey(key), otp, ttlMillis);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The check, the attempt count and the removal of a consumed OTP happen in a single atomic
+   * compute on the purpose's OTP.
+   */
+  @Override
+  public VerificationResult verifyAndConsume(OtpKey key, String otp, int maxFailedAttempts) {
+    return verifyAndConsume(scopedKey(key), otp, maxFailedAttempts);
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(OtpKey key) {
+    return getOtpEntry(scopedKey(key));
+  }
+
+  @Override
+  public void invalidateOtp(OtpKey key) {
+    invalidateOtp(scopedKey(key));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Each of the subject's OTPs is removed in its own update, so an OTP stored for the subject
+   * while the invalidation runs may or may not be invalidated.
+   */
+  @Override
+  public int invalidateSubject(String subject) {
+    checkSubject(subject);
+    int invalidated = remove(subject) ? 1 : 0;
+    for (String key : purposeKeys(subject)) {
+      if (remove(key)) {
+        invalidated++;
+      }
+    }
+    return invalidated;
+  }
+
+  @Override
+  public int activeOtps(String subject) {
+    checkSubject(subject);
+    int active = otpMap.getIfPresent(subject) != null ? 1 : 0;
+    for (String key : purposeKeys(subject)) {
+      if (otpMap.getIfPresent(key) != null) {
+        active++;
+      }
+    }
+    return active;
+  }
+
+  /** Removes the key's entry and returns whether it had one. */
+  private boolean remove(String key) {
+    long[] sequence = {0};
+    boolean[] removed = {false};
+    otpMap
+        .asMap()
+        .computeIfPresent(
+            key,
+            (k, entry) -> {
+              sequence[0] = recordRemoval(k);
+              release(k, entry);
+              removed[0] = true;
+              return null;
+            });
+    awaitJournal(sequence[0]);
+    return removed[0];
+  }
+
+  /**
+   * Returns the approximate number of entries in the store, which may include expired entries that
+   * have not been removed yet.
+   *
+   * @return the estimated number of entries.
+   */
+  public long estimatedSize() {
+    return otpMap.estimatedSize();
+  }
+
+  /**
+   * Returns how full a bounded store is, as the fraction of its maximum size or weight in use. Load
+   * balancers can use it to steer new requests to other nodes before this one starts rejecting
+   * them.
+   *
+   * @return the occupancy, from {@code 0} to about {@code 1}; always {@code 0} for an unbounded
+   *     store.
+   */
+  public double occupancy() {
+    return weigher == null ? 0 : (double) Math.max(0, weight.sum()) / maximumWeight;
+  }
+
+  /**
+   * Returns {@code true} if the store accepts OTPs for new keys, that is, if it is unbounded or its
+   * occupancy is below the admission threshold.
+   *
+   * @return whether new keys are admitted.
+   */
+  public boolean acceptsNewOtps() {
+    return weigher == null || weight.sum() < admissionLimit;
+  }
+
+  /**
+   * Invalidates the OTPs of every key that starts with the prefix. Takes time proportional to the
+   * number of matching keys, not to the size of the store. Keys stored while the invalidation runs
+   * may or may not be invalidated.
+   *
+   * <p>Publishes an {@link OtpEventType#INVALIDATED} event for each OTP, if the store has an event
+   * publisher.
+   *
+   * @param prefix the prefix of the keys to invalidate.
+   * @return the number of OTPs invalidated.
+   * @throws IllegalStateException if the store was not built with {@link Builder#keyIndex()}.
+   */
+  public int invalidateByPrefix(String prefix) {
+    if (keyIndex == null) {
+      throw new IllegalStateException("The OTP store was built without a key index.");
+    }
+    int invalidated = 0;
+    for (String key : keyIndex.tailSet(prefix)) {
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      if (remove(key)) {
+        publish(OtpEventType.INVALIDATED, key);
+        invalidated++;
+      }
+    }
+    return invalidated;
+  }
+
+  /**
+   * Invalidates the OTPs of every key of the tenant, that is, every key that starts with the tenant
+   * followed by the {@linkplain Builder#keyIndex(char) tenant delimiter}, such as {@code
+   * "acme:alice"} for the tenant {@code "acme"}.
+   *
+   * @param tenant the tenant.
+   * @return the number of OTPs invalidated.
+   * @throws IllegalStateException if the store was not built with {@link Builder#keyIndex()}.
+   * @see #invalidateByPrefix(String)
+   */
+  public int invalidateByTenant(String tenant) {
+    return invalidateByPrefix(tenant + tenantDelimiter);
+  }
+
+  /** Returns the number of keys in the index, or -1 if the store has none. */
+  int indexedKeys() {
+    return keyIndex == null ? -1 : keyIndex.size();
+  }
+
+  /**
+   * Returns the number of OTPs rejected because the store was full.
+   *
+   * @return the rejected count.
+   */
+  public long rejectedOtps() {
+    return rejected.sum();
+  }
+
+  /**
+   * Returns the cache's hit, miss, load and eviction statistics. Statistics are only collected if
+   * the store was built with {@link Builder#recordStats()}; otherwise every count is zero.
+   *
+   * @return a snapshot of the statistics.
+   */
+  public CacheStats stats() {
+    return otpMap.stats();
+  }
+
+  /**
+   * Runs any pending maintenance now, which removes the entries that have expired. Useful with a
+   * {@link com.recceda.util.ManualTimeSource}, whose time moves without the scheduler noticing.
+   */
+  public void cleanUp() {
+    otpMap.cleanUp();
+  }
+
+  private void put(String key, OtpEntry entry) {
+    if (journal == null && weigher == null && keyIndex == null && !isIndexedPurpose(key)) {
+      otpMap.put(key, entry);
+      return;
+    }
+    long[] sequence = {0};
+    otpMap
+        .asMap()
+        .compute(
+            key,
+            (k, previous) -> {
+              long added = admit(k, previous, entry);
+              if (journal != null) {
+                sequence[0] = journal.recordStore(k, entry);
+              }
+              weight.add(added);
+              if (previous == null) {
+                index(k);
+              }
+              return entry;
+            });
+    awaitJournal(sequence[0]);
+  }
+
+  /**
+   * Checks that a bounded store has room for the entry and returns the change in weight. Replacing
+   * the OTP of a key that already has one is always admitted, as it barely changes the weight.
+   */
+  private long admit(String key, OtpEntry previous, OtpEntry entry) {
+    if (weigher == null) {
+      return 0;
+    }
+    long added = weigher.weigh(key, entry);
+    if (previous != null) {
+      return added - weigher.weigh(key, previous);
+    }
+    if (weight.sum() + added > admissionLimit) {
+      rejected.increment();
+      throw new OtpStoreFullException();
+    }
+    return added;
+  }
+
+  /** Rejects the whole batch unless the store has room for all of its new keys. */
+  private void admitAll(Map<String, OtpEntry> entries) {
+    long added = 0;
+    for (Map.Entry<String, OtpEntry> entry : entries.entrySet()) {
+      if (otpMap.getIfPresent(entry.getKey()) == null) {
+        added += weigher.weigh(entry.getKey(), entry.getValue());
+      }
+    }
+    if (weight.sum() + added > admissionLimit) {
+      rejected.add(entries.size());
+      throw new OtpStoreFullException();
+    }
+  }
+
+  /** Accounts for the removal of the key's entry. */
+  private void release(String key, OtpEntry entry) {
+    if (weigher != null) {
+      weight.add(-weigher.weigh(key, entry));
+    }
+    if (keyIndex != null) {
+      keyIndex.remove(key);
+    }
+    NavigableSet<String> purposes = purposeIndex;
+    if (purposes != null && isScoped(key)) {
+      purposes.remove(key);
+    }
+  }
+
+  /** Indexes a key that had no live entry; a live key is always indexed already. */
+  private void index(String key) {
+    if (keyIndex != null) {
+      keyIndex.add(key);
+    }
+    NavigableSet<String> purposes = purposeIndex;
+    if (purposes != null && isScoped(key)) {
+      purposes.add(key);
+    }
+  }
+
+  /**
+   * Returns the key to store the OTP for the subject and purpose under, creating the purpose index
+   * if the purpose is not the default.
+   */
+  private String storedKey(OtpKey key) {
+    String stored = scopedKey(key);
+    if (!key.getPurpose().equals(DEFAULT_PURPOSE)) {
+      purposeIndex();
+    }
+    return stored;
+  }
+
+  private NavigableSet<String> purposeIndex() {
+    NavigableSet<String> purposes = purposeIndex;
+    if (purposes == null) {
+      synchronized (this) {
+        purposes = purposeIndex;
+        if (purposes == null) {
+          purposes = new ConcurrentSkipListSet<>();
+          purposeIndex = purposes;
+        }
+      }
+    }
+    return purposes;
+  }
+
+  /** Returns the key the OTP for the subject and purpose is held under. */
+  private static String scopedKey(OtpKey key) {
+    checkSubject(key.getSubject());
+    return key.joinedKey();
   }
 
-  private String hashOtp(String otp) {
-    try {
-      MessageDigest digest = MessageDigest.getInstance("SHA-256");
-      byte[] hash = digest.digest(otp.getBytes(StandardCharsets.UTF_8));
-      return Base64.getEncoder().encodeToString(hash);
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("SHA-256 algorithm not found", e);
+  private static void checkSubject(String subject) {
+    if (isScoped(subject)) {
+      throw new IllegalArgumentException("An OTP subject must not contain a NUL character.");
+    }
+  }
+
+  private static boolean isScoped(String key) {
+    return key.indexOf(PURPOSE_SEPARATOR) >= 0;
+  }
+
+  /** Returns whether the key belongs in the purpose index; never before the index is created. */
+  private boolean isIndexedPurpose(String key) {
+    return purposeIndex != null && isScoped(key);
+  }
+
+  /** Returns the keys of the subject's OTPs for purposes other than the default. */
+  private NavigableSet<String> purposeKeys(String subject) {
+    NavigableSet<String> purposes = purposeIndex;
+    if (purposes == null) {
+      return Collections.emptyNavigableSet();
+    }
+    return purposes.subSet(
+        subject + PURPOSE_SEPARATOR, true, subject + (char) (PURPOSE_SEPARATOR + 1), false);
+  }
+
+  /**
+   * Accounts for the entries the cache removed on its own, as they expired or overflowed, and
+   * journals the overflowing ones, which replay would otherwise restore. Expired entries are
+   * dropped by the replay anyway.
+   */
+  private void onEviction(String key, OtpEntry entry, RemovalCause cause) {
+    if (key != null && entry != null) {
+      release(key, entry);
+    }
+    if (key != null && cause == RemovalCause.SIZE && journal != null) {
+      if (replayed) {
+        journal.recordRemoval(key);
+      } else {
+        replayEvictions.add(key);
+      }
+    }
+  }
+
+  /**
+   * Estimates the heap used by an entry: the entry, its hash, the key and the cache's own node.
+   * Keys are assumed to hold one byte per character, as Latin-1 strings do.
+   */
+  static int estimateBytes(String key, OtpEntry entry) {
+    return ENTRY_OVERHEAD_BYTES + key.length() + entry.otpHash.length;
+  }
+
+  /** Publishes the removals the cache made on its own; explicit ones are published by callers. */
+  private void onRemoval(String key, OtpEntry entry, RemovalCause cause) {
+    if (cause == RemovalCause.EXPIRED) {
+      publish(OtpEventType.EXPIRED, key);
+    } else if (cause.wasEvicted()) {
+      publish(OtpEventType.EVICTED, key);
+    }
+  }
+
+  /** Publishes an event for the key, or for its subject and purpose if it is a purpose's key. */
+  private void publish(OtpEventType type, String key) {
+    if (events != OtpEventPublisher.NO_OP) {
+      long now = timeSource.currentTimeMillis();
+      int separator = key.indexOf(PURPOSE_SEPARATOR);
+      events.publish(
+          separator < 0
+              ? new OtpEvent(type, key, now)
+              : new OtpEvent(type, key.substring(0, separator), key.substring(separator + 1), now));
+    }
+  }
+
+  private long recordFailedAttempt(String key, OtpEntry entry) {
+    return journal == null ? 0 : journal.recordFailedAttempt(key, entry.failedAttempts);
+  }
+
+  private long recordRemoval(String key) {
+    return journal == null ? 0 : journal.recordRemoval(key);
+  }
+
+  private void awaitJournal(long sequence) {
+    if (sequence != 0) {
+      journal.awaitDurable(sequence);
+    }
+  }
+
+  /** A builder for {@link ReccedaOtpStore}. */
+  public static final class Builder {
+    private Expiry<String, OtpEntry> expiry;
+    private OtpHasher hasher = OtpHasher.sha256();
+    private OtpJournal journal;
+    private boolean recordStats;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private Scheduler scheduler = Scheduler.systemScheduler();
+    private OtpEventPublisher events = OtpEventPublisher.NO_OP;
+    private Weigher<String, OtpEntry> weigher;
+    private long maximumWeight;
+    private double admissionThreshold = DEFAULT_ADMISSION_THRESHOLD;
+    private boolean keyIndex;
+    private char tenantDelimiter = DEFAULT_TENANT_DELIMITER;
+
+    private Builder() {}
+
+    /**
+     * Sets a custom expiry policy for the Caffeine cache.
+     *
+     * @param expiry the expiry policy.
+     * @return this builder.
+     */
+    public Builder expiry(Expiry<String, OtpEntry> expiry) {
+      this.expiry = expiry;
+      return this;
+    }
+
+    /**
+     * Sets the hasher used to hash OTPs before they are stored.
+     *
+     * @param hasher the hasher.
+     * @return this builder.
+     */
+    public Builder hasher(OtpHasher hasher) {
+      this.hasher = hasher;
+      return this;
+    }
+
+    /**
+     * Records every change in the given journal, and restores the journaled entries when the store
+     * is built.
+     *
+     * @param journal the journal, such as a {@link FileOtpJournal}.
+     * @return this builder.
+     */
+    public Builder journal(OtpJournal journal) {
+      this.journal = journal;
+      return this;
+    }
+
+    /**
+     * Collects the cache statistics returned by {@link ReccedaOtpStore#stats()}, at a small cost on
+     * every operation.
+     *
+     * @return this builder.
+     */
+    public Builder recordStats() {
+      this.recordStats = true;
+      return this;
+    }
+
+    /**
+     * Sets the clock that OTP expiry is measured against.
+     *
+     * @param timeSource the time source, such as a {@link com.recceda.util.CoarseTimeSource}.
+     * @return this builder.
+     */
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    /**
+     * Sets the scheduler that wakes the cache to remove entries as they expire. Use {@link
+     * Scheduler#disabledScheduler()} to remove expired entries only during other cache activity.
+     *
+     * @param scheduler the scheduler; {@link Scheduler#systemScheduler()} by default.
+     * @return this builder.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    /**
+     * Publishes an event whenever an OTP expires or is evicted. Expiry is detected by the cache's
+     * removal listener, or by a verification that finds the OTP expired, whichever comes first.
+     *
+     * @param events the event publisher, such as a {@link
+     *     com.recceda.core.event.RingBufferEventPublisher}.
+     * @return this builder.
+     */
+    public Builder eventPublisher(OtpEventPublisher events) {
+      this.events = events;
+      return this;
+    }
+
+    /**
+     * Bounds the store to a number of entries.
+     *
+     * @param maximumSize the most entries the store holds.
+     * @return this builder.
+     */
+    public Builder maximumSize(long maximumSize) {
+      this.maximumWeight = maximumSize;
+      this.weigher = (key, entry) -> 1;
+      return this;
+    }
+
+    /**
+     * Bounds the store to a heap budget, using an estimate of the bytes each entry takes.
+     *
+     * @param maximumBytes the heap budget in bytes.
+     * @return this builder.
+     */
+    public Builder maximumWeight(long maximumBytes) {
+      return maximumWeight(maximumBytes, ReccedaOtpStore::estimateBytes);
+    }
+
+    /**
+     * Bounds the store to a total weight, as measured by the given weigher.
+     *
+     * @param maximumWeight the most total weight the store holds.
+     * @param weigher weighs each entry; it must return the same weight for the same entry.
+     * @return this builder.
+     */
+    public Builder maximumWeight(long maximumWeight, Weigher<String, OtpEntry> weigher) {
+      this.maximumWeight = maximumWeight;
+      this.weigher = weigher;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of a bounded store's budget above which OTPs for new keys are rejected. The
+     * rest of the budget is headroom for concurrent requests, so that the cache never has to evict.
+     *
+     * @param admissionThreshold a fraction from {@code 0} to {@code 1}; {@value
+     *     ReccedaOtpStore#DEFAULT_ADMISSION_THRESHOLD} by default.
+     * @return this builder.
+     */
+    public Builder admissionThreshold(double admissionThreshold) {
+      this.admissionThreshold = admissionThreshold;
+      return this;
+    }
+
+    /**
+     * Keeps a sorted index of the live keys, for {@link ReccedaOtpStore#invalidateByPrefix(String)}
+     * and {@link ReccedaOtpStore#invalidateByTenant(String)}, with keys of the form {@code
+     * tenant:key}.
+     *
+     * @return this builder.
+     */
+    public Builder keyIndex() {
+      return keyIndex(DEFAULT_TENANT_DELIMITER);
+    }
+
+    /**
+     * Keeps a sorted index of the live keys, with the tenant separated from the rest of each key by
+     * the given delimiter.
+     *
+     * @param tenantDelimiter the character that ends the tenant at the start of each key.
+     * @return this builder.
+     */
+    public Builder keyIndex(char tenantDelimiter) {
+      this.keyIndex = true;
+      this.tenantDelimiter = tenantDelimiter;
+      return this;
+    }
+
+    /**
+     * Builds the store.
+     *
+     * @return the new store.
+     */
+    public ReccedaOtpStore build() {
+      if (weigher != null
+          && (maximumWeight < 1 || !(admissionThreshold > 0 && admissionThreshold <= 1))) {
+        throw new IllegalArgumentException("Invalid OTP store capacity.");
+      }
+      return new ReccedaOtpStore(this);
     }
   }
 
   public static class OtpEntry {
-    public String otpHash;
+    public byte[] otpHash;
     public long expiryTime;
     public int failedAttempts;
 
     public OtpEntry() {}
 
-    public OtpEntry(String otpHash, long expiryTime) {
+    public OtpEntry(byte[] otpHash, long expiryTime) {
       this.otpHash = otpHash;
       this.expiryTime = expiryTime;
       this.failedAttempts = 0;
@@ -0,0 +1,104 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * An {@link OtpStore} that holds several OTPs per subject, one for each purpose, addressed by an
+ * {@link OtpKey}.
+ *
+ * <p>The plain {@code String} keys of {@link OtpStore} address the subject's OTP for the {@link
+ * #DEFAULT_PURPOSE}, so a scoped store can be used wherever an {@code OtpStore} is expected.
+ *
+ * <p>Each purpose's OTP is always updated atomically. Whether all of a subject's OTPs change
+ * together depends on the implementation: a {@link SubjectOtpStore} keeps them in one entry and
+ * updates them as one, while a {@link ReccedaOtpStore} holds each purpose under its own key. See
+ * {@link #checkAndStore(OtpKey, Map, PolicyChain, Supplier, long)} and {@link
+ * #invalidateSubject(String)}.
+ */
+public interface ScopedOtpStore extends OtpStore {
+
+  /** The purpose of the OTPs stored through the plain {@code String} keys of {@link OtpStore}. */
+  String DEFAULT_PURPOSE = "";
+
+  /**
+   * Stores a new OTP for the subject and purpose, replacing the previous OTP for that purpose only.
+   *
+   * @param key the subject and purpose to associate with the OTP.
+   * @param otp the OTP to store.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   */
+  void storeOtp(OtpKey key, String otp, long ttlMillis);
+
+  /**
+   * Checks the policies and, if they all pass, generates an OTP and stores it, in one atomic update
+   * of the purpose's OTP. The policies see the subject as the {@linkplain
+   * com.recceda.core.policy.PolicyContext#getKey() key}, the purpose's current entry, and the
+   * number of OTPs the subject holds for all purposes.
+   *
+   * <p>A {@link SubjectOtpStore} counts the subject's OTPs within the same update, so concurrent
+   * requests for different purposes cannot both pass a {@link
+   * com.recceda.core.policy.MaxActiveOtpsPolicy}. Other implementations may count them separately,
+   * in which case they can.
+   *
+   * @param key the subject and purpose to associate with the OTP.
+   * @param attributes the attributes the caller supplied for the policies.
+   * @param policies the policies that must pass before the OTP is generated.
+   * @param otpSupplier generates the OTP once the policies have passed.
+   * @param ttlMillis the time-to-live for the OTP in milliseconds.
+   * @return the stored OTP.
+   * @throws com.recceda.exception.OtpGenerationException if a policy check fails.
+   */
+  String checkAndStore(
+      OtpKey key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis);
+
+  /**
+   * Verifies the OTP for the subject and purpose and, if it is correct, removes it. Failed attempts
+   * are counted per purpose.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @param otp the OTP to verify.
+   * @param maxFailedAttempts the number of failed attempts after which the OTP is locked.
+   * @return the outcome of the verification.
+   */
+  VerificationResult verifyAndConsume(OtpKey key, String otp, int maxFailedAttempts);
+
+  /**
+   * Retrieves the OTP entry for the subject and purpose.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   * @return the active {@link OtpEntry}, or {@code null} if there is none.
+   */
+  OtpEntry getOtpEntry(OtpKey key);
+
+  /**
+   * Invalidates the OTP for the subject and purpose, leaving the subject's other OTPs in place.
+   *
+   * @param key the subject and purpose associated with the OTP.
+   */
+  void invalidateOtp(OtpKey key);
+
+  /**
+   * Invalidates every OTP the subject holds, for all purposes. A {@link SubjectOtpStore} removes
+   * them in one operation. Other implementations may remove them one at a time, so an OTP stored
+   * for the subject while the invalidation runs may survive it.
+   *
+   * @param subject the subject.
+   * @return the number of active OTPs that were invalidated.
+   */
+  int invalidateSubject(String subject);
+
+  /**
+   * Returns the number of OTPs the subject holds that have not expired, across all purposes.
+   *
+   * @param subject the subject.
+   * @return the number of active OTPs.
+   */
+  int activeOtps(String subject);
+}
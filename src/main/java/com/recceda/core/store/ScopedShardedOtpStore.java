@@ -0,0 +1,112 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ShardedOtpStore} over {@link ScopedOtpStore} shards, which also shards {@link OtpKey}s.
+ *
+ * <p>{@link OtpKey}s are assigned to shards by subject, so all of a subject's OTPs are held by the
+ * shard that holds the subject's plain key, and each operation on them is handled by that shard
+ * alone. Operations on a whole subject are therefore as atomic as the shards make them; the default
+ * {@link SubjectOtpStore} shards update all of a subject's OTPs at once.
+ */
+public class ScopedShardedOtpStore extends ShardedOtpStore implements ScopedOtpStore {
+
+  /** Creates a new {@code ScopedShardedOtpStore} with one {@link SubjectOtpStore} per processor. */
+  public ScopedShardedOtpStore() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new {@code ScopedShardedOtpStore} backed by {@link SubjectOtpStore} shards.
+   *
+   * @param shardCount the number of shards.
+   */
+  public ScopedShardedOtpStore(int shardCount) {
+    this(shardCount, shard -> new SubjectOtpStore());
+  }
+
+  /**
+   * Creates a new {@code ScopedShardedOtpStore} with shards created by the given factory.
+   *
+   * @param shardCount the number of shards.
+   * @param shardFactory creates the store for each shard index.
+   */
+  public ScopedShardedOtpStore(int shardCount, IntFunction<? extends ScopedOtpStore> shardFactory) {
+    super(shardCount, shardFactory);
+  }
+
+  /**
+   * Creates a new {@code ScopedShardedOtpStore} over the given shards with a random routing key.
+   *
+   * @param shards the delegate stores; their order determines which subjects each one holds.
+   * @param executor the executor on which bulk operations process shards in parallel.
+   */
+  public ScopedShardedOtpStore(List<? extends ScopedOtpStore> shards, Executor executor) {
+    super(shards, executor);
+  }
+
+  /**
+   * Creates a new {@code ScopedShardedOtpStore} over the given shards with the given routing key.
+   *
+   * @param shards the delegate stores; their order determines which subjects each one holds.
+   * @param executor the executor on which bulk operations process shards in parallel.
+   * @param routingKey the {@value #ROUTING_KEY_LENGTH}-byte secret key that assigns keys to shards.
+   */
+  public ScopedShardedOtpStore(
+      List<? extends ScopedOtpStore> shards, Executor executor, byte[] routingKey) {
+    super(shards, executor, routingKey);
+  }
+
+  @Override
+  public void storeOtp(OtpKey key, String otp, long ttlMillis) {
+    scopedShard(key.getSubject()).storeOtp(key, otp, ttlMillis);
+  }
+
+  @Override
+  public String checkAndStore(
+      OtpKey key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return scopedShard(key.getSubject())
+        .checkAndStore(key, attributes, policies, otpSupplier, ttlMillis);
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(OtpKey key, String otp, int maxFailedAttempts) {
+    return scopedShard(key.getSubject()).verifyAndConsume(key, otp, maxFailedAttempts);
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(OtpKey key) {
+    return scopedShard(key.getSubject()).getOtpEntry(key);
+  }
+
+  @Override
+  public void invalidateOtp(OtpKey key) {
+    scopedShard(key.getSubject()).invalidateOtp(key);
+  }
+
+  @Override
+  public int invalidateSubject(String subject) {
+    return scopedShard(subject).invalidateSubject(subject);
+  }
+
+  @Override
+  public int activeOtps(String subject) {
+    return scopedShard(subject).activeOtps(subject);
+  }
+
+  private ScopedOtpStore scopedShard(String subject) {
+    // The constructors only accept scoped shards.
+    return (ScopedOtpStore) shard(subject);
+  }
+}
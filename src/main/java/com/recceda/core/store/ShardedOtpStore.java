@@ -0,0 +1,299 @@
+package com.recceda.core.store;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.Fingerprints;
+import com.recceda.util.TimeSource;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * An {@link OtpStore} that partitions keys across several independent delegate stores.
+ *
+ * <p>Each key is always handled by the same shard, chosen from a SipHash of the key under a secret
+ * routing key. Shards share no locks, buffers or maintenance work, so a busy shard never holds up
+ * the others, and since clients cannot predict the assignment, they cannot pile their keys onto one
+ * shard. Shards may use different implementations, for example to keep some keys off the heap.
+ *
+ * <p>The routing key is chosen at random unless one is given. Persistent shards, such as {@link
+ * MappedOtpStore}s, must be reopened in the same order and with the same routing key after a
+ * restart: store {@link #routingKey()} alongside them, as a {@code MappedOtpStore} keeps its own
+ * fingerprint seeds in its file.
+ *
+ * <p>Bulk operations split their keys by shard and process the shards in parallel on the given
+ * executor.
+ *
+ * <p>Use a {@link ScopedShardedOtpStore} to shard {@link OtpKey}s.
+ */
+public class ShardedOtpStore implements OtpStore {
+
+  /** The length of a routing key in bytes. */
+  public static final int ROUTING_KEY_LENGTH = 16;
+
+  private final OtpStore[] shards;
+  private final Executor executor;
+  private final long routingK0;
+  private final long routingK1;
+
+  /** Creates a new {@code ShardedOtpStore} with one {@link ReccedaOtpStore} per processor. */
+  public ShardedOtpStore() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new {@code ShardedOtpStore} backed by {@link ReccedaOtpStore} shards.
+   *
+   * @param shardCount the number of shards.
+   */
+  public ShardedOtpStore(int shardCount) {
+    this(shardCount, shard -> new ReccedaOtpStore());
+  }
+
+  /**
+   * Creates a new {@code ShardedOtpStore} with shards created by the given factory.
+   *
+   * @param shardCount the number of shards.
+   * @param shardFactory creates the store for each shard index.
+   */
+  public ShardedOtpStore(int shardCount, IntFunction<? extends OtpStore> shardFactory) {
+    this(createShards(shardCount, shardFactory), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a new {@code ShardedOtpStore} over the given shards with a random routing key.
+   *
+   * @param shards the delegate stores; their order determines which keys each one holds.
+   * @param executor the executor on which bulk operations process shards in parallel.
+   */
+  public ShardedOtpStore(List<? extends OtpStore> shards, Executor executor) {
+    this(shards, executor, randomRoutingKey());
+  }
+
+  /**
+   * Creates a new {@code ShardedOtpStore} over the given shards with the given routing key, for
+   * shards that were created with it before.
+   *
+   * @param shards the delegate stores; their order determines which keys each one holds.
+   * @param executor the executor on which bulk operations process shards in parallel.
+   * @param routingKey the {@value #ROUTING_KEY_LENGTH}-byte secret key that assigns keys to shards.
+   */
+  public ShardedOtpStore(List<? extends OtpStore> shards, Executor executor, byte[] routingKey) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("A sharded store needs at least one shard.");
+    }
+    if (routingKey.length != ROUTING_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "The routing key must be " + ROUTING_KEY_LENGTH + " bytes long.");
+    }
+    this.shards = shards.toArray(new OtpStore[0]);
+    this.executor = executor;
+    ByteBuffer key = ByteBuffer.wrap(routingKey);
+    this.routingK0 = key.getLong();
+    this.routingK1 = key.getLong();
+  }
+
+  @Override
+  public void storeOtp(String key, String otp, long ttlMillis) {
+    shard(key).storeOtp(key, otp, ttlMillis);
+  }
+
+  @Override
+  public String checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return shard(key).checkAndStore(key, attributes, policies, otpSupplier, ttlMillis);
+  }
+
+  @Override
+  public boolean verifyOtp(String key, String otp) {
+    return shard(key).verifyOtp(key, otp);
+  }
+
+  @Override
+  public VerificationResult verify(String key, String otp) {
+    return shard(key).verify(key, otp);
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp) {
+    return shard(key).verifyAndConsume(key, otp);
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    return shard(key).verifyAndConsume(key, otp, maxFailedAttempts);
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(String key) {
+    return shard(key).getOtpEntry(key);
+  }
+
+  @Override
+  public void invalidateOtp(String key) {
+    shard(key).invalidateOtp(key);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Returns the first shard's time source; all shards are expected to share one clock.
+   */
+  @Override
+  public TimeSource timeSource() {
+    return shards[0].timeSource();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Each shard receives one {@link OtpStore#storeOtps(Map, long)} call, and the shards are
+   * written in parallel.
+   */
+  @Override
+  public void storeOtps(Map<String, String> otps, long ttlMillis) {
+    Map<Integer, Map<String, String>> partitions = partition(otps);
+    List<Runnable> tasks = new ArrayList<>(partitions.size());
+    for (Map.Entry<Integer, Map<String, String>> partition : partitions.entrySet()) {
+      OtpStore shard = shards[partition.getKey()];
+      Map<String, String> shardOtps = partition.getValue();
+      tasks.add(() -> shard.storeOtps(shardOtps, ttlMillis));
+    }
+    fanOut(tasks);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Each shard receives one {@link OtpStore#verifyOtps(Map)} call, and the shards are verified
+   * in parallel. The results are returned in the iteration order of {@code otps}.
+   */
+  @Override
+  public Map<String, Boolean> verifyOtps(Map<String, String> otps) {
+    Map<Integer, Map<String, String>> partitions = partition(otps);
+    List<Map<String, Boolean>> shardResults =
+        Collections.synchronizedList(new ArrayList<>(partitions.size()));
+    List<Runnable> tasks = new ArrayList<>(partitions.size());
+    for (Map.Entry<Integer, Map<String, String>> partition : partitions.entrySet()) {
+      OtpStore shard = shards[partition.getKey()];
+      Map<String, String> shardOtps = partition.getValue();
+      tasks.add(() -> shardResults.add(shard.verifyOtps(shardOtps)));
+    }
+    fanOut(tasks);
+
+    Map<String, Boolean> merged = new HashMap<>();
+    for (Map<String, Boolean> results : shardResults) {
+      merged.putAll(results);
+    }
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (String key : otps.keySet()) {
+      results.put(key, merged.get(key));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return the shard count.
+   */
+  public int shardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Returns the secret key that assigns keys to shards. Keep it private: with it, clients could
+   * choose keys that all land in one shard.
+   *
+   * @return a copy of the {@value #ROUTING_KEY_LENGTH}-byte routing key.
+   */
+  public byte[] routingKey() {
+    return ByteBuffer.allocate(ROUTING_KEY_LENGTH).putLong(routingK0).putLong(routingK1).array();
+  }
+
+  /** Returns the index of the shard that holds the key. */
+  int shardIndex(String key) {
+    long hash = Fingerprints.sipHash24(key, routingK0, routingK1);
+    // Maps the top 32 bits onto [0, shards.length) without a division.
+    return (int) (((hash >>> 32) * shards.length) >>> 32);
+  }
+
+  OtpStore shard(String key) {
+    return shards[shardIndex(key)];
+  }
+
+  private Map<Integer, Map<String, String>> partition(Map<String, String> otps) {
+    Map<Integer, Map<String, String>> partitions = new HashMap<>();
+    for (Map.Entry<String, String> otp : otps.entrySet()) {
+      partitions
+          .computeIfAbsent(shardIndex(otp.getKey()), shard -> new HashMap<>())
+          .put(otp.getKey(), otp.getValue());
+    }
+    return partitions;
+  }
+
+  /**
+   * Runs the tasks in parallel and waits for all of them. The first task runs on the calling
+   * thread, which would otherwise only wait.
+   */
+  private void fanOut(List<Runnable> tasks) {
+    if (tasks.isEmpty()) {
+      return;
+    }
+    List<CompletableFuture<Void>> pending = new ArrayList<>(tasks.size() - 1);
+    for (int i = 1; i < tasks.size(); i++) {
+      pending.add(CompletableFuture.runAsync(tasks.get(i), executor));
+    }
+    RuntimeException failure = null;
+    try {
+      tasks.get(0).run();
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    for (CompletableFuture<Void> task : pending) {
+      try {
+        task.join();
+      } catch (CompletionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static byte[] randomRoutingKey() {
+    byte[] routingKey = new byte[ROUTING_KEY_LENGTH];
+    new SecureRandom().nextBytes(routingKey);
+    return routingKey;
+  }
+
+  private static List<OtpStore> createShards(
+      int shardCount, IntFunction<? extends OtpStore> shardFactory) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("The shard count must be positive.");
+    }
+    List<OtpStore> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(shardFactory.apply(i));
+    }
+    return shards;
+  }
+}
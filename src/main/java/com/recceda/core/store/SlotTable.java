@@ -0,0 +1,411 @@
+package com.recceda.core.store;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpStoreFullException;
+import com.recceda.util.Fingerprints;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One segment of an off-heap OTP table: a linear-probing hash table of fixed-size records in a
+ * {@link ByteBuffer}, guarded by its own lock.
+ *
+ * <p>Each 64-byte record holds a 128-bit key fingerprint, the raw OTP hash, the expiry time, the
+ * failed-attempt counter and a state word. Removal uses backward-shift deletion, so the table never
+ * accumulates tombstones. Expired records are reclaimed lazily: they are overwritten by inserts
+ * that pass over them, removed when their key is looked up, and swept when the segment fills up.
+ */
+final class SlotTable {
+
+  static final int SLOT_SIZE = 64;
+  static final double LOAD_FACTOR = 0.75;
+
+  private static final int HEADER_DIRTY = 0;
+  private static final int HEADER_SIZE = 4;
+
+  private static final int FP_HI = 0;
+  private static final int FP_LO = 8;
+  private static final int HASH = 16;
+  private static final int EXPIRY = 48;
+  private static final int ATTEMPTS = 56;
+  private static final int STATE = 60;
+
+  private static final int EMPTY = 0;
+  private static final int LIVE = 1;
+  private static final int WRITING = 2;
+  private static final int STATE_MASK = 3;
+
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final ByteBuffer buffer;
+  private final int mask;
+  private final int maxSize;
+  private int size;
+  private boolean dirty;
+
+  /**
+   * Creates a table over the given buffer, which is either zero-filled or holds a table written
+   * earlier with the same capacity.
+   *
+   * @param buffer a buffer of {@link #bufferSize(int)} bytes.
+   * @param capacity the number of slots; a power of two.
+   */
+  SlotTable(ByteBuffer buffer, int capacity) {
+    this.buffer = buffer;
+    this.mask = capacity - 1;
+    this.maxSize = (int) (capacity * LOAD_FACTOR);
+    this.size = buffer.getInt(HEADER_SIZE);
+    this.dirty = buffer.getInt(HEADER_DIRTY) != 0;
+  }
+
+  /** Returns the number of bytes a table with the given number of slots occupies. */
+  static long bufferSize(int capacity) {
+    return (long) (capacity + 1) * SLOT_SIZE;
+  }
+
+  /** Returns whether the table was not closed cleanly since it was last changed. */
+  boolean isDirty() {
+    lock.lock();
+    try {
+      return dirty;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Marks the table as consistent; call after its contents have been flushed. */
+  void markClean() {
+    lock.lock();
+    try {
+      buffer.putInt(HEADER_DIRTY, 0);
+      dirty = false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Rebuilds a table that was left dirty, dropping half-written, corrupt and expired records and
+   * moving the remaining ones back onto valid probe sequences.
+   *
+   * @return the number of records that were dropped.
+   */
+  int recover(long now) {
+    lock.lock();
+    try {
+      int dropped = 0;
+      for (int slot = 0; slot <= mask; slot++) {
+        int state = state(slot);
+        if (state != EMPTY && (state != LIVE || !checksumValid(slot) || expiry(slot) <= now)) {
+          buffer.putInt(offset(slot) + STATE, EMPTY);
+          dropped++;
+        }
+      }
+
+      // Walk each run from just after an empty slot, so records earlier in the run are settled.
+      // Records only ever move backwards along their run, so each one is visited exactly once.
+      int start = 0;
+      while (state(start) != EMPTY) {
+        start++;
+      }
+      int count = 0;
+      for (int i = 1; i <= mask; i++) {
+        int slot = (start + i) & mask;
+        if (state(slot) == EMPTY) {
+          continue;
+        }
+        count++;
+        int target = home(buffer.getLong(offset(slot) + FP_LO));
+        while (target != slot && state(target) != EMPTY) {
+          target = (target + 1) & mask;
+        }
+        if (target != slot) {
+          move(slot, target);
+          buffer.putInt(offset(slot) + STATE, EMPTY);
+        }
+      }
+      size = count;
+      buffer.putInt(HEADER_SIZE, size);
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  OtpEntry get(long hi, long lo, long now) {
+    lock.lock();
+    try {
+      int slot = find(hi, lo);
+      if (slot < 0) {
+        return null;
+      }
+      if (expiry(slot) <= now) {
+        delete(slot);
+        return null;
+      }
+      byte[] hash = new byte[OtpHasher.HASH_LENGTH];
+      for (int i = 0; i < OtpHasher.HASH_LENGTH; i += 8) {
+        LONGS.set(hash, i, buffer.getLong(offset(slot) + HASH + i));
+      }
+      OtpEntry entry = new OtpEntry(hash, expiry(slot));
+      entry.failedAttempts = buffer.getInt(offset(slot) + ATTEMPTS);
+      return entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void put(long hi, long lo, byte[] hash, long expiryTime, long now) {
+    lock.lock();
+    try {
+      int slot = find(hi, lo);
+      if (slot < 0) {
+        slot = insertionSlot(lo, -1 - slot, now);
+        if (slot < 0) {
+          // Make room by reclaiming every expired record before giving up.
+          sweepExpired(now);
+          slot = find(hi, lo);
+          if (size >= maxSize) {
+            throw new OtpStoreFullException();
+          }
+          slot = -1 - slot;
+          size++;
+        }
+      }
+      write(slot, hi, lo, hash, expiryTime);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  VerificationResult verify(long hi, long lo, byte[] candidateHash, long now) {
+    lock.lock();
+    try {
+      int slot = find(hi, lo);
+      if (slot < 0) {
+        return VerificationResult.NOT_FOUND;
+      }
+      if (expiry(slot) <= now) {
+        return VerificationResult.EXPIRED;
+      }
+      if (hashMatches(slot, candidateHash)) {
+        return VerificationResult.VALID;
+      }
+      incrementAttempts(slot);
+      return VerificationResult.INVALID;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  VerificationResult verifyAndConsume(
+      long hi, long lo, byte[] candidateHash, int maxFailedAttempts, long now) {
+    lock.lock();
+    try {
+      int slot = find(hi, lo);
+      if (slot < 0) {
+        return VerificationResult.NOT_FOUND;
+      }
+      if (expiry(slot) <= now) {
+        delete(slot);
+        return VerificationResult.EXPIRED;
+      }
+      if (buffer.getInt(offset(slot) + ATTEMPTS) >= maxFailedAttempts) {
+        return VerificationResult.LOCKED;
+      }
+      if (hashMatches(slot, candidateHash)) {
+        delete(slot);
+        return VerificationResult.VALID;
+      }
+      incrementAttempts(slot);
+      return VerificationResult.INVALID;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void remove(long hi, long lo) {
+    lock.lock();
+    try {
+      int slot = find(hi, lo);
+      if (slot >= 0) {
+        delete(slot);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the slot holding the fingerprint, or {@code -1 - emptySlot} with the first empty slot
+   * of its probe sequence if it is absent.
+   */
+  private int find(long hi, long lo) {
+    int slot = home(lo);
+    while (state(slot) != EMPTY) {
+      int offset = offset(slot);
+      if (buffer.getLong(offset + FP_LO) == lo && buffer.getLong(offset + FP_HI) == hi) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1 - slot;
+  }
+
+  /**
+   * Returns the slot a new record should go to: an expired record on the probe sequence if there is
+   * one, otherwise the empty slot at its end, or {@code -1} if the table is at its load limit.
+   */
+  private int insertionSlot(long lo, int emptySlot, long now) {
+    for (int slot = home(lo); slot != emptySlot; slot = (slot + 1) & mask) {
+      if (expiry(slot) <= now) {
+        return slot;
+      }
+    }
+    if (size >= maxSize) {
+      return -1;
+    }
+    size++;
+    return emptySlot;
+  }
+
+  private void sweepExpired(long now) {
+    for (int slot = 0; slot <= mask; ) {
+      if (state(slot) != EMPTY && expiry(slot) <= now) {
+        // The shift may have moved another record into this slot, so look at it again.
+        delete(slot);
+      } else {
+        slot++;
+      }
+    }
+  }
+
+  /** Removes the record in the slot and shifts later records of the same run back into the gap. */
+  private void delete(int slot) {
+    markDirty();
+    buffer.putInt(offset(slot) + STATE, WRITING);
+    int hole = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (state(next) == EMPTY) {
+        break;
+      }
+      int home = home(buffer.getLong(offset(next) + FP_LO));
+      boolean reachable =
+          hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+      if (!reachable) {
+        move(next, hole);
+        hole = next;
+      }
+    }
+    buffer.putInt(offset(hole) + STATE, EMPTY);
+    size--;
+    buffer.putInt(HEADER_SIZE, size);
+  }
+
+  private void write(int slot, long hi, long lo, byte[] hash, long expiryTime) {
+    markDirty();
+    int offset = offset(slot);
+    buffer.putInt(offset + STATE, WRITING);
+    buffer.putLong(offset + FP_HI, hi);
+    buffer.putLong(offset + FP_LO, lo);
+    for (int i = 0; i < OtpHasher.HASH_LENGTH; i += 8) {
+      buffer.putLong(offset + HASH + i, (long) LONGS.get(hash, i));
+    }
+    buffer.putLong(offset + EXPIRY, expiryTime);
+    buffer.putInt(offset + ATTEMPTS, 0);
+    buffer.putInt(HEADER_SIZE, size);
+    seal(slot);
+  }
+
+  /**
+   * Moves a record into a slot that is empty or already marked as being written. The source is
+   * marked as being written before the target is sealed, so an interrupted move never leaves two
+   * live copies of the record.
+   */
+  private void move(int from, int to) {
+    int source = offset(from);
+    int target = offset(to);
+    buffer.putInt(target + STATE, WRITING);
+    for (int i = 0; i < STATE; i += 4) {
+      buffer.putInt(target + i, buffer.getInt(source + i));
+    }
+    buffer.putInt(source + STATE, WRITING);
+    seal(to);
+  }
+
+  /** Marks the record as live, with a checksum of its current contents. */
+  private void seal(int slot) {
+    buffer.putInt(offset(slot) + STATE, checksum(slot) << 2 | LIVE);
+  }
+
+  private boolean checksumValid(int slot) {
+    return buffer.getInt(offset(slot) + STATE) >>> 2 == checksum(slot);
+  }
+
+  private int checksum(int slot) {
+    int offset = offset(slot);
+    long h = 0;
+    for (int i = 0; i < ATTEMPTS; i += 8) {
+      h = Fingerprints.fmix64(h ^ buffer.getLong(offset + i));
+    }
+    h = Fingerprints.fmix64(h ^ buffer.getInt(offset + ATTEMPTS));
+    return (int) h >>> 2;
+  }
+
+  private void markDirty() {
+    if (!dirty) {
+      buffer.putInt(HEADER_DIRTY, 1);
+      dirty = true;
+    }
+  }
+
+  private boolean hashMatches(int slot, byte[] candidateHash) {
+    int offset = offset(slot) + HASH;
+    long diff = 0;
+    for (int i = 0; i < OtpHasher.HASH_LENGTH; i += 8) {
+      diff |= buffer.getLong(offset + i) ^ (long) LONGS.get(candidateHash, i);
+    }
+    return diff == 0;
+  }
+
+  private void incrementAttempts(int slot) {
+    markDirty();
+    int offset = offset(slot);
+    buffer.putInt(offset + STATE, WRITING);
+    buffer.putInt(offset + ATTEMPTS, buffer.getInt(offset + ATTEMPTS) + 1);
+    seal(slot);
+  }
+
+  private int state(int slot) {
+    return buffer.getInt(offset(slot) + STATE) & STATE_MASK;
+  }
+
+  private long expiry(int slot) {
+    return buffer.getLong(offset(slot) + EXPIRY);
+  }
+
+  private int home(long lo) {
+    return (int) (lo ^ (lo >>> 32)) & mask;
+  }
+
+  private static int offset(int slot) {
+    // The first record-sized block holds the table header.
+    return (slot + 1) * SLOT_SIZE;
+  }
+}
@@ -0,0 +1,391 @@
+package com.recceda.core.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.TimeSource;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ScopedOtpStore} that keeps all of a subject's OTPs together in one Caffeine entry.
+ *
+ * <p>Each subject maps to a small immutable record of its purposes and their entries, held in two
+ * parallel arrays that are searched linearly, as a subject rarely has more than a few OTPs at once.
+ * Every change to a subject, whatever the purpose, is one atomic compute on the subject's entry, so
+ * policies that look at all of a subject's OTPs see a consistent view. Invalidating a subject
+ * removes a single cache entry however many OTPs it holds.
+ *
+ * <p>A subject stays in the cache until its last OTP expires. OTPs that expire earlier are ignored
+ * by every read and dropped the next time the subject changes.
+ */
+public class SubjectOtpStore implements ScopedOtpStore {
+
+  private final Cache<String, Subject> subjects;
+  private final OtpHasher hasher;
+  private final TimeSource timeSource;
+
+  /** Creates a new {@code SubjectOtpStore} with the default settings. */
+  public SubjectOtpStore() {
+    this(builder());
+  }
+
+  private SubjectOtpStore(Builder builder) {
+    this.hasher = builder.hasher;
+    this.timeSource = builder.timeSource;
+    Caffeine<Object, Object> caffeine = Caffeine.newBuilder().scheduler(builder.scheduler);
+    if (timeSource != TimeSource.SYSTEM) {
+      caffeine.ticker(() -> TimeUnit.MILLISECONDS.toNanos(timeSource.currentTimeMillis()));
+    }
+    this.subjects = caffeine.expireAfter(subjectExpiry(timeSource)).build();
+  }
+
+  /**
+   * Returns a builder for configuring a {@code SubjectOtpStore}.
+   *
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private static Expiry<String, Subject> subjectExpiry(TimeSource timeSource) {
+    return new Expiry<String, Subject>() {
+      @Override
+      public long expireAfterCreate(String subject, Subject value, long currentTime) {
+        return TimeUnit.MILLISECONDS.toNanos(value.expiryTime - timeSource.currentTimeMillis());
+      }
+
+      @Override
+      public long expireAfterUpdate(
+          String subject, Subject value, long currentTime, long currentDuration) {
+        return expireAfterCreate(subject, value, currentTime);
+      }
+
+      @Override
+      public long expireAfterRead(
+          String subject, Subject value, long currentTime, long currentDuration) {
+        return currentDuration;
+      }
+    };
+  }
+
+  @Override
+  public void storeOtp(String key, String otp, long ttlMillis) {
+    storeOtp(OtpKey.of(key, DEFAULT_PURPOSE), otp, ttlMillis);
+  }
+
+  @Override
+  public void storeOtp(OtpKey key, String otp, long ttlMillis) {
+    OtpEntry entry = new OtpEntry(hasher.hash(otp), timeSource.currentTimeMillis() + ttlMillis);
+    subjects
+        .asMap()
+        .compute(
+            key.getSubject(),
+            (subject, current) ->
+                Subject.with(current, key.getPurpose(), entry, timeSource.currentTimeMillis()));
+  }
+
+  @Override
+  public String checkAndStore(
+      String key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    return checkAndStore(
+        OtpKey.of(key, DEFAULT_PURPOSE), attributes, policies, otpSupplier, ttlMillis);
+  }
+
+  @Override
+  public String checkAndStore(
+      OtpKey key,
+      Map<String, String> attributes,
+      PolicyChain policies,
+      Supplier<String> otpSupplier,
+      long ttlMillis) {
+    String[] otp = {null};
+    subjects
+        .asMap()
+        .compute(
+            key.getSubject(),
+            (subject, current) -> {
+              long now = timeSource.currentTimeMillis();
+              OtpEntry existing = current == null ? null : current.active(key.getPurpose(), now);
+              int activeOtps = current == null ? 0 : current.activeCount(now);
+              policies.check(new PolicyContext(key, existing, activeOtps, now, this, attributes));
+              otp[0] = otpSupplier.get();
+              OtpEntry entry = new OtpEntry(hasher.hash(otp[0]), now + ttlMillis);
+              return Subject.with(current, key.getPurpose(), entry, now);
+            });
+    return otp[0];
+  }
+
+  @Override
+  public boolean verifyOtp(String key, String otp) {
+    return verify(key, otp) == VerificationResult.VALID;
+  }
+
+  @Override
+  public VerificationResult verify(String key, String otp) {
+    VerificationResult[] result = {VerificationResult.NOT_FOUND};
+    subjects
+        .asMap()
+        .computeIfPresent(
+            key,
+            (subject, current) -> {
+              OtpEntry entry = current.active(DEFAULT_PURPOSE, timeSource.currentTimeMillis());
+              if (entry != null) {
+                if (hasher.matches(entry.otpHash, otp)) {
+                  result[0] = VerificationResult.VALID;
+                } else {
+                  entry.failedAttempts++;
+                  result[0] = VerificationResult.INVALID;
+                }
+              }
+              return current;
+            });
+    return result[0];
+  }
+
+  @Override
+  public VerificationResult verifyAndConsume(String key, String otp, int maxFailedAttempts) {
+    return verifyAndConsume(OtpKey.of(key, DEFAULT_PURPOSE), otp, maxFailedAttempts);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The check, the attempt count and the removal of a consumed OTP happen in a single atomic
+   * compute on the subject.
+   */
+  @Override
+  public VerificationResult verifyAndConsume(OtpKey key, String otp, int maxFailedAttempts) {
+    VerificationResult[] result = {VerificationResult.NOT_FOUND};
+    subjects
+        .asMap()
+        .computeIfPresent(
+            key.getSubject(),
+            (subject, current) -> {
+              int index = current.indexOf(key.getPurpose());
+              if (index < 0) {
+                return current;
+              }
+              long now = timeSource.currentTimeMillis();
+              OtpEntry entry = current.entries[index];
+              if (entry.expiryTime <= now) {
+                result[0] = VerificationResult.EXPIRED;
+                return current.without(index, now);
+              }
+              if (entry.failedAttempts >= maxFailedAttempts) {
+                result[0] = VerificationResult.LOCKED;
+                return current;
+              }
+              if (hasher.matches(entry.otpHash, otp)) {
+                result[0] = VerificationResult.VALID;
+                return current.without(index, now);
+              }
+              entry.failedAttempts++;
+              result[0] = VerificationResult.INVALID;
+              return current;
+            });
+    return result[0];
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(String key) {
+    return getOtpEntry(OtpKey.of(key, DEFAULT_PURPOSE));
+  }
+
+  @Override
+  public OtpEntry getOtpEntry(OtpKey key) {
+    Subject subject = subjects.getIfPresent(key.getSubject());
+    return subject == null
+        ? null
+        : subject.active(key.getPurpose(), timeSource.currentTimeMillis());
+  }
+
+  @Override
+  public void invalidateOtp(String key) {
+    invalidateOtp(OtpKey.of(key, DEFAULT_PURPOSE));
+  }
+
+  @Override
+  public void invalidateOtp(OtpKey key) {
+    subjects
+        .asMap()
+        .computeIfPresent(
+            key.getSubject(),
+            (subject, current) -> {
+              int index = current.indexOf(key.getPurpose());
+              return index < 0 ? current : current.without(index, timeSource.currentTimeMillis());
+            });
+  }
+
+  @Override
+  public int invalidateSubject(String subject) {
+    Subject removed = subjects.asMap().remove(subject);
+    return removed == null ? 0 : removed.activeCount(timeSource.currentTimeMillis());
+  }
+
+  @Override
+  public int activeOtps(String subject) {
+    Subject current = subjects.getIfPresent(subject);
+    return current == null ? 0 : current.activeCount(timeSource.currentTimeMillis());
+  }
+
+  @Override
+  public TimeSource timeSource() {
+    return timeSource;
+  }
+
+  /**
+   * Returns the approximate number of subjects in the store, which may include subjects whose OTPs
+   * have all expired but that have not been removed yet.
+   *
+   * @return the estimated number of subjects.
+   */
+  public long estimatedSize() {
+    return subjects.estimatedSize();
+  }
+
+  /** Runs any pending maintenance now, which removes the subjects whose OTPs have all expired. */
+  public void cleanUp() {
+    subjects.cleanUp();
+  }
+
+  /** The OTPs of one subject. Never modified once published, apart from the attempt counts. */
+  private static final class Subject {
+    final String[] purposes;
+    final OtpEntry[] entries;
+    final long expiryTime;
+
+    private Subject(String[] purposes, OtpEntry[] entries) {
+      this.purposes = purposes;
+      this.entries = entries;
+      long latest = 0;
+      for (OtpEntry entry : entries) {
+        latest = Math.max(latest, entry.expiryTime);
+      }
+      this.expiryTime = latest;
+    }
+
+    /** Returns the subject with the purpose's entry set, dropping any that have expired. */
+    static Subject with(Subject current, String purpose, OtpEntry entry, long now) {
+      if (current == null) {
+        return new Subject(new String[] {purpose}, new OtpEntry[] {entry});
+      }
+      String[] purposes = new String[current.purposes.length + 1];
+      OtpEntry[] entries = new OtpEntry[purposes.length];
+      int size = 0;
+      for (int i = 0; i < current.purposes.length; i++) {
+        if (current.entries[i].expiryTime > now && !current.purposes[i].equals(purpose)) {
+          purposes[size] = current.purposes[i];
+          entries[size++] = current.entries[i];
+        }
+      }
+      purposes[size] = purpose;
+      entries[size++] = entry;
+      return new Subject(Arrays.copyOf(purposes, size), Arrays.copyOf(entries, size));
+    }
+
+    /** Returns the subject without the entry at the index or any that have expired. */
+    Subject without(int index, long now) {
+      String[] remainingPurposes = new String[purposes.length];
+      OtpEntry[] remainingEntries = new OtpEntry[purposes.length];
+      int size = 0;
+      for (int i = 0; i < purposes.length; i++) {
+        if (i != index && entries[i].expiryTime > now) {
+          remainingPurposes[size] = purposes[i];
+          remainingEntries[size++] = entries[i];
+        }
+      }
+      // Returning null removes the subject from the cache.
+      return size == 0
+          ? null
+          : new Subject(
+              Arrays.copyOf(remainingPurposes, size), Arrays.copyOf(remainingEntries, size));
+    }
+
+    int indexOf(String purpose) {
+      for (int i = 0; i < purposes.length; i++) {
+        if (purposes[i].equals(purpose)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    OtpEntry active(String purpose, long now) {
+      int index = indexOf(purpose);
+      return index >= 0 && entries[index].expiryTime > now ? entries[index] : null;
+    }
+
+    int activeCount(long now) {
+      int count = 0;
+      for (OtpEntry entry : entries) {
+        if (entry.expiryTime > now) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  /** A builder for {@link SubjectOtpStore}. */
+  public static final class Builder {
+    private OtpHasher hasher = OtpHasher.sha256();
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private Scheduler scheduler = Scheduler.systemScheduler();
+
+    private Builder() {}
+
+    /**
+     * Sets the hasher used to hash OTPs before they are stored.
+     *
+     * @param hasher the hasher; SHA-256 by default.
+     * @return this builder.
+     */
+    public Builder hasher(OtpHasher hasher) {
+      this.hasher = hasher;
+      return this;
+    }
+
+    /**
+     * Sets the clock that OTP expiry is measured against.
+     *
+     * @param timeSource the time source; {@link TimeSource#SYSTEM} by default.
+     * @return this builder.
+     */
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    /**
+     * Sets the scheduler that wakes the cache to remove subjects as their last OTP expires.
+     *
+     * @param scheduler the scheduler; {@link Scheduler#systemScheduler()} by default.
+     * @return this builder.
+     */
+    public Builder scheduler(Scheduler scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    /**
+     * Builds the store.
+     *
+     * @return the new store.
+     */
+    public SubjectOtpStore build() {
+      return new SubjectOtpStore(this);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.recceda.core.store;
+
+/** The outcome of verifying an OTP with {@link OtpStore#verifyAndConsume(String, String, int)}. */
+public enum VerificationResult {
+  /** The OTP was correct and has been consumed, so it cannot be used again. */
+  VALID,
+  /** The OTP was wrong; the failed attempt has been counted. */
+  INVALID,
+  /** An OTP exists for the key but its validity period has passed. */
+  EXPIRED,
+  /** The key has reached the maximum number of failed attempts; the OTP was not checked. */
+  LOCKED,
+  /** There is no OTP for the key. */
+  NOT_FOUND,
+  /** The OTP was correct but has already been used, so it was rejected. */
+  REPLAYED;
+
+  /**
+   * Returns whether the OTP was accepted.
+   *
+   * @return {@code true} for {@link #VALID}.
+   */
+  public boolean isValid() {
+    return this == VALID;
+  }
+}
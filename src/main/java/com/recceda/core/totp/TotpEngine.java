@@ -0,0 +1,486 @@
+package com.recceda.core.totp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.util.ObjectPool;
+import com.recceda.util.TimeSource;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generates and verifies HOTP (RFC 4226) and TOTP (RFC 6238) codes, the codes shown by
+ * authenticator apps.
+ *
+ * <p>Unlike OTPs issued through an {@link com.recceda.core.store.OtpStore}, these codes are derived
+ * from a secret shared with the user and a counter or the current time, so verifying one needs no
+ * stored entry and any node holding the secret can do it. A code is accepted for the current time
+ * step and for up to {@code window} steps either side of it, to allow for clock drift.
+ *
+ * <p>Initialising a {@link Mac} with a key costs more than computing a code with it, so the engine
+ * keeps a bounded cache of keyed MACs per secret and reuses them. The only per-user state is a
+ * small replay cache holding the last time step accepted for each key, so that a code cannot be
+ * used twice; its entries expire once that step has left the drift window. The cache never evicts
+ * an entry early, since that would let the code be replayed; when it holds its capacity, correct
+ * codes for keys it does not hold are answered {@link VerificationResult#LOCKED} until entries
+ * expire.
+ */
+public final class TotpEngine {
+
+  /** The HMAC algorithms defined by RFC 6238. */
+  public enum Algorithm {
+    /** HMAC-SHA1, the algorithm used by most authenticator apps. */
+    SHA1("HmacSHA1"),
+    /** HMAC-SHA256. */
+    SHA256("HmacSHA256"),
+    /** HMAC-SHA512. */
+    SHA512("HmacSHA512");
+
+    private final String macName;
+
+    Algorithm(String macName) {
+      this.macName = macName;
+    }
+
+    /**
+     * Returns the JCA name of the MAC.
+     *
+     * @return the name passed to {@link Mac#getInstance(String)}.
+     */
+    public String macName() {
+      return macName;
+    }
+  }
+
+  /** The minimum secret length, as required by RFC 4226. */
+  public static final int MIN_SECRET_LENGTH = 16;
+
+  private static final int[] POWERS_OF_TEN = {
+    1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+  };
+  private static final SecureRandom SECRET_RANDOM = new SecureRandom();
+
+  private final Algorithm algorithm;
+  private final int digits;
+  private final long stepMillis;
+  private final int window;
+  private final TimeSource timeSource;
+  private final Cache<ByteBuffer, KeyedMac> macs;
+  private final long replayCapacity;
+  private final Cache<String, Long> usedSteps;
+  private final AtomicLong usedKeys = new AtomicLong();
+
+  private TotpEngine(Builder builder) {
+    this.algorithm = builder.algorithm;
+    this.digits = builder.digits;
+    this.stepMillis = builder.timeStep.toMillis();
+    this.window = builder.window;
+    this.timeSource = builder.timeSource;
+    this.macs = Caffeine.newBuilder().maximumSize(builder.macCacheSize).build();
+    this.replayCapacity = builder.replayCacheSize;
+    Caffeine<Object, Object> replay =
+        Caffeine.newBuilder()
+            // A step older than the window can no longer be accepted, so it need not be remembered.
+            .expireAfterWrite((2L * window + 1) * stepMillis, TimeUnit.MILLISECONDS);
+    if (timeSource != TimeSource.SYSTEM) {
+      replay.ticker(() -> TimeUnit.MILLISECONDS.toNanos(timeSource.currentTimeMillis()));
+    }
+    this.usedSteps =
+        replay
+            // Runs inside the removal, so the count never lags behind the cache.
+            .<String, Long>evictionListener((key, step, cause) -> usedKeys.decrementAndGet())
+            .build();
+  }
+
+  /**
+   * Returns a builder for configuring a {@code TotpEngine}.
+   *
+   * @return a new builder with the RFC 6238 defaults: HMAC-SHA1, 6 digits, 30-second steps and a
+   *     drift window of one step.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Generates a random secret to share with a user's authenticator app, for example encoded with
+   * {@link com.recceda.util.Base32#encode(byte[])}.
+   *
+   * @return a new 20-byte secret, the length recommended by RFC 4226.
+   */
+  public static byte[] generateSecret() {
+    byte[] secret = new byte[20];
+    SECRET_RANDOM.nextBytes(secret);
+    return secret;
+  }
+
+  /**
+   * Generates the HOTP code for the given counter.
+   *
+   * @param secret the shared secret.
+   * @param counter the moving factor.
+   * @return the code, padded with leading zeros to the configured number of digits.
+   */
+  public String generateHotp(byte[] secret, long counter) {
+    return format(code(keyedMac(secret), counter));
+  }
+
+  /**
+   * Generates the TOTP code for the current time.
+   *
+   * @param secret the shared secret.
+   * @return the code, padded with leading zeros to the configured number of digits.
+   */
+  public String generateTotp(byte[] secret) {
+    return generateTotp(secret, timeSource.currentTimeMillis());
+  }
+
+  /**
+   * Generates the TOTP code for the given time.
+   *
+   * @param secret the shared secret.
+   * @param timeMillis the time in milliseconds since the epoch.
+   * @return the code, padded with leading zeros to the configured number of digits.
+   */
+  public String generateTotp(byte[] secret, long timeMillis) {
+    return generateHotp(secret, Math.floorDiv(timeMillis, stepMillis));
+  }
+
+  /**
+   * Verifies a TOTP code and, if it is correct, records its time step so that neither it nor an
+   * earlier code is accepted again for the same key.
+   *
+   * @param key the key identifying the user, for the replay cache.
+   * @param secret the user's shared secret.
+   * @param code the code entered by the user.
+   * @return {@link VerificationResult#VALID}, {@link VerificationResult#INVALID}, {@link
+   *     VerificationResult#REPLAYED} if the code was correct but a code for the same or a later
+   *     step had already been accepted, or {@link VerificationResult#LOCKED} if the code was
+   *     correct but the replay cache is full and cannot remember it.
+   */
+  public VerificationResult verifyTotp(String key, byte[] secret, String code) {
+    int candidate = parse(code);
+    if (candidate < 0) {
+      return VerificationResult.INVALID;
+    }
+    long current = Math.floorDiv(timeSource.currentTimeMillis(), stepMillis);
+    long step = find(keyedMac(secret), candidate, current, window);
+    if (step == Long.MIN_VALUE) {
+      return VerificationResult.INVALID;
+    }
+    Long used = usedSteps.getIfPresent(key);
+    if (used != null && used >= step) {
+      return VerificationResult.REPLAYED;
+    }
+    if (used == null && usedKeys.get() >= replayCapacity) {
+      usedSteps.cleanUp();
+    }
+    VerificationResult[] result = new VerificationResult[1];
+    usedSteps
+        .asMap()
+        .compute(
+            key,
+            (k, last) -> {
+              if (last == null) {
+                if (usedKeys.get() >= replayCapacity) {
+                  result[0] = VerificationResult.LOCKED;
+                  return null;
+                }
+                usedKeys.incrementAndGet();
+              } else if (last >= step) {
+                result[0] = VerificationResult.REPLAYED;
+                return last;
+              }
+              result[0] = VerificationResult.VALID;
+              return step;
+            });
+    return result[0];
+  }
+
+  /**
+   * Verifies an HOTP code against the expected counter and the next {@code window} counters, which
+   * allows for codes the user generated but never entered. The caller stores the counter, and must
+   * store the returned value plus one to stop the code from being reused.
+   *
+   * @param secret the user's shared secret.
+   * @param code the code entered by the user.
+   * @param counter the next counter the caller expects.
+   * @return the counter that produced the code, or {@code -1} if none did.
+   */
+  public long verifyHotp(byte[] secret, String code, long counter) {
+    int candidate = parse(code);
+    if (candidate < 0) {
+      return -1;
+    }
+    KeyedMac mac = keyedMac(secret);
+    for (long c = counter; c <= counter + window; c++) {
+      if (code(mac, c) == candidate) {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the length of a time step.
+   *
+   * @return the time step.
+   */
+  public Duration timeStep() {
+    return Duration.ofMillis(stepMillis);
+  }
+
+  /**
+   * Returns the number of keys whose last accepted time step is remembered.
+   *
+   * @return the approximate size of the replay cache.
+   */
+  public long replayCacheSize() {
+    usedSteps.cleanUp();
+    return usedKeys.get();
+  }
+
+  /** Searches the current step first, then outwards, and returns the matching step. */
+  private long find(KeyedMac mac, int candidate, long current, int window) {
+    if (code(mac, current) == candidate) {
+      return current;
+    }
+    for (int drift = 1; drift <= window; drift++) {
+      if (code(mac, current - drift) == candidate) {
+        return current - drift;
+      }
+      if (code(mac, current + drift) == candidate) {
+        return current + drift;
+      }
+    }
+    return Long.MIN_VALUE;
+  }
+
+  /** Computes the code for a counter as a number, with the dynamic truncation of RFC 4226. */
+  private int code(KeyedMac keyedMac, long counter) {
+    PooledMac pooled = keyedMac.acquire();
+    try {
+      Mac mac = pooled.mac;
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        mac.update((byte) (counter >>> shift));
+      }
+      byte[] hash = pooled.output;
+      mac.doFinal(hash, 0);
+      int offset = hash[hash.length - 1] & 0x0F;
+      int binary =
+          ((hash[offset] & 0x7F) << 24)
+              | ((hash[offset + 1] & 0xFF) << 16)
+              | ((hash[offset + 2] & 0xFF) << 8)
+              | (hash[offset + 3] & 0xFF);
+      return binary % POWERS_OF_TEN[digits];
+    } catch (ShortBufferException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      keyedMac.release(pooled);
+    }
+  }
+
+  private String format(int code) {
+    StringBuilder formatted = new StringBuilder(digits);
+    String value = Integer.toString(code);
+    for (int i = value.length(); i < digits; i++) {
+      formatted.append('0');
+    }
+    return formatted.append(value).toString();
+  }
+
+  /** Returns the code as a number, or {@code -1} if it is not a string of exactly the digits. */
+  private int parse(String code) {
+    if (code == null || code.length() != digits) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < digits; i++) {
+      char c = code.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private KeyedMac keyedMac(byte[] secret) {
+    if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+      throw new IllegalArgumentException(
+          "The secret must be at least " + MIN_SECRET_LENGTH + " bytes long.");
+    }
+    KeyedMac mac = macs.getIfPresent(ByteBuffer.wrap(secret));
+    if (mac != null) {
+      return mac;
+    }
+    // The cache keeps the key, so it must not share the caller's array.
+    byte[] copy = secret.clone();
+    return macs.get(ByteBuffer.wrap(copy), k -> new KeyedMac(algorithm, copy));
+  }
+
+  /**
+   * A MAC initialised with one secret, and a few spare copies to reuse between calls. The prototype
+   * itself is never used, so that it can be copied while other threads compute codes.
+   */
+  private static final class KeyedMac {
+    /** Few threads use one secret at once, and the engine caches many secrets. */
+    private static final int SPARE_COPIES = 4;
+
+    private final Mac prototype;
+    private final ObjectPool<PooledMac> spares = new ObjectPool<>(SPARE_COPIES, this::copy);
+
+    KeyedMac(Algorithm algorithm, byte[] secret) {
+      try {
+        prototype = Mac.getInstance(algorithm.macName());
+        prototype.init(new SecretKeySpec(secret, algorithm.macName()));
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(algorithm.macName() + " is not available.", e);
+      }
+    }
+
+    /** Takes a spare copy, or makes a new one if other threads are using all of them. */
+    PooledMac acquire() {
+      return spares.acquire();
+    }
+
+    void release(PooledMac pooled) {
+      spares.release(pooled);
+    }
+
+    private PooledMac copy() {
+      try {
+        return new PooledMac((Mac) prototype.clone());
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException("The MAC provider does not support cloning.", e);
+      }
+    }
+  }
+
+  private static final class PooledMac {
+    final Mac mac;
+    final byte[] output;
+
+    PooledMac(Mac mac) {
+      this.mac = mac;
+      this.output = new byte[mac.getMacLength()];
+    }
+  }
+
+  /** A builder for {@link TotpEngine}. */
+  public static final class Builder {
+    private Algorithm algorithm = Algorithm.SHA1;
+    private int digits = 6;
+    private Duration timeStep = Duration.ofSeconds(30);
+    private int window = 1;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private long macCacheSize = 10_000;
+    private long replayCacheSize = 1_000_000;
+
+    private Builder() {}
+
+    /**
+     * Sets the HMAC algorithm.
+     *
+     * @param algorithm {@link Algorithm#SHA1} by default.
+     * @return this builder.
+     */
+    public Builder algorithm(Algorithm algorithm) {
+      this.algorithm = algorithm;
+      return this;
+    }
+
+    /**
+     * Sets the number of digits in a code.
+     *
+     * @param digits between 6 and 9; 6 by default.
+     * @return this builder.
+     */
+    public Builder digits(int digits) {
+      this.digits = digits;
+      return this;
+    }
+
+    /**
+     * Sets the length of a TOTP time step.
+     *
+     * @param timeStep 30 seconds by default.
+     * @return this builder.
+     */
+    public Builder timeStep(Duration timeStep) {
+      this.timeStep = timeStep;
+      return this;
+    }
+
+    /**
+     * Sets how many time steps either side of the current one a TOTP code is accepted for, and how
+     * many counters after the expected one an HOTP code is accepted for.
+     *
+     * @param window the drift window; 1 by default.
+     * @return this builder.
+     */
+    public Builder window(int window) {
+      this.window = window;
+      return this;
+    }
+
+    /**
+     * Sets the source of the current time.
+     *
+     * @param timeSource {@link TimeSource#SYSTEM} by default.
+     * @return this builder.
+     */
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    /**
+     * Sets the number of secrets whose keyed MACs are cached.
+     *
+     * @param macCacheSize the maximum number of cached MACs; 10,000 by default.
+     * @return this builder.
+     */
+    public Builder macCacheSize(long macCacheSize) {
+      this.macCacheSize = macCacheSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of keys whose last accepted time step is remembered. Only keys that verified
+     * a code within the drift window are held, so this bounds memory during a burst of logins. The
+     * cache never evicts early: once it is full, correct codes for keys it does not hold are
+     * refused as {@link VerificationResult#LOCKED} until entries expire, so size it for the number
+     * of keys that verify a code within {@code 2 * window + 1} time steps.
+     *
+     * @param replayCacheSize the maximum number of keys; 1,000,000 by default.
+     * @return this builder.
+     */
+    public Builder replayCacheSize(long replayCacheSize) {
+      this.replayCacheSize = replayCacheSize;
+      return this;
+    }
+
+    /**
+     * Builds the engine.
+     *
+     * @return the new engine.
+     */
+    public TotpEngine build() {
+      if (digits < 6 || digits > 9) {
+        throw new IllegalArgumentException("A code must have between 6 and 9 digits.");
+      }
+      if (timeStep.toMillis() < 1 || window < 0 || macCacheSize < 1 || replayCacheSize < 1) {
+        throw new IllegalArgumentException("Invalid TOTP engine configuration.");
+      }
+      return new TotpEngine(this);
+    }
+  }
+}
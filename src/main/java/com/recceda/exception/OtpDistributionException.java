@@ -0,0 +1,12 @@
+package com.recceda.exception;
+
+/** An exception that is thrown when a generated OTP cannot be handed over for delivery. */
+public class OtpDistributionException extends RuntimeException {
+  public OtpDistributionException(String message) {
+    super(message);
+  }
+
+  public OtpDistributionException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,12 @@
+package com.recceda.exception;
+
+/**
+ * An exception that is thrown when a store with bounded capacity is too full to accept an OTP for a
+ * new key. Unlike other generation failures it says nothing about the caller, so services should
+ * report it as unavailability rather than as a rejected request.
+ */
+public class OtpStoreFullException extends OtpGenerationException {
+  public OtpStoreFullException() {
+    super("The OTP store is full.");
+  }
+}
@@ -0,0 +1,333 @@
+package com.recceda.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON codec for the small request and response bodies of {@link OtpHttpServer}.
+ *
+ * <p>The parser reads UTF-8 bytes directly, without building an intermediate string or token list:
+ * strings without escapes are decoded with one copy, numbers become {@link Long} or {@link Double},
+ * and objects keep their member order. The writer handles flat objects whose values are strings,
+ * numbers, booleans or {@code null}.
+ */
+final class JsonCodec {
+
+  private static final int MAX_DEPTH = 16;
+
+  private final byte[] json;
+  private final int length;
+  private int position;
+
+  private JsonCodec(byte[] json, int length) {
+    this.json = json;
+    this.length = length;
+  }
+
+  /**
+   * Parses a JSON object.
+   *
+   * @param json the UTF-8 encoded JSON.
+   * @param length the number of bytes of {@code json} to read.
+   * @return the object's members, in order.
+   * @throws IllegalArgumentException if the input is not a single well-formed JSON object.
+   */
+  static Map<String, Object> parseObject(byte[] json, int length) {
+    JsonCodec parser = new JsonCodec(json, length);
+    parser.skipWhitespace();
+    if (parser.peek() != '{') {
+      throw parser.error("Expected an object");
+    }
+    Map<String, Object> object = parser.readObject(0);
+    parser.skipWhitespace();
+    if (parser.position != length) {
+      throw parser.error("Unexpected content after the object");
+    }
+    return object;
+  }
+
+  /**
+   * Writes a flat JSON object.
+   *
+   * @param members the members; values must be strings, numbers, booleans or {@code null}.
+   * @return the UTF-8 encoded JSON.
+   */
+  static byte[] writeObject(Map<String, ?> members) {
+    StringBuilder out = new StringBuilder(16 * members.size() + 2);
+    out.append('{');
+    boolean first = true;
+    for (Map.Entry<String, ?> member : members.entrySet()) {
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      writeString(out, member.getKey());
+      out.append(':');
+      Object value = member.getValue();
+      if (value == null || value instanceof Boolean || value instanceof Number) {
+        out.append(value);
+      } else {
+        writeString(out, value.toString());
+      }
+    }
+    return out.append('}').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Map<String, Object> readObject(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw error("Nested too deeply");
+    }
+    position++;
+    Map<String, Object> object = new LinkedHashMap<>();
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') {
+        throw error("Expected a member name");
+      }
+      String name = readString();
+      skipWhitespace();
+      expect(':');
+      object.put(name, readValue(depth));
+      skipWhitespace();
+      int next = next();
+      if (next == '}') {
+        return object;
+      }
+      if (next != ',') {
+        throw error("Expected ',' or '}'");
+      }
+    }
+  }
+
+  private List<Object> readArray(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw error("Nested too deeply");
+    }
+    position++;
+    List<Object> array = new ArrayList<>();
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+      return array;
+    }
+    while (true) {
+      array.add(readValue(depth));
+      skipWhitespace();
+      int next = next();
+      if (next == ']') {
+        return array;
+      }
+      if (next != ',') {
+        throw error("Expected ',' or ']'");
+      }
+    }
+  }
+
+  private Object readValue(int depth) {
+    skipWhitespace();
+    int c = peek();
+    switch (c) {
+      case '"':
+        return readString();
+      case '{':
+        return readObject(depth + 1);
+      case '[':
+        return readArray(depth + 1);
+      case 't':
+        readLiteral("true");
+        return Boolean.TRUE;
+      case 'f':
+        readLiteral("false");
+        return Boolean.FALSE;
+      case 'n':
+        readLiteral("null");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw error("Unexpected character");
+    }
+  }
+
+  private String readString() {
+    int start = ++position;
+    while (position < length) {
+      byte b = json[position];
+      if (b == '"') {
+        return new String(json, start, position++ - start, StandardCharsets.UTF_8);
+      }
+      if (b == '\\') {
+        return readEscapedString(start);
+      }
+      if ((b & 0xFF) < 0x20) {
+        throw error("Control character in string");
+      }
+      position++;
+    }
+    throw error("Unterminated string");
+  }
+
+  /** Continues a string from its first escape, which is rare enough to decode in two passes. */
+  private String readEscapedString(int start) {
+    StringBuilder out =
+        new StringBuilder(new String(json, start, position - start, StandardCharsets.UTF_8));
+    int runStart = position;
+    while (position < length) {
+      byte b = json[position];
+      if (b == '"') {
+        out.append(new String(json, runStart, position++ - runStart, StandardCharsets.UTF_8));
+        return out.toString();
+      }
+      if ((b & 0xFF) < 0x20) {
+        throw error("Control character in string");
+      }
+      if (b != '\\') {
+        position++;
+        continue;
+      }
+      out.append(new String(json, runStart, position - runStart, StandardCharsets.UTF_8));
+      position++;
+      int escape = next();
+      switch (escape) {
+        case '"':
+        case '\\':
+        case '/':
+          out.append((char) escape);
+          break;
+        case 'b':
+          out.append('\b');
+          break;
+        case 'f':
+          out.append('\f');
+          break;
+        case 'n':
+          out.append('\n');
+          break;
+        case 'r':
+          out.append('\r');
+          break;
+        case 't':
+          out.append('\t');
+          break;
+        case 'u':
+          out.append((char) readHex());
+          break;
+        default:
+          throw error("Invalid escape");
+      }
+      runStart = position;
+    }
+    throw error("Unterminated string");
+  }
+
+  private int readHex() {
+    if (position + 4 > length) {
+      throw error("Truncated unicode escape");
+    }
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      int digit = Character.digit(json[position++], 16);
+      if (digit < 0) {
+        throw error("Invalid unicode escape");
+      }
+      value = value << 4 | digit;
+    }
+    return value;
+  }
+
+  private Number readNumber() {
+    int start = position;
+    boolean integral = true;
+    while (position < length) {
+      byte b = json[position];
+      if (b == '.' || b == 'e' || b == 'E') {
+        integral = false;
+      } else if (!(b == '-' || b == '+' || (b >= '0' && b <= '9'))) {
+        break;
+      }
+      position++;
+    }
+    String number = new String(json, start, position - start, StandardCharsets.US_ASCII);
+    try {
+      return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+    } catch (NumberFormatException e) {
+      throw error("Invalid number");
+    }
+  }
+
+  private void readLiteral(String literal) {
+    for (int i = 0; i < literal.length(); i++) {
+      if (next() != literal.charAt(i)) {
+        throw error("Invalid literal");
+      }
+    }
+  }
+
+  private void skipWhitespace() {
+    while (position < length) {
+      byte b = json[position];
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  private void expect(char c) {
+    if (next() != c) {
+      throw error("Expected '" + c + "'");
+    }
+  }
+
+  private int peek() {
+    return position < length ? json[position] : -1;
+  }
+
+  private int next() {
+    return position < length ? json[position++] : -1;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at offset " + position + ".");
+  }
+
+  private static void writeString(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+}
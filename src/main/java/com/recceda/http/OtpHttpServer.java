@@ -0,0 +1,549 @@
+package com.recceda.http;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.exception.OtpDistributionException;
+import com.recceda.exception.OtpGenerationException;
+import com.recceda.exception.OtpStoreFullException;
+import com.recceda.util.ThreadFactories;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An embedded HTTP service that exposes a {@link ReccedaOtp} instance, built on the JDK's {@link
+ * HttpServer}.
+ *
+ * <p>The service accepts JSON {@code POST} requests on three endpoints:
+ *
+ * <ul>
+ *   <li>{@code /otp/generate} with {@code key} and optionally {@code length}, {@code ttlMillis} and
+ *       an {@code attributes} object: generates an OTP, hands it to the configured distributor and
+ *       answers {@code 202}. The length and validity must lie within the ranges set on the builder.
+ *   <li>{@code /otp/verify} with {@code key} and {@code otp}: verifies and consumes the OTP and
+ *       answers {@code 200} with the {@link VerificationResult}. After the configured number of
+ *       failed attempts the key is locked until a new OTP is generated.
+ *   <li>{@code /otp/invalidate} with {@code key}: invalidates the OTP and answers {@code 200}.
+ * </ul>
+ *
+ * <p>Malformed requests answer {@code 400}, requests rejected by a policy {@code 429}, requests for
+ * new keys while the store is full {@code 503} and failed deliveries {@code 502}; every error body
+ * carries an {@code error} message.
+ *
+ * <p>If the server is given a {@linkplain Builder#healthCheck(ReccedaOtpStore) store to watch},
+ * {@code GET /otp/health} reports the store's occupancy, and answers {@code 503} once the store
+ * rejects new OTPs, so that a load balancer can send new requests to other nodes.
+ *
+ * <p>On JDK 21 and later, every request runs on its own virtual thread, so a slow distributor or
+ * store only parks a cheap thread. On older JDKs requests run on a bounded pool of platform
+ * threads; when the pool and its queue are full, further requests answer {@code 503} without
+ * touching the store, so the thread accepting connections is never held up.
+ *
+ * <p>Run the JVM with {@code -Dsun.net.httpserver.nodelay=true}. The JDK server writes the headers
+ * and the body of a response separately, so without it Nagle's algorithm holds each body back until
+ * the client's delayed acknowledgement, about 40 ms per request. The property applies to every JDK
+ * {@link HttpServer} in the JVM, which is why the server does not set it itself.
+ */
+public class OtpHttpServer implements AutoCloseable {
+
+  public static final int DEFAULT_MAX_THREADS = 200;
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+  public static final int DEFAULT_MAX_FAILED_ATTEMPTS = 5;
+  public static final int DEFAULT_MIN_LENGTH = 6;
+  public static final int DEFAULT_MAX_LENGTH = 10;
+  public static final long DEFAULT_MIN_TTL_MILLIS = 30 * 1000;
+  public static final long DEFAULT_MAX_TTL_MILLIS = 15 * 60 * 1000;
+  public static final int MAX_REQUEST_BYTES = 16 * 1024;
+
+  /** The request attribute under which policies find the client's address. */
+  public static final String REMOTE_ADDRESS_ATTRIBUTE = "remoteAddress";
+
+  private static final Logger log = LoggerFactory.getLogger(OtpHttpServer.class);
+  private static final int DEFAULT_LENGTH = 6;
+  private static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+  // Set while a request that did not fit in the bounded pool runs on the overflow thread.
+  private static final ThreadLocal<Boolean> OVERFLOW = new ThreadLocal<>();
+  private static final byte[] ACCEPTED = JsonCodec.writeObject(Map.of("status", "accepted"));
+  private static final byte[] INVALIDATED = JsonCodec.writeObject(Map.of("status", "invalidated"));
+  private static final Map<VerificationResult, byte[]> RESULTS = resultBodies();
+
+  private final ReccedaOtp otp;
+  private final OtpDistributor distributor;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ExecutorService overflow;
+  private final boolean virtualThreads;
+  private final ReccedaOtpStore healthCheck;
+  private final int maxFailedAttempts;
+  private final int minLength;
+  private final int maxLength;
+  private final long minTtlMillis;
+  private final long maxTtlMillis;
+
+  private OtpHttpServer(Builder builder) throws IOException {
+    this.otp = builder.otp;
+    this.distributor = builder.distributor;
+    this.healthCheck = builder.healthCheck;
+    this.maxFailedAttempts = builder.maxFailedAttempts;
+    this.minLength = builder.minLength;
+    this.maxLength = builder.maxLength;
+    this.minTtlMillis = builder.minTtlMillis;
+    this.maxTtlMillis = builder.maxTtlMillis;
+    this.virtualThreads = builder.virtualThreads && ThreadFactories.virtualThreadsSupported();
+    this.overflow = virtualThreads ? null : overflowThread(builder);
+    this.executor = virtualThreads ? virtualThreadPerTask() : boundedPool(builder, overflow);
+    this.server =
+        HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+    server.createContext("/otp/generate", exchange -> handle(exchange, 202, this::generate));
+    server.createContext("/otp/verify", exchange -> handle(exchange, 200, this::verify));
+    server.createContext("/otp/invalidate", exchange -> handle(exchange, 200, this::invalidate));
+    if (healthCheck != null) {
+      server.createContext("/otp/health", this::health);
+    }
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * Returns a builder for a server that exposes the given instance.
+   *
+   * @param otp the instance that generates, verifies and invalidates OTPs.
+   * @param distributor delivers the OTPs generated through {@code /otp/generate}.
+   * @return a new builder with the default settings.
+   */
+  public static Builder builder(ReccedaOtp otp, OtpDistributor distributor) {
+    return new Builder(otp, distributor);
+  }
+
+  /**
+   * Returns the port the server listens on, which is useful when it was started on port 0.
+   *
+   * @return the bound port.
+   */
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Returns {@code true} if requests run on virtual threads rather than the bounded pool.
+   *
+   * @return whether requests run on virtual threads.
+   */
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /** Stops accepting requests, waits up to a second for running ones and stops the threads. */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdown();
+    if (overflow != null) {
+      overflow.shutdown();
+    }
+  }
+
+  private byte[] generate(Map<String, Object> request, HttpExchange exchange) {
+    String key = requiredString(request, "key");
+    int length =
+        (int)
+            optionalLong(
+                request,
+                "length",
+                defaultOf(DEFAULT_LENGTH, minLength, maxLength),
+                minLength,
+                maxLength);
+    long ttlMillis =
+        optionalLong(
+            request,
+            "ttlMillis",
+            defaultOf(DEFAULT_TTL_MILLIS, minTtlMillis, maxTtlMillis),
+            minTtlMillis,
+            maxTtlMillis);
+    Map<String, String> attributes = attributes(request, exchange);
+    otp.generateOtp(key, length, ttlMillis, attributes, distributor);
+    return ACCEPTED;
+  }
+
+  private byte[] verify(Map<String, Object> request, HttpExchange exchange) {
+    VerificationResult result =
+        otp.verifyAndConsume(
+            requiredString(request, "key"), requiredString(request, "otp"), maxFailedAttempts);
+    return RESULTS.get(result);
+  }
+
+  private byte[] invalidate(Map<String, Object> request, HttpExchange exchange) {
+    otp.invalidateOtp(requiredString(request, "key"));
+    return INVALIDATED;
+  }
+
+  private void health(HttpExchange exchange) throws IOException {
+    try {
+      if (OVERFLOW.get() != null) {
+        respond(exchange, 503, error("The server is overloaded."));
+        return;
+      }
+      boolean accepting = healthCheck.acceptsNewOtps();
+      Map<String, Object> body = new LinkedHashMap<>();
+      body.put("status", accepting ? "ok" : "full");
+      body.put("occupancy", healthCheck.occupancy());
+      respond(exchange, accepting ? 200 : 503, JsonCodec.writeObject(body));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void handle(HttpExchange exchange, int successStatus, Endpoint endpoint)
+      throws IOException {
+    try {
+      if (OVERFLOW.get() != null) {
+        respond(exchange, 503, error("The server is overloaded."));
+        return;
+      }
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        respond(exchange, 405, error("Only POST is supported."));
+        return;
+      }
+      byte[] body;
+      try (InputStream in = exchange.getRequestBody()) {
+        body = in.readNBytes(MAX_REQUEST_BYTES + 1);
+      }
+      if (body.length > MAX_REQUEST_BYTES) {
+        respond(exchange, 413, error("The request body is too large."));
+        return;
+      }
+      int status = successStatus;
+      byte[] response;
+      try {
+        Map<String, Object> request = JsonCodec.parseObject(body, body.length);
+        response = endpoint.handle(request, exchange);
+      } catch (IllegalArgumentException e) {
+        status = 400;
+        response = error(e.getMessage());
+      } catch (OtpStoreFullException e) {
+        status = 503;
+        response = error(e.getMessage());
+      } catch (OtpGenerationException e) {
+        status = 429;
+        response = error(e.getMessage());
+      } catch (OtpDistributionException e) {
+        status = 502;
+        response = error(e.getMessage());
+      } catch (RuntimeException e) {
+        log.warn("OTP request to {} failed", exchange.getRequestURI().getPath(), e);
+        status = 500;
+        response = error("Internal error.");
+      }
+      respond(exchange, status, response);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String requiredString(Map<String, Object> request, String name) {
+    Object value = request.get(name);
+    if (!(value instanceof String) || ((String) value).isEmpty()) {
+      throw new IllegalArgumentException("The '" + name + "' field must be a non-empty string.");
+    }
+    return (String) value;
+  }
+
+  private static long optionalLong(
+      Map<String, Object> request, String name, long defaultValue, long min, long max) {
+    Object value = request.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (!(value instanceof Long) || (Long) value < min || (Long) value > max) {
+      throw new IllegalArgumentException(
+          "The '" + name + "' field must be an integer between " + min + " and " + max + ".");
+    }
+    return (Long) value;
+  }
+
+  private static long defaultOf(long preferred, long min, long max) {
+    return Math.max(min, Math.min(max, preferred));
+  }
+
+  private static Map<String, String> attributes(
+      Map<String, Object> request, HttpExchange exchange) {
+    Object value = request.get("attributes");
+    if (value != null && !(value instanceof Map)) {
+      throw new IllegalArgumentException("The 'attributes' field must be an object.");
+    }
+    Map<String, String> attributes = new HashMap<>();
+    if (value != null) {
+      for (Map.Entry<?, ?> attribute : ((Map<?, ?>) value).entrySet()) {
+        if (!(attribute.getValue() instanceof String)) {
+          throw new IllegalArgumentException("Attribute values must be strings.");
+        }
+        attributes.put((String) attribute.getKey(), (String) attribute.getValue());
+      }
+    }
+    // Set last, so that clients cannot claim a different address.
+    attributes.put(
+        REMOTE_ADDRESS_ATTRIBUTE, exchange.getRemoteAddress().getAddress().getHostAddress());
+    return attributes;
+  }
+
+  private static byte[] error(String message) {
+    return JsonCodec.writeObject(Collections.singletonMap("error", message));
+  }
+
+  private static Map<VerificationResult, byte[]> resultBodies() {
+    Map<VerificationResult, byte[]> bodies = new HashMap<>();
+    for (VerificationResult result : VerificationResult.values()) {
+      Map<String, Object> body = new LinkedHashMap<>();
+      body.put("result", result.name());
+      body.put("valid", result == VerificationResult.VALID);
+      bodies.put(result, JsonCodec.writeObject(body));
+    }
+    return bodies;
+  }
+
+  private static ExecutorService virtualThreadPerTask() {
+    ThreadFactory threads = ThreadFactories.workerThreadFactory("recceda-otp-http-");
+    // A pool with no core threads and a hand-off queue starts one new thread for every task; as
+    // the threads are virtual, nothing is worth keeping alive between requests.
+    return new ThreadPoolExecutor(
+        0, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS, new SynchronousQueue<>(), threads);
+  }
+
+  private static ExecutorService boundedPool(Builder builder, ExecutorService overflow) {
+    // The JDK server only hands the executor an opaque task that parses the request and then
+    // calls the handler. Requests that do not fit are run on the overflow thread instead, where
+    // the handler sees the flag and answers 503 straight away.
+    RejectedExecutionHandler shed =
+        (task, executor) ->
+            overflow.execute(
+                () -> {
+                  OVERFLOW.set(Boolean.TRUE);
+                  try {
+                    task.run();
+                  } finally {
+                    OVERFLOW.remove();
+                  }
+                });
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            builder.maxThreads,
+            builder.maxThreads,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(builder.queueCapacity),
+            ThreadFactories.daemonThreadFactory("recceda-otp-http-"),
+            shed);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private static ExecutorService overflowThread(Builder builder) {
+    // Answering 503 takes microseconds, so one thread keeps up. Only if even its queue is full
+    // does the accepting thread answer, which still does not touch the store.
+    return new ThreadPoolExecutor(
+        1,
+        1,
+        0,
+        TimeUnit.NANOSECONDS,
+        new ArrayBlockingQueue<>(builder.queueCapacity),
+        ThreadFactories.daemonThreadFactory("recceda-otp-http-overflow-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  @FunctionalInterface
+  private interface Endpoint {
+    byte[] handle(Map<String, Object> request, HttpExchange exchange);
+  }
+
+  /** A builder for {@link OtpHttpServer}. */
+  public static final class Builder {
+    private final ReccedaOtp otp;
+    private final OtpDistributor distributor;
+    private String host = "0.0.0.0";
+    private int port = 8080;
+    private int backlog = 0;
+    private boolean virtualThreads = true;
+    private int maxThreads = DEFAULT_MAX_THREADS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int maxFailedAttempts = DEFAULT_MAX_FAILED_ATTEMPTS;
+    private int minLength = DEFAULT_MIN_LENGTH;
+    private int maxLength = DEFAULT_MAX_LENGTH;
+    private long minTtlMillis = DEFAULT_MIN_TTL_MILLIS;
+    private long maxTtlMillis = DEFAULT_MAX_TTL_MILLIS;
+    private ReccedaOtpStore healthCheck;
+
+    private Builder(ReccedaOtp otp, OtpDistributor distributor) {
+      this.otp = otp;
+      this.distributor = distributor;
+    }
+
+    /**
+     * Sets the address to listen on.
+     *
+     * @param host a host name or address; {@code 0.0.0.0}, all interfaces, by default.
+     * @return this builder.
+     */
+    public Builder host(String host) {
+      this.host = host;
+      return this;
+    }
+
+    /**
+     * Sets the port to listen on.
+     *
+     * @param port the port, 8080 by default; 0 picks a free port, see {@link #port()}.
+     * @return this builder.
+     */
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections waiting to be accepted.
+     *
+     * @param backlog the backlog; 0, the system default, by default.
+     * @return this builder.
+     */
+    public Builder backlog(int backlog) {
+      this.backlog = backlog;
+      return this;
+    }
+
+    /**
+     * Sets whether requests run on virtual threads when the JVM supports them.
+     *
+     * @param virtualThreads {@code true} by default; {@code false} always uses the bounded pool.
+     * @return this builder.
+     */
+    public Builder virtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    /**
+     * Sets the number of platform threads that handle requests when virtual threads are not used.
+     *
+     * @param maxThreads the pool size.
+     * @return this builder.
+     */
+    public Builder maxThreads(int maxThreads) {
+      this.maxThreads = maxThreads;
+      return this;
+    }
+
+    /**
+     * Sets the number of requests that wait for a pool thread when virtual threads are not used.
+     *
+     * @param queueCapacity the queue capacity.
+     * @return this builder.
+     */
+    public Builder queueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * Sets the number of wrong codes after which {@code /otp/verify} locks a key until a new OTP is
+     * generated for it.
+     *
+     * @param maxFailedAttempts the maximum number of failed attempts; 5 by default.
+     * @return this builder.
+     */
+    public Builder maxFailedAttempts(int maxFailedAttempts) {
+      this.maxFailedAttempts = maxFailedAttempts;
+      return this;
+    }
+
+    /**
+     * Sets the OTP lengths a client may request. Requests without a length get 6 digits, or the
+     * nearest length in the range.
+     *
+     * @param minLength the shortest length; 6 by default.
+     * @param maxLength the longest length; 10 by default.
+     * @return this builder.
+     */
+    public Builder lengthRange(int minLength, int maxLength) {
+      this.minLength = minLength;
+      this.maxLength = maxLength;
+      return this;
+    }
+
+    /**
+     * Sets the validity periods a client may request. Requests without one get 5 minutes, or the
+     * nearest period in the range.
+     *
+     * @param minTtlMillis the shortest validity in milliseconds; 30 seconds by default.
+     * @param maxTtlMillis the longest validity in milliseconds; 15 minutes by default.
+     * @return this builder.
+     */
+    public Builder ttlRange(long minTtlMillis, long maxTtlMillis) {
+      this.minTtlMillis = minTtlMillis;
+      this.maxTtlMillis = maxTtlMillis;
+      return this;
+    }
+
+    /**
+     * Adds {@code GET /otp/health}, which reports the occupancy of the given store and answers
+     * {@code 503} while the store is too full to accept OTPs for new keys.
+     *
+     * @param store the store behind the {@link ReccedaOtp} instance, usually a bounded one.
+     * @return this builder.
+     */
+    public Builder healthCheck(ReccedaOtpStore store) {
+      this.healthCheck = store;
+      return this;
+    }
+
+    /**
+     * Binds the server and starts accepting requests.
+     *
+     * @return the running server.
+     * @throws IOException if the server cannot listen on the address.
+     */
+    public OtpHttpServer start() throws IOException {
+      if (otp == null || distributor == null) {
+        throw new IllegalStateException("The server needs a ReccedaOtp and a distributor.");
+      }
+      if (port < 0
+          || port > 65535
+          || maxThreads < 1
+          || queueCapacity < 1
+          || maxFailedAttempts < 1
+          || minLength < 1
+          || minLength > maxLength
+          || minTtlMillis < 1
+          || minTtlMillis > maxTtlMillis) {
+        throw new IllegalArgumentException("Invalid HTTP server configuration.");
+      }
+      return new OtpHttpServer(this);
+    }
+  }
+}
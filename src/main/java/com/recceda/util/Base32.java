@@ -0,0 +1,71 @@
+package com.recceda.util;
+
+import java.util.Arrays;
+
+/**
+ * The RFC 4648 Base32 encoding, in which authenticator apps exchange shared secrets.
+ *
+ * <p>Encoding omits the {@code =} padding, as in {@code otpauth://} URIs. Decoding ignores case,
+ * spaces, hyphens and padding, so secrets typed in by users are accepted.
+ */
+public final class Base32 {
+
+  private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+  private Base32() {}
+
+  /**
+   * Encodes bytes as unpadded Base32.
+   *
+   * @param bytes the bytes to encode.
+   * @return the encoded string.
+   */
+  public static String encode(byte[] bytes) {
+    StringBuilder encoded = new StringBuilder((bytes.length * 8 + 4) / 5);
+    int buffer = 0;
+    int bits = 0;
+    for (byte b : bytes) {
+      buffer = (buffer << 8) | (b & 0xFF);
+      bits += 8;
+      while (bits >= 5) {
+        bits -= 5;
+        encoded.append(ALPHABET.charAt((buffer >>> bits) & 0x1F));
+      }
+    }
+    if (bits > 0) {
+      encoded.append(ALPHABET.charAt((buffer << (5 - bits)) & 0x1F));
+    }
+    return encoded.toString();
+  }
+
+  /**
+   * Decodes a Base32 string.
+   *
+   * @param encoded the encoded string.
+   * @return the decoded bytes.
+   * @throws IllegalArgumentException if the string contains a character outside the alphabet.
+   */
+  public static byte[] decode(String encoded) {
+    byte[] decoded = new byte[encoded.length() * 5 / 8];
+    int length = 0;
+    int buffer = 0;
+    int bits = 0;
+    for (int i = 0; i < encoded.length(); i++) {
+      char c = encoded.charAt(i);
+      if (c == ' ' || c == '-' || c == '=') {
+        continue;
+      }
+      int value = ALPHABET.indexOf(Character.toUpperCase(c));
+      if (value < 0) {
+        throw new IllegalArgumentException("Invalid Base32 character: " + c);
+      }
+      buffer = (buffer << 5) | value;
+      bits += 5;
+      if (bits >= 8) {
+        bits -= 8;
+        decoded[length++] = (byte) (buffer >>> bits);
+      }
+    }
+    return length == decoded.length ? decoded : Arrays.copyOf(decoded, length);
+  }
+}
@@ -0,0 +1,52 @@
+package com.recceda.util;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TimeSource} that reads the system clock periodically on a background thread and serves
+ * the cached value, so that reading the time is a single volatile load.
+ *
+ * <p>The time lags the system clock by up to the resolution, so OTPs may live up to that much
+ * longer than their time-to-live. A resolution of a few milliseconds is plenty for OTP lifetimes
+ * measured in minutes. Close the source to stop its thread.
+ */
+public final class CoarseTimeSource implements TimeSource, AutoCloseable {
+
+  private final ScheduledExecutorService ticker;
+  private volatile long currentTimeMillis;
+
+  /**
+   * Creates a source that refreshes the time at the given resolution.
+   *
+   * @param resolution the interval between clock reads.
+   */
+  public CoarseTimeSource(Duration resolution) {
+    long resolutionMillis = resolution.toMillis();
+    if (resolutionMillis < 1) {
+      throw new IllegalArgumentException("The resolution must be at least one millisecond.");
+    }
+    this.currentTimeMillis = System.currentTimeMillis();
+    this.ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            ThreadFactories.daemonThreadFactory("recceda-otp-clock-"));
+    ticker.scheduleAtFixedRate(
+        () -> currentTimeMillis = System.currentTimeMillis(),
+        resolutionMillis,
+        resolutionMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return currentTimeMillis;
+  }
+
+  /** Stops refreshing the time; the source keeps returning the last value read. */
+  @Override
+  public void close() {
+    ticker.shutdownNow();
+  }
+}
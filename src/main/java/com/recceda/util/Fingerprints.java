@@ -0,0 +1,166 @@
+package com.recceda.util;
+
+/**
+ * Hashing for building compact key fingerprints.
+ *
+ * <p>{@link #sipHash24(CharSequence, long, long)} and {@link #sipHash128(CharSequence, long, long)}
+ * are SipHash-2-4, a pseudorandom function of the key: without the 128-bit secret key, nobody can
+ * find two strings that hash alike faster than by trying about as many strings as the hash has
+ * values. Use them wherever a fingerprint stands in for a key that a client chooses. Callers must
+ * pick the secret key at random and keep it private.
+ *
+ * <p>{@link #hash64(CharSequence, long)} is faster but only spreads keys evenly: collisions can be
+ * built that hold for every seed, so use it only where a collision costs some accuracy rather than
+ * mixing up two keys.
+ */
+public final class Fingerprints {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private Fingerprints() {}
+
+  /**
+   * Hashes the characters of the given string, as UTF-16LE bytes, with SipHash-2-4.
+   *
+   * @param key the string to hash.
+   * @param k0 the first half of the secret key.
+   * @param k1 the second half of the secret key.
+   * @return the 64-bit hash.
+   */
+  public static long sipHash24(CharSequence key, long k0, long k1) {
+    SipState state = new SipState(k0, k1);
+    state.absorb(key);
+    return state.finish(0xff);
+  }
+
+  /**
+   * Hashes the characters of the given string, as UTF-16LE bytes, with the 128-bit output variant
+   * of SipHash-2-4.
+   *
+   * @param key the string to hash.
+   * @param k0 the first half of the secret key.
+   * @param k1 the second half of the secret key.
+   * @return the two 64-bit halves of the hash, in output order.
+   */
+  public static long[] sipHash128(CharSequence key, long k0, long k1) {
+    SipState state = new SipState(k0, k1);
+    state.v1 ^= 0xee;
+    state.absorb(key);
+    long first = state.finish(0xee);
+    state.v1 ^= 0xdd;
+    return new long[] {first, state.finish(0)};
+  }
+
+  /**
+   * Hashes the characters of the given string with a MurmurHash3-style mix. The hash is not keyed:
+   * see the class description.
+   *
+   * @param key the string to hash.
+   * @param seed the seed.
+   * @return the 64-bit hash.
+   */
+  public static long hash64(CharSequence key, long seed) {
+    int length = key.length();
+    long h = seed ^ (length * C1);
+    int i = 0;
+    for (; i + 4 <= length; i += 4) {
+      long k =
+          key.charAt(i)
+              | (long) key.charAt(i + 1) << 16
+              | (long) key.charAt(i + 2) << 32
+              | (long) key.charAt(i + 3) << 48;
+      h ^= mixK(k);
+      h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+    }
+    if (i < length) {
+      long k = 0;
+      for (int shift = 0; i < length; i++, shift += 16) {
+        k |= (long) key.charAt(i) << shift;
+      }
+      h ^= mixK(k);
+    }
+    return fmix64(h ^ length);
+  }
+
+  /**
+   * Mixes the bits of a 64-bit value so that every input bit affects every output bit.
+   *
+   * @param h the value to mix.
+   * @return the mixed value.
+   */
+  public static long fmix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long mixK(long k) {
+    k *= C1;
+    k = Long.rotateLeft(k, 31);
+    return k * C2;
+  }
+
+  private static final class SipState {
+    long v0;
+    long v1;
+    long v2;
+    long v3;
+
+    SipState(long k0, long k1) {
+      v0 = k0 ^ 0x736f6d6570736575L;
+      v1 = k1 ^ 0x646f72616e646f6dL;
+      v2 = k0 ^ 0x6c7967656e657261L;
+      v3 = k1 ^ 0x7465646279746573L;
+    }
+
+    void absorb(CharSequence key) {
+      int length = key.length();
+      int i = 0;
+      for (; i + 4 <= length; i += 4) {
+        compress(
+            key.charAt(i)
+                | (long) key.charAt(i + 1) << 16
+                | (long) key.charAt(i + 2) << 32
+                | (long) key.charAt(i + 3) << 48);
+      }
+      // The last word carries the low byte of the length in bytes above the remaining characters.
+      long last = (long) (2 * length) << 56;
+      for (int shift = 0; i < length; i++, shift += 16) {
+        last |= (long) key.charAt(i) << shift;
+      }
+      compress(last);
+    }
+
+    long finish(int tag) {
+      v2 ^= tag;
+      for (int i = 0; i < 4; i++) {
+        round();
+      }
+      return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private void compress(long m) {
+      v3 ^= m;
+      round();
+      round();
+      v0 ^= m;
+    }
+
+    private void round() {
+      v0 += v1;
+      v1 = Long.rotateLeft(v1, 13) ^ v0;
+      v0 = Long.rotateLeft(v0, 32);
+      v2 += v3;
+      v3 = Long.rotateLeft(v3, 16) ^ v2;
+      v0 += v3;
+      v3 = Long.rotateLeft(v3, 21) ^ v0;
+      v2 += v1;
+      v1 = Long.rotateLeft(v1, 17) ^ v2;
+      v2 = Long.rotateLeft(v2, 32);
+    }
+  }
+}
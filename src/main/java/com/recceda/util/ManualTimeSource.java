@@ -0,0 +1,46 @@
+package com.recceda.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TimeSource} whose time only moves when told to, for testing expiry, rate limits and
+ * lockouts without sleeping.
+ */
+public final class ManualTimeSource implements TimeSource {
+
+  private final AtomicLong currentTimeMillis;
+
+  /**
+   * Creates a source that starts at the given time.
+   *
+   * @param startMillis the initial time in milliseconds since the epoch.
+   */
+  public ManualTimeSource(long startMillis) {
+    this.currentTimeMillis = new AtomicLong(startMillis);
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return currentTimeMillis.get();
+  }
+
+  /**
+   * Moves the time forward.
+   *
+   * @param duration how far to move the time.
+   * @return the new time in milliseconds since the epoch.
+   */
+  public long advance(Duration duration) {
+    return currentTimeMillis.addAndGet(duration.toMillis());
+  }
+
+  /**
+   * Sets the time.
+   *
+   * @param millis the new time in milliseconds since the epoch.
+   */
+  public void setCurrentTimeMillis(long millis) {
+    currentTimeMillis.set(millis);
+  }
+}
@@ -0,0 +1,84 @@
+package com.recceda.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * A small, bounded pool of objects that are costly to create and cannot be shared between threads,
+ * such as an initialised {@link javax.crypto.Mac}.
+ *
+ * <p>Unlike a {@link ThreadLocal}, the pool does not tie an object to a thread, so its objects are
+ * still reused when every request runs on a new virtual thread, and nothing is left behind when a
+ * thread ends. {@link #acquire()} takes an idle object or creates one if there is none; {@link
+ * #release(Object)} puts it back, or drops it if the pool is full.
+ *
+ * @param <T> the type of the pooled objects.
+ */
+public final class ObjectPool<T> {
+
+  private final AtomicReferenceArray<T> idle;
+  private final Supplier<? extends T> factory;
+
+  /**
+   * Creates a new pool that keeps up to two idle objects per processor.
+   *
+   * @param factory creates an object when none is idle.
+   */
+  public ObjectPool(Supplier<? extends T> factory) {
+    this(2 * Runtime.getRuntime().availableProcessors(), factory);
+  }
+
+  /**
+   * Creates a new pool.
+   *
+   * @param capacity the maximum number of idle objects kept.
+   * @param factory creates an object when none is idle.
+   */
+  public ObjectPool(int capacity, Supplier<? extends T> factory) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The capacity must be at least 1.");
+    }
+    this.idle = new AtomicReferenceArray<>(capacity);
+    this.factory = factory;
+  }
+
+  /**
+   * Takes an idle object, or creates a new one if all of them are in use.
+   *
+   * @return an object that no other thread holds until it is released.
+   */
+  public T acquire() {
+    int capacity = idle.length();
+    int start = start(capacity);
+    for (int i = 0; i < capacity; i++) {
+      int index = (start + i) % capacity;
+      T object = idle.get(index);
+      if (object != null && idle.compareAndSet(index, object, null)) {
+        return object;
+      }
+    }
+    return factory.get();
+  }
+
+  /**
+   * Returns an object to the pool. The caller must not use it afterwards.
+   *
+   * @param object an object taken with {@link #acquire()}, in a reusable state.
+   */
+  public void release(T object) {
+    int capacity = idle.length();
+    int start = start(capacity);
+    for (int i = 0; i < capacity; i++) {
+      int index = (start + i) % capacity;
+      if (idle.get(index) == null && idle.compareAndSet(index, null, object)) {
+        return;
+      }
+    }
+  }
+
+  /** Spreads threads over the slots, so that they rarely compete for the same one. */
+  private static int start(int capacity) {
+    return capacity == 1 ? 0 : ThreadLocalRandom.current().nextInt(capacity);
+  }
+}
@@ -0,0 +1,60 @@
+package com.recceda.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Factory methods for the threads used by the library's background workers. */
+public final class ThreadFactories {
+
+  private ThreadFactories() {}
+
+  /**
+   * Returns a factory that creates virtual threads when the running JVM supports them (JDK 21+), or
+   * daemon platform threads otherwise.
+   *
+   * @param namePrefix the prefix for the names of the created threads.
+   * @return the thread factory.
+   */
+  public static ThreadFactory workerThreadFactory(String namePrefix) {
+    ThreadFactory virtual = virtualThreadFactory(namePrefix);
+    return virtual != null ? virtual : daemonThreadFactory(namePrefix);
+  }
+
+  /**
+   * Returns {@code true} if the running JVM supports virtual threads.
+   *
+   * @return whether virtual threads are available.
+   */
+  public static boolean virtualThreadsSupported() {
+    return virtualThreadFactory("probe-") != null;
+  }
+
+  /**
+   * Returns a factory that creates daemon platform threads.
+   *
+   * @param namePrefix the prefix for the names of the created threads.
+   * @return the thread factory.
+   */
+  public static ThreadFactory daemonThreadFactory(String namePrefix) {
+    AtomicLong counter = new AtomicLong();
+    return runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + counter.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static ThreadFactory virtualThreadFactory(String namePrefix) {
+    try {
+      // Resolved reflectively so that the library keeps compiling for Java 11.
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      Method name = builderType.getMethod("name", String.class, long.class);
+      Method factory = builderType.getMethod("factory");
+      return (ThreadFactory) factory.invoke(name.invoke(builder, namePrefix, 0L));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
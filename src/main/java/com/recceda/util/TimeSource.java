@@ -0,0 +1,22 @@
+package com.recceda.util;
+
+/**
+ * A source of the current wall-clock time, against which OTP expiry, rate limits and lockouts are
+ * measured.
+ *
+ * <p>Use {@link #SYSTEM} in production, a {@link CoarseTimeSource} to take the clock read off hot
+ * paths, and a {@link ManualTimeSource} to simulate the passage of time in tests.
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+  /** The system clock. */
+  TimeSource SYSTEM = System::currentTimeMillis;
+
+  /**
+   * Returns the current time.
+   *
+   * @return the current time in milliseconds since the epoch.
+   */
+  long currentTimeMillis();
+}
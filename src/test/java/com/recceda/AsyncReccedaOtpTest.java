@@ -0,0 +1,192 @@
+package com.recceda;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.distributor.AsyncOtpDistributor;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventType;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PreventDuplicateOtpPolicy;
+import com.recceda.core.store.AsyncOtpStore;
+import com.recceda.core.store.LockoutIndex;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.exception.OtpGenerationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class AsyncReccedaOtpTest {
+
+  private static final long LATENCY_MILLIS = 5;
+
+  @Test
+  void testGenerateAndVerify() {
+    List<OtpEvent> events = Collections.synchronizedList(new ArrayList<>());
+    AsyncReccedaOtp reccedaOtp =
+        AsyncReccedaOtp.builder()
+            .otpStore(remoteStore())
+            .otpGenerator(length -> "123456")
+            .eventPublisher(events::add)
+            .build();
+    Map<String, String> sent = new ConcurrentHashMap<>();
+
+    CompletableFuture<Void> generated = reccedaOtp.generateOtp("user", sent::put);
+    generated.join();
+
+    assertEquals("123456", sent.get("user"));
+    assertFalse(reccedaOtp.verifyOtp("user", "000000").join());
+    assertEquals(VerificationResult.VALID, reccedaOtp.verifyAndConsume("user", "123456").join());
+    assertEquals(
+        VerificationResult.NOT_FOUND, reccedaOtp.verifyAndConsume("user", "123456").join());
+    reccedaOtp.invalidateOtp("user").join();
+    List<OtpEventType> types = new ArrayList<>();
+    for (OtpEvent event : events) {
+      types.add(event.getType());
+    }
+    assertEquals(
+        List.of(
+            OtpEventType.ISSUED,
+            OtpEventType.FAILED,
+            OtpEventType.VERIFIED,
+            OtpEventType.FAILED,
+            OtpEventType.INVALIDATED),
+        types);
+  }
+
+  @Test
+  void testAsyncDistributorCompletesAfterDelivery() {
+    List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    AsyncOtpDistributor distributor = new AsyncOtpDistributor((key, otp) -> delivered.add(key));
+    AsyncReccedaOtp reccedaOtp = AsyncReccedaOtp.builder().otpStore(remoteStore()).build();
+
+    reccedaOtp.generateOtp("user", distributor).join();
+    assertEquals(List.of("user"), delivered);
+    distributor.close();
+  }
+
+  @Test
+  void testPolicyRejectionCompletesExceptionally() {
+    AsyncReccedaOtp reccedaOtp =
+        AsyncReccedaOtp.builder()
+            .otpStore(remoteStore())
+            .policies(List.of(new PreventDuplicateOtpPolicy()))
+            .build();
+    reccedaOtp.generateOtp("user", (key, otp) -> {}).join();
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class, () -> reccedaOtp.generateOtp("user", (key, otp) -> {}).get());
+    assertTrue(e.getCause() instanceof OtpGenerationException);
+  }
+
+  @Test
+  void testLockedKeysAreRejectedWithoutAStoreRoundTrip() {
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(1).build();
+    AsyncReccedaOtp reccedaOtp =
+        AsyncReccedaOtp.builder().otpStore(remoteStore()).lockoutIndex(lockout).build();
+    reccedaOtp.generateOtp("user", (key, otp) -> {}).join();
+    assertEquals(VerificationResult.INVALID, reccedaOtp.verifyAndConsume("user", "wrong").join());
+
+    CompletableFuture<VerificationResult> locked = reccedaOtp.verifyAndConsume("user", "wrong");
+    assertTrue(locked.isDone());
+    assertEquals(VerificationResult.LOCKED, locked.join());
+    assertTrue(reccedaOtp.generateOtp("user", (key, otp) -> {}).isCompletedExceptionally());
+  }
+
+  @Test
+  void testHighConcurrencyRequestsAreAllInFlightWithoutParkingThreads() {
+    int users = 1000;
+    // A stand-in for a remote store whose round trips complete only when the test runs them.
+    Queue<Runnable> roundTrips = new ConcurrentLinkedQueue<>();
+    AsyncReccedaOtp async =
+        AsyncReccedaOtp.builder()
+            .otpStore(AsyncOtpStore.wrap(new ReccedaOtpStore(), roundTrips::add))
+            .otpGenerator(length -> "123456")
+            .build();
+
+    List<CompletableFuture<VerificationResult>> results = new ArrayList<>();
+    for (int i = 0; i < users; i++) {
+      String key = "user-" + i;
+      results.add(
+          async
+              .generateOtp(key, (k, otp) -> {})
+              .thenCompose(sent -> async.verifyAndConsume(key, "123456")));
+    }
+    // One thread started every request, so none of them waits on a thread of its own.
+    assertEquals(users, roundTrips.size());
+    assertTrue(results.stream().noneMatch(CompletableFuture::isDone));
+
+    for (Runnable roundTrip; (roundTrip = roundTrips.poll()) != null; ) {
+      roundTrip.run();
+    }
+    for (CompletableFuture<VerificationResult> result : results) {
+      assertEquals(VerificationResult.VALID, result.getNow(null));
+    }
+  }
+
+  @Test
+  void builderShouldRequireStore() {
+    assertThrows(IllegalArgumentException.class, () -> AsyncReccedaOtp.builder().build());
+  }
+
+  private static AsyncOtpStore remoteStore() {
+    return new RemoteStoreStandIn();
+  }
+
+  /** An in-process stand-in for a remote store: every operation completes after a delay. */
+  private static final class RemoteStoreStandIn implements AsyncOtpStore {
+    private final AsyncOtpStore delegate =
+        AsyncOtpStore.wrap(
+            new ReccedaOtpStore(),
+            CompletableFuture.delayedExecutor(
+                LATENCY_MILLIS, TimeUnit.MILLISECONDS, Runnable::run));
+
+    @Override
+    public CompletionStage<Void> storeOtp(String key, String otp, long ttlMillis) {
+      return delegate.storeOtp(key, otp, ttlMillis);
+    }
+
+    @Override
+    public CompletionStage<String> checkAndStore(
+        String key,
+        Map<String, String> attributes,
+        PolicyChain policies,
+        Supplier<String> otpSupplier,
+        long ttlMillis) {
+      return delegate.checkAndStore(key, attributes, policies, otpSupplier, ttlMillis);
+    }
+
+    @Override
+    public CompletionStage<Boolean> verifyOtp(String key, String otp) {
+      return delegate.verifyOtp(key, otp);
+    }
+
+    @Override
+    public CompletionStage<VerificationResult> verifyAndConsume(
+        String key, String otp, int maxFailedAttempts) {
+      return delegate.verifyAndConsume(key, otp, maxFailedAttempts);
+    }
+
+    @Override
+    public CompletionStage<OtpEntry> getOtpEntry(String key) {
+      return delegate.getOtpEntry(key);
+    }
+
+    @Override
+    public CompletionStage<Void> invalidateOtp(String key) {
+      return delegate.invalidateOtp(key);
+    }
+  }
+}
@@ -1,16 +1,43 @@
 package com.recceda;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
+import com.recceda.core.challenge.ChallengeSigner;
+import com.recceda.core.distributor.AsyncOtpDistributor;
+import com.recceda.core.distributor.BatchOtpDistributor;
 import com.recceda.core.distributor.OtpDistributor;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventType;
 import com.recceda.core.generator.OtpGenerator;
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.metrics.PipelineStage;
+import com.recceda.core.policy.MaxActiveOtpsPolicy;
 import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.store.LockoutIndex;
+import com.recceda.core.store.OtpKey;
 import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.SubjectOtpStore;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.core.totp.TotpEngine;
 import com.recceda.exception.OtpGenerationException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -27,6 +54,8 @@ class ReccedaOtpTest {
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this);
+    when(otpStore.checkAndStore(any(), any(), any(), any(), anyLong())).thenCallRealMethod();
+    when(otpStore.timeSource()).thenCallRealMethod();
   }
 
   @Test
@@ -49,7 +78,7 @@ class ReccedaOtpTest {
   @Test
   void generateOtpShouldCheckPolicies() {
     // Given
-    Policy policy = mock(Policy.class);
+    Policy policy = mockPolicy();
     reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Arrays.asList(policy));
     String key = "test-user";
     OtpDistributor distributor = (k, o) -> {};
@@ -64,7 +93,7 @@ class ReccedaOtpTest {
   @Test
   void generateOtpShouldThrowExceptionWhenPolicyFails() {
     // Given
-    Policy policy = mock(Policy.class);
+    Policy policy = mockPolicy();
     doThrow(new OtpGenerationException("Policy failed")).when(policy).check(any(), any());
     reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Arrays.asList(policy));
     String key = "test-user";
@@ -78,6 +107,79 @@ class ReccedaOtpTest {
         });
   }
 
+  @Test
+  void generateOtpAsyncShouldFailFutureWhenPolicyFails() {
+    // Given
+    Policy policy = mockPolicy();
+    doThrow(new OtpGenerationException("Policy failed")).when(policy).check(any(), any());
+    reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Arrays.asList(policy));
+    AsyncOtpDistributor distributor = mock(AsyncOtpDistributor.class);
+
+    // When
+    CompletableFuture<Void> result = reccedaOtp.generateOtpAsync("test-user", distributor);
+
+    // Then
+    ExecutionException e = assertThrows(ExecutionException.class, result::get);
+    assertTrue(e.getCause() instanceof OtpGenerationException);
+    verify(otpStore, never()).storeOtp(any(), any(), anyLong());
+    verifyNoInteractions(distributor);
+  }
+
+  @Test
+  void generateOtpsShouldReportPolicyFailuresWithoutAbortingBatch() {
+    // Given
+    Policy policy = mockPolicy();
+    doThrow(new OtpGenerationException("Policy failed")).when(policy).check(eq("user-2"), any());
+    reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Arrays.asList(policy));
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+    OtpDistributor distributor = mock(OtpDistributor.class);
+
+    // When
+    Map<String, GenerationResult> results =
+        reccedaOtp.generateOtps(List.of("user-1", "user-2", "user-3"), distributor);
+
+    // Then
+    assertEquals(List.of("user-1", "user-2", "user-3"), List.copyOf(results.keySet()));
+    assertTrue(results.get("user-1").isSuccess());
+    assertFalse(results.get("user-2").isSuccess());
+    assertTrue(results.get("user-2").getFailure() instanceof OtpGenerationException);
+    assertTrue(results.get("user-3").isSuccess());
+    verify(otpStore).storeOtps(Map.of("user-1", "123456", "user-3", "123456"), 300000L);
+    verify(distributor).send("user-1", "123456");
+    verify(distributor).send("user-3", "123456");
+    verify(distributor, never()).send(eq("user-2"), any());
+  }
+
+  @Test
+  void generateOtpsShouldSendWholeBatchToBatchDistributor() {
+    // Given
+    reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Collections.emptyList());
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+    BatchOtpDistributor distributor = mock(BatchOtpDistributor.class);
+
+    // When
+    reccedaOtp.generateOtps(List.of("user-1", "user-2"), distributor);
+
+    // Then
+    verify(distributor).sendAll(Map.of("user-1", "123456", "user-2", "123456"));
+    verify(distributor, never()).send(anyString(), anyString());
+  }
+
+  @Test
+  void verifyOtpsShouldCallStore() {
+    // Given
+    reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Collections.emptyList());
+    Map<String, String> otps = Map.of("user-1", "123456");
+    when(otpStore.verifyOtps(otps)).thenReturn(Map.of("user-1", true));
+
+    // When
+    Map<String, Boolean> results = reccedaOtp.verifyOtps(otps);
+
+    // Then
+    assertTrue(results.get("user-1"));
+    verify(otpStore).verifyOtps(otps);
+  }
+
   @Test
   void verifyOtpShouldCallStore() {
     // Given
@@ -93,4 +195,438 @@ class ReccedaOtpTest {
     assertTrue(result);
     verify(otpStore).verifyOtp(key, otp);
   }
+
+  @Test
+  void verifyAndConsumeShouldCallStore() {
+    // Given
+    reccedaOtp = new ReccedaOtp(otpGenerator, otpStore, Collections.emptyList());
+    when(otpStore.verifyAndConsume("test-user", "123456", 3)).thenReturn(VerificationResult.LOCKED);
+
+    // When
+    VerificationResult result = reccedaOtp.verifyAndConsume("test-user", "123456", 3);
+
+    // Then
+    assertEquals(VerificationResult.LOCKED, result);
+  }
+
+  @Test
+  void generateOtpShouldRecordEveryStage() {
+    // Given
+    MetricsRecorder metrics = mock(MetricsRecorder.class);
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpGenerator(otpGenerator)
+            .otpStore(otpStore)
+            .policies(Arrays.asList(mockPolicy()))
+            .metricsRecorder(metrics)
+            .build();
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+
+    // When
+    reccedaOtp.generateOtp("test-user", (k, o) -> {});
+
+    // Then
+    verify(metrics).recordLatency(eq(PipelineStage.POLICY_CHECK), anyLong());
+    verify(metrics).recordLatency(eq(PipelineStage.GENERATION), anyLong());
+    verify(metrics).recordLatency(eq(PipelineStage.STORE), anyLong());
+    verify(metrics).recordLatency(eq(PipelineStage.DISTRIBUTION), anyLong());
+    verify(metrics, never()).recordPolicyRejection(any());
+  }
+
+  @Test
+  void policyRejectionShouldBeRecordedByPolicyClass() {
+    // Given
+    MetricsRecorder metrics = mock(MetricsRecorder.class);
+    Policy policy = mockPolicy();
+    doThrow(new OtpGenerationException("Policy failed")).when(policy).check(any(), any());
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpGenerator(otpGenerator)
+            .otpStore(otpStore)
+            .policies(Arrays.asList(policy))
+            .metricsRecorder(metrics)
+            .build();
+
+    // When
+    assertThrows(
+        OtpGenerationException.class, () -> reccedaOtp.generateOtp("test-user", (k, o) -> {}));
+
+    // Then
+    verify(metrics).recordPolicyRejection(policy.getClass());
+    verify(metrics, never()).recordLatency(eq(PipelineStage.GENERATION), anyLong());
+  }
+
+  @Test
+  void verificationOutcomesShouldBeRecorded() {
+    // Given
+    MetricsRecorder metrics = mock(MetricsRecorder.class);
+    reccedaOtp = ReccedaOtp.builder().otpStore(otpStore).metricsRecorder(metrics).build();
+    when(otpStore.verifyOtp("test-user", "123456")).thenReturn(false);
+    when(otpStore.verifyAndConsume("test-user", "123456")).thenReturn(VerificationResult.EXPIRED);
+
+    // When
+    reccedaOtp.verifyOtp("test-user", "123456");
+    reccedaOtp.verifyAndConsume("test-user", "123456");
+
+    // Then
+    verify(metrics).recordVerification(VerificationResult.INVALID);
+    verify(metrics).recordVerification(VerificationResult.EXPIRED);
+    verify(metrics, times(2)).recordLatency(eq(PipelineStage.VERIFICATION), anyLong());
+  }
+
+  @Test
+  void lockoutShouldSurviveNewOtps() {
+    // Given
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(3).build();
+    reccedaOtp = ReccedaOtp.builder().otpStore(new ReccedaOtpStore()).lockoutIndex(lockout).build();
+    String[] sent = new String[1];
+    OtpDistributor distributor = (k, o) -> sent[0] = o;
+
+    // When: each wrong guess is made against a fresh OTP, which resets the store's counter
+    for (int i = 0; i < 3; i++) {
+      reccedaOtp.generateOtp("test-user", distributor);
+      assertEquals(VerificationResult.INVALID, reccedaOtp.verifyAndConsume("test-user", "wrong"));
+    }
+
+    // Then
+    assertTrue(lockout.isLocked("test-user"));
+    assertThrows(
+        OtpGenerationException.class, () -> reccedaOtp.generateOtp("test-user", distributor));
+    assertEquals(VerificationResult.LOCKED, reccedaOtp.verifyAndConsume("test-user", sent[0]));
+    assertFalse(reccedaOtp.verifyOtp("test-user", sent[0]));
+    assertEquals(
+        Map.of("test-user", false, "other-user", false),
+        reccedaOtp.verifyOtps(Map.of("test-user", sent[0], "other-user", "123456")));
+  }
+
+  @Test
+  void successfulVerificationShouldClearLockoutFailures() {
+    // Given
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(3).build();
+    reccedaOtp = ReccedaOtp.builder().otpStore(otpStore).lockoutIndex(lockout).build();
+    when(otpStore.verify("test-user", "wrong")).thenReturn(VerificationResult.INVALID);
+    when(otpStore.verify("test-user", "123456")).thenReturn(VerificationResult.VALID);
+
+    // When
+    reccedaOtp.verifyOtp("test-user", "wrong");
+    reccedaOtp.verifyOtp("test-user", "wrong");
+    reccedaOtp.verifyOtp("test-user", "123456");
+    reccedaOtp.verifyOtp("test-user", "wrong");
+
+    // Then
+    assertEquals(1, lockout.failures("test-user"));
+    assertFalse(lockout.isLocked("test-user"));
+  }
+
+  @Test
+  void concurrentGuessesShouldNotExceedTheLockoutBudget() throws InterruptedException {
+    // Given: a store slow enough for every guess to reach it before the first one is counted
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(3).build();
+    reccedaOtp = ReccedaOtp.builder().otpStore(otpStore).lockoutIndex(lockout).build();
+    when(otpStore.verifyAndConsume("test-user", "wrong"))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(50);
+              return VerificationResult.INVALID;
+            });
+    Map<VerificationResult, Integer> results = new ConcurrentHashMap<>();
+
+    // When
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    for (int i = 0; i < 16; i++) {
+      executor.execute(
+          () -> results.merge(reccedaOtp.verifyAndConsume("test-user", "wrong"), 1, Integer::sum));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then
+    assertEquals(Map.of(VerificationResult.INVALID, 3, VerificationResult.LOCKED, 13), results);
+    verify(otpStore, times(3)).verifyAndConsume("test-user", "wrong");
+    assertTrue(lockout.isLocked("test-user"));
+  }
+
+  @Test
+  void missingOtpsShouldNotCountTowardsLockout() {
+    // Given
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(2).build();
+    reccedaOtp = ReccedaOtp.builder().otpStore(new ReccedaOtpStore()).lockoutIndex(lockout).build();
+
+    // When
+    for (int i = 0; i < 3; i++) {
+      assertFalse(reccedaOtp.verifyOtp("junk-" + i, "123456"));
+      assertEquals(
+          Map.of("junk-" + i, false), reccedaOtp.verifyOtps(Map.of("junk-" + i, "123456")));
+    }
+    reccedaOtp.generateOtp("test-user", (k, o) -> {});
+    assertFalse(reccedaOtp.verifyOtp("test-user", "wrong"));
+    assertEquals(Map.of("test-user", false), reccedaOtp.verifyOtps(Map.of("test-user", "wrong")));
+
+    // Then
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, lockout.failures("junk-" + i));
+    }
+    assertTrue(lockout.isLocked("test-user"));
+  }
+
+  @Test
+  void totpCodesShouldBeVerifiedWithoutTheStore() {
+    // Given
+    byte[] secret = TotpEngine.generateSecret();
+    LockoutIndex lockout = LockoutIndex.builder().maxFailures(2).build();
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpStore(otpStore)
+            .totpEngine(TotpEngine.builder().build())
+            .lockoutIndex(lockout)
+            .build();
+    String[] sent = new String[1];
+
+    // When
+    reccedaOtp.generateTotp("test-user", secret, (k, o) -> sent[0] = o);
+
+    // Then
+    assertEquals(VerificationResult.VALID, reccedaOtp.verifyTotp("test-user", secret, sent[0]));
+    assertEquals(VerificationResult.REPLAYED, reccedaOtp.verifyTotp("test-user", secret, sent[0]));
+    verify(otpStore, never()).storeOtp(anyString(), anyString(), anyLong());
+    verify(otpStore, never()).verifyOtp(anyString(), anyString());
+
+    String wrong = sent[0].equals("000000") ? "111111" : "000000";
+    reccedaOtp.verifyTotp("other-user", secret, wrong);
+    reccedaOtp.verifyTotp("other-user", secret, wrong);
+    assertEquals(VerificationResult.LOCKED, reccedaOtp.verifyTotp("other-user", secret, wrong));
+  }
+
+  @Test
+  void challengeTokensShouldBeVerifiedWithoutTheStore() {
+    // Given
+    byte[] signingKey = new byte[32];
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpGenerator(otpGenerator)
+            .otpStore(otpStore)
+            .challengeSigner(ChallengeSigner.builder().signingKey("k1", signingKey).build())
+            .build();
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+    String[] sent = new String[1];
+
+    // When
+    String token = reccedaOtp.generateChallenge("test-user", (k, o) -> sent[0] = o);
+
+    // Then
+    assertEquals("123456", sent[0]);
+    assertEquals(VerificationResult.INVALID, reccedaOtp.verifyChallenge("test-user", token, "0"));
+    assertEquals(
+        VerificationResult.VALID, reccedaOtp.verifyChallenge("test-user", token, "123456"));
+    assertEquals(
+        VerificationResult.REPLAYED, reccedaOtp.verifyChallenge("test-user", token, "123456"));
+    verify(otpStore, never()).storeOtp(anyString(), anyString(), anyLong());
+    verify(otpStore, never()).verifyAndConsume(anyString(), anyString());
+  }
+
+  @Test
+  void challengePoliciesShouldSeeTheRequestAttributes() {
+    // Given
+    List<String> tiers = new ArrayList<>();
+    Policy policy =
+        new Policy() {
+          @Override
+          public void check(String key, OtpStore store) {}
+
+          @Override
+          public void check(PolicyContext context) {
+            tiers.add(context.getAttribute("tier"));
+            if ("blocked".equals(context.getAttribute("tier"))) {
+              throw new OtpGenerationException("Too many requests.");
+            }
+          }
+        };
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpGenerator(otpGenerator)
+            .otpStore(otpStore)
+            .policies(Collections.singletonList(policy))
+            .challengeSigner(ChallengeSigner.builder().signingKey("k1", new byte[32]).build())
+            .build();
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+    OtpDistributor distributor = mock(OtpDistributor.class);
+
+    // When
+    reccedaOtp.generateChallenge("test-user", 6, 60_000, Map.of("tier", "free"), distributor);
+
+    // Then
+    assertThrows(
+        OtpGenerationException.class,
+        () ->
+            reccedaOtp.generateChallenge(
+                "test-user", 6, 60_000, Map.of("tier", "blocked"), distributor));
+    assertEquals(Arrays.asList("free", "blocked"), tiers);
+    verify(distributor, times(1)).send("test-user", "123456");
+  }
+
+  @Test
+  void totpRequiresAnEngine() {
+    reccedaOtp = ReccedaOtp.builder().otpStore(otpStore).build();
+    assertThrows(
+        IllegalStateException.class,
+        () -> reccedaOtp.verifyTotp("test-user", TotpEngine.generateSecret(), "123456"));
+  }
+
+  @Test
+  void lifecycleEventsShouldBePublished() {
+    // Given
+    List<OtpEvent> events = new ArrayList<>();
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpGenerator(otpGenerator)
+            .otpStore(otpStore)
+            .eventPublisher(events::add)
+            .build();
+    when(otpGenerator.generateOtp(6)).thenReturn("123456");
+    when(otpStore.verifyOtp("test-user", "123456")).thenReturn(true);
+    when(otpStore.verifyAndConsume("test-user", "000000")).thenReturn(VerificationResult.INVALID);
+
+    // When
+    reccedaOtp.generateOtp("test-user", (k, o) -> {});
+    reccedaOtp.verifyOtp("test-user", "123456");
+    reccedaOtp.verifyAndConsume("test-user", "000000");
+    reccedaOtp.invalidateOtp("test-user");
+
+    // Then
+    List<OtpEventType> types = new ArrayList<>();
+    for (OtpEvent event : events) {
+      assertEquals("test-user", event.getKey());
+      types.add(event.getType());
+    }
+    assertEquals(
+        Arrays.asList(
+            OtpEventType.ISSUED,
+            OtpEventType.VERIFIED,
+            OtpEventType.FAILED,
+            OtpEventType.INVALIDATED),
+        types);
+  }
+
+  @Test
+  void scopedKeysShouldKeepOneOtpPerPurpose() {
+    // Given
+    SubjectOtpStore subjectStore = new SubjectOtpStore();
+    LockoutIndex lockoutIndex = LockoutIndex.builder().maxFailures(2).build();
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpStore(subjectStore)
+            .policies(Collections.singletonList(new MaxActiveOtpsPolicy(2)))
+            .lockoutIndex(lockoutIndex)
+            .build();
+    Map<String, String> sent = new HashMap<>();
+    OtpKey login = OtpKey.of("alice", "login");
+    OtpKey reset = OtpKey.of("alice", "reset");
+
+    // When
+    reccedaOtp.generateOtp(login, (k, o) -> sent.put("login:" + k, o));
+    reccedaOtp.generateOtp(reset, (k, o) -> sent.put("reset:" + k, o));
+
+    // Then
+    assertThrows(
+        OtpGenerationException.class,
+        () -> reccedaOtp.generateOtp(OtpKey.of("alice", "payment"), (k, o) -> {}));
+    assertEquals(
+        VerificationResult.VALID, reccedaOtp.verifyAndConsume(reset, sent.get("reset:alice")));
+    assertEquals(VerificationResult.INVALID, reccedaOtp.verifyAndConsume(login, "wrong"));
+    assertEquals(VerificationResult.INVALID, reccedaOtp.verifyAndConsume(login, "wrong"));
+    // Lockouts apply to the subject, whatever the purpose.
+    assertEquals(
+        VerificationResult.LOCKED, reccedaOtp.verifyAndConsume(login, sent.get("login:alice")));
+    assertEquals(1, reccedaOtp.invalidateSubject("alice"));
+    assertEquals(0, subjectStore.activeOtps("alice"));
+  }
+
+  @Test
+  void scopedKeysShouldWorkWithTheDefaultStoreAndReachTheDistributor() {
+    // Given
+    ReccedaOtpStore store = new ReccedaOtpStore();
+    reccedaOtp =
+        ReccedaOtp.builder()
+            .otpStore(store)
+            .policies(Collections.singletonList(new MaxActiveOtpsPolicy(2)))
+            .build();
+    Map<OtpKey, String> sent = new HashMap<>();
+    OtpDistributor distributor =
+        new OtpDistributor() {
+          @Override
+          public void send(String key, String otp) {
+            throw new AssertionError("The purpose was dropped.");
+          }
+
+          @Override
+          public void send(OtpKey key, String otp) {
+            sent.put(key, otp);
+          }
+        };
+    OtpKey login = OtpKey.of("alice", "login");
+    OtpKey reset = OtpKey.of("alice", "reset");
+
+    // When
+    reccedaOtp.generateOtp(login, distributor);
+    reccedaOtp.generateOtp(reset, distributor);
+
+    // Then
+    assertThrows(
+        OtpGenerationException.class,
+        () -> reccedaOtp.generateOtp(OtpKey.of("alice", "payment"), distributor));
+    assertEquals(VerificationResult.VALID, reccedaOtp.verifyAndConsume(reset, sent.get(reset)));
+    assertEquals(1, store.activeOtps("alice"));
+    assertEquals(1, reccedaOtp.invalidateSubject("alice"));
+    assertEquals(VerificationResult.NOT_FOUND, reccedaOtp.verifyAndConsume(login, sent.get(login)));
+  }
+
+  @Test
+  void scopedEventsShouldCarryThePurpose() {
+    // Given
+    List<OtpEvent> events = new ArrayList<>();
+    reccedaOtp =
+        ReccedaOtp.builder().otpStore(new SubjectOtpStore()).eventPublisher(events::add).build();
+    OtpKey login = OtpKey.of("alice", "login");
+    OtpKey payment = OtpKey.of("alice", "payment");
+
+    // When
+    reccedaOtp.generateOtp(login, (k, o) -> {});
+    reccedaOtp.generateOtp(payment, (k, o) -> {});
+    reccedaOtp.verifyAndConsume(payment, "wrong");
+    reccedaOtp.invalidateOtp(login);
+    reccedaOtp.invalidateSubject("alice");
+
+    // Then
+    List<String> seen = new ArrayList<>();
+    for (OtpEvent event : events) {
+      assertEquals("alice", event.getKey());
+      seen.add(event.getType() + " " + event.getPurpose());
+    }
+    assertEquals(
+        Arrays.asList(
+            "ISSUED login",
+            "ISSUED payment",
+            "FAILED payment",
+            "INVALIDATED login",
+            "INVALIDATED null"),
+        seen);
+  }
+
+  @Test
+  void scopedKeysShouldRequireAScopedStore() {
+    reccedaOtp = new ReccedaOtp(otpStore);
+    OtpKey key = OtpKey.of("alice", "login");
+    assertThrows(IllegalStateException.class, () -> reccedaOtp.generateOtp(key, (k, o) -> {}));
+    assertThrows(IllegalStateException.class, () -> reccedaOtp.invalidateSubject("alice"));
+  }
+
+  @Test
+  void builderShouldRequireStore() {
+    assertThrows(IllegalArgumentException.class, () -> ReccedaOtp.builder().build());
+  }
+
+  /** Mocks a policy whose context-based check delegates to the mocked key-based check. */
+  private static Policy mockPolicy() {
+    return mock(Policy.class, CALLS_REAL_METHODS);
+  }
 }
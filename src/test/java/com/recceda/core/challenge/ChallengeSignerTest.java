@@ -0,0 +1,233 @@
+package com.recceda.core.challenge;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.VerificationResult;
+import com.recceda.util.ManualTimeSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class ChallengeSignerTest {
+
+  private static final byte[] KEY_1 = key(1);
+  private static final byte[] KEY_2 = key(2);
+
+  private final ManualTimeSource time = new ManualTimeSource(1_000_000);
+
+  @Test
+  void testTokenVerifiesOnAnyNodeWithTheKey() {
+    ChallengeSigner issuer = signer();
+    ChallengeSigner otherNode = signer();
+    String token = issuer.issue("user", "123456", 60_000);
+
+    assertEquals(VerificationResult.VALID, otherNode.verify("user", token, "123456"));
+    assertEquals(0, issuer.verifiedTokens());
+    // Each node has its own ledger by default, so the token is consumed only on that node.
+    assertEquals(VerificationResult.VALID, issuer.verify("user", token, "123456"));
+  }
+
+  @Test
+  void testSharedLedgerAcceptsATokenOnceAcrossNodes() {
+    TokenLedger shared = new LocalTokenLedger(100, time);
+    ChallengeSigner first = signer(shared);
+    ChallengeSigner second = signer(shared);
+    String token = first.issue("user", "123456", 60_000);
+    String guessed = first.issue("user", "654321", 60_000);
+
+    assertEquals(VerificationResult.VALID, second.verify("user", token, "123456"));
+    assertEquals(VerificationResult.REPLAYED, first.verify("user", token, "123456"));
+    assertEquals(1, first.verifiedTokens());
+
+    // Wrong codes count against the token on every node.
+    for (int i = 0; i < 5; i++) {
+      ChallengeSigner node = i % 2 == 0 ? first : second;
+      assertEquals(VerificationResult.INVALID, node.verify("user", guessed, "000000"));
+    }
+    assertEquals(VerificationResult.LOCKED, first.verify("user", guessed, "654321"));
+    assertEquals(VerificationResult.LOCKED, second.verify("user", guessed, "654321"));
+  }
+
+  @Test
+  void testFullLedgerLocksNewTokensInsteadOfForgettingConsumedOnes() {
+    ChallengeSigner signer =
+        ChallengeSigner.builder()
+            .signingKey("k1", KEY_1)
+            .timeSource(time)
+            .verifiedTokenCapacity(2)
+            .build();
+    String first = signer.issue("user", "123456", 60_000);
+    String second = signer.issue("user", "123456", 60_000);
+    String third = signer.issue("user", "123456", 60_000);
+    assertEquals(VerificationResult.VALID, signer.verify("user", first, "123456"));
+    assertEquals(VerificationResult.VALID, signer.verify("user", second, "123456"));
+
+    assertEquals(VerificationResult.LOCKED, signer.verify("user", third, "123456"));
+    assertEquals(VerificationResult.REPLAYED, signer.verify("user", first, "123456"));
+    assertEquals(2, signer.verifiedTokens());
+  }
+
+  @Test
+  void testWrongCodeOrKeyIsInvalid() {
+    ChallengeSigner signer = signer();
+    String token = signer.issue("user", "123456", 60_000);
+
+    assertEquals(VerificationResult.INVALID, signer.verify("user", token, "123457"));
+    assertEquals(VerificationResult.INVALID, signer.verify("other-user", token, "123456"));
+    assertEquals(VerificationResult.VALID, signer.verify("user", token, "123456"));
+  }
+
+  @Test
+  void testTamperedTokensAreInvalid() {
+    ChallengeSigner signer = signer();
+    byte[] token = Base64.getUrlDecoder().decode(signer.issue("user", "123456", 60_000));
+    for (int i = 0; i < token.length; i++) {
+      byte[] tampered = token.clone();
+      tampered[i] ^= 0x01;
+      assertEquals(VerificationResult.INVALID, signer.verify("user", encode(tampered), "123456"));
+    }
+    assertEquals(
+        VerificationResult.INVALID,
+        signer.verify("user", encode(Arrays.copyOf(token, token.length - 1)), "123456"));
+    assertEquals(VerificationResult.INVALID, signer.verify("user", "not a token!", "123456"));
+    assertEquals(VerificationResult.INVALID, signer.verify("user", "", "123456"));
+    // Forged tokens leave nothing behind.
+    assertEquals(0, signer.verifiedTokens());
+  }
+
+  @Test
+  void testTokenDoesNotRevealTheCode() {
+    ChallengeSigner signer = signer();
+    String first = signer.issue("user", "123456", 60_000);
+    String second = signer.issue("user", "123456", 60_000);
+    assertNotEquals(first, second);
+    assertFalse(new String(Base64.getUrlDecoder().decode(first)).contains("123456"));
+  }
+
+  @Test
+  void testTokensExpire() {
+    ChallengeSigner signer = signer();
+    String token = signer.issue("user", "123456", 60_000);
+    time.advance(Duration.ofSeconds(60));
+    assertEquals(VerificationResult.EXPIRED, signer.verify("user", token, "123456"));
+  }
+
+  @Test
+  void testTokensCannotBeReplayed() {
+    ChallengeSigner signer = signer();
+    String token = signer.issue("user", "123456", 60_000);
+    assertEquals(VerificationResult.VALID, signer.verify("user", token, "123456"));
+    assertEquals(VerificationResult.REPLAYED, signer.verify("user", token, "123456"));
+    assertEquals(VerificationResult.REPLAYED, signer.verify("user", token, "000000"));
+    assertEquals(1, signer.verifiedTokens());
+
+    // The entry is dropped once the token could no longer be used anyway.
+    time.advance(Duration.ofSeconds(61));
+    assertEquals(0, signer.verifiedTokens());
+    assertEquals(VerificationResult.EXPIRED, signer.verify("user", token, "123456"));
+  }
+
+  @Test
+  void testTokenLocksAfterMaxFailedAttempts() {
+    ChallengeSigner signer = signer();
+    String token = signer.issue("user", "123456", 60_000);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(VerificationResult.INVALID, signer.verify("user", token, "000000"));
+    }
+    assertEquals(VerificationResult.LOCKED, signer.verify("user", token, "123456"));
+  }
+
+  @Test
+  void testRotation() {
+    ChallengeSigner signer = signer();
+    String oldToken = signer.issue("user", "123456", 60_000);
+
+    signer.rotate("k2", KEY_2);
+    String newToken = signer.issue("user", "654321", 60_000);
+    assertEquals(VerificationResult.INVALID, signer().verify("user", newToken, "654321"));
+
+    ChallengeSigner restarted =
+        ChallengeSigner.builder()
+            .verificationKey("k1", KEY_1)
+            .signingKey("k2", KEY_2)
+            .timeSource(time)
+            .build();
+    assertEquals(VerificationResult.VALID, restarted.verify("user", newToken, "654321"));
+
+    assertThrows(IllegalArgumentException.class, () -> signer.retire("k2"));
+    signer.retire("k1");
+    assertEquals(VerificationResult.INVALID, signer.verify("user", oldToken, "123456"));
+    assertEquals(VerificationResult.VALID, signer.verify("user", newToken, "654321"));
+  }
+
+  @Test
+  void testConcurrentVerificationsAcceptATokenOnce() throws Exception {
+    ChallengeSigner signer = signer();
+    String token = signer.issue("user", "123456", 60_000);
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<VerificationResult>> results = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return signer.verify("user", token, "123456");
+              }));
+    }
+    start.countDown();
+    int valid = 0;
+    for (Future<VerificationResult> result : results) {
+      if (result.get() == VerificationResult.VALID) {
+        valid++;
+      } else {
+        assertEquals(VerificationResult.REPLAYED, result.get());
+      }
+    }
+    assertEquals(1, valid);
+    executor.shutdown();
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(IllegalStateException.class, () -> ChallengeSigner.builder().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ChallengeSigner.builder().signingKey("k1", new byte[16]));
+    assertThrows(
+        IllegalArgumentException.class, () -> ChallengeSigner.builder().signingKey("", KEY_1));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ChallengeSigner.builder().signingKey("k1", KEY_1).maxFailedAttempts(0).build());
+  }
+
+  private ChallengeSigner signer() {
+    return ChallengeSigner.builder().signingKey("k1", KEY_1).timeSource(time).build();
+  }
+
+  private ChallengeSigner signer(TokenLedger ledger) {
+    return ChallengeSigner.builder()
+        .signingKey("k1", KEY_1)
+        .timeSource(time)
+        .tokenLedger(ledger)
+        .build();
+  }
+
+  private static String encode(byte[] token) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+  }
+
+  private static byte[] key(int seed) {
+    byte[] key = new byte[32];
+    Arrays.fill(key, (byte) seed);
+    return key;
+  }
+}
@@ -0,0 +1,52 @@
+package com.recceda.core.challenge;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.VerificationResult;
+import com.recceda.util.ManualTimeSource;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LocalTokenLedgerTest {
+
+  private final ManualTimeSource time = new ManualTimeSource(1_000_000);
+
+  @Test
+  void testConsumesATokenOnce() {
+    LocalTokenLedger ledger = new LocalTokenLedger(10, time);
+    assertEquals(VerificationResult.INVALID, ledger.recordAttempt(1, false, 3, 60_000));
+    assertEquals(VerificationResult.VALID, ledger.recordAttempt(1, true, 3, 60_000));
+    assertEquals(VerificationResult.REPLAYED, ledger.recordAttempt(1, true, 3, 60_000));
+    assertEquals(1, ledger.size());
+  }
+
+  @Test
+  void testLocksAfterMaxFailedAttempts() {
+    LocalTokenLedger ledger = new LocalTokenLedger(10, time);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(VerificationResult.INVALID, ledger.recordAttempt(1, false, 3, 60_000));
+    }
+    assertEquals(VerificationResult.LOCKED, ledger.recordAttempt(1, true, 3, 60_000));
+  }
+
+  @Test
+  void testFailsClosedWhenFullUntilEntriesExpire() {
+    LocalTokenLedger ledger = new LocalTokenLedger(2, time);
+    assertEquals(VerificationResult.VALID, ledger.recordAttempt(1, true, 3, 60_000));
+    assertEquals(VerificationResult.INVALID, ledger.recordAttempt(2, false, 3, 30_000));
+
+    assertEquals(VerificationResult.LOCKED, ledger.recordAttempt(3, true, 3, 60_000));
+    assertEquals(VerificationResult.REPLAYED, ledger.recordAttempt(1, true, 3, 60_000));
+    assertEquals(VerificationResult.VALID, ledger.recordAttempt(2, true, 3, 30_000));
+    assertEquals(2, ledger.size());
+
+    time.advance(Duration.ofSeconds(30));
+    assertEquals(VerificationResult.VALID, ledger.recordAttempt(3, true, 3, 30_000));
+    assertEquals(2, ledger.size());
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> new LocalTokenLedger(0, time));
+  }
+}
@@ -0,0 +1,197 @@
+package com.recceda.core.distributor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.store.OtpKey;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.exception.OtpDistributionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class AsyncOtpDistributorTest {
+
+  @Test
+  void testGenerateLatencyStaysFlatWithSlowDistributor() throws Exception {
+    AtomicInteger sent = new AtomicInteger();
+    OtpDistributor slowDistributor =
+        (key, otp) -> {
+          sleep(200);
+          sent.incrementAndGet();
+        };
+    ReccedaOtp reccedaOtp = new ReccedaOtp(new ReccedaOtpStore());
+
+    try (AsyncOtpDistributor distributor =
+        new AsyncOtpDistributor(slowDistributor, 100, 4, 10, 0)) {
+      List<CompletableFuture<Void>> results = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int i = 0; i < 20; i++) {
+        results.add(reccedaOtp.generateOtpAsync("user-" + i, distributor));
+      }
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // Sending inline would take 20 * 200ms; queueing must not wait on the gateway at all.
+      assertTrue(elapsedMillis < 1000, "generate took " + elapsedMillis + "ms");
+      CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+      assertEquals(20, sent.get());
+    }
+  }
+
+  @Test
+  void testBatchDistributorReceivesBatches() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    BatchOtpDistributor batchDistributor =
+        new BatchOtpDistributor() {
+          @Override
+          public void send(String key, String otp) {
+            await(release);
+            batchSizes.add(1);
+          }
+
+          @Override
+          public void sendAll(Map<String, String> otps) {
+            batchSizes.add(otps.size());
+          }
+        };
+
+    try (AsyncOtpDistributor distributor =
+        new AsyncOtpDistributor(batchDistributor, 100, 1, 50, 0)) {
+      // The first delivery blocks the only worker while the rest pile up in the queue.
+      CompletableFuture<Void> first = distributor.submit("user-0", "000000");
+      waitUntil(() -> distributor.pendingDeliveries() == 0);
+      List<CompletableFuture<Void>> rest = new ArrayList<>();
+      for (int i = 1; i <= 10; i++) {
+        rest.add(distributor.submit("user-" + i, "000000"));
+      }
+      release.countDown();
+
+      first.get(5, TimeUnit.SECONDS);
+      CompletableFuture.allOf(rest.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+      assertEquals(List.of(1, 10), batchSizes);
+    }
+  }
+
+  @Test
+  void testPurposeReachesTheDelegate() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    BatchOtpDistributor purposeAware =
+        new BatchOtpDistributor() {
+          @Override
+          public void send(String key, String otp) {
+            await(release);
+            sent.add(key);
+          }
+
+          @Override
+          public void send(OtpKey key, String otp) {
+            sent.add(key.getSubject() + "/" + key.getPurpose());
+          }
+
+          @Override
+          public void sendAll(Map<String, String> otps) {
+            sent.addAll(otps.keySet());
+          }
+        };
+
+    try (AsyncOtpDistributor distributor = new AsyncOtpDistributor(purposeAware, 100, 1, 50, 0)) {
+      CompletableFuture<Void> first = distributor.submit("user-0", "000000");
+      waitUntil(() -> distributor.pendingDeliveries() == 0);
+      // Scoped and plain deliveries end up in the same batch.
+      CompletableFuture<Void> login = distributor.submit(OtpKey.of("user-1", "login"), "111111");
+      distributor.send(OtpKey.of("user-2", "reset"), "222222");
+      CompletableFuture<Void> plain = distributor.submit("user-3", "333333");
+      release.countDown();
+
+      CompletableFuture.allOf(first, login, plain).get(5, TimeUnit.SECONDS);
+      waitUntil(() -> sent.size() == 4);
+      assertTrue(sent.containsAll(List.of("user-0", "user-1/login", "user-2/reset", "user-3")));
+    }
+  }
+
+  @Test
+  void testFullQueueRejectsDelivery() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    try (AsyncOtpDistributor distributor =
+        new AsyncOtpDistributor((key, otp) -> await(release), 1, 1, 1, 0)) {
+      distributor.submit("user-0", "000000");
+      waitUntil(() -> distributor.pendingDeliveries() == 0);
+      distributor.submit("user-1", "000000");
+
+      CompletableFuture<Void> rejected = distributor.submit("user-2", "000000");
+      ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+      assertTrue(e.getCause() instanceof OtpDistributionException);
+      assertThrows(OtpDistributionException.class, () -> distributor.send("user-3", "000000"));
+      release.countDown();
+    }
+  }
+
+  @Test
+  void testDistributorFailureCompletesFutureExceptionally() {
+    try (AsyncOtpDistributor distributor =
+        new AsyncOtpDistributor(
+            (key, otp) -> {
+              throw new IllegalStateException("gateway down");
+            })) {
+      CompletableFuture<Void> result = distributor.submit("user", "000000");
+      ExecutionException e =
+          assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  void testCloseDeliversQueuedOtpsAndRejectsNewOnes() {
+    AtomicInteger sent = new AtomicInteger();
+    AsyncOtpDistributor distributor =
+        new AsyncOtpDistributor(
+            (key, otp) -> {
+              sleep(5);
+              sent.incrementAndGet();
+            },
+            100,
+            1,
+            1,
+            0);
+    for (int i = 0; i < 10; i++) {
+      distributor.send("user-" + i, "000000");
+    }
+    distributor.close();
+
+    assertEquals(10, sent.get());
+    assertThrows(OtpDistributionException.class, () -> distributor.send("user", "000000"));
+  }
+
+  private static void waitUntil(java.util.function.BooleanSupplier condition) {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+      sleep(1);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.recceda.core.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.event.RingBufferEventPublisher.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RingBufferEventPublisherTest {
+
+  @Test
+  void testEventsAreDeliveredInOrderAndInBatches() {
+    List<OtpEvent> received = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    RingBufferEventPublisher publisher =
+        RingBufferEventPublisher.builder(
+                events -> {
+                  batchSizes.add(events.size());
+                  received.addAll(events);
+                })
+            .maxBatchSize(10)
+            .build();
+    for (int i = 0; i < 1000; i++) {
+      publisher.publish(new OtpEvent(OtpEventType.ISSUED, "key-" + i, i));
+    }
+    publisher.close();
+
+    assertEquals(1000, received.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("key-" + i, received.get(i).getKey());
+    }
+    assertTrue(batchSizes.stream().allMatch(size -> size <= 10));
+    assertEquals(1000, publisher.published());
+    assertEquals(1000, publisher.delivered());
+    assertEquals(0, publisher.dropped());
+    assertEquals(0, publisher.pendingEvents());
+  }
+
+  @Test
+  void testSlowListenerCausesDropsNotWaits() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    RingBufferEventPublisher publisher =
+        RingBufferEventPublisher.builder(events -> await(release)).capacity(8).build();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 10_000; i++) {
+      publisher.publish(new OtpEvent(OtpEventType.ISSUED, "key-" + i, i));
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(elapsedMillis < 1000, "publishing took " + elapsedMillis + " ms");
+    assertTrue(publisher.dropped() >= 10_000 - 8 - RingBufferEventPublisher.DEFAULT_MAX_BATCH_SIZE);
+    release.countDown();
+    publisher.close();
+    assertEquals(10_000, publisher.delivered() + publisher.dropped());
+  }
+
+  @Test
+  void testBlockingPolicyLosesNothing() throws InterruptedException {
+    List<OtpEvent> received = Collections.synchronizedList(new ArrayList<>());
+    RingBufferEventPublisher publisher =
+        RingBufferEventPublisher.builder(
+                events -> {
+                  received.addAll(events);
+                  sleep(1);
+                })
+            .capacity(4)
+            .maxBatchSize(2)
+            .overflowPolicy(OverflowPolicy.BLOCK)
+            .build();
+
+    int threads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      String producer = "producer-" + t;
+      executor.submit(
+          () -> {
+            for (int i = 0; i < 250; i++) {
+              publisher.publish(new OtpEvent(OtpEventType.FAILED, producer, i));
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+    publisher.close();
+
+    assertEquals(0, publisher.dropped());
+    assertEquals(1000, received.size());
+    // Events from one producer arrive in the order it published them.
+    Map<String, Long> lastSeen = new HashMap<>();
+    for (OtpEvent event : received) {
+      Long previous = lastSeen.put(event.getKey(), event.getTimestampMillis());
+      assertTrue(previous == null || previous < event.getTimestampMillis());
+    }
+  }
+
+  @Test
+  void testFailingListenerDoesNotStopOthers() {
+    List<OtpEvent> received = Collections.synchronizedList(new ArrayList<>());
+    RingBufferEventPublisher publisher =
+        RingBufferEventPublisher.builder(
+                events -> {
+                  throw new IllegalStateException("Audit log unavailable.");
+                })
+            .listener(received::addAll)
+            .build();
+    publisher.publish(new OtpEvent(OtpEventType.VERIFIED, "key", 0));
+    publisher.publish(new OtpEvent(OtpEventType.EXPIRED, "key", 1));
+    publisher.close();
+    assertEquals(2, received.size());
+  }
+
+  @Test
+  void testClosedPublisherDropsEvents() {
+    RingBufferEventPublisher publisher = RingBufferEventPublisher.builder(events -> {}).build();
+    publisher.close();
+    publisher.publish(new OtpEvent(OtpEventType.ISSUED, "key", 0));
+    assertEquals(1, publisher.dropped());
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RingBufferEventPublisher.builder(events -> {}).capacity(0).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RingBufferEventPublisher.builder(events -> {}).maxBatchSize(0).build());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
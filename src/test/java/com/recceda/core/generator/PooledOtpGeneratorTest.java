@@ -0,0 +1,143 @@
+package com.recceda.core.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class PooledOtpGeneratorTest {
+
+  @Test
+  void testServesPooledCodesOfEachLength() throws InterruptedException {
+    try (PooledOtpGenerator generator =
+        PooledOtpGenerator.builder(new StripedOtpGenerator(OtpAlphabet.ALPHANUMERIC))
+            .lengths(6, 8)
+            .capacity(16)
+            .build()) {
+      awaitFull(generator, 6, 16);
+      awaitFull(generator, 8, 16);
+
+      assertTrue(generator.generateOtp(6).matches("^[0-9A-Z]{6}$"));
+      assertTrue(generator.generateOtp(8).matches("^[0-9A-Z]{8}$"));
+      assertEquals(2, generator.hits());
+      assertEquals(0, generator.misses());
+    }
+  }
+
+  @Test
+  void testFallsBackToInlineGenerationWhenDrained() {
+    // A generator that is slow to refill, so that a burst drains the pool.
+    AtomicLong counter = new AtomicLong();
+    OtpGenerator slow =
+        length -> {
+          if (Thread.currentThread().getName().startsWith("recceda-otp-pool-")) {
+            sleep(50);
+          }
+          return String.format("%0" + length + "d", counter.incrementAndGet());
+        };
+    try (PooledOtpGenerator generator =
+        PooledOtpGenerator.builder(slow).lengths(6).capacity(4).build()) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(6, generator.generateOtp(6).length());
+      }
+      assertEquals(100, generator.hits() + generator.misses());
+      assertTrue(generator.misses() >= 96, "misses " + generator.misses());
+      assertEquals(generator.hits() / 100.0, generator.hitRate(), 1e-9);
+
+      // Lengths without a pool are always generated inline.
+      long misses = generator.misses();
+      assertEquals(4, generator.generateOtp(4).length());
+      assertEquals(misses + 1, generator.misses());
+    }
+  }
+
+  @Test
+  void testEachCodeIsServedOnce() throws Exception {
+    // Every code the wrapped generator produces is distinct, so a repeat means a double take.
+    AtomicLong counter = new AtomicLong();
+    OtpGenerator sequential =
+        length -> String.format("%0" + length + "d", counter.incrementAndGet());
+    Set<String> served = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (PooledOtpGenerator generator =
+        PooledOtpGenerator.builder(sequential).lengths(12).capacity(64).build()) {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 20_000; i++) {
+                    if (!served.add(generator.generateOtp(12))) {
+                      return false;
+                    }
+                  }
+                  return true;
+                }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+      assertEquals(160_000, served.size());
+      assertEquals(160_000, generator.hits() + generator.misses());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testCloseEmptiesThePool() throws InterruptedException {
+    AtomicLong counter = new AtomicLong();
+    OtpGenerator sequential =
+        length -> String.format("%0" + length + "d", counter.incrementAndGet());
+    PooledOtpGenerator generator =
+        PooledOtpGenerator.builder(sequential).lengths(6).capacity(8).build();
+    awaitFull(generator, 6, 8);
+
+    generator.close();
+
+    assertEquals(0, generator.pooledOtps(6));
+    long generated = counter.get();
+    assertEquals(String.format("%06d", generated + 1), generator.generateOtp(6));
+    assertEquals(0, generator.hits());
+    assertEquals(1, generator.misses());
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    OtpGenerator delegate = new StripedOtpGenerator();
+    assertThrows(IllegalArgumentException.class, () -> PooledOtpGenerator.builder(null).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PooledOtpGenerator.builder(delegate).lengths().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PooledOtpGenerator.builder(delegate).lengths(0).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PooledOtpGenerator.builder(delegate).capacity(1).build());
+  }
+
+  private static void awaitFull(PooledOtpGenerator generator, int length, int capacity)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (generator.pooledOtps(length) < capacity && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(capacity, generator.pooledOtps(length));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
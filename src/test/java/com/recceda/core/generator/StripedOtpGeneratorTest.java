@@ -0,0 +1,89 @@
+package com.recceda.core.generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class StripedOtpGeneratorTest {
+
+  @Test
+  void testGenerateOtpLength() {
+    OtpGenerator otpGenerator = new StripedOtpGenerator();
+    assertEquals(6, otpGenerator.generateOtp(6).length());
+    assertEquals(8, otpGenerator.generateOtp(8).length());
+    assertEquals(1000, otpGenerator.generateOtp(1000).length());
+  }
+
+  @Test
+  void testGenerateOtpContainsOnlyDigits() {
+    OtpGenerator otpGenerator = new StripedOtpGenerator();
+    assertTrue(otpGenerator.generateOtp(100).matches("^[0-9]+$"));
+  }
+
+  @Test
+  void testGenerateOtpUsesConfiguredAlphabet() {
+    OtpGenerator otpGenerator = new StripedOtpGenerator(OtpAlphabet.ALPHANUMERIC);
+    assertTrue(otpGenerator.generateOtp(100).matches("^[0-9A-Z]+$"));
+
+    OtpGenerator binary = new StripedOtpGenerator(OtpAlphabet.of("ab"), 1);
+    assertTrue(binary.generateOtp(100).matches("^[ab]+$"));
+  }
+
+  @Test
+  void testDigitsAreUniformlyDistributed() {
+    OtpGenerator otpGenerator = new StripedOtpGenerator();
+    int samples = 200_000;
+    int[] counts = new int[10];
+    for (char c : otpGenerator.generateOtp(samples).toCharArray()) {
+      counts[c - '0']++;
+    }
+
+    double expected = samples / 10.0;
+    double chiSquare = 0;
+    for (int count : counts) {
+      chiSquare += (count - expected) * (count - expected) / expected;
+    }
+    // 9 degrees of freedom; 27.88 is the 0.999 quantile.
+    assertTrue(chiSquare < 27.88, "chi-square " + chiSquare);
+  }
+
+  @Test
+  void testConcurrentGeneration() throws Exception {
+    OtpGenerator otpGenerator = new StripedOtpGenerator(OtpAlphabet.NUMERIC, 4);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10_000; i++) {
+                    String otp = otpGenerator.generateOtp(6);
+                    if (otp.length() != 6 || !otp.matches("^[0-9]+$")) {
+                      return false;
+                    }
+                  }
+                  return true;
+                }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testAlphabetValidation() {
+    assertThrows(IllegalArgumentException.class, () -> OtpAlphabet.of("a"));
+    assertThrows(IllegalArgumentException.class, () -> OtpAlphabet.of("abca"));
+    assertThrows(
+        IllegalArgumentException.class, () -> new StripedOtpGenerator(OtpAlphabet.NUMERIC, 0));
+  }
+}
@@ -0,0 +1,47 @@
+package com.recceda.core.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.policy.MaxFailedAttemptsPolicy;
+import com.recceda.core.policy.PreventDuplicateOtpPolicy;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.VerificationResult;
+import com.recceda.exception.OtpGenerationException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class HistogramMetricsRecorderTest {
+
+  @Test
+  void testRecordsStagesRejectionsAndOutcomes() {
+    HistogramMetricsRecorder metrics = new HistogramMetricsRecorder();
+    ReccedaOtp reccedaOtp =
+        ReccedaOtp.builder()
+            .otpStore(new ReccedaOtpStore())
+            .policies(
+                Arrays.asList(new MaxFailedAttemptsPolicy(5), new PreventDuplicateOtpPolicy()))
+            .metricsRecorder(metrics)
+            .build();
+    String[] sent = new String[1];
+
+    reccedaOtp.generateOtp("user", (key, otp) -> sent[0] = otp);
+    assertThrows(
+        OtpGenerationException.class, () -> reccedaOtp.generateOtp("user", (key, otp) -> {}));
+    reccedaOtp.verifyOtp("user", "wrong");
+    reccedaOtp.verifyAndConsume("user", sent[0]);
+    reccedaOtp.verifyAndConsume("user", sent[0]);
+
+    assertEquals(1, metrics.latency(PipelineStage.POLICY_CHECK).count());
+    assertEquals(1, metrics.latency(PipelineStage.GENERATION).count());
+    assertEquals(1, metrics.latency(PipelineStage.STORE).count());
+    assertEquals(1, metrics.latency(PipelineStage.DISTRIBUTION).count());
+    assertEquals(3, metrics.latency(PipelineStage.VERIFICATION).count());
+    assertTrue(metrics.latency(PipelineStage.GENERATION).valueAtPercentile(50) > 0);
+    assertEquals(1L, metrics.policyRejections().get(PreventDuplicateOtpPolicy.class));
+    assertFalse(metrics.policyRejections().containsKey(MaxFailedAttemptsPolicy.class));
+    assertEquals(1, metrics.verifications(VerificationResult.INVALID));
+    assertEquals(1, metrics.verifications(VerificationResult.VALID));
+    assertEquals(1, metrics.verifications(VerificationResult.NOT_FOUND));
+  }
+}
@@ -0,0 +1,79 @@
+package com.recceda.core.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.valueAtPercentile(99));
+    assertEquals(0, histogram.mean());
+  }
+
+  @Test
+  void testPercentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(100_000, histogram.count());
+    assertEquals(100_000_000, histogram.max());
+    assertEquals(50_000_500, histogram.mean(), 1);
+    assertWithin(50_000_000, histogram.valueAtPercentile(50));
+    assertWithin(99_000_000, histogram.valueAtPercentile(99));
+    assertWithin(99_900_000, histogram.valueAtPercentile(99.9));
+    assertEquals(100_000_000, histogram.valueAtPercentile(100));
+  }
+
+  @Test
+  void testBucketsCoverEveryValue() {
+    for (int i = 0; i < 100_000; i++) {
+      long value = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(value <= LatencyHistogram.upperBoundOf(bucket), Long.toString(value));
+      assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+    }
+    assertEquals(
+        Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(-1L >>> 1)));
+  }
+
+  @Test
+  void testNegativeDurationsCountAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.count());
+    assertEquals(0, histogram.valueAtPercentile(100));
+  }
+
+  @Test
+  void testConcurrentRecordingLosesNothing() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.submit(
+          () -> {
+            for (int i = 0; i < 100_000; i++) {
+              histogram.record(i);
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(800_000, histogram.count());
+    assertEquals(99_999, histogram.max());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(
+        Math.abs(actual - expected) <= expected / 16,
+        "expected ~" + expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,43 @@
+package com.recceda.core.policy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.OtpHasher;
+import com.recceda.core.store.OtpKey;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpGenerationException;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MaxActiveOtpsPolicyTest {
+
+  private static final long NOW = 1_000_000;
+
+  private final MaxActiveOtpsPolicy policy = new MaxActiveOtpsPolicy(2);
+  private final OtpEntry active = new OtpEntry(new byte[OtpHasher.HASH_LENGTH], NOW + 60_000);
+
+  @Test
+  void shouldRejectANewPurposeAtTheLimit() {
+    assertDoesNotThrow(() -> policy.check(context(null, 1)));
+    assertThrows(OtpGenerationException.class, () -> policy.check(context(null, 2)));
+  }
+
+  @Test
+  void shouldAllowReplacingAnActiveOtpAtTheLimit() {
+    assertDoesNotThrow(() -> policy.check(context(active, 2)));
+  }
+
+  @Test
+  void shouldTreatPlainKeysAsHoldingAtMostOneOtp() {
+    ReccedaOtpStore store = new ReccedaOtpStore();
+    store.storeOtp("alice", "123456", 60_000);
+    assertDoesNotThrow(() -> policy.check("alice", store));
+    assertThrows(IllegalArgumentException.class, () -> new MaxActiveOtpsPolicy(0));
+  }
+
+  private PolicyContext context(OtpEntry entry, int activeOtps) {
+    return new PolicyContext(
+        OtpKey.of("alice", "reset"), entry, activeOtps, NOW, new ReccedaOtpStore(), Map.of());
+  }
+}
@@ -4,9 +4,11 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
+import com.recceda.core.store.OtpHasher;
 import com.recceda.core.store.OtpStore;
 import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
 import com.recceda.exception.OtpGenerationException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -17,12 +19,18 @@ class MaxFailedAttemptsPolicyTest {
 
   @Mock private OtpStore otpStore;
 
+  @BeforeEach
+  void setUp() {
+    when(otpStore.timeSource()).thenCallRealMethod();
+  }
+
   @Test
   void shouldThrowExceptionWhenMaxAttemptsExceeded() {
     // Given
     String key = "test-user";
     MaxFailedAttemptsPolicy policy = new MaxFailedAttemptsPolicy(3);
-    OtpEntry entry = new OtpEntry("hash", System.currentTimeMillis() + 10000);
+    OtpEntry entry =
+        new OtpEntry(new byte[OtpHasher.HASH_LENGTH], System.currentTimeMillis() + 10000);
     entry.failedAttempts = 3;
     when(otpStore.getOtpEntry(key)).thenReturn(entry);
 
@@ -39,7 +47,8 @@ class MaxFailedAttemptsPolicyTest {
     // Given
     String key = "test-user";
     MaxFailedAttemptsPolicy policy = new MaxFailedAttemptsPolicy(3);
-    OtpEntry entry = new OtpEntry("hash", System.currentTimeMillis() + 10000);
+    OtpEntry entry =
+        new OtpEntry(new byte[OtpHasher.HASH_LENGTH], System.currentTimeMillis() + 10000);
     entry.failedAttempts = 2;
     when(otpStore.getOtpEntry(key)).thenReturn(entry);
 
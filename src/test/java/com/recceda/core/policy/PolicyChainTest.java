@@ -0,0 +1,75 @@
+package com.recceda.core.policy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.recceda.core.metrics.MetricsRecorder;
+import com.recceda.core.store.OtpHasher;
+import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpGenerationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PolicyChainTest {
+
+  @Test
+  void testPoliciesShareOneLookup() {
+    OtpStore store = mock(OtpStore.class);
+    when(store.getOtpEntry("user")).thenReturn(null);
+    when(store.timeSource()).thenCallRealMethod();
+    PolicyChain chain =
+        PolicyChain.compile(
+            Arrays.asList(new MaxFailedAttemptsPolicy(3), new PreventDuplicateOtpPolicy()));
+
+    chain.check(PolicyContext.lookup("user", store));
+
+    verify(store, times(1)).getOtpEntry("user");
+  }
+
+  @Test
+  void testChecksStopAtFirstFailure() {
+    List<String> checked = new ArrayList<>();
+    Policy first =
+        new Policy() {
+          @Override
+          public void check(String key, OtpStore store) {}
+
+          @Override
+          public void check(PolicyContext context) {
+            checked.add("first");
+            throw new OtpGenerationException("Rejected.");
+          }
+        };
+    Policy second = (key, store) -> checked.add("second");
+    MetricsRecorder metrics = mock(MetricsRecorder.class);
+    PolicyChain chain = PolicyChain.compile(Arrays.asList(first, second), metrics);
+
+    assertThrows(
+        OtpGenerationException.class,
+        () -> chain.check(new PolicyContext("user", null, 0, mock(OtpStore.class))));
+
+    assertEquals(Collections.singletonList("first"), checked);
+    verify(metrics).recordPolicyRejection(first.getClass());
+  }
+
+  @Test
+  void testLegacyPoliciesReceiveKeyAndStore() {
+    OtpStore store = mock(OtpStore.class);
+    Policy legacy = mock(Policy.class, CALLS_REAL_METHODS);
+    PolicyChain.compile(Arrays.asList(legacy)).check(new PolicyContext("user", null, 0, store));
+    verify(legacy).check("user", store);
+  }
+
+  @Test
+  void testContextReportsActiveOtp() {
+    OtpEntry entry = new OtpEntry(new byte[OtpHasher.HASH_LENGTH], 1000);
+    assertTrue(new PolicyContext("user", entry, 999, null).hasActiveOtp());
+    assertFalse(new PolicyContext("user", entry, 1000, null).hasActiveOtp());
+    assertFalse(new PolicyContext("user", null, 0, null).hasActiveOtp());
+    assertTrue(PolicyChain.compile(Collections.emptyList()).isEmpty());
+  }
+}
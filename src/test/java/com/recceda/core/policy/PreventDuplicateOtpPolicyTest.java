@@ -4,9 +4,11 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
+import com.recceda.core.store.OtpHasher;
 import com.recceda.core.store.OtpStore;
 import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
 import com.recceda.exception.OtpGenerationException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -17,13 +19,19 @@ class PreventDuplicateOtpPolicyTest {
 
   @Mock private OtpStore otpStore;
 
+  @BeforeEach
+  void setUp() {
+    when(otpStore.timeSource()).thenCallRealMethod();
+  }
+
   private final PreventDuplicateOtpPolicy policy = new PreventDuplicateOtpPolicy();
 
   @Test
   void shouldThrowExceptionWhenActiveOtpExists() {
     // Given
     String key = "test-user";
-    OtpEntry activeEntry = new OtpEntry("hash", System.currentTimeMillis() + 10000);
+    OtpEntry activeEntry =
+        new OtpEntry(new byte[OtpHasher.HASH_LENGTH], System.currentTimeMillis() + 10000);
     when(otpStore.getOtpEntry(key)).thenReturn(activeEntry);
 
     // Then
@@ -51,7 +59,8 @@ class PreventDuplicateOtpPolicyTest {
   void shouldNotThrowExceptionWhenOtpIsExpired() {
     // Given
     String key = "test-user";
-    OtpEntry expiredEntry = new OtpEntry("hash", System.currentTimeMillis() - 10000);
+    OtpEntry expiredEntry =
+        new OtpEntry(new byte[OtpHasher.HASH_LENGTH], System.currentTimeMillis() - 10000);
     when(otpStore.getOtpEntry(key)).thenReturn(expiredEntry);
 
     // Then
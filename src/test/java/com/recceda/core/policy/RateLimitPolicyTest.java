@@ -0,0 +1,179 @@
+package com.recceda.core.policy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.exception.OtpGenerationException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class RateLimitPolicyTest {
+
+  private final OtpStore store = mock(OtpStore.class);
+
+  @Test
+  void testPerKeyLimit() {
+    RateLimitPolicy policy = RateLimitPolicy.builder().perKey(3, Duration.ofMinutes(1)).build();
+    for (int i = 0; i < 3; i++) {
+      policy.check(context("user", 1000, Collections.emptyMap()));
+    }
+    OtpGenerationException exception =
+        assertThrows(
+            OtpGenerationException.class,
+            () -> policy.check(context("user", 1000, Collections.emptyMap())));
+    assertEquals("Too many OTP requests for this key.", exception.getMessage());
+    policy.check(context("otherUser", 1000, Collections.emptyMap()));
+  }
+
+  @Test
+  void testPerAttributeLimitSpansKeys() {
+    RateLimitPolicy policy =
+        RateLimitPolicy.builder().perAttribute("ip", 5, Duration.ofMinutes(1)).build();
+    Map<String, String> attacker = Map.of("ip", "203.0.113.7");
+    for (int i = 0; i < 5; i++) {
+      policy.check(context("+2771000000" + i, 1000, attacker));
+    }
+    assertThrows(
+        OtpGenerationException.class, () -> policy.check(context("+27710000099", 1000, attacker)));
+    policy.check(context("+27710000099", 1000, Map.of("ip", "198.51.100.1")));
+    // Requests without the attribute are not counted against it.
+    for (int i = 0; i < 10; i++) {
+      policy.check(context("user-" + i, 1000, Collections.emptyMap()));
+    }
+  }
+
+  @Test
+  void testCustomDimension() {
+    RateLimitPolicy policy =
+        RateLimitPolicy.builder()
+            .limit("prefix", context -> context.getKey().substring(0, 5), 2, Duration.ofHours(1))
+            .build();
+    policy.check(context("+2771111", 0, Collections.emptyMap()));
+    policy.check(context("+2771222", 0, Collections.emptyMap()));
+    assertThrows(
+        OtpGenerationException.class,
+        () -> policy.check(context("+2771333", 0, Collections.emptyMap())));
+    policy.check(context("+4420111", 0, Collections.emptyMap()));
+  }
+
+  @Test
+  void testWindowSlides() {
+    RateLimitPolicy policy = RateLimitPolicy.builder().perKey(4, Duration.ofSeconds(10)).build();
+    for (int i = 0; i < 4; i++) {
+      policy.check(context("user", 10_000, Collections.emptyMap()));
+    }
+    // The whole previous window still counts, wherever its requests fell within it.
+    assertThrows(
+        OtpGenerationException.class,
+        () -> policy.check(context("user", 25_000, Collections.emptyMap())));
+    // Once the earlier windows have slid out entirely, the key may request again.
+    policy.check(context("user", 40_000, Collections.emptyMap()));
+  }
+
+  @Test
+  void testBurstAcrossAWindowBoundaryIsLimited() {
+    long minute = 60_000;
+    RateLimitPolicy policy = RateLimitPolicy.builder().perKey(3, Duration.ofMinutes(15)).build();
+    // Three requests at 14:00, at the end of the first window, and more at 22:30 in the second:
+    // all within 15 minutes, so only the first three are allowed.
+    for (int i = 0; i < 3; i++) {
+      policy.check(context("user", 14 * minute, Collections.emptyMap()));
+    }
+    assertThrows(
+        OtpGenerationException.class,
+        () -> policy.check(context("user", 22 * minute + 30_000, Collections.emptyMap())));
+  }
+
+  @Test
+  void testRejectedRequestsStillCount() {
+    RateLimitPolicy policy =
+        RateLimitPolicy.builder()
+            .perKey(100, Duration.ofMinutes(1))
+            .perAttribute("ip", 1, Duration.ofMinutes(1))
+            .build();
+    Map<String, String> ip = Map.of("ip", "203.0.113.7");
+    policy.check(context("user", 0, ip));
+    for (int i = 0; i < 99; i++) {
+      assertThrows(OtpGenerationException.class, () -> policy.check(context("user", 0, ip)));
+    }
+    assertThrows(
+        OtpGenerationException.class,
+        () -> policy.check(context("user", 0, Collections.emptyMap())));
+  }
+
+  @Test
+  void testConcurrentRequestsAreCountedExactly() throws InterruptedException {
+    RateLimitPolicy policy = RateLimitPolicy.builder().perKey(1000, Duration.ofMinutes(1)).build();
+    AtomicInteger accepted = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    for (int i = 0; i < 5000; i++) {
+      executor.submit(
+          () -> {
+            try {
+              policy.check(context("user", 1000, Collections.emptyMap()));
+              accepted.incrementAndGet();
+            } catch (OtpGenerationException e) {
+              // Expected once the limit is reached.
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(1000, accepted.get());
+  }
+
+  @Test
+  void testLimitsStoreRequestsThroughCheckAndStore() {
+    ReccedaOtpStore otpStore = new ReccedaOtpStore();
+    PolicyChain chain =
+        PolicyChain.compile(
+            Collections.singletonList(
+                RateLimitPolicy.builder().perAttribute("ip", 2, Duration.ofMinutes(1)).build()));
+    Map<String, String> ip = Map.of("ip", "203.0.113.7");
+    otpStore.checkAndStore("a", ip, chain, () -> "123456", 60_000);
+    otpStore.checkAndStore("b", ip, chain, () -> "123456", 60_000);
+    assertThrows(
+        OtpGenerationException.class,
+        () -> otpStore.checkAndStore("c", ip, chain, () -> "123456", 60_000));
+    assertNull(otpStore.getOtpEntry("c"));
+  }
+
+  @Test
+  void testMemoryBudget() {
+    RateLimitPolicy policy =
+        RateLimitPolicy.builder()
+            .perKey(3, Duration.ofMinutes(1))
+            .perAttribute("ip", 3, Duration.ofMinutes(1))
+            .memoryBudgetBytes(1 << 20)
+            .build();
+    assertTrue(policy.memoryBytes() <= 2 << 20);
+    assertTrue(policy.memoryBytes() > 1 << 20);
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(IllegalStateException.class, () -> RateLimitPolicy.builder().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RateLimitPolicy.builder().perKey(0, Duration.ofMinutes(1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RateLimitPolicy.builder()
+                .perKey(3, Duration.ofMinutes(1))
+                .memoryBudgetBytes(16)
+                .build());
+  }
+
+  private PolicyContext context(String key, long now, Map<String, String> attributes) {
+    return new PolicyContext(key, null, now, store, attributes);
+  }
+}
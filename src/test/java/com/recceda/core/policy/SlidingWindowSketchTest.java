@@ -0,0 +1,99 @@
+package com.recceda.core.policy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.util.Hash64Collisions;
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowSketchTest {
+
+  @Test
+  void testCountsAreExactWithoutCollisions() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 16, 4, 1000);
+    for (int i = 1; i <= 50; i++) {
+      assertEquals(i, sketch.incrementAndEstimate("source", 500));
+    }
+    assertEquals(1, sketch.incrementAndEstimate("other", 500));
+  }
+
+  @Test
+  void testCollidingSourcesDoNotShareCounters() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 16, 4, 1000);
+    String attacker = Hash64Collisions.collidingKey("victim-1");
+    for (int i = 0; i < 50; i++) {
+      sketch.incrementAndEstimate(attacker, 500);
+    }
+    assertEquals(1, sketch.incrementAndEstimate("victim-1", 500));
+  }
+
+  @Test
+  void testPreviousWindowCountsInFull() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 16, 4, 1000);
+    for (int i = 0; i < 100; i++) {
+      sketch.incrementAndEstimate("source", 1500);
+    }
+    assertEquals(1 + 100, sketch.incrementAndEstimate("source", 2999));
+    assertEquals(2 + 0, sketch.incrementAndEstimate("source", 3000));
+  }
+
+  @Test
+  void testBurstAcrossAWindowBoundaryIsNeverUndercounted() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 16, 4, 1000);
+    // Three events at the very end of one window, then more early in the next: all of them fall
+    // within one window length, so each estimate must be at least the true count.
+    for (int i = 1; i <= 3; i++) {
+      assertEquals(i, sketch.incrementAndEstimate("source", 1999));
+    }
+    assertEquals(4, sketch.incrementAndEstimate("source", 2000));
+    assertEquals(5, sketch.incrementAndEstimate("source", 2500));
+  }
+
+  @Test
+  void testStaleCountersAreReset() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 16, 4, 1000);
+    for (int i = 0; i < 100; i++) {
+      sketch.incrementAndEstimate("source", 0);
+    }
+    // Two windows later the same counters are reused, and the old counts must not leak through.
+    assertEquals(1, sketch.incrementAndEstimate("source", 2000));
+  }
+
+  @Test
+  void testHighCardinalityStaysAccurateWithinBudget() {
+    int sources = 1_000_000;
+    int limit = 5;
+    SlidingWindowSketch sketch = new SlidingWindowSketch(32L << 20, 4, 60_000);
+    assertTrue(sketch.memoryBytes() <= 32L << 20);
+
+    // A million sources request once each, while a few heavy hitters hammer away.
+    int heavyHitters = 100;
+    for (int i = 0; i < sources; i++) {
+      sketch.incrementAndEstimate("source-" + i, 1000);
+    }
+    for (int i = 0; i < heavyHitters; i++) {
+      for (int request = 0; request < 1000; request++) {
+        sketch.incrementAndEstimate("heavy-" + i, 1000);
+      }
+    }
+
+    int falseRejections = 0;
+    for (int i = 0; i < sources; i++) {
+      if (sketch.incrementAndEstimate("source-" + i, 1000) > limit) {
+        falseRejections++;
+      }
+    }
+    assertTrue(falseRejections < sources / 100, "false rejections: " + falseRejections);
+    for (int i = 0; i < heavyHitters; i++) {
+      assertTrue(sketch.incrementAndEstimate("heavy-" + i, 1000) > limit);
+    }
+  }
+
+  @Test
+  void testCountsSaturate() {
+    SlidingWindowSketch sketch = new SlidingWindowSketch(1 << 10, 1, 1000);
+    for (int i = 0; i < SlidingWindowSketch.MAX_COUNT + 10; i++) {
+      sketch.incrementAndEstimate("source", 0);
+    }
+    assertEquals(SlidingWindowSketch.MAX_COUNT, sketch.incrementAndEstimate("source", 0));
+  }
+}
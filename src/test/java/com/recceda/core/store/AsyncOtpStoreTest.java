@@ -0,0 +1,132 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PreventDuplicateOtpPolicy;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpGenerationException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class AsyncOtpStoreTest {
+
+  @Test
+  void testWrappedStoreRunsOnTheExecutor() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Thread[] storeThread = new Thread[1];
+    ReccedaOtpStore otpStore =
+        new ReccedaOtpStore() {
+          @Override
+          public void storeOtp(String key, String otp, long ttlMillis) {
+            storeThread[0] = Thread.currentThread();
+            super.storeOtp(key, otp, ttlMillis);
+          }
+        };
+    AsyncOtpStore asyncStore = AsyncOtpStore.wrap(otpStore, executor);
+
+    asyncStore.storeOtp("key", "123456", 60_000).toCompletableFuture().join();
+    assertNotSame(Thread.currentThread(), storeThread[0]);
+    assertFalse(asyncStore.verifyOtp("key", "000000").toCompletableFuture().join());
+    assertEquals(1, asyncStore.getOtpEntry("key").toCompletableFuture().join().failedAttempts);
+    assertEquals(
+        VerificationResult.VALID,
+        asyncStore.verifyAndConsume("key", "123456").toCompletableFuture().join());
+    assertNull(asyncStore.getOtpEntry("key").toCompletableFuture().join());
+    executor.shutdown();
+  }
+
+  @Test
+  void testAdaptersUnwrapEachOther() {
+    ReccedaOtpStore otpStore = new ReccedaOtpStore();
+    AsyncOtpStore asyncStore = AsyncOtpStore.wrap(otpStore, Runnable::run);
+    assertSame(otpStore, AsyncOtpStore.blocking(asyncStore));
+
+    AsyncOtpStore remote = new MapBackedAsyncStore();
+    assertSame(remote, AsyncOtpStore.wrap(AsyncOtpStore.blocking(remote), Runnable::run));
+  }
+
+  @Test
+  void testBlockingViewOfAnAsyncStore() {
+    OtpStore otpStore = AsyncOtpStore.blocking(new MapBackedAsyncStore());
+    otpStore.storeOtps(Map.of("a", "111111", "b", "222222"), 60_000);
+
+    assertTrue(otpStore.verifyOtp("a", "111111"));
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume("b", "000000"));
+    assertEquals(VerificationResult.LOCKED, otpStore.verifyAndConsume("b", "222222", 1));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("b", "222222"));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume("b", "222222"));
+    Map<String, String> otps = new LinkedHashMap<>();
+    otps.put("b", "222222");
+    otps.put("a", "111111");
+    assertEquals(List.of("b", "a"), List.copyOf(otpStore.verifyOtps(otps).keySet()));
+    assertEquals(Map.of("a", true, "b", false), otpStore.verifyOtps(otps));
+  }
+
+  @Test
+  void testBlockingViewRethrowsTheCause() {
+    AsyncOtpStore failing = new MapBackedAsyncStore();
+    OtpStore otpStore = AsyncOtpStore.blocking(failing);
+    PolicyChain policies = PolicyChain.compile(List.of(new PreventDuplicateOtpPolicy()));
+    otpStore.storeOtp("key", "123456", 60_000);
+
+    assertThrows(
+        OtpGenerationException.class,
+        () -> otpStore.checkAndStore("key", Collections.emptyMap(), policies, () -> "1", 60_000));
+  }
+
+  @Test
+  void testDefaultCheckAndStoreCompletesExceptionallyOnRejection() {
+    AsyncOtpStore asyncStore = new MapBackedAsyncStore();
+    PolicyChain policies = PolicyChain.compile(List.of(new PreventDuplicateOtpPolicy()));
+
+    assertEquals(
+        "654321",
+        asyncStore
+            .checkAndStore("key", Collections.emptyMap(), policies, () -> "654321", 60_000)
+            .toCompletableFuture()
+            .join());
+    CompletableFuture<String> rejected =
+        asyncStore
+            .checkAndStore("key", Collections.emptyMap(), policies, () -> "000000", 60_000)
+            .toCompletableFuture();
+    CompletionException e = assertThrows(CompletionException.class, rejected::join);
+    assertTrue(e.getCause() instanceof OtpGenerationException);
+    assertTrue(asyncStore.verifyOtp("key", "654321").toCompletableFuture().join());
+  }
+
+  /** A minimal asynchronous store that only implements the abstract methods. */
+  private static final class MapBackedAsyncStore implements AsyncOtpStore {
+    private final ReccedaOtpStore delegate = new ReccedaOtpStore();
+
+    @Override
+    public CompletionStage<Void> storeOtp(String key, String otp, long ttlMillis) {
+      delegate.storeOtp(key, otp, ttlMillis);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletionStage<Boolean> verifyOtp(String key, String otp) {
+      return CompletableFuture.supplyAsync(() -> delegate.verifyOtp(key, otp));
+    }
+
+    @Override
+    public CompletionStage<OtpEntry> getOtpEntry(String key) {
+      return CompletableFuture.supplyAsync(() -> delegate.getOtpEntry(key));
+    }
+
+    @Override
+    public CompletionStage<Void> invalidateOtp(String key) {
+      delegate.invalidateOtp(key);
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+}
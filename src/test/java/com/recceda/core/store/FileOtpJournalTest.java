@@ -0,0 +1,241 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.FileOtpJournal.Durability;
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.ManualTimeSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileOtpJournalTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void testEntriesSurviveReopenAtEveryDurability() throws IOException {
+    for (Durability durability : Durability.values()) {
+      assertEntriesSurviveReopen(directory.resolve(durability.name()), durability);
+    }
+  }
+
+  private void assertEntriesSurviveReopen(Path directory, Durability durability)
+      throws IOException {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, durability)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      otpStore.storeOtp("testKey", "123456", 60_000);
+      otpStore.storeOtp("failedKey", "123456", 60_000);
+      otpStore.verifyOtp("failedKey", "000000");
+      otpStore.verifyOtp("failedKey", "000000");
+      otpStore.storeOtp("invalidatedKey", "123456", 60_000);
+      otpStore.invalidateOtp("invalidatedKey");
+      otpStore.storeOtp("consumedKey", "123456", 60_000);
+      assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("consumedKey", "123456"));
+      otpStore.storeOtps(Map.of("bulk-1", "111111", "bulk-2", "222222"), 60_000);
+    }
+
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, durability)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(0, journal.truncatedRecords());
+      assertEquals(2, otpStore.getOtpEntry("failedKey").failedAttempts);
+      assertNull(otpStore.getOtpEntry("invalidatedKey"));
+      assertNull(otpStore.getOtpEntry("consumedKey"));
+      assertTrue(otpStore.verifyOtp("testKey", "123456"));
+      assertTrue(otpStore.verifyOtp("bulk-2", "222222"));
+    }
+  }
+
+  @Test
+  void testEntriesThatExpiredWhileClosedAreNotRestored() throws Exception {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.BATCHED)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      otpStore.storeOtp("shortLived", "123456", 1);
+      otpStore.storeOtp("longLived", "123456", 60_000);
+    }
+    Thread.sleep(10);
+
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.BATCHED)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      assertNull(otpStore.getOtpEntry("shortLived"));
+      assertTrue(otpStore.verifyOtp("longLived", "123456"));
+    }
+  }
+
+  @Test
+  void testTornTailIsTruncated() throws IOException {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      otpStore.storeOtp("first", "123456", 60_000);
+      otpStore.storeOtp("second", "123456", 60_000);
+    }
+
+    // Simulate a crash in the middle of appending a record: a length and checksum, then only part
+    // of the payload.
+    Path log = files("journal-").get(0);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 1, 0, 0}));
+    }
+
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(1, journal.truncatedRecords());
+      assertTrue(otpStore.verifyOtp("first", "123456"));
+      assertTrue(otpStore.verifyOtp("second", "123456"));
+    }
+
+    // The damaged log was compacted away; reopening again finds nothing to cut off.
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(0, journal.truncatedRecords());
+      assertNotNull(otpStore.getOtpEntry("second"));
+    }
+  }
+
+  @Test
+  void testCorruptRecordStopsReplayAtThatRecord() throws IOException {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      otpStore.storeOtp("first", "123456", 60_000);
+      otpStore.storeOtp("second", "123456", 60_000);
+    }
+
+    Path log = files("journal-").get(0);
+    long size = Files.size(log);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0x5A}), size - 1);
+    }
+
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(1, journal.truncatedRecords());
+      assertNotNull(otpStore.getOtpEntry("first"));
+      assertNull(otpStore.getOtpEntry("second"));
+    }
+  }
+
+  @Test
+  void testSnapshotsCompactTheLog() throws Exception {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.BATCHED, 20)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      for (int round = 0; round < 50; round++) {
+        for (int i = 0; i < 100; i++) {
+          otpStore.storeOtp("key-" + i, "otp-" + round, 60_000);
+        }
+      }
+      Thread.sleep(100);
+      // Older generations are deleted, and the snapshot holds one record per key.
+      List<Path> snapshots = files("snapshot-");
+      assertFalse(snapshots.isEmpty());
+      assertFalse(snapshots.get(0).getFileName().toString().endsWith("0001.bin"));
+      assertTrue(Files.size(snapshots.get(snapshots.size() - 1)) < 100 * 100);
+      assertTrue(files("journal-").size() <= 2);
+      otpStore.storeOtp("late", "123456", 60_000);
+    }
+
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.BATCHED, 0)) {
+      OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      for (int i = 0; i < 100; i++) {
+        assertTrue(otpStore.verifyOtp("key-" + i, "otp-49"));
+      }
+      assertTrue(otpStore.verifyOtp("late", "123456"));
+    }
+  }
+
+  @Test
+  void testSnapshotKeepsChangesTheStoreHasNotAppliedYet() throws Exception {
+    // The clock is far in the past, so entries only survive if the journal judges expiry by it.
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    Map<String, OtpEntry> entries = new ConcurrentHashMap<>();
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 1000)) {
+      journal.attach(entries, time);
+      for (String key : List.of("kept", "consumed")) {
+        OtpEntry entry = new OtpEntry(new byte[32], time.currentTimeMillis() + 60_000);
+        entries.put(key, entry);
+        journal.awaitDurable(journal.recordStore(key, entry));
+      }
+      // The removal is recorded, but the consuming compute has not updated the map yet.
+      journal.awaitDurable(journal.recordRemoval("consumed"));
+
+      time.advance(Duration.ofSeconds(1));
+      Path firstLog = directory.resolve("journal-0000000000000001.log");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (Files.exists(firstLog) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertFalse(Files.exists(firstLog));
+    }
+
+    Map<String, OtpEntry> restored = new HashMap<>();
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 0)) {
+      journal.attach(restored, time);
+    }
+    assertEquals(Set.of("kept"), restored.keySet());
+  }
+
+  @Test
+  void testConcurrentChangesAreReplayedInOrder() throws Exception {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC, 5)) {
+      ReccedaOtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        executor.submit(
+            () -> {
+              for (int i = 0; i < 200; i++) {
+                String key = "key-" + (i % 20);
+                otpStore.storeOtp(key, "otp-" + thread, 60_000);
+                otpStore.verifyOtp(key, "wrong");
+              }
+            });
+      }
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+      journal.close();
+
+      try (FileOtpJournal restored = FileOtpJournal.open(directory, Durability.SYNC)) {
+        OtpStore restoredStore = ReccedaOtpStore.builder().journal(restored).build();
+        for (int i = 0; i < 20; i++) {
+          OtpEntry original = otpStore.getOtpEntry("key-" + i);
+          OtpEntry replayed = restoredStore.getOtpEntry("key-" + i);
+          assertArrayEquals(original.otpHash, replayed.otpHash);
+          assertEquals(original.failedAttempts, replayed.failedAttempts);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testClosedJournalRejectsChanges() throws IOException {
+    FileOtpJournal journal = FileOtpJournal.open(directory, Durability.ASYNC);
+    OtpStore otpStore = ReccedaOtpStore.builder().journal(journal).build();
+    journal.close();
+    assertThrows(IllegalStateException.class, () -> otpStore.storeOtp("testKey", "123456", 1000));
+  }
+
+  private List<Path> files(String prefix) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> file.getFileName().toString().startsWith(prefix))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
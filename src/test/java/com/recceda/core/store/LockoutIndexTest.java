@@ -0,0 +1,197 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.util.Hash64Collisions;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LockoutIndexTest {
+
+  private static final long NOW = 1_700_000_000_000L;
+
+  private final LockoutIndex index =
+      LockoutIndex.builder()
+          .maxFailures(3)
+          .baseLockout(Duration.ofMinutes(1))
+          .maxLockout(Duration.ofMinutes(5))
+          .ttl(Duration.ofHours(1))
+          .build();
+
+  @Test
+  void testLocksOutAfterMaxFailures() {
+    assertEquals(0, index.recordFailure("user", NOW));
+    assertEquals(0, index.recordFailure("user", NOW));
+    assertEquals(2, index.failures("user", NOW));
+    assertEquals(0, index.lockedUntil("user", NOW));
+
+    assertEquals(NOW + 60_000, index.recordFailure("user", NOW));
+    assertEquals(NOW + 60_000, index.lockedUntil("user", NOW + 59_000));
+    assertEquals(0, index.lockedUntil("user", NOW + 60_000));
+    assertEquals(0, index.lockedUntil("otherUser", NOW));
+  }
+
+  @Test
+  void testCollidingKeysKeepSeparateRecords() {
+    String victim = "victim-1";
+    String attacker = Hash64Collisions.collidingKey(victim);
+    for (int i = 0; i < 3; i++) {
+      index.recordFailure(victim, NOW);
+    }
+    index.recordSuccess(attacker);
+    assertEquals(NOW + 60_000, index.lockedUntil(victim, NOW));
+    assertEquals(0, index.lockedUntil(attacker, NOW));
+  }
+
+  @Test
+  void testLockoutsEscalateUpToTheMaximum() {
+    long now = NOW;
+    long[] expected = {60_000, 120_000, 240_000, 300_000, 300_000};
+    for (long lockout : expected) {
+      long lockedUntil = 0;
+      for (int i = 0; i < 3; i++) {
+        lockedUntil = index.recordFailure("user", now);
+      }
+      assertEquals(now + lockout, lockedUntil);
+      now = lockedUntil;
+    }
+  }
+
+  @Test
+  void testRecordOutlivesLockoutUntilItsTtl() {
+    for (int i = 0; i < 3; i++) {
+      index.recordFailure("user", NOW);
+    }
+    // Within the time-to-live after the lockout, the next lockout is longer.
+    long afterLockout = NOW + 60_000 + Duration.ofMinutes(30).toMillis();
+    for (int i = 0; i < 3; i++) {
+      index.recordFailure("user", afterLockout);
+    }
+    assertEquals(afterLockout + 120_000, index.lockedUntil("user", afterLockout));
+
+    // Once the record has expired, the key starts over.
+    long expired = afterLockout + 120_000 + Duration.ofHours(1).toMillis();
+    assertEquals(0, index.failures("user", expired));
+    for (int i = 0; i < 3; i++) {
+      index.recordFailure("user", expired);
+    }
+    assertEquals(expired + 60_000, index.lockedUntil("user", expired));
+  }
+
+  @Test
+  void testSuccessClearsTheKey() {
+    index.recordFailure("user", NOW);
+    index.recordFailure("user", NOW);
+    index.recordSuccess("user");
+    assertEquals(0, index.failures("user", NOW));
+    assertEquals(0, index.size());
+    index.recordFailure("user", NOW);
+    index.recordFailure("user", NOW);
+    assertEquals(0, index.lockedUntil("user", NOW));
+  }
+
+  @Test
+  void testAttemptsInFlightCountAgainstRemainingFailures() {
+    index.recordFailure("user", NOW);
+    assertTrue(index.tryAcquireAttempt("user", NOW));
+    assertTrue(index.tryAcquireAttempt("user", NOW));
+    assertFalse(index.tryAcquireAttempt("user", NOW));
+
+    // A missing OTP hands its attempt back, a wrong one uses it up.
+    assertEquals(0, index.releaseAttempt("user", false, NOW));
+    assertTrue(index.tryAcquireAttempt("user", NOW));
+    assertEquals(0, index.releaseAttempt("user", true, NOW));
+    assertEquals(NOW + 60_000, index.releaseAttempt("user", true, NOW));
+    assertFalse(index.tryAcquireAttempt("user", NOW));
+    assertTrue(index.tryAcquireAttempt("user", NOW + 60_000));
+  }
+
+  @Test
+  void testReleasedReservationsLeaveNoRecord() {
+    assertTrue(index.tryAcquireAttempt("user", NOW));
+    assertEquals(1, index.size());
+    index.releaseAttempt("user", false, NOW);
+    assertEquals(0, index.size());
+    assertTrue(index.tryAcquireAttempt("user", NOW));
+    index.recordSuccess("user");
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void testManyKeysSurviveDeletionsAndWrapAround() {
+    LockoutIndex small = LockoutIndex.builder().maxFailures(2).capacity(64 * 40).build();
+    for (int i = 0; i < 1000; i++) {
+      small.recordFailure("key-" + i, NOW);
+    }
+    for (int i = 0; i < 1000; i += 2) {
+      small.recordSuccess("key-" + i);
+    }
+    assertEquals(500, small.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2, small.failures("key-" + i, NOW), "key-" + i);
+    }
+    assertEquals(0, small.evictions());
+  }
+
+  @Test
+  void testExpiredRecordsAreReclaimedWhenFull() {
+    LockoutIndex small =
+        LockoutIndex.builder().capacity(64 * 8).ttl(Duration.ofMinutes(1)).maxFailures(10).build();
+    for (int i = 0; i < 2000; i++) {
+      small.recordFailure("key-" + i, NOW + i * 1000L);
+    }
+    assertEquals(0, small.evictions());
+    assertTrue(small.size() <= 64 * 8);
+    assertEquals(1, small.failures("key-1999", NOW + 1_999_000L));
+  }
+
+  @Test
+  void testLiveRecordsAreEvictedWhenFull() {
+    LockoutIndex small = LockoutIndex.builder().capacity(64).maxFailures(10).build();
+    for (int i = 0; i < 1000; i++) {
+      small.recordFailure("key-" + i, NOW);
+    }
+    assertTrue(small.evictions() > 0);
+    assertTrue(small.size() <= 64);
+    assertEquals(1, small.failures("key-999", NOW));
+  }
+
+  @Test
+  void testConcurrentFailuresAreAllCounted() throws InterruptedException {
+    LockoutIndex concurrent = LockoutIndex.builder().maxFailures(1000).build();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.submit(
+          () -> {
+            for (int i = 0; i < 10_000; i++) {
+              concurrent.recordFailure("key-" + (i % 100), NOW);
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(800, concurrent.failures("key-" + i, NOW));
+    }
+  }
+
+  @Test
+  void testMemoryPerKey() {
+    LockoutIndex sized = LockoutIndex.builder().capacity(1_000_000).build();
+    double bytesPerKey = (double) sized.memoryBytes() / 1_000_000;
+    assertTrue(bytesPerKey < 28, "bytes per key: " + bytesPerKey);
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(
+        IllegalArgumentException.class, () -> LockoutIndex.builder().maxFailures(0).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LockoutIndex.builder().maxLockout(Duration.ofSeconds(1)).build());
+    assertThrows(IllegalArgumentException.class, () -> LockoutIndex.builder().capacity(0).build());
+  }
+}
@@ -0,0 +1,239 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.util.Hash64Collisions;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedOtpStoreTest {
+
+  private static final int KEYS = 2000;
+  private static final int SLOT_SIZE = 64;
+  private static final int FILE_HEADER_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  @Test
+  void testEntriesSurviveReopen() throws IOException {
+    Path file = directory.resolve("otp.store");
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      otpStore.storeOtp("testKey", "123456", 60_000);
+      otpStore.storeOtp("failedKey", "123456", 60_000);
+      otpStore.verifyOtp("failedKey", "000000");
+      otpStore.storeOtp("invalidatedKey", "123456", 60_000);
+      otpStore.invalidateOtp("invalidatedKey");
+    }
+
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      assertEquals(0, otpStore.droppedOnRecovery());
+      assertTrue(otpStore.verifyOtp("testKey", "123456"));
+      assertEquals(1, otpStore.getOtpEntry("failedKey").failedAttempts);
+      assertNull(otpStore.getOtpEntry("invalidatedKey"));
+      assertEquals(2, otpStore.size());
+    }
+  }
+
+  @Test
+  void testEntriesThatExpiredWhileClosedAreSkipped() throws Exception {
+    Path file = directory.resolve("otp.store");
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      otpStore.storeOtp("shortLived", "123456", 1);
+      otpStore.storeOtp("longLived", "123456", 60_000);
+    }
+    Thread.sleep(10);
+
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      assertFalse(otpStore.verifyOtp("shortLived", "123456"));
+      assertNull(otpStore.getOtpEntry("shortLived"));
+      assertTrue(otpStore.verifyOtp("longLived", "123456"));
+    }
+  }
+
+  @Test
+  void testReopenWithDifferentHasherFails() throws IOException {
+    Path file = directory.resolve("otp.store");
+    MappedOtpStore.open(file, 1000).close();
+
+    byte[] pepper = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    assertThrows(
+        IOException.class, () -> MappedOtpStore.open(file, 1000, OtpHasher.hmacSha256(pepper)));
+  }
+
+  @Test
+  void testFileCannotBeOpenedTwice() throws IOException {
+    Path file = directory.resolve("otp.store");
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      otpStore.storeOtp("testKey", "123456", 60_000);
+      assertThrows(IOException.class, () -> MappedOtpStore.open(file, 1000));
+    }
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      assertTrue(otpStore.verifyOtp("testKey", "123456"));
+    }
+  }
+
+  @Test
+  void testCollidingKeysStaySeparateAcrossReopen() throws IOException {
+    Path file = directory.resolve("otp.store");
+    String victim = "victim-1";
+    String attacker = Hash64Collisions.collidingKey(victim);
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      otpStore.storeOtp(victim, "123456", 60_000);
+      otpStore.storeOtp(attacker, "654321", 60_000);
+    }
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 1000)) {
+      assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume(victim, "654321", 3));
+      assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(victim, "123456", 3));
+    }
+  }
+
+  @Test
+  void testOlderFormatIsRejected() throws IOException {
+    Path file = directory.resolve("otp.store");
+    MappedOtpStore.open(file, 1000).close();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, 1), 8);
+    }
+    IOException error = assertThrows(IOException.class, () -> MappedOtpStore.open(file, 1000));
+    assertTrue(error.getMessage().contains("version 1"));
+  }
+
+  @Test
+  void testClosedStoreCannotBeUsed() throws IOException {
+    MappedOtpStore otpStore = MappedOtpStore.open(directory.resolve("otp.store"), 1000);
+    otpStore.close();
+    assertThrows(IllegalStateException.class, () -> otpStore.storeOtp("testKey", "123456", 1000));
+  }
+
+  @Test
+  void testCorruptAndHalfWrittenRecordsAreDroppedOnRecovery() throws IOException {
+    Path file = directory.resolve("otp.store");
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 12, 1, OtpHasher.sha256())) {
+      for (int i = 0; i < 10; i++) {
+        otpStore.storeOtp("key-" + i, "otp-" + i, 60_000);
+      }
+    }
+
+    // Simulate a crash: flip a hash byte in three records, leave one marked as being written,
+    // and set the dirty flag that a clean close would have cleared.
+    int slots = 16;
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+      int damaged = 0;
+      for (int slot = 0; slot < slots && damaged < 4; slot++) {
+        long record = FILE_HEADER_SIZE + (long) (slot + 1) * SLOT_SIZE;
+        ByteBuffer state = ByteBuffer.allocate(4);
+        channel.read(state, record + 60);
+        if ((state.getInt(0) & 3) != 1) {
+          continue;
+        }
+        if (damaged < 3) {
+          ByteBuffer hashByte = ByteBuffer.allocate(1);
+          channel.read(hashByte, record + 16);
+          hashByte.put(0, (byte) (hashByte.get(0) ^ 0x5A)).clear();
+          channel.write(hashByte, record + 16);
+        } else {
+          channel.write(ByteBuffer.allocate(4).putInt(0, 2), record + 60);
+        }
+        damaged++;
+      }
+      channel.write(ByteBuffer.allocate(4).putInt(0, 1), FILE_HEADER_SIZE);
+    }
+
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, 12, 1, OtpHasher.sha256())) {
+      assertEquals(4, otpStore.droppedOnRecovery());
+      assertEquals(6, otpStore.size());
+      int found = 0;
+      for (int i = 0; i < 10; i++) {
+        OtpEntry entry = otpStore.getOtpEntry("key-" + i);
+        if (entry != null) {
+          assertTrue(otpStore.verifyOtp("key-" + i, "otp-" + i));
+          found++;
+        }
+      }
+      assertEquals(6, found);
+    }
+  }
+
+  @Test
+  void testKilledWriterLeavesNoTornEntries() throws Exception {
+    Path file = directory.resolve("otp.store");
+    long start = System.currentTimeMillis();
+    String java =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    Process writer =
+        new ProcessBuilder(
+                java,
+                "-cp",
+                System.getProperty("java.class.path"),
+                CrashWriter.class.getName(),
+                file.toString())
+            .redirectErrorStream(true)
+            .start();
+    try (BufferedReader output =
+        new BufferedReader(
+            new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8))) {
+      assertEquals("ready", output.readLine());
+      Thread.sleep(300);
+      writer.destroyForcibly();
+      assertTrue(writer.waitFor(10, TimeUnit.SECONDS));
+    }
+
+    try (MappedOtpStore otpStore = MappedOtpStore.open(file, KEYS)) {
+      long size = otpStore.size();
+      int found = 0;
+      for (int i = 0; i < KEYS; i++) {
+        String key = "key-" + i;
+        OtpEntry entry = otpStore.getOtpEntry(key);
+        if (entry == null) {
+          continue;
+        }
+        found++;
+        assertTrue(entry.expiryTime >= start && entry.expiryTime <= start + 120_000, key);
+        assertTrue(entry.failedAttempts >= 0, key);
+        assertEquals(
+            VerificationResult.VALID, otpStore.verifyAndConsume(key, CrashWriter.otpFor(key)), key);
+      }
+      assertEquals(size, found);
+    }
+  }
+
+  /** Hammers a store until it is killed; every OTP is derived from its key. */
+  static final class CrashWriter {
+    static String otpFor(String key) {
+      return "otp-" + key;
+    }
+
+    public static void main(String[] args) throws IOException {
+      MappedOtpStore otpStore = MappedOtpStore.open(Path.of(args[0]), KEYS);
+      Random random = new Random();
+      for (long i = 0; ; i++) {
+        String key = "key-" + random.nextInt(KEYS);
+        int operation = random.nextInt(10);
+        if (operation < 6) {
+          otpStore.storeOtp(key, otpFor(key), 60_000);
+        } else if (operation < 8) {
+          otpStore.verifyOtp(key, "wrong");
+        } else {
+          otpStore.invalidateOtp(key);
+        }
+        if (i == 10_000) {
+          System.out.println("ready");
+          System.out.flush();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpGenerationException;
+import com.recceda.util.Hash64Collisions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OffHeapOtpStoreTest {
+
+  private OffHeapOtpStore otpStore;
+
+  @BeforeEach
+  void setUp() {
+    otpStore = new OffHeapOtpStore(1000);
+  }
+
+  @Test
+  void testStoreAndVerifyOtp() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+    assertTrue(otpStore.verifyOtp("testKey", "123456"));
+    assertFalse(otpStore.verifyOtp("otherKey", "123456"));
+  }
+
+  @Test
+  void testCollidingKeysDoNotShareAnOtp() {
+    String victim = "victim-1";
+    String attacker = Hash64Collisions.collidingKey(victim);
+    otpStore.storeOtp(victim, "123456", 60_000);
+    otpStore.storeOtp(attacker, "654321", 60_000);
+
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume(victim, "654321", 3));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(attacker, "654321", 3));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(victim, "123456", 3));
+  }
+
+  @Test
+  void testVerifyIncorrectOtpIncrementsFailedAttempts() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+    assertFalse(otpStore.verifyOtp("testKey", "654321"));
+    assertEquals(1, otpStore.getOtpEntry("testKey").failedAttempts);
+
+    assertFalse(otpStore.verifyOtp("testKey", "000000"));
+    assertEquals(2, otpStore.getOtpEntry("testKey").failedAttempts);
+  }
+
+  @Test
+  void testGetOtpEntryReturnsHashAndExpiry() {
+    long before = System.currentTimeMillis();
+    otpStore.storeOtp("testKey", "123456", 1000);
+
+    OtpEntry entry = otpStore.getOtpEntry("testKey");
+
+    assertArrayEquals(OtpHasher.sha256().hash("123456"), entry.otpHash);
+    assertTrue(entry.expiryTime >= before + 1000);
+    assertNull(otpStore.getOtpEntry("otherKey"));
+  }
+
+  @Test
+  void testStoreNewOtpResetsFailedAttempts() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+    otpStore.verifyOtp("testKey", "654321");
+
+    otpStore.storeOtp("testKey", "new-otp", 1000);
+    assertEquals(0, otpStore.getOtpEntry("testKey").failedAttempts);
+    assertTrue(otpStore.verifyOtp("testKey", "new-otp"));
+    assertEquals(1, otpStore.size());
+  }
+
+  @Test
+  void testVerifyExpiredOtp() throws InterruptedException {
+    otpStore.storeOtp("testKey", "123456", 1);
+    Thread.sleep(10);
+    assertFalse(otpStore.verifyOtp("testKey", "123456"));
+    assertNull(otpStore.getOtpEntry("testKey"));
+  }
+
+  @Test
+  void testInvalidateOtp() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+    otpStore.invalidateOtp("testKey");
+    assertFalse(otpStore.verifyOtp("testKey", "123456"));
+    assertEquals(0, otpStore.size());
+  }
+
+  @Test
+  void testVerifyAndConsume() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume("testKey", "000000", 1));
+    assertEquals(VerificationResult.LOCKED, otpStore.verifyAndConsume("testKey", "123456", 1));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("testKey", "123456", 2));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume("testKey", "123456"));
+
+    otpStore.storeOtp("expiredKey", "123456", -1);
+    assertEquals(VerificationResult.EXPIRED, otpStore.verifyAndConsume("expiredKey", "123456"));
+  }
+
+  @Test
+  void testFullStoreRejectsNewOtpsUntilEntriesExpire() throws InterruptedException {
+    otpStore = new OffHeapOtpStore(12, 1, OtpHasher.sha256());
+    for (int i = 0; i < 12; i++) {
+      otpStore.storeOtp("key-" + i, "123456", 50);
+    }
+    assertThrows(OtpGenerationException.class, () -> otpStore.storeOtp("extra", "123456", 50));
+    // Replacing an existing OTP needs no new slot.
+    otpStore.storeOtp("key-0", "654321", 50);
+
+    Thread.sleep(60);
+    otpStore.storeOtp("extra", "123456", 1000);
+    assertTrue(otpStore.verifyOtp("extra", "123456"));
+  }
+
+  @Test
+  void testMatchesHashMapUnderRandomOperations() {
+    // A single small segment forces long probe runs, wrap-around and backward shifts.
+    otpStore = new OffHeapOtpStore(12, 1, OtpHasher.sha256());
+    Map<String, String> expected = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 20_000; i++) {
+      String key = "key-" + random.nextInt(24);
+      String otp = Integer.toString(random.nextInt(1000));
+      if (random.nextBoolean() && (expected.size() < 12 || expected.containsKey(key))) {
+        otpStore.storeOtp(key, otp, 60_000);
+        expected.put(key, otp);
+      } else {
+        otpStore.invalidateOtp(key);
+        expected.remove(key);
+      }
+      assertEquals(expected.size(), otpStore.size());
+    }
+    for (int i = 0; i < 24; i++) {
+      String key = "key-" + i;
+      assertEquals(expected.containsKey(key), otpStore.getOtpEntry(key) != null, key);
+      if (expected.containsKey(key)) {
+        assertTrue(otpStore.verifyOtp(key, expected.get(key)), key);
+      }
+    }
+  }
+
+  @Test
+  void testConcurrentFailedAttemptsAreCountedExactly() throws Exception {
+    otpStore.storeOtp("testKey", "123456", 60_000);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    for (int t = 0; t < 16; t++) {
+      executor.execute(
+          () -> {
+            for (int i = 0; i < 1000; i++) {
+              otpStore.verifyOtp("testKey", "000000");
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    assertEquals(16_000, otpStore.getOtpEntry("testKey").failedAttempts);
+  }
+}
@@ -0,0 +1,62 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.junit.jupiter.api.Test;
+
+class OtpHasherTest {
+
+  private static final byte[] PEPPER = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  void testSha256MatchesMessageDigest() throws Exception {
+    byte[] expected =
+        MessageDigest.getInstance("SHA-256").digest("123456".getBytes(StandardCharsets.UTF_8));
+
+    byte[] hash = OtpHasher.sha256().hash("123456");
+
+    assertEquals(OtpHasher.HASH_LENGTH, hash.length);
+    assertArrayEquals(expected, hash);
+  }
+
+  @Test
+  void testMatches() {
+    OtpHasher hasher = OtpHasher.sha256();
+    byte[] hash = hasher.hash("123456");
+
+    assertTrue(hasher.matches(hash, "123456"));
+    assertFalse(hasher.matches(hash, "123457"));
+    assertFalse(hasher.matches(hash, "1234567"));
+  }
+
+  @Test
+  void testNonAsciiOtp() throws Exception {
+    byte[] expected =
+        MessageDigest.getInstance("SHA-256").digest("12é4".getBytes(StandardCharsets.UTF_8));
+    OtpHasher hasher = OtpHasher.sha256();
+
+    assertArrayEquals(expected, hasher.hash("12é4"));
+    assertTrue(hasher.matches(expected, "12é4"));
+  }
+
+  @Test
+  void testHmacIsKeyedByPepper() {
+    OtpHasher hmac = OtpHasher.hmacSha256(PEPPER);
+    OtpHasher otherPepper =
+        OtpHasher.hmacSha256("fedcba9876543210".getBytes(StandardCharsets.US_ASCII));
+    byte[] hash = hmac.hash("123456");
+
+    assertEquals(OtpHasher.HASH_LENGTH, hash.length);
+    assertTrue(hmac.matches(hash, "123456"));
+    assertFalse(otherPepper.matches(hash, "123456"));
+    assertFalse(OtpHasher.sha256().matches(hash, "123456"));
+  }
+
+  @Test
+  void testHmacRejectsShortPepper() {
+    assertThrows(IllegalArgumentException.class, () -> OtpHasher.hmacSha256(new byte[8]));
+    assertThrows(IllegalArgumentException.class, () -> OtpHasher.hmacSha256(null));
+  }
+}
@@ -2,9 +2,39 @@ package com.recceda.core.store;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.recceda.core.event.OtpEvent;
+import com.recceda.core.event.OtpEventType;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PreventDuplicateOtpPolicy;
+import com.recceda.core.store.FileOtpJournal.Durability;
 import com.recceda.core.store.ReccedaOtpStore.OtpEntry;
+import com.recceda.exception.OtpGenerationException;
+import com.recceda.util.ManualTimeSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ReccedaOtpStoreTest {
 
@@ -34,6 +64,15 @@ class ReccedaOtpStoreTest {
     assertEquals(2, entry.failedAttempts);
   }
 
+  @Test
+  void testVerifyTellsAWrongOtpFromAMissingOne() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+    assertEquals(VerificationResult.INVALID, otpStore.verify("testKey", "654321"));
+    assertEquals(1, otpStore.getOtpEntry("testKey").failedAttempts);
+    assertEquals(VerificationResult.VALID, otpStore.verify("testKey", "123456"));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verify("otherKey", "123456"));
+  }
+
   @Test
   void testStoreNewOtpResetsFailedAttempts() {
     otpStore.storeOtp("testKey", "123456", 1000);
@@ -57,4 +96,636 @@ class ReccedaOtpStoreTest {
     otpStore.invalidateOtp("testKey");
     assertFalse(otpStore.verifyOtp("testKey", "123456"));
   }
+
+  @Test
+  void testStoreAndVerifyOtpsInBulk() {
+    otpStore.storeOtps(Map.of("key1", "111111", "key2", "222222"), 1000);
+
+    Map<String, String> attempts = new LinkedHashMap<>();
+    attempts.put("key1", "111111");
+    attempts.put("key2", "000000");
+    attempts.put("missing", "333333");
+    Map<String, Boolean> results = otpStore.verifyOtps(attempts);
+
+    assertTrue(results.get("key1"));
+    assertFalse(results.get("key2"));
+    assertFalse(results.get("missing"));
+    assertEquals(0, otpStore.getOtpEntry("key1").failedAttempts);
+    assertEquals(1, otpStore.getOtpEntry("key2").failedAttempts);
+    assertNull(otpStore.getOtpEntry("missing"));
+  }
+
+  @Test
+  void testStoreAndVerifyOtpWithHmacHasher() {
+    byte[] pepper = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    otpStore = new ReccedaOtpStore(OtpHasher.hmacSha256(pepper));
+    otpStore.storeOtp("testKey", "123456", 1000);
+
+    assertFalse(OtpHasher.sha256().matches(otpStore.getOtpEntry("testKey").otpHash, "123456"));
+    assertFalse(otpStore.verifyOtp("testKey", "654321"));
+    assertTrue(otpStore.verifyOtp("testKey", "123456"));
+  }
+
+  @Test
+  void testVerifyAndConsumeRemovesValidOtp() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume("testKey", "654321"));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("testKey", "123456"));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume("testKey", "123456"));
+    assertNull(otpStore.getOtpEntry("testKey"));
+  }
+
+  @Test
+  void testVerifyAndConsumeLocksOutAfterMaxFailedAttempts() {
+    otpStore.storeOtp("testKey", "123456", 1000);
+
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume("testKey", "000000", 2));
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume("testKey", "000000", 2));
+    assertEquals(VerificationResult.LOCKED, otpStore.verifyAndConsume("testKey", "123456", 2));
+    assertEquals(2, otpStore.getOtpEntry("testKey").failedAttempts);
+
+    otpStore.storeOtp("testKey", "123456", 1000);
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("testKey", "123456", 2));
+  }
+
+  @Test
+  void testVerifyAndConsumeReportsExpiredOtp() {
+    otpStore =
+        new ReccedaOtpStore(
+            new Expiry<String, OtpEntry>() {
+              @Override
+              public long expireAfterCreate(String key, OtpEntry value, long currentTime) {
+                return Long.MAX_VALUE;
+              }
+
+              @Override
+              public long expireAfterUpdate(
+                  String key, OtpEntry value, long currentTime, long currentDuration) {
+                return currentDuration;
+              }
+
+              @Override
+              public long expireAfterRead(
+                  String key, OtpEntry value, long currentTime, long currentDuration) {
+                return currentDuration;
+              }
+            });
+    otpStore.storeOtp("testKey", "123456", -1);
+
+    assertEquals(VerificationResult.EXPIRED, otpStore.verifyAndConsume("testKey", "123456"));
+    assertNull(otpStore.getOtpEntry("testKey"));
+  }
+
+  @Test
+  void testConcurrentFailedAttemptsAreCountedExactly() throws Exception {
+    otpStore.storeOtp("verifyKey", "123456", 60_000);
+    otpStore.storeOtp("consumeKey", "123456", 60_000);
+    int threads = 32;
+    int attemptsPerThread = 1000;
+
+    runConcurrently(
+        threads,
+        () -> {
+          for (int i = 0; i < attemptsPerThread; i++) {
+            otpStore.verifyOtp("verifyKey", "000000");
+            otpStore.verifyAndConsume("consumeKey", "000000");
+          }
+        });
+
+    assertEquals(threads * attemptsPerThread, otpStore.getOtpEntry("verifyKey").failedAttempts);
+    assertEquals(threads * attemptsPerThread, otpStore.getOtpEntry("consumeKey").failedAttempts);
+  }
+
+  @Test
+  void testConcurrentLockoutAllowsExactlyMaxFailedAttempts() throws Exception {
+    otpStore.storeOtp("testKey", "123456", 60_000);
+    AtomicInteger invalid = new AtomicInteger();
+    AtomicInteger locked = new AtomicInteger();
+
+    runConcurrently(
+        32,
+        () -> {
+          for (int i = 0; i < 100; i++) {
+            VerificationResult result = otpStore.verifyAndConsume("testKey", "000000", 5);
+            (result == VerificationResult.INVALID ? invalid : locked).incrementAndGet();
+          }
+        });
+
+    assertEquals(5, invalid.get());
+    assertEquals(32 * 100 - 5, locked.get());
+  }
+
+  @Test
+  void testConcurrentConsumeSucceedsExactlyOnce() throws Exception {
+    otpStore.storeOtp("testKey", "123456", 60_000);
+    AtomicInteger valid = new AtomicInteger();
+
+    runConcurrently(
+        32,
+        () -> {
+          if (otpStore.verifyAndConsume("testKey", "123456").isValid()) {
+            valid.incrementAndGet();
+          }
+        });
+
+    assertEquals(1, valid.get());
+  }
+
+  private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(
+          () -> {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return;
+            }
+            task.run();
+          });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testRecordsCacheStatistics() {
+    ReccedaOtpStore statsStore = ReccedaOtpStore.builder().recordStats().build();
+    statsStore.storeOtp("testKey", "123456", 60_000);
+    statsStore.getOtpEntry("testKey");
+    statsStore.getOtpEntry("missingKey");
+
+    assertEquals(1, statsStore.estimatedSize());
+    assertEquals(1, statsStore.stats().hitCount());
+    assertEquals(1, statsStore.stats().missCount());
+    assertEquals(0, new ReccedaOtpStore().stats().requestCount());
+  }
+
+  @Test
+  void testCheckAndStoreRejectsWithoutChangingTheEntry() {
+    PolicyChain policies = PolicyChain.compile(Arrays.asList(new PreventDuplicateOtpPolicy()));
+    assertEquals(
+        "first", otpStore.checkAndStore("testKey", Map.of(), policies, () -> "first", 60_000));
+    assertThrows(
+        OtpGenerationException.class,
+        () -> otpStore.checkAndStore("testKey", Map.of(), policies, () -> "second", 60_000));
+    assertTrue(otpStore.verifyOtp("testKey", "first"));
+  }
+
+  @Test
+  void testConcurrentCheckAndStoreLetsOnlyOneRequestThrough() throws InterruptedException {
+    PolicyChain policies = PolicyChain.compile(Arrays.asList(new PreventDuplicateOtpPolicy()));
+    int threads = 32;
+    for (int round = 0; round < 50; round++) {
+      String key = "race-" + round;
+      AtomicInteger stored = new AtomicInteger();
+      AtomicInteger generated = new AtomicInteger();
+      CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      for (int i = 0; i < threads; i++) {
+        executor.submit(
+            () -> {
+              start.await();
+              try {
+                otpStore.checkAndStore(
+                    key, Map.of(), policies, () -> "otp-" + generated.incrementAndGet(), 60_000);
+                stored.incrementAndGet();
+              } catch (OtpGenerationException e) {
+                // Another request already holds an active OTP.
+              }
+              return null;
+            });
+      }
+      start.countDown();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals(1, stored.get());
+      assertEquals(1, generated.get());
+    }
+  }
+
+  @Test
+  void testSimulatedTimeExpiresMillionsOfEntriesWithoutSleeping() {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    ReccedaOtpStore simulated =
+        ReccedaOtpStore.builder().timeSource(time).scheduler(Scheduler.disabledScheduler()).build();
+    Map<String, String> otps = new HashMap<>();
+    for (int i = 0; i < 1_000_000; i++) {
+      otps.put("key-" + i, "123456");
+    }
+    simulated.storeOtps(otps, Duration.ofMinutes(5).toMillis());
+    simulated.storeOtp("longLived", "123456", Duration.ofMinutes(30).toMillis());
+    assertEquals(1_000_001, simulated.estimatedSize());
+
+    time.advance(Duration.ofMinutes(4));
+    assertEquals(VerificationResult.VALID, simulated.verifyAndConsume("key-0", "123456"));
+
+    time.advance(Duration.ofMinutes(2));
+    assertNull(simulated.getOtpEntry("key-1"));
+    assertEquals(VerificationResult.NOT_FOUND, simulated.verifyAndConsume("key-2", "123456"));
+    simulated.cleanUp();
+    assertEquals(1, simulated.estimatedSize());
+    assertTrue(simulated.verifyOtp("longLived", "123456"));
+  }
+
+  @Test
+  void testPoliciesUseTheStoreClock() {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    ReccedaOtpStore simulated = ReccedaOtpStore.builder().timeSource(time).build();
+    PolicyChain policies = PolicyChain.compile(Arrays.asList(new PreventDuplicateOtpPolicy()));
+    simulated.checkAndStore("testKey", Map.of(), policies, () -> "first", 60_000);
+    assertThrows(
+        OtpGenerationException.class,
+        () -> simulated.checkAndStore("testKey", Map.of(), policies, () -> "second", 60_000));
+
+    time.advance(Duration.ofMinutes(1));
+    simulated.checkAndStore("testKey", Map.of(), policies, () -> "second", 60_000);
+    assertTrue(simulated.verifyOtp("testKey", "second"));
+  }
+
+  @Test
+  void testSchedulerRemovesExpiredEntriesWithoutOtherActivity() {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    List<Runnable> scheduled = new ArrayList<>();
+    List<Long> delays = new ArrayList<>();
+    Scheduler scheduler =
+        (executor, command, delay, unit) -> {
+          synchronized (scheduled) {
+            scheduled.add(command);
+            delays.add(unit.toMillis(delay));
+          }
+          return CompletableFuture.completedFuture(null);
+        };
+    ReccedaOtpStore scheduledStore =
+        ReccedaOtpStore.builder().timeSource(time).scheduler(scheduler).build();
+    scheduledStore.storeOtp("testKey", "123456", 60_000);
+    scheduledStore.cleanUp();
+
+    Runnable wakeUp;
+    synchronized (scheduled) {
+      assertFalse(scheduled.isEmpty());
+      assertTrue(delays.get(delays.size() - 1) <= 60_000);
+      wakeUp = scheduled.get(scheduled.size() - 1);
+    }
+    time.advance(Duration.ofMinutes(2));
+    wakeUp.run();
+    assertEquals(0, scheduledStore.estimatedSize());
+  }
+
+  @Test
+  void testExpiryIsPublished() throws InterruptedException {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    List<OtpEvent> events = Collections.synchronizedList(new ArrayList<>());
+    ReccedaOtpStore publishing =
+        ReccedaOtpStore.builder().timeSource(time).eventPublisher(events::add).build();
+    publishing.storeOtp("expiring", "123456", 60_000);
+    publishing.storeOtp("verified", "123456", 60_000);
+    publishing.storeOtp("consumed", "123456", 60_000);
+    publishing.invalidateOtp("consumed");
+
+    time.advance(Duration.ofMinutes(2));
+    assertNull(publishing.getOtpEntry("verified"));
+    publishing.cleanUp();
+
+    // The removal listener runs asynchronously.
+    long deadline = System.currentTimeMillis() + 5000;
+    while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Set<String> expired = new HashSet<>();
+    synchronized (events) {
+      for (OtpEvent event : events) {
+        assertEquals(OtpEventType.EXPIRED, event.getType());
+        assertEquals(time.currentTimeMillis(), event.getTimestampMillis());
+        expired.add(event.getKey());
+      }
+      assertEquals(2, events.size());
+    }
+    assertEquals(Set.of("expiring", "verified"), expired);
+  }
+
+  @Test
+  void testBoundedStoreRejectsNewKeysNearCapacity() {
+    ReccedaOtpStore bounded = ReccedaOtpStore.builder().maximumSize(100).build();
+    PolicyChain noPolicies = PolicyChain.compile(Collections.emptyList());
+    for (int i = 0; i < 90; i++) {
+      bounded.storeOtp("key-" + i, "123456", 60_000);
+    }
+    assertEquals(0.9, bounded.occupancy(), 1e-9);
+    assertFalse(bounded.acceptsNewOtps());
+
+    assertThrows(OtpGenerationException.class, () -> bounded.storeOtp("new", "123456", 60_000));
+    assertThrows(
+        OtpGenerationException.class,
+        () -> bounded.checkAndStore("new", Map.of(), noPolicies, () -> "123456", 60_000));
+    assertThrows(
+        OtpGenerationException.class,
+        () -> bounded.storeOtps(Map.of("key-0", "654321", "new", "123456"), 60_000));
+    assertEquals(4, bounded.rejectedOtps());
+    assertNull(bounded.getOtpEntry("new"));
+    // The rejected batch left the existing key alone.
+    assertTrue(bounded.verifyOtp("key-0", "123456"));
+
+    // Keys that already have an OTP can still get a new one.
+    bounded.checkAndStore("key-1", Map.of(), noPolicies, () -> "654321", 60_000);
+    assertTrue(bounded.verifyOtp("key-1", "654321"));
+    assertEquals(0.9, bounded.occupancy(), 1e-9);
+
+    assertEquals(VerificationResult.VALID, bounded.verifyAndConsume("key-2", "123456"));
+    bounded.invalidateOtp("key-3");
+    assertEquals(0.88, bounded.occupancy(), 1e-9);
+    assertTrue(bounded.acceptsNewOtps());
+    bounded.storeOtp("new", "123456", 60_000);
+    bounded.cleanUp();
+    assertEquals(89, bounded.estimatedSize());
+  }
+
+  @Test
+  void testBoundedStoreReleasesExpiredEntries() {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    ReccedaOtpStore bounded =
+        ReccedaOtpStore.builder()
+            .timeSource(time)
+            .scheduler(Scheduler.disabledScheduler())
+            .maximumSize(10)
+            .admissionThreshold(1)
+            .build();
+    for (int i = 0; i < 10; i++) {
+      bounded.storeOtp("key-" + i, "123456", 60_000);
+    }
+    assertEquals(1.0, bounded.occupancy(), 1e-9);
+    assertThrows(OtpGenerationException.class, () -> bounded.storeOtp("new", "123456", 60_000));
+
+    time.advance(Duration.ofMinutes(2));
+    // Storing over an expired entry that the cache has not removed yet counts it only once.
+    bounded.storeOtp("key-0", "123456", 60_000);
+    bounded.cleanUp();
+    assertEquals(0.1, bounded.occupancy(), 1e-9);
+    for (int i = 1; i < 10; i++) {
+      bounded.storeOtp("new-" + i, "123456", 60_000);
+    }
+    assertEquals(1.0, bounded.occupancy(), 1e-9);
+  }
+
+  @Test
+  void testFloodOfNewKeysKeepsHeapBounded() {
+    long budget = 2 * 1024 * 1024;
+    ReccedaOtpStore bounded = ReccedaOtpStore.builder().maximumWeight(budget).build();
+    PolicyChain noPolicies = PolicyChain.compile(Collections.emptyList());
+    bounded.storeOtp("legitimate", "123456", 60_000);
+    long before = usedHeap();
+
+    int flood = 500_000;
+    int accepted = 0;
+    for (int i = 0; i < flood; i++) {
+      try {
+        bounded.checkAndStore(
+            UUID.randomUUID().toString(), Map.of(), noPolicies, () -> "123456", 60_000);
+        accepted++;
+      } catch (OtpGenerationException e) {
+        // Shed
+      }
+    }
+    long grown = usedHeap() - before;
+
+    assertTrue(bounded.occupancy() <= ReccedaOtpStore.DEFAULT_ADMISSION_THRESHOLD);
+    assertEquals(flood - accepted, bounded.rejectedOtps());
+    // Each entry is estimated at about 240 bytes, so the budget admits only a few thousand.
+    assertTrue(accepted > 5_000 && accepted < 10_000, "accepted " + accepted);
+    // Unbounded, the flood would retain over 100 MB.
+    assertTrue(grown < 8 * budget, "grew by " + grown + " bytes");
+    // The OTP issued before the flood was neither evicted nor displaced.
+    assertEquals(VerificationResult.VALID, bounded.verifyAndConsume("legitimate", "123456"));
+  }
+
+  @Test
+  void testEntriesOverTheBudgetAtRestartAreEvictedAndPublished(@TempDir Path directory)
+      throws IOException, InterruptedException {
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC)) {
+      ReccedaOtpStore unbounded = ReccedaOtpStore.builder().journal(journal).build();
+      for (int i = 0; i < 20; i++) {
+        unbounded.storeOtp("key-" + i, "123456", 60_000);
+      }
+    }
+
+    List<OtpEvent> events = Collections.synchronizedList(new ArrayList<>());
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC)) {
+      ReccedaOtpStore bounded =
+          ReccedaOtpStore.builder()
+              .journal(journal)
+              .maximumSize(10)
+              .eventPublisher(events::add)
+              .build();
+      bounded.cleanUp();
+      assertEquals(10, bounded.estimatedSize());
+      assertEquals(1.0, bounded.occupancy(), 1e-9);
+      assertFalse(bounded.acceptsNewOtps());
+    }
+
+    // The removal listener runs asynchronously.
+    long deadline = System.currentTimeMillis() + 5000;
+    while (events.size() < 10 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    synchronized (events) {
+      assertEquals(10, events.size());
+      for (OtpEvent event : events) {
+        assertEquals(OtpEventType.EVICTED, event.getType());
+      }
+    }
+
+    // The evictions were journaled, so the next restart does not bring the entries back.
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC)) {
+      ReccedaOtpStore unbounded = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(10, unbounded.estimatedSize());
+      for (OtpEvent event : events) {
+        assertNull(unbounded.getOtpEntry(event.getKey()));
+      }
+    }
+  }
+
+  @Test
+  void testInvalidCapacity() {
+    assertThrows(
+        IllegalArgumentException.class, () -> ReccedaOtpStore.builder().maximumSize(0).build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ReccedaOtpStore.builder().maximumSize(10).admissionThreshold(1.5).build());
+  }
+
+  @Test
+  void testInvalidateByTenantAndPrefix() {
+    List<OtpEvent> events = Collections.synchronizedList(new ArrayList<>());
+    ReccedaOtpStore indexed =
+        ReccedaOtpStore.builder().keyIndex().eventPublisher(events::add).build();
+    for (int i = 0; i < 100; i++) {
+      indexed.storeOtp("acme:user-" + i, "123456", 60_000);
+      indexed.storeOtp("acme-labs:user-" + i, "123456", 60_000);
+    }
+    indexed.storeOtps(Map.of("globex:alice", "123456", "globex:bob", "123456"), 60_000);
+    assertEquals(VerificationResult.VALID, indexed.verifyAndConsume("acme:user-0", "123456"));
+    indexed.invalidateOtp("acme:user-1");
+
+    assertEquals(98, indexed.invalidateByTenant("acme"));
+    assertNull(indexed.getOtpEntry("acme:user-50"));
+    assertTrue(indexed.verifyOtp("acme-labs:user-50", "123456"));
+    assertEquals(0, indexed.invalidateByTenant("acme"));
+    assertEquals(98, events.size());
+    assertEquals(OtpEventType.INVALIDATED, events.get(0).getType());
+
+    assertEquals(11, indexed.invalidateByPrefix("acme-labs:user-1"));
+    assertEquals(2, indexed.invalidateByPrefix("globex:"));
+    assertEquals(89, indexed.indexedKeys());
+    indexed.cleanUp();
+    assertEquals(89, indexed.estimatedSize());
+  }
+
+  @Test
+  void testKeyIndexFollowsExpiry() {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    ReccedaOtpStore indexed =
+        ReccedaOtpStore.builder()
+            .timeSource(time)
+            .scheduler(Scheduler.disabledScheduler())
+            .keyIndex('/')
+            .build();
+    for (int i = 0; i < 100; i++) {
+      indexed.storeOtp("acme/user-" + i, "123456", i < 50 ? 60_000 : 600_000);
+    }
+    time.advance(Duration.ofMinutes(2));
+    indexed.cleanUp();
+    assertEquals(50, indexed.indexedKeys());
+    assertEquals(50, indexed.invalidateByTenant("acme"));
+    assertEquals(0, indexed.indexedKeys());
+  }
+
+  @Test
+  void testKeyIndexStaysConsistentUnderConcurrency() throws InterruptedException {
+    ReccedaOtpStore indexed = ReccedaOtpStore.builder().keyIndex().build();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      executor.submit(
+          () -> {
+            for (int i = 0; i < 20_000; i++) {
+              String key = "tenant-" + (i % 4) + ":user-" + (i % 500);
+              switch ((i + thread) % 4) {
+                case 0:
+                  indexed.storeOtp(key, "123456", 60_000);
+                  break;
+                case 1:
+                  indexed.verifyAndConsume(key, "123456");
+                  break;
+                case 2:
+                  indexed.invalidateOtp(key);
+                  break;
+                default:
+                  indexed.invalidateByTenant("tenant-" + (i % 4));
+              }
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    indexed.cleanUp();
+    assertEquals(indexed.estimatedSize(), indexed.indexedKeys());
+    int live = (int) indexed.estimatedSize();
+    int invalidated = 0;
+    for (int tenant = 0; tenant < 4; tenant++) {
+      invalidated += indexed.invalidateByTenant("tenant-" + tenant);
+    }
+    assertEquals(live, invalidated);
+    indexed.cleanUp();
+    assertEquals(0, indexed.estimatedSize());
+  }
+
+  @Test
+  void testPrefixInvalidationNeedsAnIndex() {
+    ReccedaOtpStore unindexed = new ReccedaOtpStore();
+    assertThrows(IllegalStateException.class, () -> unindexed.invalidateByTenant("acme"));
+  }
+
+  @Test
+  void testScopedKeysKeepOneOtpPerPurpose() throws InterruptedException {
+    ManualTimeSource time = new ManualTimeSource(1_000_000);
+    List<OtpEvent> events = Collections.synchronizedList(new ArrayList<>());
+    ReccedaOtpStore scoped =
+        ReccedaOtpStore.builder()
+            .timeSource(time)
+            .scheduler(Scheduler.disabledScheduler())
+            .eventPublisher(events::add)
+            .build();
+    OtpKey login = OtpKey.of("alice", "login");
+    OtpKey reset = OtpKey.of("alice", "reset");
+    scoped.storeOtp("alice", "000000", 60_000);
+    scoped.storeOtp(login, "111111", 60_000);
+    scoped.storeOtp(reset, "222222", 600_000);
+    scoped.storeOtp(OtpKey.of("alice-b", "login"), "333333", 60_000);
+    assertEquals(3, scoped.activeOtps("alice"));
+    // A key joins its subject and purpose once, and not at all for the default purpose.
+    assertSame(login.joinedKey(), login.joinedKey());
+    assertSame("alice", OtpKey.of("alice", ScopedOtpStore.DEFAULT_PURPOSE).joinedKey());
+
+    // Plain keys address the default purpose.
+    assertSame(
+        scoped.getOtpEntry("alice"),
+        scoped.getOtpEntry(OtpKey.of("alice", ScopedOtpStore.DEFAULT_PURPOSE)));
+    assertEquals(VerificationResult.INVALID, scoped.verifyAndConsume(login, "222222", 3));
+    assertEquals(0, scoped.getOtpEntry(reset).failedAttempts);
+
+    time.advance(Duration.ofMinutes(2));
+    scoped.cleanUp();
+    assertEquals(1, scoped.activeOtps("alice"));
+    // The removal listener runs asynchronously.
+    long deadline = System.currentTimeMillis() + 5000;
+    while (events.stream().noneMatch(event -> event.getKey().equals("alice-b"))
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(events.stream().allMatch(event -> event.getKey().startsWith("alice")));
+    assertTrue(events.stream().anyMatch(event -> event.getKey().equals("alice-b")));
+    // Expiry events keep the purpose of the OTP that expired.
+    assertTrue(
+        events.stream()
+            .anyMatch(
+                event -> event.getKey().equals("alice-b") && event.getPurpose().equals("login")));
+    assertTrue(events.stream().noneMatch(event -> event.getPurpose().equals("reset")));
+
+    scoped.storeOtp(login, "444444", 60_000);
+    assertEquals(2, scoped.invalidateSubject("alice"));
+    assertEquals(0, scoped.activeOtps("alice"));
+    assertNull(scoped.getOtpEntry(reset));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> scoped.storeOtp(OtpKey.of("alice\0login", ""), "555555", 60_000));
+  }
+
+  @Test
+  void testScopedKeysSurviveARestart(@TempDir Path directory) throws IOException {
+    OtpKey login = OtpKey.of("alice", "login");
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC)) {
+      ReccedaOtpStore scoped = ReccedaOtpStore.builder().journal(journal).build();
+      scoped.storeOtp(login, "111111", 60_000);
+      scoped.storeOtp(OtpKey.of("alice", "reset"), "222222", 60_000);
+    }
+    try (FileOtpJournal journal = FileOtpJournal.open(directory, Durability.SYNC)) {
+      ReccedaOtpStore scoped = ReccedaOtpStore.builder().journal(journal).build();
+      assertEquals(2, scoped.activeOtps("alice"));
+      assertEquals(VerificationResult.VALID, scoped.verifyAndConsume(login, "111111", 3));
+      assertEquals(1, scoped.invalidateSubject("alice"));
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
 }
@@ -0,0 +1,194 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.recceda.exception.OtpGenerationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ShardedOtpStoreTest {
+
+  @Test
+  void testStoreAndVerifyAcrossShards() {
+    ShardedOtpStore otpStore = new ShardedOtpStore(8);
+    for (int i = 0; i < 1000; i++) {
+      otpStore.storeOtp("key-" + i, "otp-" + i, 60_000);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(otpStore.verifyOtp("key-" + i, "otp-" + i));
+    }
+    assertFalse(otpStore.verifyOtp("key-1", "wrong"));
+    assertEquals(1, otpStore.getOtpEntry("key-1").failedAttempts);
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("key-2", "otp-2"));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume("key-2", "otp-2"));
+    otpStore.invalidateOtp("key-3");
+    assertNull(otpStore.getOtpEntry("key-3"));
+  }
+
+  @Test
+  void testKeysAreSpreadEvenlyAndStably() {
+    ShardedOtpStore otpStore = new ShardedOtpStore(16);
+    List<OtpStore> shards = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      shards.add(new ReccedaOtpStore());
+    }
+    ShardedOtpStore sameLayout = new ShardedOtpStore(shards, Runnable::run, otpStore.routingKey());
+    ShardedOtpStore otherLayout = new ShardedOtpStore(16);
+    int[] counts = new int[16];
+    int moved = 0;
+    for (int i = 0; i < 160_000; i++) {
+      String key = "user-" + i;
+      int shard = otpStore.shardIndex(key);
+      assertEquals(shard, sameLayout.shardIndex(key));
+      if (shard != otherLayout.shardIndex(key)) {
+        moved++;
+      }
+      counts[shard]++;
+    }
+    for (int count : counts) {
+      assertTrue(count > 9000 && count < 11_000, Arrays.toString(counts));
+    }
+    assertTrue(moved > 140_000, "moved " + moved);
+  }
+
+  @Test
+  void testShardsMayUseDifferentImplementations() {
+    ShardedOtpStore otpStore =
+        new ShardedOtpStore(
+            4, shard -> shard % 2 == 0 ? new ReccedaOtpStore() : new OffHeapOtpStore(1000));
+    for (int i = 0; i < 500; i++) {
+      otpStore.storeOtp("key-" + i, "otp-" + i, 60_000);
+    }
+    for (int i = 0; i < 500; i++) {
+      assertTrue(otpStore.verifyOtp("key-" + i, "otp-" + i));
+    }
+  }
+
+  @Test
+  void testScopedKeysAreHeldByTheSubjectsShard() {
+    ScopedShardedOtpStore otpStore = new ScopedShardedOtpStore(8);
+    for (int i = 0; i < 100; i++) {
+      otpStore.storeOtp("user-" + i, "000000", 60_000);
+      otpStore.storeOtp(OtpKey.of("user-" + i, "login"), "111111", 60_000);
+      otpStore.storeOtp(OtpKey.of("user-" + i, "reset"), "222222", 60_000);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(3, otpStore.activeOtps("user-" + i));
+    }
+    assertEquals(
+        VerificationResult.VALID,
+        otpStore.verifyAndConsume(OtpKey.of("user-1", "login"), "111111", 3));
+    assertEquals(2, otpStore.invalidateSubject("user-1"));
+    assertNull(otpStore.getOtpEntry("user-1"));
+
+    OtpStore offHeap = new ShardedOtpStore(2, shard -> new OffHeapOtpStore(100));
+    assertFalse(offHeap instanceof ScopedOtpStore);
+  }
+
+  @Test
+  void testBulkOperationsCallEachShardOnce() {
+    List<OtpStore> shards = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      shards.add(spy(new ReccedaOtpStore()));
+    }
+    ShardedOtpStore otpStore = new ShardedOtpStore(shards, Executors.newCachedThreadPool());
+
+    Map<String, String> otps = new LinkedHashMap<>();
+    for (int i = 0; i < 200; i++) {
+      otps.put("key-" + i, "otp-" + i);
+    }
+    otpStore.storeOtps(otps, 60_000);
+    otps.put("key-7", "wrong");
+    otps.put("missing", "otp");
+    Map<String, Boolean> results = otpStore.verifyOtps(otps);
+
+    assertEquals(new ArrayList<>(otps.keySet()), new ArrayList<>(results.keySet()));
+    assertFalse(results.get("key-7"));
+    assertFalse(results.get("missing"));
+    assertTrue(results.get("key-8"));
+    for (OtpStore shard : shards) {
+      verify(shard, times(1)).storeOtps(anyMap(), eq(60_000L));
+      verify(shard, times(1)).verifyOtps(anyMap());
+      verify(shard, never()).storeOtp(anyString(), anyString(), anyLong());
+    }
+  }
+
+  @Test
+  void testBulkOperationsRunShardsInParallel() throws InterruptedException {
+    int shardCount = 4;
+    CountDownLatch allShardsStarted = new CountDownLatch(shardCount);
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(shardCount);
+    List<OtpStore> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(
+          new ReccedaOtpStore() {
+            @Override
+            public void storeOtps(Map<String, String> otps, long ttlMillis) {
+              threads.add(Thread.currentThread().getName());
+              allShardsStarted.countDown();
+              try {
+                // Only returns if every shard is being written at the same time.
+                assertTrue(allShardsStarted.await(5, TimeUnit.SECONDS));
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+              super.storeOtps(otps, ttlMillis);
+            }
+          });
+    }
+    ShardedOtpStore otpStore = new ShardedOtpStore(shards, executor);
+
+    Map<String, String> otps = new LinkedHashMap<>();
+    for (int i = 0; i < 200; i++) {
+      otps.put("key-" + i, "otp-" + i);
+    }
+    otpStore.storeOtps(otps, 60_000);
+
+    assertEquals(shardCount, new HashSet<>(threads).size());
+    assertTrue(otpStore.verifyOtp("key-0", "otp-0"));
+    executor.shutdown();
+  }
+
+  @Test
+  void testShardFailureIsRethrown() {
+    OtpStore failing = mock(OtpStore.class);
+    doThrow(new OtpGenerationException("The OTP store is full."))
+        .when(failing)
+        .storeOtps(anyMap(), anyLong());
+    ShardedOtpStore otpStore =
+        new ShardedOtpStore(Arrays.asList(new ReccedaOtpStore(), failing), Runnable::run);
+
+    Map<String, String> otps = new LinkedHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      otps.put("key-" + i, "otp-" + i);
+    }
+    assertThrows(OtpGenerationException.class, () -> otpStore.storeOtps(otps, 60_000));
+  }
+
+  @Test
+  void testInvalidShardCount() {
+    assertThrows(IllegalArgumentException.class, () -> new ShardedOtpStore(0));
+  }
+
+  @Test
+  void testInvalidRoutingKey() {
+    List<OtpStore> shards = Arrays.asList(new ReccedaOtpStore(), new ReccedaOtpStore());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new ShardedOtpStore(shards, Runnable::run, new byte[8]));
+  }
+}
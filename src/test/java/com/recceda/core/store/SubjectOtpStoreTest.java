@@ -0,0 +1,184 @@
+package com.recceda.core.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.recceda.core.policy.MaxActiveOtpsPolicy;
+import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PolicyChain;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.exception.OtpGenerationException;
+import com.recceda.util.ManualTimeSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SubjectOtpStoreTest {
+
+  private static final OtpKey LOGIN = OtpKey.of("alice", "login");
+  private static final OtpKey RESET = OtpKey.of("alice", "reset");
+  private static final OtpKey PAYMENT = OtpKey.of("alice", "payment");
+
+  private final ManualTimeSource time = new ManualTimeSource(1_000_000);
+  private final SubjectOtpStore otpStore =
+      SubjectOtpStore.builder().timeSource(time).scheduler(Scheduler.disabledScheduler()).build();
+
+  @Test
+  void testPurposesAreIndependent() {
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.storeOtp(RESET, "222222", 60_000);
+    otpStore.storeOtp(OtpKey.of("bob", "login"), "333333", 60_000);
+    assertEquals(2, otpStore.activeOtps("alice"));
+
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume(LOGIN, "222222", 3));
+    assertEquals(1, otpStore.getOtpEntry(LOGIN).failedAttempts);
+    assertEquals(0, otpStore.getOtpEntry(RESET).failedAttempts);
+
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(RESET, "222222", 3));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume(RESET, "222222", 3));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(LOGIN, "111111", 3));
+    assertEquals(0, otpStore.activeOtps("alice"));
+    assertEquals(1, otpStore.activeOtps("bob"));
+  }
+
+  @Test
+  void testStoringReplacesOnlyTheSamePurpose() {
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.storeOtp(RESET, "222222", 60_000);
+    otpStore.verifyAndConsume(LOGIN, "000000", 3);
+    otpStore.storeOtp(LOGIN, "333333", 60_000);
+
+    assertEquals(0, otpStore.getOtpEntry(LOGIN).failedAttempts);
+    assertEquals(VerificationResult.INVALID, otpStore.verifyAndConsume(LOGIN, "111111", 3));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(RESET, "222222", 3));
+    assertEquals(1, otpStore.activeOtps("alice"));
+  }
+
+  @Test
+  void testInvalidateSubjectRemovesEveryPurpose() {
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.storeOtp(RESET, "222222", 60_000);
+    otpStore.storeOtp(PAYMENT, "333333", 60_000);
+    otpStore.storeOtp(OtpKey.of("bob", "login"), "444444", 60_000);
+
+    otpStore.invalidateOtp(PAYMENT);
+    assertNull(otpStore.getOtpEntry(PAYMENT));
+    assertEquals(2, otpStore.invalidateSubject("alice"));
+    assertNull(otpStore.getOtpEntry(LOGIN));
+    assertNull(otpStore.getOtpEntry(RESET));
+    assertEquals(0, otpStore.invalidateSubject("alice"));
+    assertNotNull(otpStore.getOtpEntry(OtpKey.of("bob", "login")));
+  }
+
+  @Test
+  void testLockoutIsPerPurpose() {
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.storeOtp(RESET, "222222", 60_000);
+    for (int i = 0; i < 3; i++) {
+      otpStore.verifyAndConsume(LOGIN, "000000", 3);
+    }
+    assertEquals(VerificationResult.LOCKED, otpStore.verifyAndConsume(LOGIN, "111111", 3));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume(RESET, "222222", 3));
+  }
+
+  @Test
+  void testPurposesExpireIndividually() {
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.storeOtp(RESET, "222222", 600_000);
+
+    time.advance(Duration.ofMinutes(2));
+    assertNull(otpStore.getOtpEntry(LOGIN));
+    assertEquals(1, otpStore.activeOtps("alice"));
+    assertEquals(VerificationResult.EXPIRED, otpStore.verifyAndConsume(LOGIN, "111111", 3));
+    assertEquals(VerificationResult.NOT_FOUND, otpStore.verifyAndConsume(LOGIN, "111111", 3));
+
+    // The subject lives until its last OTP expires.
+    time.advance(Duration.ofMinutes(10));
+    otpStore.cleanUp();
+    assertEquals(0, otpStore.estimatedSize());
+  }
+
+  @Test
+  void testPlainKeysUseTheDefaultPurpose() {
+    otpStore.storeOtp("alice", "111111", 60_000);
+    otpStore.storeOtp(LOGIN, "222222", 60_000);
+    assertFalse(otpStore.verifyOtp("alice", "222222"));
+    assertTrue(otpStore.verifyOtp("alice", "111111"));
+    assertSame(
+        otpStore.getOtpEntry("alice"),
+        otpStore.getOtpEntry(OtpKey.of("alice", ScopedOtpStore.DEFAULT_PURPOSE)));
+    assertEquals(VerificationResult.VALID, otpStore.verifyAndConsume("alice", "111111"));
+    otpStore.storeOtp("alice", "333333", 60_000);
+    otpStore.invalidateOtp("alice");
+    assertNull(otpStore.getOtpEntry("alice"));
+    assertEquals(1, otpStore.activeOtps("alice"));
+  }
+
+  @Test
+  void testPoliciesSeeTheSubjectAndAllItsOtps() {
+    List<PolicyContext> contexts = new ArrayList<>();
+    PolicyChain recording =
+        PolicyChain.compile(
+            Collections.singletonList(
+                new Policy() {
+                  @Override
+                  public void check(String key, OtpStore store) {}
+
+                  @Override
+                  public void check(PolicyContext context) {
+                    contexts.add(context);
+                  }
+                }));
+    otpStore.storeOtp(LOGIN, "111111", 60_000);
+    otpStore.checkAndStore(RESET, Map.of("ip", "10.0.0.1"), recording, () -> "222222", 60_000);
+
+    PolicyContext context = contexts.get(0);
+    assertEquals("alice", context.getKey());
+    assertEquals("reset", context.getPurpose());
+    assertNull(context.getEntry());
+    assertEquals(1, context.getActiveOtps());
+    assertEquals("10.0.0.1", context.getAttribute("ip"));
+    assertEquals(time.currentTimeMillis(), context.getCurrentTimeMillis());
+  }
+
+  @Test
+  void testMaxActiveOtpsIsEnforcedAtomically() throws InterruptedException {
+    PolicyChain policies =
+        PolicyChain.compile(Collections.singletonList(new MaxActiveOtpsPolicy(2)));
+    AtomicInteger issued = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 64; i++) {
+      OtpKey key = OtpKey.of("alice", "purpose-" + i);
+      executor.submit(
+          () -> {
+            try {
+              otpStore.checkAndStore(key, Map.of(), policies, () -> "123456", 60_000);
+              issued.incrementAndGet();
+            } catch (OtpGenerationException e) {
+              // Over the limit
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(2, issued.get());
+    assertEquals(2, otpStore.activeOtps("alice"));
+  }
+
+  @Test
+  void testKeysCompareBySubjectAndPurpose() {
+    assertEquals(OtpKey.of("alice", "login"), LOGIN);
+    assertEquals(OtpKey.of("alice", "login").hashCode(), LOGIN.hashCode());
+    assertNotEquals(RESET, LOGIN);
+    assertNotEquals(OtpKey.of("alicel", "ogin"), LOGIN);
+    assertEquals("alice/login", LOGIN.toString());
+    assertThrows(IllegalArgumentException.class, () -> OtpKey.of("alice", null));
+  }
+}
@@ -0,0 +1,207 @@
+package com.recceda.core.totp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.core.store.VerificationResult;
+import com.recceda.core.totp.TotpEngine.Algorithm;
+import com.recceda.util.Base32;
+import com.recceda.util.ManualTimeSource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class TotpEngineTest {
+
+  private static final byte[] SEED_20 = ascii("12345678901234567890");
+  private static final byte[] SEED_32 = ascii("12345678901234567890123456789012");
+  private static final byte[] SEED_64 =
+      ascii("1234567890123456789012345678901234567890123456789012345678901234");
+
+  @Test
+  void testRfc4226Vectors() {
+    String[] expected = {
+      "755224", "287082", "359152", "969429", "338314",
+      "254676", "287922", "162583", "399871", "520489"
+    };
+    TotpEngine engine = TotpEngine.builder().build();
+    for (int counter = 0; counter < expected.length; counter++) {
+      assertEquals(expected[counter], engine.generateHotp(SEED_20, counter));
+    }
+  }
+
+  @Test
+  void testRfc6238Vectors() {
+    long[] seconds = {59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L};
+    String[] sha1 = {"94287082", "07081804", "14050471", "89005924", "69279037", "65353130"};
+    String[] sha256 = {"46119246", "68084774", "67062674", "91819424", "90698825", "77737706"};
+    String[] sha512 = {"90693936", "25091201", "99943326", "93441116", "38618901", "47863826"};
+    TotpEngine sha1Engine = TotpEngine.builder().digits(8).build();
+    TotpEngine sha256Engine = TotpEngine.builder().digits(8).algorithm(Algorithm.SHA256).build();
+    TotpEngine sha512Engine = TotpEngine.builder().digits(8).algorithm(Algorithm.SHA512).build();
+    for (int i = 0; i < seconds.length; i++) {
+      long millis = seconds[i] * 1000;
+      assertEquals(sha1[i], sha1Engine.generateTotp(SEED_20, millis));
+      assertEquals(sha256[i], sha256Engine.generateTotp(SEED_32, millis));
+      assertEquals(sha512[i], sha512Engine.generateTotp(SEED_64, millis));
+    }
+  }
+
+  @Test
+  void testCodesWithinTheDriftWindowAreAccepted() {
+    ManualTimeSource time = new ManualTimeSource(1_111_111_111_000L);
+    TotpEngine engine = TotpEngine.builder().window(1).timeSource(time).build();
+    long now = time.currentTimeMillis();
+
+    assertEquals(VerificationResult.VALID, engine.verifyTotp("a", SEED_20, at(engine, now)));
+    assertEquals(
+        VerificationResult.VALID, engine.verifyTotp("b", SEED_20, at(engine, now - 30_000)));
+    assertEquals(
+        VerificationResult.VALID, engine.verifyTotp("c", SEED_20, at(engine, now + 30_000)));
+    assertEquals(
+        VerificationResult.INVALID, engine.verifyTotp("d", SEED_20, at(engine, now - 60_000)));
+    assertEquals(
+        VerificationResult.INVALID, engine.verifyTotp("e", SEED_20, at(engine, now + 60_000)));
+  }
+
+  @Test
+  void testCodesCannotBeReplayed() {
+    ManualTimeSource time = new ManualTimeSource(1_111_111_111_000L);
+    TotpEngine engine = TotpEngine.builder().timeSource(time).build();
+    long now = time.currentTimeMillis();
+    String current = at(engine, now);
+
+    assertEquals(VerificationResult.VALID, engine.verifyTotp("user", SEED_20, current));
+    assertEquals(VerificationResult.REPLAYED, engine.verifyTotp("user", SEED_20, current));
+    // An older code still inside the window is refused once a newer one has been used.
+    assertEquals(
+        VerificationResult.REPLAYED, engine.verifyTotp("user", SEED_20, at(engine, now - 30_000)));
+    // Other keys are unaffected.
+    assertEquals(VerificationResult.VALID, engine.verifyTotp("other", SEED_20, current));
+
+    time.advance(Duration.ofSeconds(30));
+    assertEquals(
+        VerificationResult.VALID,
+        engine.verifyTotp("user", SEED_20, at(engine, time.currentTimeMillis())));
+  }
+
+  @Test
+  void testReplayCacheForgetsStepsOutsideTheWindow() {
+    ManualTimeSource time = new ManualTimeSource(0);
+    TotpEngine engine = TotpEngine.builder().timeSource(time).build();
+    for (int i = 0; i < 1000; i++) {
+      engine.verifyTotp("user-" + i, SEED_20, engine.generateTotp(SEED_20));
+    }
+    assertEquals(1000, engine.replayCacheSize());
+
+    time.advance(Duration.ofSeconds(91));
+    engine.verifyTotp("late", SEED_20, engine.generateTotp(SEED_20));
+    assertTrue(engine.replayCacheSize() < 10, "size " + engine.replayCacheSize());
+  }
+
+  @Test
+  void testFullReplayCacheRefusesNewKeysInsteadOfForgettingUsedCodes() {
+    ManualTimeSource time = new ManualTimeSource(0);
+    TotpEngine engine = TotpEngine.builder().timeSource(time).replayCacheSize(2).build();
+    String code = engine.generateTotp(SEED_20);
+    assertEquals(VerificationResult.VALID, engine.verifyTotp("user-1", SEED_20, code));
+    assertEquals(VerificationResult.VALID, engine.verifyTotp("user-2", SEED_20, code));
+
+    assertEquals(VerificationResult.LOCKED, engine.verifyTotp("user-3", SEED_20, code));
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user-3", SEED_20, "000000"));
+    // The used codes are still remembered.
+    assertEquals(VerificationResult.REPLAYED, engine.verifyTotp("user-1", SEED_20, code));
+    assertEquals(2, engine.replayCacheSize());
+
+    time.advance(Duration.ofSeconds(91));
+    assertEquals(
+        VerificationResult.VALID,
+        engine.verifyTotp("user-3", SEED_20, engine.generateTotp(SEED_20)));
+  }
+
+  @Test
+  void testMalformedCodesAreInvalid() {
+    TotpEngine engine = TotpEngine.builder().build();
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user", SEED_20, null));
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user", SEED_20, "12345"));
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user", SEED_20, "1234567"));
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user", SEED_20, "12a456"));
+    assertEquals(VerificationResult.INVALID, engine.verifyTotp("user", SEED_20, "-12345"));
+  }
+
+  @Test
+  void testHotpLookAhead() {
+    TotpEngine engine = TotpEngine.builder().window(3).build();
+    assertEquals(5, engine.verifyHotp(SEED_20, "254676", 3));
+    assertEquals(3, engine.verifyHotp(SEED_20, "969429", 3));
+    assertEquals(-1, engine.verifyHotp(SEED_20, "399871", 3));
+    assertEquals(-1, engine.verifyHotp(SEED_20, "287082", 3));
+  }
+
+  @Test
+  void testCachedMacsDoNotShareTheCallersSecret() {
+    TotpEngine engine = TotpEngine.builder().build();
+    byte[] secret = SEED_20.clone();
+    assertEquals("755224", engine.generateHotp(secret, 0));
+    secret[0] ^= 1;
+    assertNotEquals("755224", engine.generateHotp(secret, 0));
+    assertEquals("755224", engine.generateHotp(SEED_20.clone(), 0));
+  }
+
+  @Test
+  void testConcurrentCallersGetConsistentCodes() throws Exception {
+    TotpEngine engine = TotpEngine.builder().build();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      results.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < 10_000; i++) {
+                  if (!"287082".equals(engine.generateHotp(SEED_20, 1))
+                      || !"359152".equals(engine.generateHotp(SEED_20, 2))) {
+                    return false;
+                  }
+                }
+                return true;
+              }));
+    }
+    for (Future<Boolean> result : results) {
+      assertTrue(result.get());
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  void testGeneratedSecretsRoundTripThroughBase32() {
+    byte[] secret = TotpEngine.generateSecret();
+    assertEquals(20, secret.length);
+    assertArrayEquals(secret, Base32.decode(Base32.encode(secret)));
+    assertEquals("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ", Base32.encode(SEED_20));
+    assertArrayEquals(SEED_20, Base32.decode("gezd gnbv gy3t qojq gezd gnbv gy3t qojq"));
+    assertThrows(IllegalArgumentException.class, () -> Base32.decode("GEZD1"));
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    assertThrows(IllegalArgumentException.class, () -> TotpEngine.builder().digits(5).build());
+    assertThrows(IllegalArgumentException.class, () -> TotpEngine.builder().digits(10).build());
+    assertThrows(IllegalArgumentException.class, () -> TotpEngine.builder().window(-1).build());
+    assertThrows(
+        IllegalArgumentException.class, () -> TotpEngine.builder().timeStep(Duration.ZERO).build());
+    TotpEngine engine = TotpEngine.builder().build();
+    assertThrows(IllegalArgumentException.class, () -> engine.generateHotp(new byte[10], 0));
+  }
+
+  private static String at(TotpEngine engine, long millis) {
+    return engine.generateTotp(SEED_20, millis);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,95 @@
+package com.recceda.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class JsonCodecTest {
+
+  @Test
+  void testParsesObjects() {
+    Map<String, Object> object =
+        parse(
+            " { \"key\" : \"alice\", \"length\": 8, \"ratio\": -1.5e2, \"on\": true, \"off\": false,"
+                + " \"none\": null, \"attributes\": {\"ip\": \"10.0.0.1\"}, \"list\": [1, \"a\"] } ");
+
+    assertEquals(
+        Arrays.asList("key", "length", "ratio", "on", "off", "none", "attributes", "list"),
+        Arrays.asList(object.keySet().toArray()));
+    assertEquals("alice", object.get("key"));
+    assertEquals(8L, object.get("length"));
+    assertEquals(-150.0, object.get("ratio"));
+    assertEquals(Boolean.TRUE, object.get("on"));
+    assertEquals(Boolean.FALSE, object.get("off"));
+    assertNull(object.get("none"));
+    assertEquals(Map.of("ip", "10.0.0.1"), object.get("attributes"));
+    assertEquals(List.of(1L, "a"), object.get("list"));
+    assertTrue(parse("{}").isEmpty());
+  }
+
+  @Test
+  void testDecodesEscapesAndUnicode() {
+    Map<String, Object> object =
+        parse("{\"a\":\"tab\\there \\\"quoted\\\" \\u00e9\\/\",\"b\":\"caf\u00e9 \u2713\"}");
+    assertEquals("tab\there \"quoted\" \u00e9/", object.get("a"));
+    assertEquals("caf\u00e9 \u2713", object.get("b"));
+  }
+
+  @Test
+  void testRejectsMalformedInput() {
+    for (String json :
+        Arrays.asList(
+            "",
+            "[]",
+            "{",
+            "{\"key\"}",
+            "{\"key\":}",
+            "{\"key\":\"unterminated}",
+            "{\"key\":\"a\",}",
+            "{\"key\":\"a\"} trailing",
+            "{\"key\":tru}",
+            "{\"key\":\"\\x\"}",
+            "{\"key\":\"\\u12\"}",
+            "{\"key\":1-2}",
+            "{\"key\":\"line\nbreak\"}")) {
+      assertThrows(IllegalArgumentException.class, () -> parse(json), json);
+    }
+    assertThrows(
+        IllegalArgumentException.class, () -> parse("{\"a\":".repeat(20) + "1" + "}".repeat(20)));
+  }
+
+  @Test
+  void testOnlyReadsTheGivenLength() {
+    byte[] buffer = "{\"key\":\"alice\"}garbage".getBytes(StandardCharsets.UTF_8);
+    assertEquals("alice", JsonCodec.parseObject(buffer, 15).get("key"));
+  }
+
+  @Test
+  void testWritesFlatObjectsThatParseBack() {
+    Map<String, Object> members = new LinkedHashMap<>();
+    members.put("result", "VALID");
+    members.put("valid", true);
+    members.put("count", 3);
+    members.put("none", null);
+    members.put("message", "say \"hi\"\\\n\u0001");
+
+    byte[] json = JsonCodec.writeObject(members);
+    assertEquals(
+        "{\"result\":\"VALID\",\"valid\":true,\"count\":3,\"none\":null,"
+            + "\"message\":\"say \\\"hi\\\"\\\\\\n\\u0001\"}",
+        new String(json, StandardCharsets.UTF_8));
+    Map<String, Object> parsed = JsonCodec.parseObject(json, json.length);
+    assertEquals("say \"hi\"\\\n\u0001", parsed.get("message"));
+    assertEquals(3L, parsed.get("count"));
+  }
+
+  private static Map<String, Object> parse(String json) {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    return JsonCodec.parseObject(bytes, bytes.length);
+  }
+}
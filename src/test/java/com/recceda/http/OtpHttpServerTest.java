@@ -0,0 +1,266 @@
+package com.recceda.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.recceda.ReccedaOtp;
+import com.recceda.core.policy.Policy;
+import com.recceda.core.policy.PolicyContext;
+import com.recceda.core.store.OtpStore;
+import com.recceda.core.store.ReccedaOtpStore;
+import com.recceda.exception.OtpDistributionException;
+import com.recceda.exception.OtpGenerationException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class OtpHttpServerTest {
+
+  private final HttpClient client = HttpClient.newHttpClient();
+  private final Map<String, String> sent = new ConcurrentHashMap<>();
+  private OtpHttpServer server;
+
+  @AfterEach
+  void stopServer() {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  void testGenerateVerifyAndInvalidate() throws Exception {
+    start(new ReccedaOtp(new ReccedaOtpStore()));
+
+    HttpResponse<String> generated = post("/otp/generate", "{\"key\":\"alice\",\"length\":8}");
+    assertEquals(202, generated.statusCode());
+    assertEquals(8, sent.get("alice").length());
+
+    HttpResponse<String> wrong = post("/otp/verify", "{\"key\":\"alice\",\"otp\":\"00000000\"}");
+    assertEquals(200, wrong.statusCode());
+    assertEquals("{\"result\":\"INVALID\",\"valid\":false}", wrong.body());
+
+    String valid = "{\"key\":\"alice\",\"otp\":\"" + sent.get("alice") + "\"}";
+    assertEquals("{\"result\":\"VALID\",\"valid\":true}", post("/otp/verify", valid).body());
+    assertEquals("{\"result\":\"NOT_FOUND\",\"valid\":false}", post("/otp/verify", valid).body());
+
+    post("/otp/generate", "{\"key\":\"bob\"}");
+    HttpResponse<String> invalidated = post("/otp/invalidate", "{\"key\":\"bob\"}");
+    assertEquals(200, invalidated.statusCode());
+    String bob = "{\"key\":\"bob\",\"otp\":\"" + sent.get("bob") + "\"}";
+    assertTrue(post("/otp/verify", bob).body().contains("NOT_FOUND"));
+  }
+
+  @Test
+  void testMalformedRequestsAreRejected() throws Exception {
+    start(new ReccedaOtp(new ReccedaOtpStore()));
+
+    assertEquals(400, post("/otp/generate", "{\"key\":").statusCode());
+    assertEquals(400, post("/otp/generate", "{}").statusCode());
+    assertEquals(400, post("/otp/generate", "{\"key\":\"alice\",\"length\":\"6\"}").statusCode());
+    // Out of range, and one that would wrap to 6 if cast to an int.
+    assertEquals(400, post("/otp/generate", "{\"key\":\"alice\",\"length\":1}").statusCode());
+    assertEquals(
+        400, post("/otp/generate", "{\"key\":\"alice\",\"length\":4294967302}").statusCode());
+    assertEquals(
+        400, post("/otp/generate", "{\"key\":\"alice\",\"ttlMillis\":31536000000}").statusCode());
+    assertEquals(400, post("/otp/verify", "{\"key\":\"alice\"}").statusCode());
+    assertTrue(post("/otp/verify", "[]").body().startsWith("{\"error\":"));
+
+    String oversized = "{\"key\":\"" + "x".repeat(OtpHttpServer.MAX_REQUEST_BYTES) + "\"}";
+    assertEquals(413, post("/otp/generate", oversized).statusCode());
+
+    HttpResponse<String> get = get("/otp/verify");
+    assertEquals(405, get.statusCode());
+    assertEquals("POST", get.headers().firstValue("Allow").orElse(null));
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  void testPolicyRejectionsAndDeliveryFailures() throws Exception {
+    List<String> addresses = Collections.synchronizedList(new ArrayList<>());
+    Policy policy =
+        new Policy() {
+          @Override
+          public void check(String key, OtpStore store) {}
+
+          @Override
+          public void check(PolicyContext context) {
+            addresses.add(context.getAttribute(OtpHttpServer.REMOTE_ADDRESS_ATTRIBUTE));
+            if ("blocked".equals(context.getAttribute("tier"))) {
+              throw new OtpGenerationException("Too many requests.");
+            }
+          }
+        };
+    ReccedaOtp otp =
+        ReccedaOtp.builder()
+            .otpStore(new ReccedaOtpStore())
+            .policies(Collections.singletonList(policy))
+            .build();
+    server =
+        OtpHttpServer.builder(
+                otp,
+                (key, code) -> {
+                  if (key.equals("unreachable")) {
+                    throw new OtpDistributionException("The SMS gateway is down.");
+                  }
+                })
+            .host("127.0.0.1")
+            .port(0)
+            .start();
+
+    HttpResponse<String> rejected =
+        post("/otp/generate", "{\"key\":\"alice\",\"attributes\":{\"tier\":\"blocked\"}}");
+    assertEquals(429, rejected.statusCode());
+    assertEquals("{\"error\":\"Too many requests.\"}", rejected.body());
+
+    // Clients cannot override the address the server saw.
+    String spoofed = "{\"key\":\"alice\",\"attributes\":{\"remoteAddress\":\"10.0.0.1\"}}";
+    assertEquals(202, post("/otp/generate", spoofed).statusCode());
+    assertEquals(List.of("127.0.0.1", "127.0.0.1"), addresses);
+
+    assertEquals(502, post("/otp/generate", "{\"key\":\"unreachable\"}").statusCode());
+  }
+
+  @Test
+  void testWrongCodesLockTheKey() throws Exception {
+    server =
+        OtpHttpServer.builder(new ReccedaOtp(new ReccedaOtpStore()), sent::put)
+            .host("127.0.0.1")
+            .port(0)
+            .maxFailedAttempts(3)
+            .start();
+
+    post("/otp/generate", "{\"key\":\"alice\"}");
+    String wrong = sent.get("alice").equals("000000") ? "111111" : "000000";
+    for (int i = 0; i < 3; i++) {
+      post("/otp/verify", "{\"key\":\"alice\",\"otp\":\"" + wrong + "\"}");
+    }
+    String valid = "{\"key\":\"alice\",\"otp\":\"" + sent.get("alice") + "\"}";
+    assertEquals("{\"result\":\"LOCKED\",\"valid\":false}", post("/otp/verify", valid).body());
+  }
+
+  @Test
+  void testBoundedPoolShedsOverflow() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    server =
+        OtpHttpServer.builder(
+                new ReccedaOtp(new ReccedaOtpStore()),
+                (key, code) -> {
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  sent.put(key, code);
+                })
+            .host("127.0.0.1")
+            .port(0)
+            .virtualThreads(false)
+            .maxThreads(2)
+            .queueCapacity(1)
+            .start();
+    assertFalse(server.usesVirtualThreads());
+
+    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      responses.add(
+          client.sendAsync(
+              request("/otp/generate", "{\"key\":\"user-" + i + "\"}"),
+              HttpResponse.BodyHandlers.ofString()));
+    }
+    // The overflow is answered while the pool threads are still blocked in the distributor.
+    CompletableFuture.anyOf(responses.toArray(new CompletableFuture<?>[0])).get();
+    for (CompletableFuture<HttpResponse<String>> response : responses) {
+      if (response.isDone()) {
+        assertEquals(503, response.get().statusCode());
+      }
+    }
+    release.countDown();
+
+    int accepted = 0;
+    for (CompletableFuture<HttpResponse<String>> response : responses) {
+      int status = response.get().statusCode();
+      assertTrue(status == 202 || status == 503, "status " + status);
+      accepted += status == 202 ? 1 : 0;
+    }
+    assertTrue(accepted >= 3 && accepted < 20, "accepted " + accepted);
+    assertEquals(accepted, sent.size());
+  }
+
+  @Test
+  void testHealthReportsStoreOccupancy() throws Exception {
+    ReccedaOtpStore bounded =
+        ReccedaOtpStore.builder().maximumSize(4).admissionThreshold(0.5).build();
+    server =
+        OtpHttpServer.builder(new ReccedaOtp(bounded), sent::put)
+            .host("127.0.0.1")
+            .port(0)
+            .healthCheck(bounded)
+            .start();
+
+    HttpResponse<String> healthy = get("/otp/health");
+    assertEquals(200, healthy.statusCode());
+    assertEquals("{\"status\":\"ok\",\"occupancy\":0.0}", healthy.body());
+
+    post("/otp/generate", "{\"key\":\"alice\"}");
+    post("/otp/generate", "{\"key\":\"bob\"}");
+    HttpResponse<String> rejected = post("/otp/generate", "{\"key\":\"carol\"}");
+    assertEquals(503, rejected.statusCode());
+    assertEquals("{\"error\":\"The OTP store is full.\"}", rejected.body());
+
+    HttpResponse<String> full = get("/otp/health");
+    assertEquals(503, full.statusCode());
+    assertEquals("{\"status\":\"full\",\"occupancy\":0.5}", full.body());
+  }
+
+  @Test
+  void testInvalidConfiguration() {
+    ReccedaOtp otp = new ReccedaOtp(new ReccedaOtpStore());
+    assertThrows(
+        IllegalStateException.class, () -> OtpHttpServer.builder(otp, null).port(0).start());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OtpHttpServer.builder(otp, sent::put).maxThreads(0).port(0).start());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OtpHttpServer.builder(otp, sent::put).lengthRange(8, 6).port(0).start());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OtpHttpServer.builder(otp, sent::put).maxFailedAttempts(0).port(0).start());
+  }
+
+  private void start(ReccedaOtp otp) throws IOException {
+    server = OtpHttpServer.builder(otp, sent::put).host("127.0.0.1").port(0).start();
+  }
+
+  private HttpResponse<String> post(String path, String body)
+      throws IOException, InterruptedException {
+    return client.send(request(path, body), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+    return client.send(
+        HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private HttpRequest request(String path, String body) {
+    return HttpRequest.newBuilder(uri(path))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://127.0.0.1:" + server.port() + path);
+  }
+}
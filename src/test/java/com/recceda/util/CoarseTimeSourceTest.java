@@ -0,0 +1,37 @@
+package com.recceda.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class CoarseTimeSourceTest {
+
+  @Test
+  void testTimeFollowsTheSystemClock() throws InterruptedException {
+    try (CoarseTimeSource time = new CoarseTimeSource(Duration.ofMillis(1))) {
+      long first = time.currentTimeMillis();
+      assertTrue(Math.abs(System.currentTimeMillis() - first) < 1000);
+      long deadline = System.currentTimeMillis() + 5000;
+      while (time.currentTimeMillis() == first && System.currentTimeMillis() < deadline) {
+        Thread.sleep(1);
+      }
+      assertTrue(time.currentTimeMillis() > first);
+    }
+  }
+
+  @Test
+  void testClosedSourceStopsAdvancing() throws InterruptedException {
+    CoarseTimeSource time = new CoarseTimeSource(Duration.ofMillis(1));
+    time.close();
+    Thread.sleep(5);
+    long stopped = time.currentTimeMillis();
+    Thread.sleep(20);
+    assertEquals(stopped, time.currentTimeMillis());
+  }
+
+  @Test
+  void testResolutionMustBePositive() {
+    assertThrows(IllegalArgumentException.class, () -> new CoarseTimeSource(Duration.ZERO));
+  }
+}
@@ -0,0 +1,43 @@
+package com.recceda.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FingerprintsTest {
+
+  // The key 00 01 02 ... 0f of the SipHash reference vectors.
+  private static final long K0 = 0x0706050403020100L;
+  private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+  @Test
+  void testSipHashMatchesTheReferenceVectors() {
+    assertEquals(0x726fdb47dd0e0e31L, Fingerprints.sipHash24("", K0, K1));
+    assertArrayEquals(
+        new long[] {0xe6a825ba047f81a3L, 0x930255c71472f66dL}, Fingerprints.sipHash128("", K0, K1));
+  }
+
+  @Test
+  void testSipHashCoversEveryCharacter() {
+    assertEquals(0xb7a0c261a07472a9L, Fingerprints.sipHash24("alice", K0, K1));
+    assertEquals(0x6e0b8b67908d7a6cL, Fingerprints.sipHash24("é中", K0, K1));
+    assertArrayEquals(
+        new long[] {0x745c3c4b779950faL, 0x760a2f45819515d3L},
+        Fingerprints.sipHash128("user-1234", K0, K1));
+  }
+
+  @Test
+  void testHash64CollisionsDoNotCarryOverToSipHash() {
+    String victim = "victim-1";
+    String attacker = Hash64Collisions.collidingKey(victim);
+    Random random = new Random(42);
+    for (int i = 0; i < 10; i++) {
+      long seed = random.nextLong();
+      assertEquals(Fingerprints.hash64(victim, seed), Fingerprints.hash64(attacker, seed));
+      long k1 = random.nextLong();
+      assertNotEquals(
+          Fingerprints.sipHash24(victim, seed, k1), Fingerprints.sipHash24(attacker, seed, k1));
+    }
+  }
+}
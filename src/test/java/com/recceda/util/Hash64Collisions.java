@@ -0,0 +1,64 @@
+package com.recceda.util;
+
+/**
+ * Builds pairs of keys that {@link Fingerprints#hash64(CharSequence, long)} maps to the same value
+ * for every seed, as an attacker would, to test that fingerprints do not rely on it.
+ */
+public final class Hash64Collisions {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private Hash64Collisions() {}
+
+  /**
+   * Returns a key of eight characters that collides with the given one.
+   *
+   * <p>Flipping bit 36 of the first mixed block flips bit 63 of the state after the rotate and
+   * multiply, which flipping bit 63 of the second mixed block cancels.
+   *
+   * @param key a key of eight characters.
+   * @return a different key with the same hash under every seed.
+   */
+  public static String collidingKey(String key) {
+    if (key.length() != 8) {
+      throw new IllegalArgumentException("The key must have eight characters.");
+    }
+    long first = unmixK(mixK(block(key, 0)) ^ 1L << 36);
+    long second = unmixK(mixK(block(key, 4)) ^ 1L << 63);
+    return chars(first) + chars(second);
+  }
+
+  private static long block(String key, int start) {
+    long k = 0;
+    for (int i = 0; i < 4; i++) {
+      k |= (long) key.charAt(start + i) << 16 * i;
+    }
+    return k;
+  }
+
+  private static String chars(long k) {
+    char[] chars = new char[4];
+    for (int i = 0; i < 4; i++) {
+      chars[i] = (char) (k >>> 16 * i);
+    }
+    return new String(chars);
+  }
+
+  private static long mixK(long k) {
+    return Long.rotateLeft(k * C1, 31) * C2;
+  }
+
+  private static long unmixK(long k) {
+    return Long.rotateRight(k * inverse(C2), 31) * inverse(C1);
+  }
+
+  /** Returns the multiplicative inverse of an odd number modulo 2^64, by Newton's iteration. */
+  private static long inverse(long odd) {
+    long inverse = odd;
+    for (int i = 0; i < 5; i++) {
+      inverse *= 2 - odd * inverse;
+    }
+    return inverse;
+  }
+}
@@ -0,0 +1,69 @@
+package com.recceda.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ObjectPoolTest {
+
+  @Test
+  void testObjectsAreReusedAcrossThreads() throws InterruptedException {
+    AtomicInteger created = new AtomicInteger();
+    ObjectPool<Object> pool = new ObjectPool<>(2, () -> new Object[] {created.incrementAndGet()});
+    for (int i = 0; i < 100; i++) {
+      // A new thread for each use, as when every request runs on its own virtual thread.
+      Thread thread = new Thread(() -> pool.release(pool.acquire()));
+      thread.start();
+      thread.join();
+    }
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void testObjectsInUseAreNotHandedOutTwice() {
+    ObjectPool<Object> pool = new ObjectPool<>(4, Object::new);
+    Set<Object> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Object> acquired = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Object object = pool.acquire();
+      assertTrue(inUse.add(object));
+      acquired.add(object);
+    }
+    acquired.forEach(pool::release);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(inUse.remove(pool.acquire()));
+    }
+  }
+
+  @Test
+  void testIdleObjectsAreBounded() {
+    AtomicInteger created = new AtomicInteger();
+    ObjectPool<Object> pool =
+        new ObjectPool<>(
+            2,
+            () -> {
+              created.incrementAndGet();
+              return new Object();
+            });
+    List<Object> acquired = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      acquired.add(pool.acquire());
+    }
+    acquired.forEach(pool::release);
+    for (int i = 0; i < 5; i++) {
+      pool.acquire();
+    }
+    assertEquals(8, created.get());
+  }
+
+  @Test
+  void testInvalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new ObjectPool<>(0, Object::new));
+  }
+}